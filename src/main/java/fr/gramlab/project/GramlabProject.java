@@ -10,7 +10,16 @@ import java.io.OutputStreamWriter;
 import java.io.UnsupportedEncodingException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
 import java.util.Scanner;
+import java.util.TreeSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Pattern;
 
 import javax.swing.JInternalFrame;
@@ -46,6 +55,7 @@ import fr.gramlab.project.console.ConsolePanel;
 import fr.gramlab.project.console.ConsoleUtil;
 import fr.gramlab.svn.SvnExecutor;
 import fr.gramlab.svn.SvnInfo;
+import fr.gramlab.svn.SvnStatus;
 import fr.gramlab.util.SplitUtil;
 import fr.gramlab.workspace.ProjectNode;
 import fr.gramlab.workspace.WorkspaceTreeModel;
@@ -2009,69 +2019,100 @@ public class GramlabProject implements Project, Comparable<GramlabProject> {
 		return monitor;
 	}
 
-	private ArrayList<File> pool = new ArrayList<File>();
+	/*
+	 * All svn refreshes are done by this thread, so that there is never more
+	 * than one svn process at a time for that purpose
+	 */
+	private static final ScheduledExecutorService svnRefresher = Executors
+			.newSingleThreadScheduledExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "SVN refresh");
+					t.setDaemon(true);
+					return t;
+				}
+			});
+	/* Delay used to gather the refresh requests that come together */
+	private static final long SVN_REFRESH_DELAY = 300;
 
-	boolean lock = false;
+	/*
+	 * The files to refresh at the next refresh operation. This set is also used
+	 * to synchronize the fields below
+	 */
+	private final LinkedHashSet<File> pendingSvnRefresh = new LinkedHashSet<File>();
+	private boolean pendingFullSvnRefresh = false;
+	private boolean svnRefreshScheduled = false;
+	private boolean svnRefreshRunning = false;
 
+	/**
+	 * Asks for a refresh of the svn infos. If <code>forceRefresh</code> is not
+	 * null, svn is only invoked on the directories containing these files;
+	 * otherwise, the whole project is refreshed. Requests are gathered so that
+	 * several requests made in a short time lead to a single refresh.
+	 */
 	public void asyncUpdateSvnInfo(final ArrayList<File> forceRefresh, boolean forceAll) {
 		final ProjectNode projectNode = WorkspaceTreeModel.getModel()
 				.getProjectNode(this);
-		if (lock) {
-			/*
-			 * If there is already a refresh operation in progress, we don't
-			 * want to lose the pending items to be refreshed
-			 */
+		synchronized (pendingSvnRefresh) {
 			if (forceRefresh != null) {
-				synchronized (pool) {
-					for (File f : forceRefresh) {
-						if (!pool.contains(f))
-							pool.add(f);
-					}
-				}
+				pendingSvnRefresh.addAll(forceRefresh);
 			}
-			return;
-		}
-		/* If there are some pending items, we take them */
-		final ArrayList<File> itemsToRefresh = new ArrayList<File>();
-		if (forceRefresh != null) {
-			for (File f : forceRefresh) {
-				itemsToRefresh.add(f);
-			}
-		}
-		synchronized (pool) {
-			for (File f : pool) {
-				if (!itemsToRefresh.contains(f)) {
-					itemsToRefresh.add(f);
+			if (forceRefresh == null || map == null) {
+				if (!forceAll && svnRefreshRunning && forceRefresh == null) {
+					/*
+					 * A periodic refresh is useless while another one is in
+					 * progress
+					 */
+					return;
 				}
+				pendingFullSvnRefresh = true;
 			}
-			pool.clear();
-		}
-		if (map != null) {
-			previousPomXmlSvnInfo = map.get(POM.getFile());
-		}
-		lock = true;
-		final SvnInfo backup;
-		if (map != null) {
-			backup = map.get(POM.getFile());
-		} else {
-			backup = null;
+			if (svnRefreshScheduled) {
+				return;
+			}
+			svnRefreshScheduled = true;
 		}
-		new Thread(new Runnable() {
+		svnRefresher.schedule(new Runnable() {
 			@Override
 			public void run() {
-				final ArrayList<File> tmp = new ArrayList<File>();
-				final HashMap<File, SvnInfo> newMap = SvnExecutor.getSvnInfos(
-						GramlabProject.this, tmp);
-				EventQueue.invokeLater(new Runnable() {
-					@Override
-					public void run() {
-						try {
-						/*
-						 * As we did an asynchronous job, we have to post the
-						 * update in the Swing thread
-						 */
-						previousPomXmlSvnInfo = backup;
-						map = newMap;
+				refreshSvnInfo(projectNode);
+			}
+		}, SVN_REFRESH_DELAY, TimeUnit.MILLISECONDS);
+	}
+
+	void refreshSvnInfo(final ProjectNode projectNode) {
+		final ArrayList<File> itemsToRefresh;
+		final boolean full;
+		synchronized (pendingSvnRefresh) {
+			svnRefreshScheduled = false;
+			svnRefreshRunning = true;
+			itemsToRefresh = new ArrayList<File>(pendingSvnRefresh);
+			pendingSvnRefresh.clear();
+			full = pendingFullSvnRefresh;
+			pendingFullSvnRefresh = false;
+		}
+		try {
+			final ArrayList<File> dirs = full ? null
+					: getSvnRefreshScope(itemsToRefresh);
+			final ArrayList<File> tmp = new ArrayList<File>();
+			final HashMap<File, SvnInfo> newMap = SvnExecutor.getSvnInfos(
+					GramlabProject.this, dirs, tmp);
+			EventQueue.invokeLater(new Runnable() {
+				@Override
+				public void run() {
+					/*
+					 * As we did an asynchronous job, we have to post the update
+					 * in the Swing thread
+					 */
+					try {
+						previousPomXmlSvnInfo = (map != null) ? map
+								.get(POM.getFile()) : null;
+						if (dirs == null || map == null) {
+							map = newMap;
+							removedFiles = tmp;
+						} else {
+							mergeSvnInfos(dirs, newMap, tmp);
+						}
 						if (firstTimeSvnInfo) {
 							// On the very first call, map is null, but we don't
 							// want to consider pom.xml as unversioned if it is,
@@ -2079,18 +2120,122 @@ public class GramlabProject implements Project, Comparable<GramlabProject> {
 							previousPomXmlSvnInfo = map.get(POM.getFile());
 							firstTimeSvnInfo = false;
 						}
-						removedFiles = tmp;
-						} finally {
-							lock = false;
-							if (projectNode != null) {
-								projectNode.refresh(removedFiles, itemsToRefresh, false);
-								Main.getMainFrame().repaint();
-							}
+					} finally {
+						if (projectNode != null) {
+							projectNode.refresh(removedFiles, itemsToRefresh, false);
+							Main.getMainFrame().repaint();
 						}
 					}
-				});
+				}
+			});
+		} finally {
+			synchronized (pendingSvnRefresh) {
+				svnRefreshRunning = false;
+			}
+		}
+	}
+
+	/**
+	 * Returns the topmost existing directories containing the given files,
+	 * or null if the whole project has to be refreshed.
+	 */
+	private ArrayList<File> getSvnRefreshScope(ArrayList<File> files) {
+		File projectDir = getProjectDirectory().getAbsoluteFile();
+		TreeSet<String> paths = new TreeSet<String>();
+		for (File f : files) {
+			File dir = f.getAbsoluteFile();
+			if (!dir.isDirectory()) {
+				dir = dir.getParentFile();
 			}
-		}).start();
+			while (dir != null && !dir.exists()) {
+				dir = dir.getParentFile();
+			}
+			if (dir == null || !isUnder(dir, projectDir)) {
+				return null;
+			}
+			paths.add(dir.getPath());
+		}
+		ArrayList<File> dirs = new ArrayList<File>();
+		for (String path : paths) {
+			/*
+			 * As paths are sorted, a directory always comes after its parents,
+			 * so that we only keep the topmost ones
+			 */
+			File dir = new File(path);
+			if (!isInScope(dir, dirs)) {
+				dirs.add(dir);
+			}
+		}
+		return dirs;
+	}
+
+	/**
+	 * Returns true if f is strictly inside dir.
+	 */
+	private static boolean isUnder(File f, File dir) {
+		return f.getPath().startsWith(dir.getPath() + File.separator);
+	}
+
+	/**
+	 * Replaces the svn infos of the given directories by the new ones, and
+	 * updates the modified status of their parents.
+	 */
+	private void mergeSvnInfos(ArrayList<File> dirs, HashMap<File, SvnInfo> infos,
+			ArrayList<File> removed) {
+		for (Iterator<File> it = map.keySet().iterator(); it.hasNext();) {
+			if (isInScope(it.next(), dirs)) {
+				it.remove();
+			}
+		}
+		map.putAll(infos);
+		ArrayList<File> newRemovedFiles = new ArrayList<File>();
+		for (File f : removedFiles) {
+			if (!isInScope(f, dirs)) {
+				newRemovedFiles.add(f);
+			}
+		}
+		newRemovedFiles.addAll(removed);
+		removedFiles = newRemovedFiles;
+		File projectDir = getProjectDirectory();
+		HashSet<File> parents = new HashSet<File>();
+		for (File dir : dirs) {
+			File f = dir;
+			while ((f = f.getParentFile()) != null && !f.equals(projectDir)) {
+				SvnInfo i = map.get(f);
+				if (i != null && i.getStatus() == SvnStatus.MODIFIED) {
+					i.setStatus(SvnStatus.UNMODIFIED);
+				}
+				parents.add(f);
+			}
+		}
+		/* The parents of modified files have to be marked as modified again */
+		HashSet<File> modified = new HashSet<File>();
+		for (Map.Entry<File, SvnInfo> e : map.entrySet()) {
+			if (e.getValue().getStatus() != SvnStatus.MODIFIED) {
+				continue;
+			}
+			File f = e.getKey();
+			while ((f = f.getParentFile()) != null && !f.equals(projectDir)
+					&& modified.add(f)) {
+				/* */
+			}
+		}
+		for (File f : parents) {
+			SvnInfo i = map.get(f);
+			if (i != null && modified.contains(f)
+					&& i.getStatus() == SvnStatus.UNMODIFIED) {
+				i.setStatus(SvnStatus.MODIFIED);
+			}
+		}
+	}
+
+	private static boolean isInScope(File f, ArrayList<File> dirs) {
+		for (File dir : dirs) {
+			if (f.equals(dir) || isUnder(f, dir)) {
+				return true;
+			}
+		}
+		return false;
 	}
 
 	public ArrayList<File> getRemovedFiles() {
@@ -4,6 +4,7 @@ import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Scanner;
 
 import fr.gramlab.project.GramlabProject;
@@ -66,7 +67,7 @@ public class SvnExecutor {
 	public static SvnCommandResult getSvnError(ProcessOutputList stderr) {
 		StringBuilder b=new StringBuilder();
 		for (int i=0;i<stderr.getModel().getSize();i++) {
-			Couple c=(Couple) stderr.getModel().get(i);
+			Couple c=stderr.getModel().get(i);
 			b.append(c.getString());
 			b.append("\n");
 		}
@@ -95,14 +96,23 @@ public class SvnExecutor {
 	
 	
 	public static HashMap<File,SvnInfo> getSvnInfos(GramlabProject project,ArrayList<File> removedFiles) {
+		return getSvnInfos(project,null,removedFiles);
+	}
+
+	/**
+	 * Same as getSvnInfos, but 'svn info' and 'svn status' are limited to the
+	 * given directories of the project, if not null. In that case, the map
+	 * only contains the infos about these directories and their content.
+	 */
+	public static HashMap<File,SvnInfo> getSvnInfos(GramlabProject project,List<File> dirs,ArrayList<File> removedFiles) {
 		HashMap<File,SvnInfo> map=new HashMap<File,SvnInfo>();
 		removedFiles.clear();
-		exploreDirForSvnInfos(project,map,removedFiles);
+		exploreDirForSvnInfos(project,dirs,map,removedFiles);
 		return map;
 	}
 
-	private static void exploreDirForSvnInfos(GramlabProject project,HashMap<File,SvnInfo> map,
-			ArrayList<File> removedFiles) {
+	private static void exploreDirForSvnInfos(GramlabProject project,List<File> dirs,
+			HashMap<File,SvnInfo> map,ArrayList<File> removedFiles) {
 		File dir=project.getProjectDirectory();
 		File f=new File(dir,".svn");
 		if (!f.exists() || !f.isDirectory()) {
@@ -112,7 +122,7 @@ public class SvnExecutor {
 			return;
 		}
 		try {
-			SvnCommand c=new SvnCommand().info(dir,true);
+			SvnCommand c=(dirs==null)?new SvnCommand().info(dir,true):new SvnCommand().info(dir,dirs,true);
 			Process p=Runtime.getRuntime().exec(c.getCommandArguments(),null,dir);
 			GetStreamThread waiterOut=new GetStreamThread(p.getInputStream());
 			GetStreamThread waiterErr=new GetStreamThread(p.getErrorStream());
@@ -126,7 +136,7 @@ public class SvnExecutor {
 				 * the status information about both them and the unversioned/added
 				 * ones
 				 */
-				updateStatusInfos(project,map,removedFiles);
+				updateStatusInfos(project,dirs,map,removedFiles);
 			} 
 		} catch (final IOException e) {
 			return;
@@ -136,9 +146,9 @@ public class SvnExecutor {
 	}
 
 
-	private static void updateStatusInfos(GramlabProject p, HashMap<File, SvnInfo> map,
+	private static void updateStatusInfos(GramlabProject p, List<File> dirs, HashMap<File, SvnInfo> map,
 			ArrayList<File> removedFiles) {
-		SvnStatusInfo info=getSvnStatusInfo(p);
+		SvnStatusInfo info=getSvnStatusInfo(p,dirs);
 		if (info==null) return;
 		removedFiles.clear();
 		for (String name:info.getUnversionedFiles()) {
@@ -160,10 +170,13 @@ public class SvnExecutor {
 			SvnInfo i=map.get(f);
 			i.setStatus(SvnStatus.MODIFIED);
 			/* We also want the modified status pink star 
-			 * to appear on all parents directories up to src
+			 * to appear on all parents directories up to src. When only
+			 * some directories were asked, we stop at their top, and the
+			 * caller has to update the parents
 			 */
 			while (!(f=f.getParentFile()).equals(p.getProjectDirectory())) {
 				i=map.get(f);
+				if (i==null) break;
 				i.setStatus(SvnStatus.MODIFIED);
 			}
 		}
@@ -195,8 +208,12 @@ public class SvnExecutor {
 
 
 	public static SvnStatusInfo getSvnStatusInfo(GramlabProject project) {
+		return getSvnStatusInfo(project,null);
+	}
+
+	public static SvnStatusInfo getSvnStatusInfo(GramlabProject project,List<File> dirs) {
 		try {
-			SvnCommand c=new SvnCommand().status();
+			SvnCommand c=(dirs==null)?new SvnCommand().status():new SvnCommand().status(project.getProjectDirectory(),dirs);
 			Process p=Runtime.getRuntime().exec(c.getCommandArguments(),null,project.getProjectDirectory());
 			GetStreamThread waiterOut=new GetStreamThread(p.getInputStream());
 			GetStreamThread waiterErr=new GetStreamThread(p.getErrorStream());
@@ -40,6 +40,7 @@ package fr.loria.xsilfide.multialign;
 //    On calcule ici toute la matrice de programmation dynamique ->
 //    cout au moins quadratique. On pourrait ne faire qu'une bande autour
 //    de la diagonale (c'est le truc classique !)
+//    -> c'est fait : voir Band, la bande est elargie si besoin.
 // l'implementation est exactement celle de Gale et Church...
 // elle etait en C. On pourrait refaire ca dans un style plus Java !
 // enfin, des cognates sont des points de passage oblige dans la matrice
@@ -57,6 +58,18 @@ class Align {
 	static public final int EXPANSION = 6;
 	private static final int BIGDESTRUCTION = 7;
 	private static final int BIGINSERTION = 8;
+	// the moves that lead to a cell of the matrix
+	private static final byte FROM_ORIGIN = 0;
+	private static final byte FROM_SUBSTITUTION = 1;
+	private static final byte FROM_DELETION = 2;
+	private static final byte FROM_INSERTION = 3;
+	private static final byte FROM_CONTRACTION = 4;
+	private static final byte FROM_EXPANSION = 5;
+	private static final byte FROM_MELDING = 6;
+	private static final byte FROM_SPECIAL = 7;
+	// the offsets of the cells a cell can come from, apart from special paths
+	private static final int[] PREVIOUS = { 1, 1, 1, 0, 0, 1, 2, 1, 1, 2, 2, 2 };
+	private static final int MIN_BAND_WIDTH = 32;
 
 	public int getType(Point al) {
 		if ((al.x == 1) && (al.y == 0))
@@ -86,200 +99,46 @@ class Align {
 
 	public static Path getPath(Dist x, Dist y, boolean para_level,
 			ContraintesChemin contraintes) {
+		return getPath(x, y, para_level, contraintes, MultiAlign.getProgress());
+	}
+
+	public static Path getPath(Dist x, Dist y, boolean para_level,
+			ContraintesChemin contraintes, AlignmentProgress progress) {
 		// para_level=true if we align at paragraph level, false for sentence
 		// level
-		Matrix dist;
+		Band band;
 		int maxi, maxj;
 		Path path;
 		Path tmpPath;
-		int[][] pathX;
-		int[][] pathY;
 		int n;
 		int i, j, oi, oj, di, dj;
-		int d1, d2, d3, d4, d5, d6, dmin;
 		maxi = x.getSize() + 1;
 		maxj = y.getSize() + 1;
-		dist = new Matrix(maxi, maxj); // la matrice pour la
-		// programmation dynamique
 		if (maxi > 2 * maxj || maxj > 2 * maxi) {
 			path = new Path(1, 1, 1);
 			final Point p = new Point(maxi - 1, maxj - 1);
 			path.setPointAt(p, 0);
 			return (path);
 		}
-		// if(!para_level)
-		// System.out.println(maxi + " x " + maxj);
-		pathX = new int[maxi][maxj];
-		pathY = new int[maxi][maxj];
-		final int mod = (maxj < MultiAlign.NDOTS) ? 1
-				: (maxj / MultiAlign.NDOTS);
-		// calcul de la matrice des couts.
-		for (j = 0; j < maxj; j++) {
-			if (j % mod == 0)
-				System.out.print(".");
-			for (i = 0; i < maxi; i++) {
-				// prise en compte des "noCorresp". B.G 20/12/2006
-				if ((contraintes != null) && contraintes.getIgnoreSource(i)) {
-					dist.setElem(i, j, dist.getElem(i - 1, j));
-					pathX[i][j] = i - 1;
-					pathY[i][j] = j;
-					continue; // OUI, c'est mal !
-				}
-				if ((contraintes != null) && contraintes.getIgnoreTarget(j)) {
-					dist.setElem(i, j, dist.getElem(i, j - 1));
-					pathX[i][j] = i;
-					pathY[i][j] = j - 1;
-					continue; // OUI, c'est mal !
-				}
-				// B.G. 15/12/2006
-				// Si on a un chemin special en i,j on courcicuite !
-				if ((contraintes != null)
-						&& contraintes.getCheminSpecial(i, j) != null) {
-					final Point p = contraintes.getCheminSpecial(i, j);
-					// ca ne coûte rien de reprendre la distance !
-					dist.setElem(i, j, dist.getElem(i - p.getX(), j - p.getY()));
-					pathX[i][j] = i - p.getX();
-					pathY[i][j] = j - p.getY();
-				} else { // chemin special
-					// B.G 5 decembre 2006
-					// A-t-on un cout impose pour ce point ?
-					// si oui, on n'a pas d'autre calcul à faire...
-					if ((contraintes != null) && contraintes.getCout(i, j) != 0) {
-						dmin = Integer.MAX_VALUE;
-						d1 = d2 = d3 = d4 = d5 = d6 = Integer.MAX_VALUE;
-						// System.out.println("Cout imposé en "+i+", "+j+"\n");
-					} else { // cout force
-						// B.G. 5 décembre 2006
-						// A-t-on des contraintes sur la forme du chemin ?
-						// if (contraintes.getCheminsForces(i, j) != null){
-						// System.out.println("contraintes chemin en "+i+", "+j+" = "+contraintes.getCheminsForces(i,
-						// j));
-						// }
-						d1 = i > 0
-								&& j > 0
-								&& ((contraintes == null) || contraintes
-										.substitutionAutorisee(i, j))
-								&& (dist.getElem(i - 1, j - 1) != Integer.MAX_VALUE) ?
-						// substitution
-						dist.getElem(i - 1, j - 1)
-								+ Dist.TwoSideDistance(x.getDistAt(i - 1),
-										y.getDistAt(j - 1), 0, 0)
-								: Integer.MAX_VALUE;
-						d2 = i > 0
-								&& ((contraintes == null) || contraintes
-										.destructionAutorisee(i, j))
-								&& (dist.getElem(i - 1, j) != Integer.MAX_VALUE) ?
-						// deletion
-						dist.getElem(i - 1, j)
-								+ Dist.TwoSideDistance(x.getDistAt(i - 1), 0,
-										0, 0)
-								: Integer.MAX_VALUE;
-						d3 = j > 0
-								&& ((contraintes == null) || contraintes
-										.insertionAutorisee(i, j))
-								&& (dist.getElem(i, j - 1) != Integer.MAX_VALUE) ?
-						// insertion
-						dist.getElem(i, j - 1)
-								+ Dist.TwoSideDistance(0, y.getDistAt(j - 1),
-										0, 0)
-								: Integer.MAX_VALUE;
-						d4 = i > 1
-								&& j > 0
-								&& ((contraintes == null) || contraintes
-										.contractionAutorisee(i, j))
-								&& (dist.getElem(i - 2, j - 1) != Integer.MAX_VALUE) ?
-						// contraction
-						dist.getElem(i - 2, j - 1)
-								+ Dist.TwoSideDistance(x.getDistAt(i - 2),
-										y.getDistAt(j - 1), x.getDistAt(i - 1),
-										0)
-								: Integer.MAX_VALUE;
-						d5 = i > 0
-								&& j > 1
-								&& ((contraintes == null) || contraintes
-										.expansionAutorisee(i, j))
-								&& (dist.getElem(i - 1, j - 2) != Integer.MAX_VALUE) ?
-						// expansion
-						dist.getElem(i - 1, j - 2)
-								+ Dist.TwoSideDistance(x.getDistAt(i - 1),
-										y.getDistAt(j - 2), 0,
-										y.getDistAt(j - 1))
-								: Integer.MAX_VALUE;
-						d6 = i > 1
-								&& j > 1
-								&& ((contraintes == null) || contraintes
-										.melangeAutorise(i, j))
-								&& (dist.getElem(i - 2, j - 2) != Integer.MAX_VALUE) ?
-						// melding
-						dist.getElem(i - 2, j - 2)
-								+ Dist.TwoSideDistance(x.getDistAt(i - 2),
-										y.getDistAt(j - 2), x.getDistAt(i - 1),
-										y.getDistAt(j - 1))
-								: Integer.MAX_VALUE;
-						dmin = d1;
-						if (d2 < dmin)
-							dmin = d2;
-						if (d3 < dmin)
-							dmin = d3;
-						if (d4 < dmin)
-							dmin = d4;
-						if (d5 < dmin)
-							dmin = d5;
-						if (d6 < dmin)
-							dmin = d6;
-					}
-					// System.out.println(i+", "+j+" : "+d1+" "+d2+" "+d3+" "+d4+" "+d5+" "+d6);
-					if ((i == 0) && (j == 0)) {
-						dist.setElem(0, 0, 0);
-						pathX[0][0] = 0;
-						pathY[0][0] = 0;
-					} else if (dmin == Integer.MAX_VALUE) {
-						// dist.setElem(i, j, 0); // Pourquoi ?
-						dist.setElem(i, j, dmin); // Pourquoi ?
-						pathX[i][j] = 0;
-						pathY[i][j] = 0;
-						// System.out.println("dmin="+dmin+" ");
-					} else if (dmin == d1) {
-						dist.setElem(i, j, d1);
-						pathX[i][j] = i - 1;
-						pathY[i][j] = j - 1;
-						// System.out.println("d1="+d1+" ");
-					} else if (dmin == d2) {
-						dist.setElem(i, j, d2);
-						pathX[i][j] = i - 1;
-						pathY[i][j] = j;
-						// System.out.println("d2="+d2+" ");
-					} else if (dmin == d3) {
-						dist.setElem(i, j, d3);
-						pathX[i][j] = i;
-						pathY[i][j] = j - 1;
-						// System.out.println("d3="+d3+" ");
-					} else if (dmin == d4) {
-						dist.setElem(i, j, d4);
-						pathX[i][j] = i - 2;
-						pathY[i][j] = j - 1;
-						// System.out.println("d4="+d4+" ");
-					} else if (dmin == d5) {
-						dist.setElem(i, j, d5);
-						pathX[i][j] = i - 1;
-						pathY[i][j] = j - 2;
-						// System.out.println("d5="+d5+" ");
-					} else /* dmin == d6 */{
-						dist.setElem(i, j, d6);
-						pathX[i][j] = i - 2;
-						pathY[i][j] = j - 2;
-						// System.out.println("d6="+d6+" ");
-					}
-					// System.out.println(i+", "+j+": "+pathX[i][j]+"  "+pathY[i][j]+"\n");
-				}
-			}
+		// Only a band around the diagonal is computed. If the best path of
+		// the band gets close to its edges, we start again with a band twice
+		// as large, up to the whole matrix.
+		int width = Math.min(maxi, 2 * MIN_BAND_WIDTH + 1);
+		while (true) {
+			band = new Band(maxi, maxj, width);
+			fill(band, x, y, contraintes, progress);
+			if (band.isFull() || band.containsPath(contraintes))
+				break;
+			width = (int) Math.min(maxi, 2L * width);
 		}
 		// Extraction du meilleur chemin.
 		n = 0;
 		tmpPath = new Path(maxi, maxj, maxi + maxj);
+		final int[] previous = new int[2];
 		for (i = maxi - 1, j = maxj - 1; i > 0 || j > 0; i = oi, j = oj) {
-			oi = pathX[i][j];
-			oj = pathY[i][j];
+			band.getPrevious(i, j, contraintes, previous);
+			oi = previous[0];
+			oj = previous[1];
 			di = i - oi;
 			dj = j - oj;
 			if (di == 1 && dj == 1) { // substitution
@@ -353,5 +212,286 @@ class Align {
 		// System.out.println("Path: "+path.toString());
 		return (path);
 	}
+
+	/*
+	 * Computes the costs of the cells of the band, column by column, exactly
+	 * as if the matrix was full, except that the cells outside the band cost
+	 * Integer.MAX_VALUE.
+	 */
+	private static void fill(Band band, Dist x, Dist y,
+			ContraintesChemin contraintes, AlignmentProgress progress) {
+		final int maxj = band.maxj;
+		int d1, d2, d3, d4, d5, d6, dmin;
+		final int mod = (maxj < MultiAlign.NDOTS) ? 1
+				: (maxj / MultiAlign.NDOTS);
+		for (int j = 0; j < maxj; j++) {
+			if (progress != null && j % mod == 0)
+				progress.columnsDone(j, maxj);
+			final int first = band.getFirstRow(j);
+			for (int i = first; i < first + band.width; i++) {
+				// prise en compte des "noCorresp". B.G 20/12/2006
+				if ((contraintes != null) && contraintes.getIgnoreSource(i)) {
+					band.set(i, j, band.get(i - 1, j), FROM_DELETION);
+					continue;
+				}
+				if ((contraintes != null) && contraintes.getIgnoreTarget(j)) {
+					band.set(i, j, band.get(i, j - 1), FROM_INSERTION);
+					continue;
+				}
+				// B.G. 15/12/2006
+				// Si on a un chemin special en i,j on courcicuite !
+				final Point p = (contraintes != null) ? contraintes
+						.getCheminSpecial(i, j) : null;
+				if (p != null) {
+					// ca ne coûte rien de reprendre la distance !
+					band.set(i, j, band.get(i - p.getX(), j - p.getY()),
+							FROM_SPECIAL);
+					continue;
+				}
+				// B.G 5 decembre 2006
+				// A-t-on un cout impose pour ce point ?
+				// si oui, on n'a pas d'autre calcul à faire...
+				if ((contraintes != null) && contraintes.getCout(i, j) != 0) {
+					dmin = Integer.MAX_VALUE;
+					d1 = d2 = d3 = d4 = d5 = d6 = Integer.MAX_VALUE;
+				} else {
+					int d;
+					// substitution
+					d1 = i > 0
+							&& j > 0
+							&& ((contraintes == null) || contraintes
+									.substitutionAutorisee(i, j))
+							&& ((d = band.get(i - 1, j - 1)) != Integer.MAX_VALUE) ? d
+							+ Dist.TwoSideDistance(x.getDistAt(i - 1),
+									y.getDistAt(j - 1), 0, 0)
+							: Integer.MAX_VALUE;
+					// deletion
+					d2 = i > 0
+							&& ((contraintes == null) || contraintes
+									.destructionAutorisee(i, j))
+							&& ((d = band.get(i - 1, j)) != Integer.MAX_VALUE) ? d
+							+ Dist.TwoSideDistance(x.getDistAt(i - 1), 0, 0, 0)
+							: Integer.MAX_VALUE;
+					// insertion
+					d3 = j > 0
+							&& ((contraintes == null) || contraintes
+									.insertionAutorisee(i, j))
+							&& ((d = band.get(i, j - 1)) != Integer.MAX_VALUE) ? d
+							+ Dist.TwoSideDistance(0, y.getDistAt(j - 1), 0, 0)
+							: Integer.MAX_VALUE;
+					// contraction
+					d4 = i > 1
+							&& j > 0
+							&& ((contraintes == null) || contraintes
+									.contractionAutorisee(i, j))
+							&& ((d = band.get(i - 2, j - 1)) != Integer.MAX_VALUE) ? d
+							+ Dist.TwoSideDistance(x.getDistAt(i - 2),
+									y.getDistAt(j - 1), x.getDistAt(i - 1), 0)
+							: Integer.MAX_VALUE;
+					// expansion
+					d5 = i > 0
+							&& j > 1
+							&& ((contraintes == null) || contraintes
+									.expansionAutorisee(i, j))
+							&& ((d = band.get(i - 1, j - 2)) != Integer.MAX_VALUE) ? d
+							+ Dist.TwoSideDistance(x.getDistAt(i - 1),
+									y.getDistAt(j - 2), 0, y.getDistAt(j - 1))
+							: Integer.MAX_VALUE;
+					// melding
+					d6 = i > 1
+							&& j > 1
+							&& ((contraintes == null) || contraintes
+									.melangeAutorise(i, j))
+							&& ((d = band.get(i - 2, j - 2)) != Integer.MAX_VALUE) ? d
+							+ Dist.TwoSideDistance(x.getDistAt(i - 2),
+									y.getDistAt(j - 2), x.getDistAt(i - 1),
+									y.getDistAt(j - 1))
+							: Integer.MAX_VALUE;
+					dmin = d1;
+					if (d2 < dmin)
+						dmin = d2;
+					if (d3 < dmin)
+						dmin = d3;
+					if (d4 < dmin)
+						dmin = d4;
+					if (d5 < dmin)
+						dmin = d5;
+					if (d6 < dmin)
+						dmin = d6;
+				}
+				if ((i == 0) && (j == 0)) {
+					band.set(0, 0, 0, FROM_ORIGIN);
+				} else if (dmin == Integer.MAX_VALUE) {
+					band.set(i, j, dmin, FROM_ORIGIN);
+				} else if (dmin == d1) {
+					band.set(i, j, d1, FROM_SUBSTITUTION);
+				} else if (dmin == d2) {
+					band.set(i, j, d2, FROM_DELETION);
+				} else if (dmin == d3) {
+					band.set(i, j, d3, FROM_INSERTION);
+				} else if (dmin == d4) {
+					band.set(i, j, d4, FROM_CONTRACTION);
+				} else if (dmin == d5) {
+					band.set(i, j, d5, FROM_EXPANSION);
+				} else /* dmin == d6 */{
+					band.set(i, j, d6, FROM_MELDING);
+				}
+			}
+		}
+	}
+
+	/*
+	 * The cells of the dynamic programming matrix that are at most about
+	 * width/2 rows away from the diagonal. For each of them, we keep its cost
+	 * and the move that leads to it, packed as two moves per byte, instead of
+	 * the coordinates of the previous cell.
+	 */
+	private static class Band {
+		final int maxi;
+		final int maxj;
+		final int width;
+		private final int[] firstRow;
+		private final int[] costs;
+		private final byte[] moves;
+
+		Band(int maxi, int maxj, int width) {
+			this.maxi = maxi;
+			this.maxj = maxj;
+			this.width = width;
+			if ((long) maxj * width > Integer.MAX_VALUE)
+				throw new OutOfMemoryError("Alignment matrix too large: "
+						+ maxi + " x " + maxj);
+			firstRow = new int[maxj];
+			for (int j = 0; j < maxj; j++) {
+				final long diagonal = (maxj == 1) ? 0 : (long) j * (maxi - 1)
+						/ (maxj - 1);
+				firstRow[j] = (int) Math.max(0,
+						Math.min(diagonal - width / 2, maxi - width));
+			}
+			costs = new int[maxj * width];
+			moves = new byte[(costs.length + 1) / 2];
+		}
+
+		boolean isFull() {
+			return width == maxi;
+		}
+
+		int getFirstRow(int j) {
+			return firstRow[j];
+		}
+
+		private boolean isInside(int i, int j) {
+			return i >= 0 && j >= 0 && i < maxi && j < maxj
+					&& i >= firstRow[j] && i < firstRow[j] + width;
+		}
+
+		/*
+		 * Like Matrix.getElem, returns 0 outside of the matrix.
+		 */
+		int get(int i, int j) {
+			if (i < 0 || j < 0 || i >= maxi || j >= maxj)
+				return 0;
+			if (i < firstRow[j] || i >= firstRow[j] + width)
+				return Integer.MAX_VALUE;
+			return costs[j * width + i - firstRow[j]];
+		}
+
+		void set(int i, int j, int cost, byte move) {
+			final int k = j * width + i - firstRow[j];
+			costs[k] = cost;
+			moves[k >> 1] |= move << ((k & 1) << 2);
+		}
+
+		int getMove(int i, int j) {
+			final int k = j * width + i - firstRow[j];
+			return (moves[k >> 1] >> ((k & 1) << 2)) & 0xF;
+		}
+
+		/*
+		 * Stores in previous the coordinates of the cell that precedes (i,j)
+		 * on the best path.
+		 */
+		void getPrevious(int i, int j, ContraintesChemin contraintes,
+				int[] previous) {
+			switch (getMove(i, j)) {
+			case FROM_SUBSTITUTION:
+				previous[0] = i - 1;
+				previous[1] = j - 1;
+				break;
+			case FROM_DELETION:
+				previous[0] = i - 1;
+				previous[1] = j;
+				break;
+			case FROM_INSERTION:
+				previous[0] = i;
+				previous[1] = j - 1;
+				break;
+			case FROM_CONTRACTION:
+				previous[0] = i - 2;
+				previous[1] = j - 1;
+				break;
+			case FROM_EXPANSION:
+				previous[0] = i - 1;
+				previous[1] = j - 2;
+				break;
+			case FROM_MELDING:
+				previous[0] = i - 2;
+				previous[1] = j - 2;
+				break;
+			case FROM_SPECIAL: {
+				final Point p = contraintes.getCheminSpecial(i, j);
+				previous[0] = i - p.getX();
+				previous[1] = j - p.getY();
+				break;
+			}
+			default:
+				previous[0] = 0;
+				previous[1] = 0;
+			}
+		}
+
+		/*
+		 * Tests if (i,j) is far enough from the edges of the band for its
+		 * cost to be trusted. The cells it can come from must be in the band
+		 * and, as the best path of the band can be squeezed against an edge
+		 * by a better one outside, we also want a margin of a quarter of the
+		 * band. This is a heuristic: a path that leaves the band and comes
+		 * back can still be better, which only the whole matrix would show.
+		 */
+		private boolean isExact(int i, int j) {
+			if (!isInside(i, j))
+				return false;
+			final int margin = width / 4;
+			if (firstRow[j] > 0 && i - firstRow[j] < margin)
+				return false;
+			if (firstRow[j] + width < maxi
+					&& firstRow[j] + width - 1 - i < margin)
+				return false;
+			for (int k = 0; k < PREVIOUS.length; k += 2) {
+				final int pi = i - PREVIOUS[k];
+				final int pj = j - PREVIOUS[k + 1];
+				if (pi >= 0 && pj >= 0 && !isInside(pi, pj))
+					return false;
+			}
+			return true;
+		}
+
+		/*
+		 * Tests if the best path found stays far enough from the edges of the
+		 * band to be accepted, in which case the band is not widened.
+		 */
+		boolean containsPath(ContraintesChemin contraintes) {
+			final int[] previous = new int[2];
+			int i = maxi - 1, j = maxj - 1;
+			while (i > 0 || j > 0) {
+				if (!isExact(i, j) || getMove(i, j) == FROM_ORIGIN)
+					return false;
+				getPrevious(i, j, contraintes, previous);
+				i = previous[0];
+				j = previous[1];
+			}
+			return true;
+		}
+	}
 }
 // EOF
@@ -0,0 +1,36 @@
+/*
+ * XAlign
+ *
+ * Copyright (C) LORIA
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA.
+ *
+ */
+package fr.loria.xsilfide.multialign;
+
+/**
+ * This interface is used by <code>Align</code> to report the progress of the
+ * dynamic programming. As paragraph pairs are aligned in parallel, it may be
+ * called from several threads at once.
+ */
+public interface AlignmentProgress {
+	/**
+	 * Called about <code>MultiAlign.NDOTS</code> times per alignment, with
+	 * the number of columns of the matrix that have been computed. When the
+	 * band around the diagonal has to be widened, the computation starts
+	 * again from the first column.
+	 */
+	void columnsDone(int done, int total);
+}
@@ -42,12 +42,30 @@ public class MultiAlign {
 	static private String inputAndResult;
 	public static final int NDOTS = 80;
 	private static PrintStream debugOut = null;
+	private static volatile AlignmentProgress progress = new AlignmentProgress() {
+		public void columnsDone(int done, int total) {
+			System.out.print(".");
+		}
+	};
 
 	public static void debug(String str) {
 		if (debugOut != null)
 			debugOut.println(str);
 	}
 
+	/**
+	 * Sets the object that is told about the progress of the alignments. By
+	 * default, a dot is printed on the standard output. With
+	 * <code>null</code>, nothing is reported.
+	 */
+	public static void setProgress(AlignmentProgress p) {
+		progress = p;
+	}
+
+	static AlignmentProgress getProgress() {
+		return progress;
+	}
+
 	private static void usage() {
 		// Just load and prepare texts @see LoadAndPrepareTexts
 		System.out.println("Load and prepare texts: ");
@@ -31,7 +31,16 @@
  */
 package fr.loria.xsilfide.multialign;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
 
 @SuppressWarnings("unchecked")
 class Paragraphes {
@@ -146,6 +155,8 @@ class Paragraphes {
 		// vectors
 		// sMax = srcSentences.size(), tMax = tarSentences.size();
 		int cpSrc = 0, cpTar = 0;
+		final ArrayList<Vector<Object>> srcs = new ArrayList<Vector<Object>>();
+		final ArrayList<Vector<Object>> tars = new ArrayList<Vector<Object>>();
 		// ici, prends des parties des sentences de la source et la cible et
 		// aligner
 		for (int i = 0; i < path.getNumberOfPoint(); i++) {
@@ -205,14 +216,87 @@ class Paragraphes {
 				}
 				cpTar++;
 			} // enfor target
-				// align Src and Tar
-			new Sentences(Src, Tar, cogn, lpt);
-			// System.out.println(stc.Links.toString());
-			// System.out.println(stc.Linking.toString());
+			srcs.add(Src);
+			tars.add(Tar);
+		} // endfor Path
+		// align each Src with its Tar
+		final Path[] paths = alignAll(srcs, tars, cogn);
+		for (int i = 0; i < paths.length; i++) {
+			new Sentences(srcs.get(i), tars.get(i), cogn, lpt, paths[i]);
 			// get links of stc
 			Links = Sentences.Links;
 			// get linkings of stc
 			Linking = Sentences.Linking;
-		} // endfor Path
+		}
+	}
+
+	// Approximate size in bytes of a cell of the dynamic programming
+	// matrix: the four matrices of the constraints and, if the band has to
+	// be widened to the whole matrix, its cost and move
+	private static final int BYTES_PER_CELL = 48;
+
+	// The sentences of the paragraph pairs are aligned in parallel, as the
+	// pairs do not depend on each other. Only the creation of the links,
+	// that updates static fields, is left to the caller. Since each
+	// alignment allocates matrices of n*m cells, the tasks that run at the
+	// same time must not hold more cells than half of the heap can store.
+	private static Path[] alignAll(final ArrayList<Vector<Object>> srcs,
+			final ArrayList<Vector<Object>> tars, final Cognates cogn) {
+		final Path[] paths = new Path[srcs.size()];
+		final int nThreads = Math.min(paths.length, Runtime.getRuntime()
+				.availableProcessors());
+		if (nThreads <= 1) {
+			for (int i = 0; i < paths.length; i++) {
+				paths[i] = Sentences.align(srcs.get(i), tars.get(i), cogn);
+			}
+			return paths;
+		}
+		final int maxCells = (int) Math.max(1, Math.min(Integer.MAX_VALUE,
+				Runtime.getRuntime().maxMemory() / 2 / BYTES_PER_CELL));
+		final Semaphore cellsLeft = new Semaphore(maxCells, true);
+		final ArrayList<Callable<Path>> tasks = new ArrayList<Callable<Path>>();
+		for (int i = 0; i < paths.length; i++) {
+			final Vector<Object> src = srcs.get(i);
+			final Vector<Object> tar = tars.get(i);
+			// A pair larger than the limit waits to be aligned alone
+			final int cells = (int) Math.min(maxCells,
+					(src.size() + 1L) * (tar.size() + 1L));
+			tasks.add(new Callable<Path>() {
+				public Path call() throws InterruptedException {
+					cellsLeft.acquire(cells);
+					try {
+						return Sentences.align(src, tar, cogn);
+					} finally {
+						cellsLeft.release(cells);
+					}
+				}
+			});
+		}
+		final ExecutorService pool = Executors.newFixedThreadPool(nThreads,
+				new ThreadFactory() {
+					public Thread newThread(Runnable r) {
+						final Thread t = new Thread(r, "Sentence alignment");
+						t.setDaemon(true);
+						return t;
+					}
+				});
+		try {
+			final List<Future<Path>> results = pool.invokeAll(tasks);
+			for (int i = 0; i < paths.length; i++) {
+				paths[i] = results.get(i).get();
+			}
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} catch (final ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+			if (e.getCause() instanceof Error)
+				throw (Error) e.getCause();
+			throw new RuntimeException(e.getCause());
+		} finally {
+			pool.shutdown();
+		}
+		return paths;
 	}
 }
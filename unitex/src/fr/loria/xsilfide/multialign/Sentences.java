@@ -36,7 +36,6 @@ import java.util.Vector;
 
 @SuppressWarnings("unchecked")
 class Sentences {
-	private Dist srcLengths, tarLengths; // lengths of sentences of two texts
 	public static final Vector<Object> Linking = new Vector<Object>(); // links of sentences
 	// within a text
 	public static final Vector<Object> Links = new Vector<Object>(); // links of the two texts
@@ -49,39 +48,41 @@ class Sentences {
 	// as the cognates.
 	public Sentences(Vector<Object> srcPara, Vector<Object> tarPara, Cognates cogn,
 			LoadAndPrepareTexts lpt) {
-		getLengths(srcPara, tarPara); // get lengths of sentences in the src &
-										// tar
-		// System.out.println(srcPara.toString());
-		// System.out.println(tarPara.toString());
+		this(srcPara, tarPara, cogn, lpt, align(srcPara, tarPara, cogn));
+	}
+
+	// Creates the links of the given path, computed by align. Unlike align,
+	// this must be done in the order of the paragraphs.
+	Sentences(Vector<Object> srcPara, Vector<Object> tarPara, Cognates cogn,
+			LoadAndPrepareTexts lpt, Path path) {
 		xalignResults.setUriSource(cogn.getUriSource());
 		xalignResults.setUriTarget(cogn.getUriTarget());
-		final ContraintesChemin cc = cogn.cognates2Chemins(srcPara, tarPara);
-		final Path path = Align.getPath(srcLengths, tarLengths, false, cc);
-		// System.out.println(path.toString());
 		createLinks(srcPara, tarPara, path);
 		createAlignementResults(srcPara, tarPara, cogn.getUriSource(),
 				cogn.getUriTarget(), lpt, path);
 	}
 
-	void getLengths(Vector<Object> srcSentences, Vector<Object> tarSentences) {
-		final int ns = srcSentences.size();
-		final int nt = tarSentences.size();
-		srcLengths = new Dist(ns);
-		tarLengths = new Dist(nt);
-		// System.out.println(ns);
-		// System.out.println(nt);
-		for (int i = 0; i < ns; i++) {
-			srcLengths
-					.setDistAt(i,
-							(Integer) ((Vector<Object>) srcSentences.elementAt(i))
-									.elementAt(1));
-		}
-		for (int i = 0; i < nt; i++) {
-			tarLengths
-					.setDistAt(i,
-							(Integer) ((Vector<Object>) tarSentences.elementAt(i))
-									.elementAt(2));
+	// Aligns the sentences of the given paragraphs. As it only reads its
+	// arguments, it can be called for several paragraphs at once.
+	static Path align(Vector<Object> srcPara, Vector<Object> tarPara,
+			Cognates cogn) {
+		// get lengths of sentences in the src & tar
+		final Dist srcLengths = getLengths(srcPara, 1);
+		final Dist tarLengths = getLengths(tarPara, 2);
+		final ContraintesChemin cc = cogn.cognates2Chemins(srcPara, tarPara);
+		return Align.getPath(srcLengths, tarLengths, false, cc);
+	}
+
+	// the length of a sentence is at the given index of its vector
+	static Dist getLengths(Vector<Object> sentences, int index) {
+		final int n = sentences.size();
+		final Dist lengths = new Dist(n);
+		for (int i = 0; i < n; i++) {
+			lengths.setDistAt(i,
+					(Integer) ((Vector<Object>) sentences.elementAt(i))
+							.elementAt(index));
 		}
+		return lengths;
 	}
 
 	// computation of the results in the new format
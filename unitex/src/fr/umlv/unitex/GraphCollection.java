@@ -20,35 +20,101 @@
  */
 package fr.umlv.unitex;
 
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStreamWriter;
+import java.io.UnsupportedEncodingException;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.swing.JLabel;
 import javax.swing.JOptionPane;
+import javax.swing.Timer;
 
 import fr.umlv.unitex.common.project.manager.GlobalProjectManager;
+import fr.umlv.unitex.config.Config;
 import fr.umlv.unitex.config.ConfigManager;
 import fr.umlv.unitex.files.FileUtil;
-import fr.umlv.unitex.frames.InternalFrameManager;
 import fr.umlv.unitex.frames.MessageWhileWorkingFrame;
 import fr.umlv.unitex.frames.UnitexInternalFrameManager;
-import fr.umlv.unitex.io.UnicodeIO;
+import fr.umlv.unitex.io.Encoding;
 
 /**
  * This class provides methods that generate a graph that calls all the
  * subgraphs contained in a directory.
  * 
+ * Directories are scanned in parallel, and then the graphs are written in
+ * parallel. Sub-directories with the same name share the same graph, that
+ * calls the subgraphs of all of them. For each generated graph, we save in a
+ * manifest of the user directory a signature of the names, dates and sizes of
+ * the files it was built from, so that a graph is not rewritten, and its
+ * subgraphs not copied again, if nothing has changed since the last time.
+ * 
  * @author Sébastien Paumier
  */
 public class GraphCollection {
 	private volatile static boolean stop;
 
+	private static final String MANIFEST_FILE_NAME = "graph_collection.idx";
+	private static final int MANIFEST_VERSION = 1;
+
+	private static final String HEADER = "#Unigraph\n" + "SIZE 1188 840\n"
+			+ "FONT Times New Roman:  10\n" + "OFONT Times New Roman:B 12\n"
+			+ "BCOLOR 16777215\n" + "FCOLOR 0\n" + "ACOLOR 13487565\n"
+			+ "SCOLOR 16711680\n" + "CCOLOR 255\n" + "DBOXES y\n"
+			+ "DFRAME y\n" + "DDATE y\n" + "DFILE y\n" + "DDIR n\n"
+			+ "DRIG n\n" + "DRST n\n" + "FITS 100\n" + "PORIENT L\n" + "#\n"
+			+ "6\n" + "\"<E>\" 42 372 2 4 5 \n" + "\"\" 574 238 0 \n"
+			+ "\"Grammars corresponding+to sub-directories:\" 34 186 0 \n"
+			+ "\"Grammars corresponding to graphs:\" 180 348 0 \n";
+
+	/**
+	 * The counters of a graph collection build, that can be read while the
+	 * build is running.
+	 */
+	static class Progress {
+		final AtomicInteger directories = new AtomicInteger();
+		final AtomicInteger written = new AtomicInteger();
+		final AtomicInteger unchanged = new AtomicInteger();
+		final AtomicInteger copied = new AtomicInteger();
+
+		@Override
+		public String toString() {
+			return "Scanned " + directories.get() + " dir(s): "
+					+ written.get() + " graph(s) written, " + unchanged.get()
+					+ " unchanged, " + copied.get() + " subgraph(s) copied";
+		}
+	}
+
 	/**
 	 * Builds a graph that calls all subgraphs contained in a directory. If the
 	 * parameter <code>copy</code> is set to <code>true</code>, subgraphs are
 	 * copied into the destination directory. This method shows a frame that
-	 * displays the scanned directories.
+	 * displays the progress of the build.
 	 * 
 	 * @param srcDir
 	 *            the source directory
@@ -66,7 +132,20 @@ public class GraphCollection {
 						.search(null).getFrameManagerAs(UnitexInternalFrameManager.class)
 						.newMessageWhileWorkingFrame("Building graph collection");
 				setStop(false);
-				buildGraphCollection(srcDir, destGraph, copy, f.getLabel());
+				final Progress progress = new Progress();
+				final JLabel label = f.getLabel();
+				final Timer timer = new Timer(250, new ActionListener() {
+					@Override
+					public void actionPerformed(ActionEvent e) {
+						label.setText(progress.toString());
+					}
+				});
+				timer.start();
+				try {
+					buildGraphCollection(srcDir, destGraph, copy, progress);
+				} finally {
+					timer.stop();
+				}
 				GlobalProjectManager.search(null)
 						.getFrameManagerAs(UnitexInternalFrameManager.class)
 						.closeMessageWhileWorkingFrame();
@@ -87,7 +166,7 @@ public class GraphCollection {
 	 *            indicates if subgraphs must be copied or not
 	 */
 	static void buildGraphCollection(File srcDir, File destGraph, boolean copy,
-			JLabel txt) {
+			Progress progress) {
 		if (isStop()) {
 			return;
 		}
@@ -97,147 +176,462 @@ public class GraphCollection {
 					JOptionPane.ERROR_MESSAGE);
 			return;
 		}
-		if (txt != null) {
-			txt.setText("Scanning dir " + srcDir);
-		} else {
-			System.out.println("Scanning dir " + srcDir);
+		Encoding encoding = ConfigManager.getManager().getEncoding(null);
+		if (encoding == null) {
+			encoding = Encoding.UTF8;
 		}
+		final Manifest manifest = Manifest.load();
+		final ConcurrentLinkedQueue<Listing> listings = new ConcurrentLinkedQueue<Listing>();
+		ForkJoinPool.commonPool().invoke(
+				new DirectoryTask(srcDir, destGraph, listings, progress));
 		if (isStop()) {
 			return;
 		}
-		final File destinationDir = destGraph.getParentFile();
-		OutputStreamWriter writer;
-		try {
-			if (!destinationDir.exists()) {
-				destinationDir.mkdirs();
+		final ArrayList<GraphTask> tasks = createGraphTasks(listings, copy,
+				encoding, manifest, progress);
+		ForkJoinPool.commonPool().invoke(new RecursiveAction() {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected void compute() {
+				invokeAll(tasks);
 			}
-			destGraph.createNewFile();
-		} catch (final IOException e) {
-			JOptionPane.showMessageDialog(null, "Cannot create " + destGraph,
-					"Error", JOptionPane.ERROR_MESSAGE);
-			return;
+		});
+		manifest.save();
+	}
+
+	/**
+	 * What the scan found in a source directory: the names of its
+	 * sub-directories and its graphs, with a signature of them.
+	 */
+	private static class Listing {
+		final File srcDir;
+		final File destGraph;
+		final ArrayList<String> dirNames = new ArrayList<String>();
+		final ArrayList<File> graphs = new ArrayList<File>();
+		final ArrayList<BasicFileAttributes> graphAttributes = new ArrayList<BasicFileAttributes>();
+		final Signature signature = new Signature();
+
+		Listing(File srcDir, File destGraph) {
+			this.srcDir = srcDir;
+			this.destGraph = destGraph;
 		}
-		writer = ConfigManager.getManager().getEncoding(null)
-				.getOutputStreamWriter(destGraph);
-		UnicodeIO.writeString(writer, "#Unigraph\n");
-		UnicodeIO.writeString(writer, "SIZE 1188 840\n");
-		UnicodeIO.writeString(writer, "FONT Times New Roman:  10\n");
-		UnicodeIO.writeString(writer, "OFONT Times New Roman:B 12\n");
-		UnicodeIO.writeString(writer, "BCOLOR 16777215\n");
-		UnicodeIO.writeString(writer, "FCOLOR 0\n");
-		UnicodeIO.writeString(writer, "ACOLOR 13487565\n");
-		UnicodeIO.writeString(writer, "SCOLOR 16711680\n");
-		UnicodeIO.writeString(writer, "CCOLOR 255\n");
-		UnicodeIO.writeString(writer, "DBOXES y\n");
-		UnicodeIO.writeString(writer, "DFRAME y\n");
-		UnicodeIO.writeString(writer, "DDATE y\n");
-		UnicodeIO.writeString(writer, "DFILE y\n");
-		UnicodeIO.writeString(writer, "DDIR n\n");
-		UnicodeIO.writeString(writer, "DRIG n\n");
-		UnicodeIO.writeString(writer, "DRST n\n");
-		UnicodeIO.writeString(writer, "FITS 100\n");
-		UnicodeIO.writeString(writer, "PORIENT L\n");
-		UnicodeIO.writeString(writer, "#\n");
-		UnicodeIO.writeString(writer, "6\n");
-		UnicodeIO.writeString(writer, "\"<E>\" 42 372 2 4 5 \n");
-		UnicodeIO.writeString(writer, "\"\" 574 238 0 \n");
-		UnicodeIO.writeString(writer,
-				"\"Grammars corresponding+to sub-directories:\" 34 186 0 \n");
-		UnicodeIO.writeString(writer,
-				"\"Grammars corresponding to graphs:\" 180 348 0 \n");
-		if (isStop()) {
-			try {
-				writer.close();
-			} catch (final IOException e) {
-				e.printStackTrace();
-			}
-			return;
+	}
+
+	/**
+	 * This task scans a directory, and then its sub-directories in parallel.
+	 * Nothing is written during the scan, since sub-directories with the same
+	 * name share the same graph.
+	 */
+	private static class DirectoryTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final File srcDir;
+		private final File destGraph;
+		private final Queue<Listing> listings;
+		private final Progress progress;
+
+		DirectoryTask(File srcDir, File destGraph, Queue<Listing> listings,
+				Progress progress) {
+			this.srcDir = srcDir;
+			this.destGraph = destGraph;
+			this.listings = listings;
+			this.progress = progress;
 		}
-		// we construct the file & dir list
-		final File files_list[] = srcDir.listFiles();
-		// and we parse directories
-		String graphLine = "\"";
-		for (final File aFiles_list1 : files_list) {
-			final String fileName = aFiles_list1.getName();
+
+		@SuppressWarnings("synthetic-access")
+		@Override
+		protected void compute() {
 			if (isStop()) {
+				return;
+			}
+			progress.directories.incrementAndGet();
+			// we construct the file & dir list
+			final File files_list[] = srcDir.listFiles();
+			if (files_list == null) {
+				return;
+			}
+			final File destinationDir = destGraph.getParentFile();
+			final ArrayList<DirectoryTask> subTasks = new ArrayList<DirectoryTask>();
+			final Listing listing = new Listing(srcDir, destGraph);
+			for (final File f : files_list) {
+				final String fileName = f.getName();
+				BasicFileAttributes attributes;
 				try {
-					writer.close();
+					/* One call instead of isDirectory, lastModified and length */
+					attributes = Files.readAttributes(f.toPath(),
+							BasicFileAttributes.class);
 				} catch (final IOException e) {
-					e.printStackTrace();
+					continue;
 				}
-				return;
+				if (attributes.isDirectory()) {
+					final String name = FileUtil
+							.getFileNameWithoutExtension(fileName) + "_dir";
+					listing.dirNames.add(name);
+					subTasks.add(new DirectoryTask(f, new File(destinationDir,
+							name + ".grf"), listings, progress));
+					listing.signature.add("d" + fileName);
+				} else if (FileUtil.getExtensionInLowerCase(fileName)
+						.compareTo("grf") == 0) {
+					listing.graphs.add(f);
+					listing.graphAttributes.add(attributes);
+					listing.signature.add("g" + fileName);
+					listing.signature.add(attributes.lastModifiedTime()
+							.toMillis());
+					listing.signature.add(attributes.size());
+				}
+			}
+			listings.add(listing);
+			invokeAll(subTasks);
+		}
+	}
+
+	/**
+	 * Groups the listings by graph. They are sorted by source directory, so
+	 * that a graph shared by several directories merges them in an order that
+	 * does not depend on the scan. Each subgraph to copy is given to the first
+	 * listing that contains a graph with its name, so that no two tasks write
+	 * the same file.
+	 */
+	private static ArrayList<GraphTask> createGraphTasks(Collection<Listing> listings,
+			boolean copy, Encoding encoding, Manifest manifest,
+			Progress progress) {
+		final ArrayList<Listing> sorted = new ArrayList<Listing>(listings);
+		Collections.sort(sorted, new Comparator<Listing>() {
+			@Override
+			public int compare(Listing a, Listing b) {
+				return a.srcDir.getPath().compareTo(b.srcDir.getPath());
 			}
-			if (aFiles_list1.isDirectory()) {
-				if (0 == graphLine.compareTo("\"")) {
-					// if this directory is the first of the list
-					graphLine = graphLine + ":"
-							+ FileUtil.getFileNameWithoutExtension(fileName)
-							+ "_dir";
-				} else {
-					graphLine = graphLine + "+:"
-							+ FileUtil.getFileNameWithoutExtension(fileName)
-							+ "_dir";
-				}
-				buildGraphCollection(aFiles_list1, new File(destinationDir,
-						FileUtil.getFileNameWithoutExtension(fileName)
-								+ "_dir.grf"), copy, txt);
-			}
-		}
-		if (0 == graphLine.compareTo("\"")) {
-			// if there was no line in the box
-			graphLine = graphLine + "<E>\" 125 238 0 \n";
-		} else {
-			graphLine = graphLine + "\" 125 238 1 1 \n";
-		}
-		UnicodeIO.writeString(writer, graphLine);
-		// then, we parse graphs
-		graphLine = "\"";
-		for (final File aFiles_list : files_list) {
-			final String fileName = aFiles_list.getName();
+		});
+		final HashSet<String> copyNames = new HashSet<String>();
+		final LinkedHashMap<File, GraphTask> tasks = new LinkedHashMap<File, GraphTask>();
+		for (final Listing listing : sorted) {
+			GraphTask task = tasks.get(listing.destGraph);
+			if (task == null) {
+				task = new GraphTask(listing.destGraph, copy, encoding,
+						manifest, progress);
+				tasks.put(listing.destGraph, task);
+			}
+			task.add(listing, copyNames);
+		}
+		return new ArrayList<GraphTask>(tasks.values());
+	}
+
+	/**
+	 * This task writes a graph from the merged listings of the directories
+	 * that share it, and copies the subgraphs it has been given.
+	 */
+	private static class GraphTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final File destGraph;
+		private final boolean copy;
+		private final Encoding encoding;
+		private final Manifest manifest;
+		private final Progress progress;
+		private final LinkedHashSet<String> dirNames = new LinkedHashSet<String>();
+		private final LinkedHashSet<String> graphNames = new LinkedHashSet<String>();
+		private final ArrayList<File> graphs = new ArrayList<File>();
+		private final ArrayList<BasicFileAttributes> graphAttributes = new ArrayList<BasicFileAttributes>();
+		private final Signature signature = new Signature();
+
+		GraphTask(File destGraph, boolean copy, Encoding encoding,
+				Manifest manifest, Progress progress) {
+			this.destGraph = destGraph;
+			this.copy = copy;
+			this.encoding = encoding;
+			this.manifest = manifest;
+			this.progress = progress;
+			signature.add(copy ? "copy" : "no copy");
+			signature.add(encoding.toString());
+		}
+
+		void add(Listing listing, Set<String> copyNames) {
+			dirNames.addAll(listing.dirNames);
+			signature.add(listing.srcDir.getPath());
+			signature.add(listing.signature.get());
+			for (int i = 0; i < listing.graphs.size(); i++) {
+				final File f = listing.graphs.get(i);
+				graphNames.add(FileUtil.getFileNameWithoutExtension(f
+						.getName()));
+				if (copyNames.add(f.getName())) {
+					graphs.add(f);
+					graphAttributes.add(listing.graphAttributes.get(i));
+					/* The graph to copy depends on the other directories */
+					signature.add("c" + f.getName());
+				}
+			}
+		}
+
+		@SuppressWarnings("synthetic-access")
+		@Override
+		protected void compute() {
 			if (isStop()) {
-				try {
-					writer.close();
-				} catch (final IOException e) {
-					e.printStackTrace();
+				return;
+			}
+			final File destinationDir = destGraph.getParentFile();
+			if (manifest.isUpToDate(destGraph, signature.get())
+					&& (!copy || copiesExist(graphs, destinationDir))) {
+				progress.unchanged.incrementAndGet();
+				return;
+			}
+			if (!write(destinationDir)) {
+				return;
+			}
+			if (copy) {
+				for (int i = 0; i < graphs.size() && !isStop(); i++) {
+					copyIfNeeded(graphs.get(i), graphAttributes.get(i),
+							destinationDir);
 				}
+			}
+			if (isStop()) {
+				return;
+			}
+			manifest.put(destGraph, signature.get());
+		}
+
+		private static void appendLine(StringBuilder content,
+				Set<String> names, String position) {
+			if (names.isEmpty()) {
+				// if there was no line in the box
+				content.append("\"<E>\" ").append(position).append(" 0 \n");
 				return;
 			}
-			if (!aFiles_list.isDirectory()
-					&& FileUtil.getExtensionInLowerCase(fileName).compareTo(
-							"grf") == 0) {
-				if (0 == graphLine.compareTo("\"")) {
-					// if this directory is the first of the list
-					graphLine = graphLine + ":"
-							+ FileUtil.getFileNameWithoutExtension(fileName);
-				} else {
-					graphLine = graphLine + "+:"
-							+ FileUtil.getFileNameWithoutExtension(fileName);
+			content.append('"');
+			String separator = ":";
+			for (final String name : names) {
+				content.append(separator).append(name);
+				separator = "+:";
+			}
+			content.append("\" ").append(position).append(" 1 1 \n");
+		}
+
+		/**
+		 * Writes the graph, unless the file already has the right content.
+		 */
+		@SuppressWarnings("synthetic-access")
+		private boolean write(File destinationDir) {
+			final StringBuilder content = new StringBuilder(HEADER);
+			appendLine(content, dirNames, "125 238");
+			appendLine(content, graphNames, "416 372");
+			final boolean utf16 = (encoding == Encoding.UTF16LE || encoding == Encoding.UTF16BE);
+			byte[] bytes;
+			try {
+				bytes = ((utf16 ? "\uFEFF" : "") + content.toString().replace(
+						"\n", "\r\n")).getBytes(encoding.getCharset());
+			} catch (final UnsupportedEncodingException e) {
+				e.printStackTrace();
+				return false;
+			}
+			try {
+				if (destGraph.length() == bytes.length
+						&& Arrays.equals(bytes,
+								Files.readAllBytes(destGraph.toPath()))) {
+					/* No need to touch the file */
+					progress.unchanged.incrementAndGet();
+					return true;
+				}
+			} catch (final IOException e) {
+				/* We just write the file */
+			}
+			try {
+				if (!destinationDir.exists()) {
+					destinationDir.mkdirs();
 				}
-				if (copy) {
-					FileUtil.copyFile(aFiles_list, new File(destinationDir,
-							fileName));
+				final BufferedOutputStream out = new BufferedOutputStream(
+						new FileOutputStream(destGraph));
+				try {
+					out.write(bytes);
+				} finally {
+					out.close();
 				}
+			} catch (final IOException e) {
+				JOptionPane.showMessageDialog(null, "Cannot create "
+						+ destGraph, "Error", JOptionPane.ERROR_MESSAGE);
+				return false;
 			}
+			progress.written.incrementAndGet();
+			return true;
 		}
-		if (0 == graphLine.compareTo("\"")) {
-			// if there was no line in the box
-			graphLine = graphLine + "<E>\" 416 372 0 \n";
-		} else {
-			graphLine = graphLine + "\" 416 372 1 1 \n";
+
+		private static boolean copiesExist(ArrayList<File> graphs,
+				File destinationDir) {
+			for (final File f : graphs) {
+				if (!new File(destinationDir, f.getName()).exists()) {
+					return false;
+				}
+			}
+			return true;
 		}
-		UnicodeIO.writeString(writer, graphLine);
-		if (isStop()) {
+
+		/**
+		 * Copies a graph, unless the copy has the same size and is more recent
+		 * than it.
+		 */
+		private void copyIfNeeded(File f, BasicFileAttributes attributes,
+				File destinationDir) {
+			final File dest = new File(destinationDir, f.getName());
+			if (dest.equals(f)) {
+				return;
+			}
+			if (dest.length() == attributes.size()
+					&& dest.lastModified() >= attributes.lastModifiedTime()
+							.toMillis()) {
+				return;
+			}
+			FileUtil.copyFile(f, dest);
+			progress.copied.incrementAndGet();
+		}
+	}
+
+	/**
+	 * A 64 bits FNV-1a hash of the inputs of a graph.
+	 */
+	private static class Signature {
+		private long hash = 0xcbf29ce484222325L;
+
+		void add(String s) {
+			for (int i = 0; i < s.length(); i++) {
+				add16(s.charAt(i));
+			}
+			/* A separator, so that "ab"+"c" is not "a"+"bc" */
+			add16(0xFFFF);
+		}
+
+		void add(long n) {
+			for (int i = 0; i < 4; i++) {
+				add16((int) (n >>> (16 * i)));
+			}
+		}
+
+		private void add16(int c) {
+			hash = (hash ^ (c & 0xFF)) * 0x100000001b3L;
+			hash = (hash ^ ((c >> 8) & 0xFF)) * 0x100000001b3L;
+		}
+
+		long get() {
+			return hash;
+		}
+	}
+
+	/**
+	 * The signature of the inputs of each generated graph, with the size and
+	 * the date of the graph, so that a graph modified by hand is rewritten.
+	 */
+	private static class Manifest {
+		private static class Build {
+			final long signature;
+			final long lastModified;
+			final long length;
+
+			Build(long signature, long lastModified, long length) {
+				this.signature = signature;
+				this.lastModified = lastModified;
+				this.length = length;
+			}
+		}
+
+		private final ConcurrentHashMap<String, Build> builds = new ConcurrentHashMap<String, Build>();
+		private volatile boolean changed = false;
+
+		boolean isUpToDate(File graph, long signature) {
+			final Build build = builds.get(graph.getAbsolutePath());
+			return build != null && build.signature == signature
+					&& build.lastModified == graph.lastModified()
+					&& build.length == graph.length();
+		}
+
+		void put(File graph, long signature) {
+			builds.put(graph.getAbsolutePath(), new Build(signature, graph
+					.lastModified(), graph.length()));
+			changed = true;
+		}
+
+		private static File getFile() {
+			final File dir = Config.getUserDir();
+			return (dir == null) ? null : new File(dir, MANIFEST_FILE_NAME);
+		}
+
+		static Manifest load() {
+			final Manifest manifest = new Manifest();
+			final File file = getFile();
+			if (file == null || !file.exists()) {
+				return manifest;
+			}
+			DataInputStream in = null;
 			try {
-				writer.close();
+				in = new DataInputStream(new BufferedInputStream(
+						new FileInputStream(file)));
+				if (in.readInt() != MANIFEST_VERSION) {
+					return manifest;
+				}
+				final int n = in.readInt();
+				for (int i = 0; i < n; i++) {
+					final String graph = in.readUTF();
+					final long signature = in.readLong();
+					final long lastModified = in.readLong();
+					final long length = in.readLong();
+					manifest.builds.put(graph, new Build(signature,
+							lastModified, length));
+				}
 			} catch (final IOException e) {
-				e.printStackTrace();
+				/* A corrupted manifest is just ignored, graphs will be rebuilt */
+				manifest.builds.clear();
+			} finally {
+				if (in != null) {
+					try {
+						in.close();
+					} catch (final IOException e) {
+						/* */
+					}
+				}
 			}
-			return;
+			return manifest;
 		}
-		try {
-			writer.close();
-		} catch (final IOException e) {
-			e.printStackTrace();
+
+		void save() {
+			final File file = getFile();
+			if (file == null || !changed) {
+				return;
+			}
+			/* We forget the graphs that do not exist anymore */
+			final Iterator<String> it = builds.keySet().iterator();
+			while (it.hasNext()) {
+				if (!new File(it.next()).exists()) {
+					it.remove();
+				}
+			}
+			final File tmp = new File(file.getPath() + ".tmp");
+			DataOutputStream out = null;
+			try {
+				out = new DataOutputStream(new BufferedOutputStream(
+						new FileOutputStream(tmp)));
+				out.writeInt(MANIFEST_VERSION);
+				out.writeInt(builds.size());
+				for (final Map.Entry<String, Build> e : builds.entrySet()) {
+					out.writeUTF(e.getKey());
+					out.writeLong(e.getValue().signature);
+					out.writeLong(e.getValue().lastModified);
+					out.writeLong(e.getValue().length);
+				}
+				out.close();
+				out = null;
+				if (file.exists() && !file.delete()) {
+					tmp.delete();
+					return;
+				}
+				tmp.renameTo(file);
+			} catch (final IOException e) {
+				/* The manifest is only a cache, we can live without it */
+				tmp.delete();
+			} finally {
+				if (out != null) {
+					try {
+						out.close();
+					} catch (final IOException e) {
+						/* */
+					}
+					tmp.delete();
+				}
+			}
 		}
 	}
 
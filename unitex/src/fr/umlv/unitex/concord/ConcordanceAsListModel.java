@@ -26,14 +26,13 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.lang.ref.PhantomReference;
 import java.lang.ref.ReferenceQueue;
-import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
-import java.util.Arrays;
 
 import javax.swing.AbstractListModel;
 import javax.swing.SwingWorker;
 
+import fr.umlv.unitex.io.MappedFile;
 import fr.umlv.unitex.text.Interval;
 
 /**
@@ -49,24 +48,26 @@ public class ConcordanceAsListModel extends AbstractListModel {
 	 * lines, then there are the real concordance lines, then there are
 	 * HTML_END_LINES that close open HTML tags.
 	 */
+	private static final int BLOCK_SIZE = 1 << 24;
 	int HTML_START_LINES = 7;
 	private int HTML_END_LINES = 2;
 	private int HTML_CONTROL_LINES = HTML_START_LINES + HTML_END_LINES;
-	MappedByteBuffer buffer;
-	private int dataLength;
+	MappedFile buffer;
+	private long dataLength;
 	private SwingWorker<Void, Integer> worker;
 	Interval selection;
 	private FileChannel channel;
 	private FileInputStream stream;
 	private File file;
 	static final Charset utf8 = Charset.forName("UTF-8");
-	private int[] endOfLines;
+	private ConcordanceLineIndex endOfLines;
 	private int numberOfEOL;
 
 	public void load(File f) {
 		this.file = f;
-		setDataLength((int) file.length());
-		endOfLines = new int[0];
+		setDataLength(file.length());
+		final long lastModified = file.lastModified();
+		endOfLines = new ConcordanceLineIndex();
 		numberOfEOL = 0;
 		try {
 			stream = new FileInputStream(file);
@@ -76,77 +77,59 @@ public class ConcordanceAsListModel extends AbstractListModel {
 		}
 		channel = stream.getChannel();
 		try {
-			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0,
-					getDataLength());
+			buffer = new MappedFile(channel);
 		} catch (final IOException e) {
 			e.printStackTrace();
 			return;
 		}
 		worker = new SwingWorker<Void, Integer>() {
+			@SuppressWarnings("synthetic-access")
 			@Override
 			protected Void doInBackground() throws Exception {
-				int lastStart = 0;
-				for (int pos = 0; pos < getDataLength(); pos = pos + 1) {
-					final int a = 0xFF & buffer.get(pos);
-					if (a == '\n') {
-						// if we have an end-of-line
-						publish(pos);
-						setProgress(100 * pos / getDataLength());
-						lastStart = pos + 1;
-					}
-				}
-				if (lastStart < (getDataLength() - 1)) {
-					publish(getDataLength() - 1);
+				final MappedFile mapped = buffer;
+				final ConcordanceLineIndex saved = ConcordanceLineIndex
+						.load(file, mapped);
+				if (saved != null && !isCancelled()) {
+					endOfLines = saved;
+					publish(saved.size());
 					setProgress(100);
+					return null;
+				}
+				final ConcordanceLineIndex index = endOfLines;
+				final long length = getDataLength();
+				for (long pos = 0; pos < length && !isCancelled(); pos += BLOCK_SIZE) {
+					index.scan(mapped, pos, Math.min(length, pos + BLOCK_SIZE));
+					publish(index.size());
+					setProgress((int) (100 * Math.min(length, pos + BLOCK_SIZE) / length));
+				}
+				if (isCancelled()) {
+					return null;
 				}
-				/*
-				 * We publish a negative position in order to inform the
-				 * progress method that there are no more ends of line.
-				 */
-				publish(-1);
+				final long lastStart = (index.size() == 0) ? 0 : (index
+						.getEndOfLines()[index.size() - 1] + 1);
+				if (lastStart < (length - 1)) {
+					index.add(length - 1);
+					publish(index.size());
+				}
+				setProgress(100);
+				index.save(file, length, lastModified,
+						ConcordanceLineIndex.checksum(mapped));
 				return null;
 			}
 
 			@SuppressWarnings("synthetic-access")
 			@Override
 			protected void process(java.util.List<Integer> chunks) {
-				final int oldSize = numberOfEOL;
-				int newSize = oldSize + chunks.size();
-				int multiplier = 1;
-				/*
-				 * We check if it is necessary to enlarge the EOL array
-				 */
-				if (endOfLines.length == 0) {
-					endOfLines = new int[1];
-				}
-				while (multiplier * endOfLines.length < newSize) {
-					multiplier = 2 * multiplier;
-				}
-				int[] temp = endOfLines;
-				if (multiplier != 1) {
-					temp = Arrays.copyOf(endOfLines, multiplier
-							* endOfLines.length);
+				if (worker != this) {
+					/* This worker has been replaced by another one */
+					return;
 				}
-				int insertPos = oldSize;
-				for (final Integer i : chunks) {
-					if (i < 0) {
-						/*
-						 * We assume that a negative position means the end of
-						 * the new lines, and, so, we resize the array.
-						 */
-						temp = Arrays.copyOf(temp, insertPos);
-						newSize = insertPos;
-						break;
-					}
-					temp[insertPos++] = i;
+				final int oldSize = numberOfEOL;
+				final int newSize = chunks.get(chunks.size() - 1);
+				if (newSize > oldSize) {
+					numberOfEOL = newSize;
+					fireIntervalAdded(this, oldSize, newSize - 1);
 				}
-				/*
-				 * If we keep the following instructions in this order, there is
-				 * no need to synchronize
-				 */
-				endOfLines = temp;
-				numberOfEOL = newSize;
-				fireIntervalAdded(this, oldSize, newSize - 1);
 			}
 		};
 		worker.execute();
@@ -180,17 +163,23 @@ public class ConcordanceAsListModel extends AbstractListModel {
 		// <tr><td nowrap>
 		final long end = interval.getEndInBytes() - 12; // nor the
 		// </td></tr>\r\n
+		return new String(getBytes(start, end), utf8);
+	}
+
+	/**
+	 * Returns the bytes of the file between the given positions, both
+	 * included.
+	 */
+	byte[] getBytes(long start, long end) {
 		final byte[] tmp = new byte[(int) (end - start + 1)];
-		int z = 0;
-		for (long pos = start; pos <= end; pos++) {
-			tmp[z++] = buffer.get((int) pos);
-		}
-		return new String(tmp, utf8);
+		buffer.get(start, tmp);
+		return tmp;
 	}
 
 	Interval getInterval(int i) {
-		final int end = endOfLines[i];
-		final int start = (i == 0) ? 0 : (endOfLines[i - 1] + 1);
+		final long[] eols = endOfLines.getEndOfLines();
+		final long end = eols[i];
+		final long start = (i == 0) ? 0 : (eols[i - 1] + 1);
 		return new Interval(start, end, -1, -1);
 	}
 
@@ -212,9 +201,14 @@ public class ConcordanceAsListModel extends AbstractListModel {
 
 	
 	public void reset() {
+		if (worker != null) {
+			worker.cancel(true);
+			worker = null;
+		}
 		if (buffer != null) {
-			ReferenceQueue<MappedByteBuffer> queue=new ReferenceQueue<MappedByteBuffer>();
-			new PhantomReference<MappedByteBuffer>(buffer,queue);
+			ReferenceQueue<MappedFile> queue=new ReferenceQueue<MappedFile>();
+			new PhantomReference<MappedFile>(buffer,queue);
+			buffer.release();
 			buffer = null;
 			while (queue.poll()!=null) {
 				System.gc();
@@ -245,11 +239,11 @@ public class ConcordanceAsListModel extends AbstractListModel {
 		System.gc();
 	}
 
-	public void setDataLength(int dataLength) {
+	public void setDataLength(long dataLength) {
 		this.dataLength = dataLength;
 	}
 
-	public int getDataLength() {
+	public long getDataLength() {
 		return dataLength;
 	}
 }
@@ -0,0 +1,244 @@
+/*
+ * Unitex
+ *
+ * Copyright (C) 2001-2021 Université Paris-Est Marne-la-Vallée <unitex@univ-mlv.fr>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA.
+ *
+ */
+package fr.umlv.unitex.concord;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+import fr.umlv.unitex.io.MappedFile;
+
+/**
+ * This class finds the ends of lines of an HTML concordance file, and saves
+ * them in a <code>.idx</code> file next to it, so that opening the same
+ * concordance again does not require to scan it. The index file starts with a
+ * header containing the length, the modification date and a checksum of the
+ * first and last bytes of the concordance it was built from, so that an
+ * outdated index is not used, even if the concordance was rewritten with the
+ * same length within the resolution of the file system dates.
+ */
+class ConcordanceLineIndex {
+	private static final int INDEX_MAGIC = 0x55494458; /* UIDX */
+	private static final int INDEX_VERSION = 2;
+	private static final int HEADER_SIZE = 4 + 4 + 8 + 8 + 8 + 8;
+	private static final int BLOCK_SIZE = 1 << 20;
+	/* Number of bytes of each end of the concordance in the checksum */
+	private static final int CHECKSUM_SIZE = 1 << 16;
+
+	private static final long NEW_LINES = 0x0A0A0A0A0A0A0A0AL;
+	private static final long LOW_BITS = 0x0101010101010101L;
+	private static final long HIGH_BITS = 0x8080808080808080L;
+
+	/* Volatile, since it is read by the event dispatch thread while it grows */
+	private volatile long[] endOfLines = new long[1024];
+	private int size;
+
+	static File getIndexFile(File concordance) {
+		return new File(concordance.getPath() + ".idx");
+	}
+
+	long[] getEndOfLines() {
+		return endOfLines;
+	}
+
+	int size() {
+		return size;
+	}
+
+	void add(long pos) {
+		if (size == endOfLines.length) {
+			endOfLines = Arrays.copyOf(endOfLines, Math.max(1024, 2 * size));
+		}
+		endOfLines[size++] = pos;
+	}
+
+	/**
+	 * Adds the positions of the new lines found in [from;to[. The bytes are
+	 * tested 8 at a time, and only words that contain a new line are looked at
+	 * byte by byte.
+	 */
+	void scan(MappedFile file, long from, long to) {
+		final int n = (int) (from >> MappedFile.SEGMENT_SHIFT);
+		final ByteBuffer segment = file.getSegment(n);
+		final long base = n * MappedFile.SEGMENT_SIZE;
+		int pos = (int) (from - base);
+		final int end = (int) (Math.min(to, base + segment.limit()) - base);
+		for (; pos + 8 <= end; pos += 8) {
+			final long x = segment.getLong(pos) ^ NEW_LINES;
+			if (((x - LOW_BITS) & ~x & HIGH_BITS) != 0) {
+				for (int i = pos; i < pos + 8; i++) {
+					if (segment.get(i) == '\n') {
+						add(base + i);
+					}
+				}
+			}
+		}
+		for (; pos < end; pos++) {
+			if (segment.get(pos) == '\n') {
+				add(base + pos);
+			}
+		}
+	}
+
+	/**
+	 * Returns a checksum of the first and last <code>CHECKSUM_SIZE</code>
+	 * bytes of the given file.
+	 */
+	static long checksum(MappedFile file) {
+		final CRC32 crc = new CRC32();
+		final long length = file.length();
+		final byte[] head = new byte[(int) Math.min(length, CHECKSUM_SIZE)];
+		file.get(0, head);
+		crc.update(head);
+		final long tailStart = Math.max(head.length, length - CHECKSUM_SIZE);
+		final byte[] tail = new byte[(int) (length - tailStart)];
+		file.get(tailStart, tail);
+		crc.update(tail);
+		return crc.getValue();
+	}
+
+	/**
+	 * Loads the index of the given concordance, that is mapped in the given
+	 * file, or returns null if there is none or if it does not match the
+	 * concordance anymore.
+	 */
+	static ConcordanceLineIndex load(File concordance, MappedFile mapped) {
+		final File indexFile = getIndexFile(concordance);
+		if (!indexFile.exists()) {
+			return null;
+		}
+		FileInputStream stream = null;
+		try {
+			stream = new FileInputStream(indexFile);
+			final FileChannel channel = stream.getChannel();
+			final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+			while (header.hasRemaining() && channel.read(header) != -1) {
+				/* We read the whole header */
+			}
+			header.flip();
+			if (header.remaining() != HEADER_SIZE
+					|| header.getInt() != INDEX_MAGIC
+					|| header.getInt() != INDEX_VERSION
+					|| header.getLong() != concordance.length()
+					|| header.getLong() != concordance.lastModified()
+					|| header.getLong() != checksum(mapped)) {
+				return null;
+			}
+			final long n = header.getLong();
+			if (n < 0 || n > Integer.MAX_VALUE - 8
+					|| channel.size() != HEADER_SIZE + 8 * n) {
+				return null;
+			}
+			final ConcordanceLineIndex index = new ConcordanceLineIndex();
+			index.endOfLines = new long[(int) n];
+			index.size = (int) n;
+			final ByteBuffer block = ByteBuffer.allocateDirect(BLOCK_SIZE);
+			int done = 0;
+			while (done < n) {
+				block.clear();
+				block.limit((int) Math.min(BLOCK_SIZE, 8 * (n - done)));
+				while (block.hasRemaining()) {
+					if (channel.read(block) == -1) {
+						return null;
+					}
+				}
+				block.flip();
+				final LongBuffer longs = block.asLongBuffer();
+				final int k = longs.remaining();
+				longs.get(index.endOfLines, done, k);
+				done += k;
+			}
+			return index;
+		} catch (final IOException e) {
+			/* A corrupted index is just ignored, it will be rebuilt */
+			return null;
+		} finally {
+			if (stream != null) {
+				try {
+					stream.close();
+				} catch (final IOException e) {
+					/* */
+				}
+			}
+		}
+	}
+
+	/**
+	 * Saves this index for the given concordance, whose length, modification
+	 * date and checksum are the ones it had when it was scanned.
+	 */
+	void save(File concordance, long length, long lastModified, long checksum) {
+		final File indexFile = getIndexFile(concordance);
+		final File tmp = new File(indexFile.getPath() + ".tmp");
+		FileOutputStream stream = null;
+		try {
+			stream = new FileOutputStream(tmp);
+			final FileChannel channel = stream.getChannel();
+			final ByteBuffer block = ByteBuffer.allocateDirect(BLOCK_SIZE);
+			block.putInt(INDEX_MAGIC);
+			block.putInt(INDEX_VERSION);
+			block.putLong(length);
+			block.putLong(lastModified);
+			block.putLong(checksum);
+			block.putLong(size);
+			int done = 0;
+			while (true) {
+				final int k = Math.min(size - done, block.remaining() / 8);
+				block.asLongBuffer().put(endOfLines, done, k);
+				block.position(block.position() + 8 * k);
+				done += k;
+				block.flip();
+				while (block.hasRemaining()) {
+					channel.write(block);
+				}
+				if (done == size) {
+					break;
+				}
+				block.clear();
+			}
+			stream.close();
+			stream = null;
+			if (indexFile.exists() && !indexFile.delete()) {
+				tmp.delete();
+				return;
+			}
+			tmp.renameTo(indexFile);
+		} catch (final IOException e) {
+			/* The index is only a cache, we can live without it */
+			tmp.delete();
+		} finally {
+			if (stream != null) {
+				try {
+					stream.close();
+				} catch (final IOException e) {
+					/* */
+				}
+				tmp.delete();
+			}
+		}
+	}
+}
@@ -102,8 +102,8 @@ public class Preferences {
 	private boolean matchWordBoundaries = true;
 	
 	/**
-	 * Maximum size in bytes of text files. If a file is bigger than this limit,
-	 * it won't be loaded.
+	 * Maximum size in bytes of text files that are loaded in memory. Bigger
+	 * files are mapped and edited through a <code>LargeTextDocument</code>.
 	 */
 	public static final int MAX_TEXT_FILE_SIZE = 2 * 1024 * 1024;
 	public static String ICON_BAR_WEST = BorderLayout.WEST;
@@ -20,6 +20,8 @@
  */
 package fr.umlv.unitex.console;
 
+import java.util.concurrent.CountDownLatch;
+
 public class ConsoleEntry {
 	private final String content;
 	private String error;
@@ -89,6 +91,11 @@ public class ConsoleEntry {
 	private boolean normalStreamEnded = false;
 
 	private final Object lock = new Object();
+	/*
+	 * Counted down once by each of the stdout and stderr reading threads, so
+	 * that the executor can block until both streams have been drained
+	 */
+	private final CountDownLatch streamsEnded = new CountDownLatch(2);
 
 	public boolean isErrorStreamEnded() {
 		synchronized (lock) {
@@ -98,6 +105,9 @@ public class ConsoleEntry {
 
 	public void setErrorStreamEnded(boolean errorStreamEnded) {
 		synchronized (lock) {
+			if (errorStreamEnded && !this.errorStreamEnded) {
+				streamsEnded.countDown();
+			}
 			this.errorStreamEnded = errorStreamEnded;
 		}
 	}
@@ -110,8 +120,19 @@ public class ConsoleEntry {
 
 	public void setNormalStreamEnded(boolean normalStreamEnded) {
 		synchronized (lock) {
+			if (normalStreamEnded && !this.normalStreamEnded) {
+				streamsEnded.countDown();
+			}
 			this.normalStreamEnded = normalStreamEnded;
 		}
 	}
 
+	/**
+	 * Blocks until both the normal and the error streams of the command have
+	 * been marked as ended.
+	 */
+	public void awaitStreamsEnded() throws InterruptedException {
+		streamsEnded.await();
+	}
+
 }
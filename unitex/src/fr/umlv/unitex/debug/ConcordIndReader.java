@@ -0,0 +1,120 @@
+/*
+ * Unitex
+ *
+ * Copyright (C) 2001-2021 Université Paris-Est Marne-la-Vallée <unitex@univ-mlv.fr>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA.
+ *
+ */
+package fr.umlv.unitex.debug;
+
+import fr.umlv.unitex.io.Encoding;
+import fr.umlv.unitex.io.MappedFile;
+
+/**
+ * This class decodes the chars of a mapped concord.ind file from a given byte
+ * position. Several readers can work on the same mapped file from different
+ * threads, since they only use absolute reads.
+ */
+class ConcordIndReader {
+	private final MappedFile file;
+	private final Encoding encoding;
+	private final long length;
+	private long pos;
+
+	ConcordIndReader(MappedFile file, Encoding encoding, long pos) {
+		this.file = file;
+		this.encoding = encoding;
+		this.length = file.length();
+		this.pos = pos;
+	}
+
+	long getPosition() {
+		return pos;
+	}
+
+	/**
+	 * Returns the next char, or -1 at the end of the file.
+	 */
+	int read() {
+		if (encoding == Encoding.UTF16LE || encoding == Encoding.UTF16BE) {
+			if (pos + 1 >= length) {
+				pos = length;
+				return -1;
+			}
+			final int a = 0xFF & file.get(pos);
+			final int b = 0xFF & file.get(pos + 1);
+			pos += 2;
+			return (encoding == Encoding.UTF16LE) ? (b << 8 | a) : (a << 8 | b);
+		}
+		if (pos >= length) {
+			return -1;
+		}
+		int c = 0xFF & file.get(pos++);
+		if (c <= 0x7F) {
+			return c;
+		}
+		int n;
+		int value;
+		if ((c & 0xE0) == 0xC0) {
+			value = c & 31;
+			n = 1;
+		} else if ((c & 0xF0) == 0xE0) {
+			value = c & 15;
+			n = 2;
+		} else if ((c & 0xF8) == 0xF0) {
+			value = c & 7;
+			n = 3;
+		} else {
+			return '?';
+		}
+		for (int i = 0; i < n; i++) {
+			if (pos >= length) {
+				return '?';
+			}
+			c = 0xFF & file.get(pos);
+			if ((c & 0xC0) != 0x80) {
+				return '?';
+			}
+			pos++;
+			value = (value << 6) | (c & 0x3F);
+		}
+		return (char) value;
+	}
+
+	/**
+	 * Reads the rest of the current line, without its end of line.
+	 */
+	String readLine() {
+		final StringBuilder b = new StringBuilder();
+		int c;
+		while ((c = read()) != -1 && c != '\n') {
+			if (c != '\r') {
+				b.append((char) c);
+			}
+		}
+		return b.toString();
+	}
+
+	/**
+	 * Goes to the start of the next line.
+	 */
+	void skipLine() {
+		int c;
+		while ((c = read()) != -1 && c != '\n') {
+			/* We just skip chars */
+		}
+	}
+}
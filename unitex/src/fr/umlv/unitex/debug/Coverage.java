@@ -21,39 +21,130 @@
 package fr.umlv.unitex.debug;
 
 import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import javax.swing.JOptionPane;
 
 import fr.umlv.unitex.io.GraphIO;
+import fr.umlv.unitex.io.MappedFile;
 
 public class Coverage {
+	/* Minimal number of matches counted by a parallel task */
+	private static final int MIN_RANGE_SIZE = 1024;
+
 	int[][] infos;
+	/* The graphs loaded by the constructor, so that tasks never load graphs */
+	private final GraphIO[] graphs;
 
 	public Coverage(DebugInfos d) {
 		infos = new int[d.graphNames.size()][];
+		graphs = new GraphIO[infos.length];
 		for (int i = 0; i < infos.length; i++) {
 			final GraphIO gio = d.getGraphIO(i + 1);
+			graphs[i] = gio;
+			if (gio != null) {
+				/*
+				 * Boxes are built lazily by GraphIO, without synchronization,
+				 * so we build them here, before tasks share the graphs
+				 */
+				gio.getBoxes();
+			}
 			/*
 			 * +1 because the store in cell #0 the total number of matched box
 			 * for the graph
 			 */
-			final int n = (gio == null) ? 0 : gio.getBoxes().size() + 1;
+			final int n = (gio == null) ? 0 : gio.getnBoxes() + 1;
 			infos[i] = new int[n];
 		}
 	}
 
+	/**
+	 * The counters of a range of matches, or the first match of the range
+	 * that could not be decoded.
+	 */
+	private static class Partial {
+		int[][] counters;
+		int failedMatch = -1;
+		String error;
+	}
+
 	/**
 	 * This method counts the times each box of each graph is used in a match.
+	 * Matches are decoded in parallel by ranges, each range having its own
+	 * counters, that are summed at the end.
 	 */
-	public static Coverage computeCoverageInfos(DebugInfos d) {
+	public static Coverage computeCoverageInfos(final DebugInfos d) {
 		final Coverage c = new Coverage(d);
-		final ArrayList<DebugDetails> details = new ArrayList<DebugDetails>();
-		for (int i = 0; i < d.lines.size(); i++) {
-			d.getMatchDetails(i, details);
-			if (details.size() == 0) {
-				/* If there is a problem, we return */
-				return null;
+		final MappedFile mapped = d.getText();
+		final int n = d.getMatchCount();
+		/*
+		 * Each task has its own counters, so that we don't want more tasks
+		 * than needed to keep the processors busy
+		 */
+		final int nTasks = Math.max(1, Math.min((n + MIN_RANGE_SIZE - 1)
+				/ MIN_RANGE_SIZE, 4 * ForkJoinPool.commonPool().getParallelism()));
+		final int rangeSize = (n + nTasks - 1) / nTasks;
+		final ArrayList<Callable<Partial>> tasks = new ArrayList<Callable<Partial>>();
+		for (int start = 0; start < n; start += rangeSize) {
+			final int from = start;
+			final int to = Math.min(n, start + rangeSize);
+			tasks.add(new Callable<Partial>() {
+				@SuppressWarnings("synthetic-access")
+				@Override
+				public Partial call() {
+					return c.count(d, mapped, from, to);
+				}
+			});
+		}
+		try {
+			for (final Future<Partial> f : ForkJoinPool.commonPool().invokeAll(
+					tasks)) {
+				final Partial p = f.get();
+				if (p.failedMatch != -1) {
+					/*
+					 * If there is a problem, we return, after having shown the
+					 * error of the first match that failed
+					 */
+					if (p.error != null) {
+						JOptionPane.showMessageDialog(null, p.error, "Error",
+								JOptionPane.ERROR_MESSAGE);
+					}
+					return null;
+				}
+				for (int i = 0; i < c.infos.length; i++) {
+					for (int j = 0; j < c.infos[i].length; j++) {
+						c.infos[i][j] += p.counters[i][j];
+					}
+				}
 			}
-			for (final DebugDetails item : details) {
-				if (item.tag.startsWith(">> ")) {
+		} catch (final InterruptedException e) {
+			return null;
+		} catch (final ExecutionException e) {
+			e.printStackTrace();
+			return null;
+		}
+		return c;
+	}
+
+	private Partial count(DebugInfos d, MappedFile mapped, int from, int to) {
+		final Partial p = new Partial();
+		p.counters = new int[infos.length][];
+		for (int i = 0; i < infos.length; i++) {
+			p.counters[i] = new int[infos[i].length];
+		}
+		final MatchSteps steps = new MatchSteps(false);
+		final String[] error = new String[1];
+		for (int i = from; i < to; i++) {
+			if (!d.getMatchSteps(mapped, i, steps, graphs, error)) {
+				p.failedMatch = i;
+				p.error = error[0];
+				return p;
+			}
+			for (int k = 0; k < steps.size(); k++) {
+				if (steps.getTag(k).startsWith(">> ")) {
 					/*
 					 * We don't want to count twice a subgraph call, and it will
 					 * already be counted once when the graph is called. So,
@@ -61,11 +152,18 @@ public class Coverage {
 					 */
 					continue;
 				}
-				c.infos[item.graph - 1][item.box + 1]++;
-				c.infos[item.graph - 1][0]++;
+				final int[] counters = p.counters[steps.getGraph(k) - 1];
+				final int box = steps.getBox(k) + 1;
+				if (box >= counters.length) {
+					/* The graph could not be loaded */
+					p.failedMatch = i;
+					return p;
+				}
+				counters[box]++;
+				counters[0]++;
 			}
 		}
-		return c;
+		return p;
 	}
 
 	public int getGraphCounter(int graph) {
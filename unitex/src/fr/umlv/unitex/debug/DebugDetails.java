@@ -28,21 +28,29 @@ public class DebugDetails {
 
 	public DebugDetails(String tag, String output, String matched, int graph,
 			int box, int line, DebugInfos infos) {
-		this.tag = tag;
+		this.tag = getDisplayTag(tag, infos);
+		this.output = output;
+		this.matched = matched;
+		this.graph = graph;
+		this.box = box;
+		this.line = line;
+	}
+
+	/**
+	 * Replaces the graph call and return tags, that contain a graph number, by
+	 * tags containing the graph name.
+	 */
+	static String getDisplayTag(String tag, DebugInfos infos) {
 		if (tag.startsWith((char) 5 + "<")) {
-			this.tag = "<< "
+			return "<< "
 					+ infos.graphNames
 							.get(Integer.parseInt(tag.substring(2)) - 1);
 		} else if (tag.startsWith((char) 5 + ">")) {
-			this.tag = ">> "
+			return ">> "
 					+ infos.graphNames
 							.get(Integer.parseInt(tag.substring(2)) - 1);
 		}
-		this.output = output;
-		this.matched = matched;
-		this.graph = graph;
-		this.box = box;
-		this.line = line;
+		return tag;
 	}
 
 	public Object getField(int columnIndex) {
@@ -21,11 +21,11 @@
 package fr.umlv.unitex.debug;
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.NoSuchElementException;
-import java.util.Scanner;
-import java.util.regex.Pattern;
 
 import javax.swing.JOptionPane;
 
@@ -33,13 +33,25 @@ import fr.umlv.unitex.files.FileUtil;
 import fr.umlv.unitex.graphrendering.GenericGraphBox;
 import fr.umlv.unitex.io.Encoding;
 import fr.umlv.unitex.io.GraphIO;
+import fr.umlv.unitex.io.MappedFile;
 
+/**
+ * This class gives access to the debug informations of a concordance built in
+ * debug mode. The concord.ind file is mapped in memory, and only the positions
+ * of its match lines are stored when it is loaded. A match is decoded when it
+ * is needed, either as <code>DebugDetails</code> for the match the user is
+ * looking at, or as primitive arrays for the coverage computation.
+ */
 public class DebugInfos {
 	public File concordIndFile = null;
 	public ArrayList<String> graphNames = new ArrayList<String>();
 	public ArrayList<File> graphs = new ArrayList<File>();
-	public ArrayList<String> lines = new ArrayList<String>();
 	public HashMap<Integer, GraphIO> graphIOMap = new HashMap<Integer, GraphIO>();
+	private Encoding encoding;
+	private MappedFile text;
+	/* Position of the first char #1 of each match line, or -1 */
+	private long[] matchOffsets = new long[1024];
+	private int matchCount = 0;
 
 	public static DebugInfos loadConcordanceIndex(File html) {
 		final String concord_ind = FileUtil.getFileNameWithoutExtension(html)
@@ -47,56 +59,201 @@ public class DebugInfos {
 		final File f = new File(concord_ind);
 		if (!f.exists())
 			return null;
-		Scanner scanner = null;
+		final DebugInfos infos = new DebugInfos();
+		infos.concordIndFile = f;
+		infos.encoding = Encoding.getEncoding(f);
+		if (infos.encoding == null) {
+			return null;
+		}
+		final MappedFile mapped = infos.getText();
+		if (mapped == null) {
+			return null;
+		}
+		final ConcordIndReader reader = new ConcordIndReader(mapped,
+				infos.encoding, infos.encoding == Encoding.UTF8 ? 0 : 2);
+		String z = reader.readLine();
+		if (z.length() > 0 && z.charAt(0) == 0xFEFF) {
+			z = z.substring(1);
+		}
+		if (!z.startsWith("#D")) {
+			infos.close();
+			return null;
+		}
+		int n;
 		try {
-			scanner = Encoding.getScanner(f);
-			final String z = scanner.nextLine();
-			if (!z.startsWith("#D")) {
-				scanner.close();
+			n = Integer.parseInt(reader.readLine().trim());
+		} catch (final NumberFormatException e) {
+			infos.close();
+			return null;
+		}
+		while (n > 0) {
+			if (reader.getPosition() >= mapped.length()) {
+				infos.close();
 				return null;
 			}
-			final DebugInfos infos = new DebugInfos();
-			infos.concordIndFile = f;
-			int n = scanner.nextInt();
-			scanner.nextLine();
-			final Pattern normalDelimiter = scanner.delimiter();
-			while (n > 0) {
-				String line = scanner.nextLine();
-				String s = "";
-				int pos = line.indexOf((char) 1);
-				if (pos != -1) {
-					s = line.substring(0, pos);
-					pos++;
-				} else {
-					pos = 0;
+			String line = reader.readLine();
+			String s = "";
+			int pos = line.indexOf((char) 1);
+			if (pos != -1) {
+				s = line.substring(0, pos);
+				pos++;
+			} else {
+				pos = 0;
+			}
+			line = line.substring(pos);
+			infos.graphNames.add(s);
+			if (s.equals(""))
+				infos.graphs.add(null);
+			else
+				infos.graphs.add(new File(line));
+			n--;
+		}
+		/* We skip the #[IMR] line */
+		reader.skipLine();
+		while (reader.getPosition() < mapped.length()) {
+			/*
+			 * We only remember where the debug part of the line starts, that
+			 * is to say after the match coordinates and the normal output
+			 */
+			long start = -1;
+			long pos = reader.getPosition();
+			int c;
+			while ((c = reader.read()) != -1 && c != '\n') {
+				if (c == 1) {
+					start = pos;
+					reader.skipLine();
+					break;
 				}
-				line = line.substring(pos);
-				infos.graphNames.add(s);
-				if (s.equals(""))
-					infos.graphs.add(null);
-				else
-					infos.graphs.add(new File(line));
-				n--;
+				pos = reader.getPosition();
 			}
-			/* We skip the #[IMR] line */
-			scanner.nextLine();
-			while (scanner.hasNextLine()) {
-				/* We skip the match coordinates */
-				scanner.next();
-				scanner.next();
-				/* We skip the normal output part */
-				scanner.useDelimiter("" + (char) 1);
-				scanner.next();
-				scanner.useDelimiter(normalDelimiter);
-				infos.lines.add(scanner.nextLine());
+			infos.addMatch(start);
+		}
+		return infos;
+	}
+
+	private void addMatch(long offset) {
+		if (matchCount == matchOffsets.length) {
+			matchOffsets = Arrays.copyOf(matchOffsets, 2 * matchCount);
+		}
+		matchOffsets[matchCount++] = offset;
+	}
+
+	/**
+	 * Returns the number of matches of the concordance.
+	 */
+	public int getMatchCount() {
+		return matchCount;
+	}
+
+	/**
+	 * Returns the mapped concord.ind file, mapping it again if it has been
+	 * released by <code>close()</code>, or null if it cannot be mapped.
+	 */
+	synchronized MappedFile getText() {
+		if (text == null) {
+			FileInputStream stream = null;
+			try {
+				stream = new FileInputStream(concordIndFile);
+				text = new MappedFile(stream.getChannel());
+			} catch (final IOException e) {
+				e.printStackTrace();
+				return null;
+			} finally {
+				if (stream != null) {
+					try {
+						stream.close();
+					} catch (final IOException e) {
+						e.printStackTrace();
+					}
+				}
 			}
-			scanner.close();
-			return infos;
-		} catch (final NoSuchElementException e2) {
-			if (scanner != null)
-				scanner.close();
-			return null;
 		}
+		return text;
+	}
+
+	/**
+	 * Releases the mapping of the concord.ind file, so that it can be
+	 * overwritten by a new locate operation.
+	 */
+	public synchronized void close() {
+		if (text != null) {
+			text.release();
+			text = null;
+		}
+	}
+
+	/**
+	 * Decodes the steps of the match #n, as they appear in the concord.ind
+	 * file. Returns false if the line cannot be decoded.
+	 */
+	boolean decodeMatch(MappedFile mapped, int n, MatchSteps steps) {
+		steps.clear();
+		final long offset = matchOffsets[n];
+		if (offset == -1 || mapped == null) {
+			return false;
+		}
+		final ConcordIndReader reader = new ConcordIndReader(mapped, encoding,
+				offset);
+		final boolean withTexts = steps.isWithTexts();
+		final StringBuilder b = new StringBuilder();
+		/* We skip the initial char #1 */
+		int c = reader.read();
+		try {
+			while (c == 1) {
+				c = readField(reader, b, 2, withTexts);
+				final String output = withTexts ? b.toString() : "";
+				if (c != 2) {
+					return false;
+				}
+				c = readField(reader, b, ':', true);
+				final int graph = Integer.parseInt(b.toString());
+				if (c != ':') {
+					return false;
+				}
+				c = readField(reader, b, ':', true);
+				final int box = Integer.parseInt(b.toString());
+				if (c != ':') {
+					return false;
+				}
+				c = readField(reader, b, 3, true);
+				final int line = Integer.parseInt(b.toString());
+				if (c != 3) {
+					return false;
+				}
+				c = readField(reader, b, 4, true);
+				final String tag = DebugDetails.getDisplayTag(b.toString(),
+						this);
+				if (c != 4) {
+					return false;
+				}
+				c = readField(reader, b, 1, withTexts);
+				final String matched = withTexts ? b.toString() : "";
+				steps.add(tag, output, matched, graph, box, line);
+			}
+		} catch (final NumberFormatException e) {
+			return false;
+		} catch (final IndexOutOfBoundsException e) {
+			/* Invalid graph number in a call tag */
+			return false;
+		}
+		return steps.size() > 0;
+	}
+
+	/**
+	 * Reads chars until the given delimiter or the end of the line, and
+	 * returns the char that stopped the reading, or -1.
+	 */
+	private static int readField(ConcordIndReader reader, StringBuilder b,
+			int delimiter, boolean keep) {
+		b.setLength(0);
+		int c;
+		while ((c = reader.read()) != -1 && c != delimiter && c != '\n'
+				&& c != '\r') {
+			if (keep) {
+				b.append((char) c);
+			}
+		}
+		return c;
 	}
 
 	/**
@@ -145,85 +302,113 @@ public class DebugInfos {
 	}
 
 	public int getEpsilonLineInInitialState(int graph) {
-		final GraphIO gio = getGraphIO(graph);
+		return getEpsilonLineInInitialState(graph, null);
+	}
+
+	private int getEpsilonLineInInitialState(int graph, GraphIO[] preloaded) {
+		final GraphIO gio = getGraphIO(graph, preloaded);
 		if (gio == null)
 			return -1;
 		final GenericGraphBox box = gio.getBoxes().get(0);
 		return box.lines.indexOf("<E>");
 	}
 
+	/**
+	 * Returns the graph #n, either from the given array of loaded graphs, or
+	 * through <code>getGraphIO</code> if the array is null.
+	 */
+	private GraphIO getGraphIO(int n, GraphIO[] preloaded) {
+		if (preloaded == null) {
+			return getGraphIO(n);
+		}
+		return preloaded[n - 1];
+	}
+
 	public ArrayList<DebugDetails> getMatchDetails(int n,
 			ArrayList<DebugDetails> d) {
 		if (d == null) {
 			d = new ArrayList<DebugDetails>();
 		}
 		d.clear();
-		final Scanner scanner = new Scanner(lines.get(n));
-		scanner.useDelimiter("" + (char) 2);
-		while (scanner.hasNext()) {
-			/* We skip the initial char #1 */
-			final String output = scanner.next().substring(1);
-			scanner.useDelimiter(":");
-			final int graph = Integer.parseInt(scanner.next().substring(1));
-			final int box = scanner.nextInt();
-			scanner.useDelimiter("" + (char) 3);
-			final int line = Integer.parseInt(scanner.next().substring(1));
-			scanner.useDelimiter("" + (char) 4);
-			final String tag = scanner.next().substring(1);
-			scanner.useDelimiter("" + (char) 1);
-			final String matched = scanner.next().substring(1);
-			d.add(new DebugDetails(tag, output, matched, graph, box, line, this));
-			scanner.useDelimiter("" + (char) 2);
+		final MatchSteps steps = new MatchSteps(true);
+		if (!getMatchSteps(getText(), n, steps, null, null)) {
+			return d;
+		}
+		for (int i = 0; i < steps.size(); i++) {
+			d.add(new DebugDetails(steps.getTag(i), steps.getOutput(i), steps
+					.getMatched(i), steps.getGraph(i), steps.getBox(i), steps
+					.getLine(i), this));
+		}
+		return d;
+	}
+
+	/**
+	 * Decodes the match #n and adds to its steps the initial and final states
+	 * of the graphs, and the <E> steps that are not in the concord.ind file.
+	 *
+	 * If <code>preloaded</code> is not null, graphs are taken from it, and
+	 * errors are not shown but stored in <code>error[0]</code>, so that this
+	 * method can be called from several threads.
+	 *
+	 * @return false if the match cannot be decoded or completed
+	 */
+	boolean getMatchSteps(MappedFile mapped, int n, MatchSteps d,
+			GraphIO[] preloaded, String[] error) {
+		if (!decodeMatch(mapped, n, d)) {
+			return false;
 		}
-		scanner.close();
-		DebugDetails tmp = d.get(0);
-		if (tmp.box != 0) {
+		if (d.getBox(0) != 0) {
 			/* If necessary, we add the initial state */
-			final DebugDetails tmp2 = new DebugDetails("<E>", "", "",
-					tmp.graph, 0, getEpsilonLineInInitialState(tmp.graph), this);
-			d.add(0, tmp2);
+			final int graph = d.getGraph(0);
+			d.insert(0, "<E>", "", "", graph, 0,
+					getEpsilonLineInInitialState(graph, preloaded));
 		}
-		tmp = d.get(d.size() - 1);
-		if (tmp.box != 1) {
+		final int last = d.size() - 1;
+		if (d.getBox(last) != 1) {
 			/* If necessary, we add the final state */
-			final DebugDetails tmp2 = new DebugDetails("", "", "", tmp.graph,
-					1, 0, this);
-			d.add(tmp2);
+			d.add("", "", "", d.getGraph(last), 1, 0);
 		}
 		/* And we add the initial and final states for all subgraphs called */
 		for (int i = 1; i < d.size(); i++) {
-			tmp = d.get(i);
-			if (tmp.tag.startsWith("<< ")) {
+			final String tag = d.getTag(i);
+			if (tag.startsWith("<< ")) {
 				/*
 				 * If we have a subgraph call, we add the initial state, if
 				 * needed
 				 */
-				final DebugDetails tmp2 = d.get(i + 1);
-				if (tmp2.box != 0) {
-					tmp = new DebugDetails("<E>", "", "", tmp2.graph, 0,
-							getEpsilonLineInInitialState(tmp2.graph), this);
-					d.add(i + 1, tmp);
+				if (i + 1 < d.size() && d.getBox(i + 1) != 0) {
+					final int graph = d.getGraph(i + 1);
+					d.insert(i + 1, "<E>", "", "", graph, 0,
+							getEpsilonLineInInitialState(graph, preloaded));
 				}
 				continue;
 			}
-			if (tmp.tag.startsWith(">> ")) {
+			if (tag.startsWith(">> ")) {
 				/*
 				 * If we have a subgraph call end, we add the initial state, if
 				 * needed
 				 */
-				final DebugDetails tmp2 = d.get(i - 1);
-				if (tmp2.box != 0) {
-					tmp = new DebugDetails("", "", "", tmp2.graph, 1, 0, this);
-					d.add(i, tmp);
+				if (d.getBox(i - 1) != 0) {
+					d.insert(i, "", "", "", d.getGraph(i - 1), 1, 0);
 				}
 				i++;
 				continue;
 			}
 		}
-		if (!restore_E_steps(d)) {
+		if (!restore_E_steps(d, preloaded, error)) {
 			d.clear();
+			return false;
+		}
+		return true;
+	}
+
+	private static void showError(String message, String[] error) {
+		if (error == null) {
+			JOptionPane.showMessageDialog(null, message, "Error",
+					JOptionPane.ERROR_MESSAGE);
+		} else if (error[0] == null) {
+			error[0] = message;
 		}
-		return d;
 	}
 
 	/**
@@ -231,56 +416,58 @@ public class DebugInfos {
 	 * so that they cannot be present in debug concordance. So, this function is
 	 * there to restore those <E> steps in graph exploration.
 	 */
-	private boolean restore_E_steps(ArrayList<DebugDetails> d) {
+	private boolean restore_E_steps(MatchSteps d, GraphIO[] preloaded,
+			String[] error) {
 		for (int i = 0; i < d.size() - 1; i++) {
-			final DebugDetails src = d.get(i);
-			final DebugDetails dst = d.get(i + 1);
-			final File f = graphs.get(src.graph - 1);
-			if (src.tag.equals("$![")) {
+			final String srcTag = d.getTag(i);
+			final String dstTag = d.getTag(i + 1);
+			final int srcGraph = d.getGraph(i);
+			final int srcBoxNumber = d.getBox(i);
+			final int dstBoxNumber = d.getBox(i + 1);
+			final File f = graphs.get(srcGraph - 1);
+			if (srcTag.equals("$![")) {
 				/*
 				 * Special case of a forbidden right context Such contexts
 				 * should never be catched in debug mode, so that the immediate
 				 * next tag should be the $] one
 				 */
-				if (dst.tag.equals("$]")) {
+				if (dstTag.equals("$]")) {
 					/* We go on */
 					continue;
 				}
-				JOptionPane.showMessageDialog(null,
-						"Unexpected non empty forbidden context between "
-								+ src.box + " and " + dst.box + " in graph "
-								+ f.getAbsolutePath(), "Error",
-						JOptionPane.ERROR_MESSAGE);
+				showError("Unexpected non empty forbidden context between "
+						+ srcBoxNumber + " and " + dstBoxNumber + " in graph "
+						+ f.getAbsolutePath(), error);
 				return false;
 			}
-			if (src.graph != dst.graph) {
+			if (srcGraph != d.getGraph(i + 1)) {
 				/*
 				 * There cannot be a missing <E> if the graphs are different
 				 */
 				continue;
 			}
-			final GraphIO gio = getGraphIO(src.graph);
+			final GraphIO gio = getGraphIO(srcGraph, preloaded);
 			if (gio == null) {
 				return false;
 			}
-			final GenericGraphBox srcBox = gio.getBoxes().get(src.box);
-			final GenericGraphBox dstBox = gio.getBoxes().get(dst.box);
+			final GenericGraphBox srcBox = gio.getBoxes().get(srcBoxNumber);
+			final GenericGraphBox dstBox = gio.getBoxes().get(dstBoxNumber);
 			if (srcBox.transitions.contains(dstBox)) {
 				/* Nothing to do if there is a transition */
 				continue;
 			}
 
-			if (src.box == dst.box) {
-				if (src.line == dst.line) {
+			if (srcBoxNumber == dstBoxNumber) {
+				if (d.getLine(i) == d.getLine(i + 1)) {
 					/*
 					 * If we are in the same line of the same box, it may be
 					 * because there is only one tag in the line and a loop on
 					 * the box, but it may also be because the line contains
 					 * several tokens
 					 */
-					final String line = srcBox.lines.get(src.line);
-					int pos = line.indexOf(src.tag);
-					pos = line.indexOf(dst.tag, pos + src.tag.length());
+					final String line = srcBox.lines.get(d.getLine(i));
+					int pos = line.indexOf(srcTag);
+					pos = line.indexOf(dstTag, pos + srcTag.length());
 					if (pos != -1) {
 						/* We are in the same line, nothing to do */
 						continue;
@@ -288,8 +475,8 @@ public class DebugInfos {
 					/* We may also have extra # or " " tags that have been added
 					 * by the strict tokenization option of Grf2Fst2.
 					 */
-					if (src.tag.equals("#") || src.tag.equals(" ")
-							|| dst.tag.equals("#") || dst.tag.equals(" ")) {
+					if (srcTag.equals("#") || srcTag.equals(" ")
+							|| dstTag.equals("#") || dstTag.equals(" ")) {
 						continue;
 					}
 					
@@ -316,19 +503,16 @@ public class DebugInfos {
 			final ArrayList<Integer> path = new ArrayList<Integer>();
 			if (!findEpsilonPath(0, srcBox, dstBox, visited, path,
 					gio.getBoxes())) {
-				JOptionPane.showMessageDialog(null,
-						"Cannot find <E> path between box " + src.box + " and "
-								+ dst.box + " in graph " + f.getAbsolutePath(),
-						"Error", JOptionPane.ERROR_MESSAGE);
+				showError("Cannot find <E> path between box " + srcBoxNumber
+						+ " and " + dstBoxNumber + " in graph "
+						+ f.getAbsolutePath(), error);
 				return false;
 			}
 			for (int j = 0; j < path.size(); j = j + 2) {
 				final int box = path.get(j);
 				final int line = path.get(j + 1);
-				final DebugDetails det = new DebugDetails("<E>", "", "",
-						src.graph, box, line, this);
 				i++;
-				d.add(i, det);
+				d.insert(i, "<E>", "", "", srcGraph, box, line);
 			}
 		}
 		return true;
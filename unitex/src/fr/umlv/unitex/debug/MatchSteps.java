@@ -0,0 +1,123 @@
+/*
+ * Unitex
+ *
+ * Copyright (C) 2001-2021 Université Paris-Est Marne-la-Vallée <unitex@univ-mlv.fr>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA.
+ *
+ */
+package fr.umlv.unitex.debug;
+
+import java.util.Arrays;
+
+/**
+ * This class stores the steps of a debug match in parallel arrays, so that a
+ * match can be decoded and completed without creating one
+ * <code>DebugDetails</code> per step. Outputs and matched texts are only
+ * kept if asked, since coverage computation does not need them.
+ */
+class MatchSteps {
+	private final boolean withTexts;
+	private int size;
+	private String[] tags = new String[32];
+	private String[] outputs;
+	private String[] matched;
+	private int[] graphs = new int[32];
+	private int[] boxes = new int[32];
+	private int[] lines = new int[32];
+
+	MatchSteps(boolean withTexts) {
+		this.withTexts = withTexts;
+		if (withTexts) {
+			outputs = new String[32];
+			matched = new String[32];
+		}
+	}
+
+	boolean isWithTexts() {
+		return withTexts;
+	}
+
+	int size() {
+		return size;
+	}
+
+	void clear() {
+		size = 0;
+	}
+
+	void add(String tag, String output, String matchedText, int graph,
+			int box, int line) {
+		insert(size, tag, output, matchedText, graph, box, line);
+	}
+
+	void insert(int i, String tag, String output, String matchedText,
+			int graph, int box, int line) {
+		if (size == tags.length) {
+			final int n = 2 * size;
+			tags = Arrays.copyOf(tags, n);
+			graphs = Arrays.copyOf(graphs, n);
+			boxes = Arrays.copyOf(boxes, n);
+			lines = Arrays.copyOf(lines, n);
+			if (withTexts) {
+				outputs = Arrays.copyOf(outputs, n);
+				matched = Arrays.copyOf(matched, n);
+			}
+		}
+		if (i < size) {
+			System.arraycopy(tags, i, tags, i + 1, size - i);
+			System.arraycopy(graphs, i, graphs, i + 1, size - i);
+			System.arraycopy(boxes, i, boxes, i + 1, size - i);
+			System.arraycopy(lines, i, lines, i + 1, size - i);
+			if (withTexts) {
+				System.arraycopy(outputs, i, outputs, i + 1, size - i);
+				System.arraycopy(matched, i, matched, i + 1, size - i);
+			}
+		}
+		tags[i] = tag;
+		graphs[i] = graph;
+		boxes[i] = box;
+		lines[i] = line;
+		if (withTexts) {
+			outputs[i] = output;
+			matched[i] = matchedText;
+		}
+		size++;
+	}
+
+	String getTag(int i) {
+		return tags[i];
+	}
+
+	String getOutput(int i) {
+		return withTexts ? outputs[i] : "";
+	}
+
+	String getMatched(int i) {
+		return withTexts ? matched[i] : "";
+	}
+
+	int getGraph(int i) {
+		return graphs[i];
+	}
+
+	int getBox(int i) {
+		return boxes[i];
+	}
+
+	int getLine(int i) {
+		return lines[i];
+	}
+}
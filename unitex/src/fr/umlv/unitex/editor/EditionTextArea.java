@@ -20,15 +20,20 @@
  */
 package fr.umlv.unitex.editor;
 
+import java.awt.Container;
 import java.awt.event.KeyAdapter;
 import java.awt.event.KeyEvent;
 import java.util.regex.Pattern;
 
 import javax.swing.JOptionPane;
 import javax.swing.JTextArea;
+import javax.swing.JViewport;
 import javax.swing.Timer;
+import javax.swing.plaf.basic.BasicTextAreaUI;
 import javax.swing.text.BadLocationException;
 import javax.swing.text.Document;
+import javax.swing.text.Element;
+import javax.swing.text.View;
 
 import fr.umlv.unitex.editor.ui.KeyErrorException;
 import fr.umlv.unitex.editor.ui.TextAreaSeparatorException;
@@ -79,6 +84,52 @@ public class EditionTextArea extends JTextArea {
 		setLineWrap(true);
 	}
 
+	/**
+	 * Large documents are displayed by a <code>LargeTextView</code>, so we
+	 * install a UI that creates it when such a document is set.
+	 */
+	@Override
+	public void setDocument(Document doc) {
+		final boolean wasLarge = getDocument() instanceof LargeTextDocument;
+		super.setDocument(doc);
+		if (getUI() != null && wasLarge != (doc instanceof LargeTextDocument)) {
+			updateUI();
+		}
+	}
+
+	@Override
+	public void updateUI() {
+		if (getDocument() instanceof LargeTextDocument) {
+			setUI(new LargeTextAreaUI());
+		} else {
+			super.updateUI();
+		}
+	}
+
+	/**
+	 * Lines of large documents are not wrapped, so they are scrolled
+	 * horizontally.
+	 */
+	@Override
+	public boolean getScrollableTracksViewportWidth() {
+		if (getDocument() instanceof LargeTextDocument) {
+			final Container parent = getParent();
+			return parent instanceof JViewport
+					&& parent.getWidth() > getPreferredSize().width;
+		}
+		return super.getScrollableTracksViewportWidth();
+	}
+
+	private static class LargeTextAreaUI extends BasicTextAreaUI {
+		@Override
+		public View create(Element elem) {
+			if (elem.getDocument() instanceof LargeTextDocument) {
+				return new LargeTextView(elem);
+			}
+			return super.create(elem);
+		}
+	}
+
 	/**
 	 * Methode to get the text aera where retrieve data ( selection, text after
 	 * or before the caret )
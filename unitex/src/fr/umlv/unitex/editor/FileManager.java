@@ -95,12 +95,9 @@ public class FileManager {
 		if (file.length() <= 2) {
 			text.setDocument(new PlainDocument());
 			text.setText(Config.EMPTY_FILE_MESSAGE);
-		} else if (file.length() < Preferences.MAX_TEXT_FILE_SIZE) {
+		} else {
 			load(file, text);
 			text.setCaretPosition(0);
-		} else {
-			text.setDocument(new PlainDocument());
-			text.setText(Config.FILE_TOO_LARGE_MESSAGE);
 		}
 	}
 
@@ -132,8 +129,16 @@ public class FileManager {
 			if (fetf == null)
 				return;
 			final EditionTextArea t = fetf.getText();
-			final OutputStreamWriter osr = ConfigManager.getManager()
-					.getEncoding(null).getOutputStreamWriter(file);
+			final Encoding encoding = ConfigManager.getManager().getEncoding(
+					null);
+			if (t.getDocument() instanceof LargeTextDocument) {
+				/* Unmodified parts of the file are copied as they are */
+				((LargeTextDocument) t.getDocument()).save(file, encoding);
+				t.setUnmodified();
+				return;
+			}
+			final OutputStreamWriter osr = encoding
+					.getOutputStreamWriter(file);
 			final String content = t.getText();
 			final int l = content.length();
 			for (int i = 0; i < l; i++) {
@@ -158,7 +163,9 @@ public class FileManager {
 	}
 
 	/**
-	 * Load an little endian Unicode texte file put it in a document
+	 * Load an little endian Unicode texte file put it in a document. Files
+	 * bigger than <code>Preferences.MAX_TEXT_FILE_SIZE</code> are mapped
+	 * instead of being loaded.
 	 * 
 	 * @param file
 	 *            the text to load
@@ -167,6 +174,9 @@ public class FileManager {
 	 */
 	public static Document load(File file, final EditionTextArea textArea)
 			throws IllegalArgumentException {
+		if (file.length() >= Preferences.MAX_TEXT_FILE_SIZE) {
+			return loadLarge(file, textArea);
+		}
 		final StringContent content = new StringContent();
 		final PlainDocument document = new PlainDocument(content);
 		final String fileContent = Encoding.getContent(file);
@@ -179,6 +189,23 @@ public class FileManager {
 		return document;
 	}
 
+	private static Document loadLarge(File file, EditionTextArea textArea) {
+		LargeTextDocument document = null;
+		try {
+			document = LargeTextDocument.load(file);
+		} catch (final IOException e) {
+			e.printStackTrace();
+		}
+		if (document == null) {
+			final PlainDocument empty = new PlainDocument();
+			textArea.setDocument(empty);
+			textArea.setText(Config.FILE_TOO_LARGE_MESSAGE);
+			return empty;
+		}
+		textArea.setDocument(document);
+		return document;
+	}
+
 	/**
 	 * load an empty text
 	 */
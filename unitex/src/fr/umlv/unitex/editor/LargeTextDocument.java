@@ -0,0 +1,254 @@
+/*
+ * Unitex
+ *
+ * Copyright (C) 2001-2021 Université Paris-Est Marne-la-Vallée <unitex@univ-mlv.fr>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA.
+ *
+ */
+package fr.umlv.unitex.editor;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+
+import javax.swing.text.AbstractDocument;
+import javax.swing.text.AttributeSet;
+import javax.swing.text.Document;
+import javax.swing.text.Element;
+import javax.swing.text.SimpleAttributeSet;
+
+import fr.umlv.unitex.io.Encoding;
+
+/**
+ * This class is a plain text document for files too large to be loaded in
+ * memory. Its content is a <code>PieceTableContent</code> over the mapped
+ * file, and its lines are elements created on demand from the line index of
+ * the content, so that nothing is done for the lines that are not displayed.
+ */
+public class LargeTextDocument extends AbstractDocument {
+	private static final long serialVersionUID = 1L;
+	private final PieceTableContent content;
+	private final Element root = new RootElement();
+
+	private LargeTextDocument(PieceTableContent content) {
+		super(content);
+		this.content = content;
+	}
+
+	/**
+	 * Maps the given file. Returns <code>null</code> if it is not a valid
+	 * UTF16LE, UTF16BE or UTF8 file.
+	 */
+	public static LargeTextDocument load(File file) throws IOException {
+		final Encoding encoding = Encoding.getEncoding(file);
+		if (encoding == null) {
+			return null;
+		}
+		return new LargeTextDocument(new PieceTableContent(file, encoding));
+	}
+
+	/**
+	 * Saves the text in the given file. As a mapped file can be neither
+	 * replaced nor truncated on Windows, the text is first written in a
+	 * temporary file on which the document is rebased, so that the given file
+	 * is not mapped anymore. Then, the temporary file is copied into the given
+	 * one, that becomes the file the document is mapped on.
+	 */
+	public void save(File file, Encoding encoding) throws IOException {
+		final File tmp = File.createTempFile("." + file.getName(), ".tmp",
+				file.getAbsoluteFile().getParentFile());
+		writeLock();
+		try {
+			final OutputStream out = new BufferedOutputStream(
+					new FileOutputStream(tmp));
+			try {
+				content.write(out, encoding);
+			} finally {
+				out.close();
+			}
+			content.rebase(tmp, encoding);
+			copy(tmp, file);
+			content.rebase(file, encoding);
+		} finally {
+			writeUnlock();
+			if (!tmp.delete()) {
+				tmp.deleteOnExit();
+			}
+		}
+	}
+
+	private static void copy(File src, File dest) throws IOException {
+		final FileInputStream in = new FileInputStream(src);
+		try {
+			final RandomAccessFile out = new RandomAccessFile(dest, "rw");
+			try {
+				final FileChannel from = in.getChannel();
+				final FileChannel to = out.getChannel();
+				final long size = from.size();
+				long done = 0;
+				while (done < size) {
+					done += from.transferTo(done, size - done, to);
+				}
+				to.truncate(size);
+			} finally {
+				out.close();
+			}
+		} finally {
+			in.close();
+		}
+	}
+
+	public int getMaxLineLength() {
+		return content.getMaxLineLength();
+	}
+
+	@Override
+	public Element getDefaultRootElement() {
+		return root;
+	}
+
+	@Override
+	public Element getParagraphElement(int pos) {
+		return root.getElement(root.getElementIndex(pos));
+	}
+
+	/**
+	 * Lines are drawn as they are, so there is no bidirectional structure to
+	 * update, which would read the whole paragraphs around the change.
+	 */
+	@Override
+	protected void insertUpdate(DefaultDocumentEvent chng, AttributeSet attr) {
+		/* */
+	}
+
+	@Override
+	protected void postRemoveUpdate(DefaultDocumentEvent chng) {
+		/* */
+	}
+
+	private class RootElement implements Element {
+		public Document getDocument() {
+			return LargeTextDocument.this;
+		}
+
+		public Element getParentElement() {
+			return null;
+		}
+
+		public String getName() {
+			return ParagraphElementName;
+		}
+
+		public AttributeSet getAttributes() {
+			return SimpleAttributeSet.EMPTY;
+		}
+
+		public int getStartOffset() {
+			return 0;
+		}
+
+		public int getEndOffset() {
+			return content.length();
+		}
+
+		public int getElementIndex(int offset) {
+			if (offset <= 0) {
+				return 0;
+			}
+			return content.getLineOfOffset(Math.min(offset,
+					content.length() - 1));
+		}
+
+		public int getElementCount() {
+			return content.getLineCount();
+		}
+
+		public Element getElement(int index) {
+			final int count = content.getLineCount();
+			if (index < 0 || index >= count) {
+				return null;
+			}
+			final int start = content.getLineStart(index);
+			final int end = (index + 1 < count) ? content
+					.getLineStart(index + 1) : content.length();
+			return new LineElement(this, start, end);
+		}
+
+		public boolean isLeaf() {
+			return false;
+		}
+	}
+
+	/**
+	 * A line, whose offsets are the ones it had when it was created
+	 */
+	private class LineElement implements Element {
+		private final Element parent;
+		private final int start;
+		private final int end;
+
+		LineElement(Element parent, int start, int end) {
+			this.parent = parent;
+			this.start = start;
+			this.end = end;
+		}
+
+		public Document getDocument() {
+			return LargeTextDocument.this;
+		}
+
+		public Element getParentElement() {
+			return parent;
+		}
+
+		public String getName() {
+			return ContentElementName;
+		}
+
+		public AttributeSet getAttributes() {
+			return SimpleAttributeSet.EMPTY;
+		}
+
+		public int getStartOffset() {
+			return start;
+		}
+
+		public int getEndOffset() {
+			return end;
+		}
+
+		public int getElementIndex(int offset) {
+			return -1;
+		}
+
+		public int getElementCount() {
+			return 0;
+		}
+
+		public Element getElement(int index) {
+			return null;
+		}
+
+		public boolean isLeaf() {
+			return true;
+		}
+	}
+}
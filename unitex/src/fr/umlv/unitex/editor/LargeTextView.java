@@ -0,0 +1,244 @@
+/*
+ * Unitex
+ *
+ * Copyright (C) 2001-2021 Université Paris-Est Marne-la-Vallée <unitex@univ-mlv.fr>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA.
+ *
+ */
+package fr.umlv.unitex.editor;
+
+import java.awt.Color;
+import java.awt.Component;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Rectangle;
+import java.awt.Shape;
+
+import javax.swing.event.DocumentEvent;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Element;
+import javax.swing.text.JTextComponent;
+import javax.swing.text.PlainDocument;
+import javax.swing.text.Position;
+import javax.swing.text.Segment;
+import javax.swing.text.TabExpander;
+import javax.swing.text.Utilities;
+import javax.swing.text.View;
+import javax.swing.text.ViewFactory;
+
+/**
+ * This view displays a <code>LargeTextDocument</code> without wrapping lines.
+ * As all lines have the same height, the lines to paint or to look at are
+ * found from coordinates, and only them are read from the document.
+ */
+class LargeTextView extends View implements TabExpander {
+	private Font font;
+	private FontMetrics metrics;
+	private int tabSize;
+	private int tabBase;
+	private final Segment line = new Segment();
+
+	LargeTextView(Element elem) {
+		super(elem);
+	}
+
+	private void updateMetrics() {
+		final Component host = getContainer();
+		final Font f = host.getFont();
+		if (font != f) {
+			font = f;
+			metrics = host.getFontMetrics(f);
+			final Integer size = (Integer) getDocument().getProperty(
+					PlainDocument.tabSizeAttribute);
+			tabSize = ((size != null) ? size : 8) * metrics.charWidth('m');
+		}
+	}
+
+	private int getLineHeight() {
+		return metrics.getHeight();
+	}
+
+	@Override
+	public float getPreferredSpan(int axis) {
+		updateMetrics();
+		if (axis == X_AXIS) {
+			final int n = ((LargeTextDocument) getDocument())
+					.getMaxLineLength();
+			return (float) n * metrics.charWidth('m') + 1;
+		}
+		return (float) getElement().getElementCount() * getLineHeight();
+	}
+
+	/**
+	 * Reads the given line, without its '\n', in <code>line</code> and
+	 * returns its start offset.
+	 */
+	private int loadLine(Element lineElement) {
+		final int start = lineElement.getStartOffset();
+		try {
+			getDocument().getText(start,
+					lineElement.getEndOffset() - 1 - start, line);
+		} catch (final BadLocationException e) {
+			e.printStackTrace();
+			line.count = 0;
+		}
+		return start;
+	}
+
+	@Override
+	public void paint(Graphics g, Shape a) {
+		updateMetrics();
+		final Rectangle alloc = a.getBounds();
+		tabBase = alloc.x;
+		final JTextComponent host = (JTextComponent) getContainer();
+		final Rectangle clip = g.getClipBounds();
+		final Element map = getElement();
+		final int h = getLineHeight();
+		int first = 0;
+		int last = map.getElementCount() - 1;
+		if (clip != null) {
+			first = Math.max(first, (clip.y - alloc.y) / h);
+			last = Math.min(last, (clip.y + clip.height - alloc.y) / h);
+		}
+		final Color fg = host.isEnabled() ? host.getForeground() : host
+				.getDisabledTextColor();
+		final Color selected = host.getSelectedTextColor();
+		final int selStart = host.getSelectionStart();
+		final int selEnd = host.getSelectionEnd();
+		g.setFont(font);
+		for (int i = first; i <= last; i++) {
+			final int start = loadLine(map.getElement(i));
+			final int end = start + line.count;
+			final int y = alloc.y + i * h + metrics.getAscent();
+			if (selStart == selEnd || selEnd <= start || selStart >= end
+					|| selected == null) {
+				g.setColor(fg);
+				TabbedText.draw(line, alloc.x, y, g, this, start);
+				continue;
+			}
+			/* The line is drawn in three parts */
+			final int p0 = Math.max(start, selStart);
+			final int p1 = Math.min(end, selEnd);
+			final int offset = line.offset;
+			int x = alloc.x;
+			line.count = p0 - start;
+			g.setColor(fg);
+			x = TabbedText.draw(line, x, y, g, this, start);
+			line.offset = offset + p0 - start;
+			line.count = p1 - p0;
+			g.setColor(selected);
+			x = TabbedText.draw(line, x, y, g, this, p0);
+			line.offset = offset + p1 - start;
+			line.count = end - p1;
+			g.setColor(fg);
+			TabbedText.draw(line, x, y, g, this, p1);
+		}
+	}
+
+	@Override
+	public Shape modelToView(int pos, Shape a, Position.Bias b)
+			throws BadLocationException {
+		if (pos < 0 || pos > getDocument().getLength()) {
+			throw new BadLocationException("Invalid position", pos);
+		}
+		updateMetrics();
+		final Rectangle alloc = a.getBounds();
+		tabBase = alloc.x;
+		final Element map = getElement();
+		final int index = map.getElementIndex(pos);
+		final int start = map.getElement(index).getStartOffset();
+		getDocument().getText(start, pos - start, line);
+		final int x = TabbedText.getWidth(line, metrics, alloc.x,
+				this, start);
+		return new Rectangle(alloc.x + x, alloc.y + index * getLineHeight(),
+				1, getLineHeight());
+	}
+
+	@Override
+	public int viewToModel(float fx, float fy, Shape a, Position.Bias[] bias) {
+		updateMetrics();
+		bias[0] = Position.Bias.Forward;
+		final Rectangle alloc = a.getBounds();
+		tabBase = alloc.x;
+		final Element map = getElement();
+		if (fy < alloc.y) {
+			return 0;
+		}
+		final int index = (int) (fy - alloc.y) / getLineHeight();
+		if (index >= map.getElementCount()) {
+			return getDocument().getLength();
+		}
+		final int start = loadLine(map.getElement(index));
+		if (fx < alloc.x) {
+			return start;
+		}
+		return start
+				+ TabbedText.getOffset(line, metrics, alloc.x,
+						(int) fx, this, start);
+	}
+
+	public float nextTabStop(float x, int tabOffset) {
+		if (tabSize == 0) {
+			return x;
+		}
+		final int n = ((int) x - tabBase) / tabSize;
+		return tabBase + (n + 1) * tabSize;
+	}
+
+	private void changed() {
+		preferenceChanged(null, true, true);
+		final Component host = getContainer();
+		if (host != null) {
+			host.repaint();
+		}
+	}
+
+	@Override
+	public void insertUpdate(DocumentEvent e, Shape a, ViewFactory f) {
+		changed();
+	}
+
+	@Override
+	public void removeUpdate(DocumentEvent e, Shape a, ViewFactory f) {
+		changed();
+	}
+
+	@Override
+	public void changedUpdate(DocumentEvent e, Shape a, ViewFactory f) {
+		changed();
+	}
+
+	/* The float overloads of these methods need Java 9, the build targets 8 */
+	@SuppressWarnings("deprecation")
+	private static class TabbedText {
+		static int draw(Segment s, int x, int y, Graphics g, TabExpander e,
+				int startOffset) {
+			return Utilities.drawTabbedText(s, x, y, g, e, startOffset);
+		}
+
+		static int getWidth(Segment s, FontMetrics metrics, int x,
+				TabExpander e, int startOffset) {
+			return Utilities.getTabbedTextWidth(s, metrics, x, e, startOffset);
+		}
+
+		static int getOffset(Segment s, FontMetrics metrics, int x0, int x,
+				TabExpander e, int startOffset) {
+			return Utilities.getTabbedTextOffset(s, metrics, x0, x, e,
+					startOffset);
+		}
+	}
+}
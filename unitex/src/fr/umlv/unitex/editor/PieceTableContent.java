@@ -0,0 +1,1011 @@
+/*
+ * Unitex
+ *
+ * Copyright (C) 2001-2021 Université Paris-Est Marne-la-Vallée <unitex@univ-mlv.fr>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA.
+ *
+ */
+package fr.umlv.unitex.editor;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.swing.text.AbstractDocument;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Position;
+import javax.swing.text.Segment;
+import javax.swing.undo.AbstractUndoableEdit;
+import javax.swing.undo.CannotRedoException;
+import javax.swing.undo.CannotUndoException;
+import javax.swing.undo.UndoableEdit;
+
+import fr.umlv.unitex.io.Encoding;
+import fr.umlv.unitex.io.MappedFile;
+
+/**
+ * This class is a document content made of a piece table: the text is a list
+ * of pieces, each one being a range of the original file, that is mapped and
+ * never loaded, or of a buffer where inserted texts are appended. Edits only
+ * split and move pieces.
+ *
+ * Both sources are cut into blocks of about <code>BLOCK_SIZE</code> chars, for
+ * which we know the number of lines before them. Blocks of the original file
+ * are decoded when needed and a few of them are cached, so that only the
+ * lines that are looked at are decoded.
+ *
+ * As required by <code>AbstractDocument</code>, the content ends with an
+ * implicit '\n' that is not part of the text.
+ */
+public class PieceTableContent implements AbstractDocument.Content {
+	static final int BLOCK_SIZE = 8192;
+
+	/**
+	 * Chars of the original file or of the add buffer, seen as blocks
+	 */
+	abstract static class Source {
+		abstract int length();
+
+		abstract int getBlockCount();
+
+		/**
+		 * Returns the offset of the first char of the block #k, or the length
+		 * of the source if k is the block count.
+		 */
+		abstract int getBlockStart(int k);
+
+		/**
+		 * Returns the number of '\n' before the block #k, or in the whole
+		 * source if k is the block count.
+		 */
+		abstract int getBlockLines(int k);
+
+		/**
+		 * Returns an array whose first chars are the ones of the block #k.
+		 * The caller must not modify it.
+		 */
+		abstract char[] getBlock(int k);
+
+		int findBlock(int offset) {
+			int min = 0;
+			int max = getBlockCount() - 1;
+			while (min < max) {
+				final int middle = (min + max + 1) >>> 1;
+				if (getBlockStart(middle) <= offset) {
+					min = middle;
+				} else {
+					max = middle - 1;
+				}
+			}
+			return min;
+		}
+
+		int newlinesBefore(int offset) {
+			if (offset >= length()) {
+				return getBlockLines(getBlockCount());
+			}
+			final int k = findBlock(offset);
+			final char[] block = getBlock(k);
+			int n = getBlockLines(k);
+			final int end = offset - getBlockStart(k);
+			for (int i = 0; i < end; i++) {
+				if (block[i] == '\n') {
+					n++;
+				}
+			}
+			return n;
+		}
+
+		/**
+		 * Returns the offset of the '\n' #n, n starting at 0.
+		 */
+		int offsetOfNewline(int n) {
+			int min = 0;
+			int max = getBlockCount() - 1;
+			while (min < max) {
+				final int middle = (min + max + 1) >>> 1;
+				if (getBlockLines(middle) <= n) {
+					min = middle;
+				} else {
+					max = middle - 1;
+				}
+			}
+			final char[] block = getBlock(min);
+			final int start = getBlockStart(min);
+			final int size = getBlockStart(min + 1) - start;
+			int remaining = n - getBlockLines(min);
+			for (int i = 0; i < size; i++) {
+				if (block[i] == '\n' && remaining-- == 0) {
+					return start + i;
+				}
+			}
+			throw new IllegalStateException("Invalid line index");
+		}
+
+		char charAt(int offset) {
+			final int k = findBlock(offset);
+			return getBlock(k)[offset - getBlockStart(k)];
+		}
+
+		void getChars(int offset, int length, char[] dst, int pos) {
+			while (length > 0) {
+				final int k = findBlock(offset);
+				final int start = getBlockStart(k);
+				final int n = Math.min(length, getBlockStart(k + 1) - offset);
+				System.arraycopy(getBlock(k), offset - start, dst, pos, n);
+				offset += n;
+				pos += n;
+				length -= n;
+			}
+		}
+	}
+
+	/**
+	 * The chars of a UTF8 or UTF16 file, mapped in memory. The file is read
+	 * once to find the blocks, and blocks are decoded when needed.
+	 */
+	static class MappedSource extends Source {
+		private static final int MAX_CACHED_BLOCKS = 64;
+		private static final int READ_SIZE = 65536;
+
+		final Encoding encoding;
+		private final MappedFile file;
+		/* Size of the BOM */
+		private final int header;
+		private int length;
+		private int blockCount;
+		private int[] blockStarts = new int[16];
+		private long[] blockBytes = new long[16];
+		private int[] blockLines = new int[16];
+		private int maxLineLength;
+		private final LinkedHashMap<Integer, char[]> cache = new LinkedHashMap<Integer, char[]>(
+				16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Integer, char[]> eldest) {
+				return size() > MAX_CACHED_BLOCKS;
+			}
+		};
+
+		MappedSource(File f, Encoding encoding) throws IOException {
+			this.encoding = encoding;
+			final FileInputStream stream = new FileInputStream(f);
+			try {
+				/* The mapping remains valid once the channel is closed */
+				file = new MappedFile(stream.getChannel());
+			} finally {
+				stream.close();
+			}
+			header = (encoding == Encoding.UTF8) ? 0 : 2;
+			if (encoding == Encoding.UTF8) {
+				scanUTF8();
+			} else {
+				scanUTF16();
+			}
+		}
+
+		private void addBlock(int start, long byteOffset, int lines) {
+			if (blockCount + 1 == blockStarts.length) {
+				final int n = 2 * blockStarts.length;
+				blockStarts = Arrays.copyOf(blockStarts, n);
+				blockBytes = Arrays.copyOf(blockBytes, n);
+				blockLines = Arrays.copyOf(blockLines, n);
+			}
+			blockStarts[blockCount] = start;
+			blockBytes[blockCount] = byteOffset;
+			blockLines[blockCount] = lines;
+			blockCount++;
+		}
+
+		private void scanUTF16() throws IOException {
+			final long chars = (file.length() - header) / 2;
+			if (chars >= Integer.MAX_VALUE) {
+				throw new IOException("File too large");
+			}
+			length = (int) chars;
+			final int low = (encoding == Encoding.UTF16LE) ? 0 : 1;
+			final byte[] buffer = new byte[READ_SIZE];
+			int lines = 0;
+			int lineLength = 0;
+			for (int c = 0; c < length; c += READ_SIZE / 2) {
+				final int n = Math.min(READ_SIZE / 2, length - c);
+				final byte[] bytes = (n == READ_SIZE / 2) ? buffer : new byte[2 * n];
+				file.get(header + 2L * c, bytes);
+				for (int i = 0; i < n; i++) {
+					if ((c + i) % BLOCK_SIZE == 0) {
+						addBlock(c + i, header + 2L * (c + i), lines);
+					}
+					if (bytes[2 * i + low] == '\n' && bytes[2 * i + 1 - low] == 0) {
+						lines++;
+						maxLineLength = Math.max(maxLineLength, lineLength);
+						lineLength = 0;
+					} else {
+						lineLength++;
+					}
+				}
+			}
+			maxLineLength = Math.max(maxLineLength, lineLength);
+			addBlock(length, header + 2L * length, lines);
+			blockCount--;
+			if (blockCount == 0) {
+				addBlock(0, header, 0);
+				addBlock(0, header, 0);
+				blockCount--;
+			}
+		}
+
+		/**
+		 * Returns the size of the UTF8 sequence that starts at
+		 * <code>bytes[i]</code>, or -1 if it is not a valid one, in which case
+		 * the byte is decoded as U+FFFD.
+		 */
+		private static int sequenceSize(byte[] bytes, int i, int end) {
+			final int c = bytes[i] & 0xFF;
+			int size;
+			if (c <= 0x7F) {
+				return 1;
+			} else if ((c & 0xE0) == 0xC0) {
+				size = 2;
+			} else if ((c & 0xF0) == 0xE0) {
+				size = 3;
+			} else if ((c & 0xF8) == 0xF0) {
+				size = 4;
+			} else {
+				return -1;
+			}
+			if (i + size > end) {
+				return -1;
+			}
+			for (int j = 1; j < size; j++) {
+				if ((bytes[i + j] & 0xC0) != 0x80) {
+					return -1;
+				}
+			}
+			return size;
+		}
+
+		private void scanUTF8() throws IOException {
+			final long total = file.length();
+			final byte[] buffer = new byte[READ_SIZE];
+			long chars = 0;
+			int lines = 0;
+			int lineLength = 0;
+			long nextBlock = 0;
+			long pos = 0;
+			while (pos < total) {
+				final int n = (int) Math.min(READ_SIZE, total - pos);
+				final byte[] bytes = (n == READ_SIZE) ? buffer : new byte[n];
+				file.get(pos, bytes);
+				/* A sequence may be cut at the end of the buffer */
+				final int end = (pos + n == total) ? n : n - 3;
+				int i = 0;
+				while (i < end) {
+					if (chars >= nextBlock) {
+						if (chars >= Integer.MAX_VALUE - 1) {
+							throw new IOException("File too large");
+						}
+						addBlock((int) chars, pos + i, lines);
+						nextBlock = chars + BLOCK_SIZE;
+					}
+					final byte b = bytes[i];
+					if (b >= 0) {
+						i++;
+						chars++;
+						if (b == '\n') {
+							lines++;
+							maxLineLength = Math.max(maxLineLength, lineLength);
+							lineLength = 0;
+						} else {
+							lineLength++;
+						}
+						continue;
+					}
+					final int size = sequenceSize(bytes, i, n);
+					final int c = (size == 4) ? 2 : 1;
+					i += (size == -1) ? 1 : size;
+					chars += c;
+					lineLength += c;
+				}
+				pos += i;
+			}
+			maxLineLength = Math.max(maxLineLength, lineLength);
+			if (chars >= Integer.MAX_VALUE - 1) {
+				throw new IOException("File too large");
+			}
+			length = (int) chars;
+			addBlock(length, total, lines);
+			blockCount--;
+			if (blockCount == 0) {
+				addBlock(0, 0, 0);
+				addBlock(0, 0, 0);
+				blockCount--;
+			}
+		}
+
+		@Override
+		int length() {
+			return length;
+		}
+
+		@Override
+		int getBlockCount() {
+			return blockCount;
+		}
+
+		@Override
+		int getBlockStart(int k) {
+			return blockStarts[k];
+		}
+
+		@Override
+		int getBlockLines(int k) {
+			return blockLines[k];
+		}
+
+		int getMaxLineLength() {
+			return maxLineLength;
+		}
+
+		@Override
+		synchronized char[] getBlock(int k) {
+			char[] block = cache.get(k);
+			if (block == null) {
+				block = decode(k);
+				cache.put(k, block);
+			}
+			return block;
+		}
+
+		private char[] decode(int k) {
+			final char[] chars = new char[blockStarts[k + 1] - blockStarts[k]];
+			final byte[] bytes = new byte[(int) (blockBytes[k + 1] - blockBytes[k])];
+			file.get(blockBytes[k], bytes);
+			if (encoding != Encoding.UTF8) {
+				final int low = (encoding == Encoding.UTF16LE) ? 0 : 1;
+				for (int i = 0; i < chars.length; i++) {
+					chars[i] = (char) ((bytes[2 * i + low] & 0xFF) | (bytes[2
+							* i + 1 - low] & 0xFF) << 8);
+				}
+				return chars;
+			}
+			int n = 0;
+			int i = 0;
+			while (i < bytes.length) {
+				final int size = sequenceSize(bytes, i, bytes.length);
+				final int c = bytes[i] & 0xFF;
+				switch (size) {
+				case 1:
+					chars[n++] = (char) c;
+					break;
+				case 2:
+					chars[n++] = (char) ((c & 0x1F) << 6 | (bytes[i + 1] & 0x3F));
+					break;
+				case 3:
+					chars[n++] = (char) ((c & 0x0F) << 12
+							| (bytes[i + 1] & 0x3F) << 6 | (bytes[i + 2] & 0x3F));
+					break;
+				case 4: {
+					final int value = (c & 0x07) << 18
+							| (bytes[i + 1] & 0x3F) << 12
+							| (bytes[i + 2] & 0x3F) << 6 | (bytes[i + 3] & 0x3F);
+					if (value < 0x10000 || value > 0x10FFFF) {
+						chars[n++] = '\uFFFD';
+						chars[n++] = '\uFFFD';
+					} else {
+						chars[n++] = Character.highSurrogate(value);
+						chars[n++] = Character.lowSurrogate(value);
+					}
+					break;
+				}
+				default:
+					chars[n++] = '\uFFFD';
+					break;
+				}
+				i += (size == -1) ? 1 : size;
+			}
+			return chars;
+		}
+
+		/**
+		 * Returns the position in the file of the given char, or -1 if it is
+		 * the second char of a 4 bytes UTF8 sequence.
+		 */
+		long getByteOffset(int offset) {
+			if (encoding != Encoding.UTF8) {
+				return header + 2L * offset;
+			}
+			if (offset == length) {
+				return blockBytes[blockCount];
+			}
+			final int k = findBlock(offset);
+			final byte[] bytes = new byte[(int) (blockBytes[k + 1] - blockBytes[k])];
+			file.get(blockBytes[k], bytes);
+			int c = blockStarts[k];
+			int i = 0;
+			while (c < offset) {
+				final int size = sequenceSize(bytes, i, bytes.length);
+				c += (size == 4) ? 2 : 1;
+				i += (size == -1) ? 1 : size;
+			}
+			return (c == offset) ? blockBytes[k] + i : -1;
+		}
+
+		/**
+		 * Copies the bytes of the given range of chars. Returns false if the
+		 * range does not correspond to a range of bytes.
+		 */
+		boolean copyBytes(int start, int end, OutputStream out)
+				throws IOException {
+			final long from = getByteOffset(start);
+			final long to = getByteOffset(end);
+			if (from == -1 || to == -1) {
+				return false;
+			}
+			final byte[] buffer = new byte[READ_SIZE];
+			for (long pos = from; pos < to; pos += READ_SIZE) {
+				final int n = (int) Math.min(READ_SIZE, to - pos);
+				final byte[] bytes = (n == READ_SIZE) ? buffer : new byte[n];
+				file.get(pos, bytes);
+				out.write(bytes);
+			}
+			return true;
+		}
+
+		/**
+		 * Unmaps the file. The source must not be read anymore.
+		 */
+		synchronized void close() {
+			cache.clear();
+			file.unmap();
+		}
+	}
+
+	/**
+	 * The buffer where inserted texts are appended. It is made of blocks of
+	 * <code>BLOCK_SIZE</code> chars that are never moved nor modified once
+	 * written.
+	 */
+	static class AddBuffer extends Source {
+		private final ArrayList<char[]> blocks = new ArrayList<char[]>();
+		private int[] blockLines = new int[16];
+		private int length;
+		private int lines;
+
+		int append(String s) {
+			final int start = length;
+			for (int i = 0; i < s.length(); i++) {
+				final int k = length / BLOCK_SIZE;
+				if (k == blocks.size()) {
+					blocks.add(new char[BLOCK_SIZE]);
+					if (k + 1 >= blockLines.length) {
+						blockLines = Arrays.copyOf(blockLines,
+								2 * blockLines.length);
+					}
+					blockLines[k] = lines;
+				}
+				final char c = s.charAt(i);
+				blocks.get(k)[length % BLOCK_SIZE] = c;
+				length++;
+				if (c == '\n') {
+					lines++;
+				}
+			}
+			return start;
+		}
+
+		@Override
+		int length() {
+			return length;
+		}
+
+		@Override
+		int getBlockCount() {
+			return blocks.size();
+		}
+
+		@Override
+		int getBlockStart(int k) {
+			return Math.min(k * BLOCK_SIZE, length);
+		}
+
+		@Override
+		int getBlockLines(int k) {
+			return (k == blocks.size()) ? lines : blockLines[k];
+		}
+
+		@Override
+		int findBlock(int offset) {
+			return offset / BLOCK_SIZE;
+		}
+
+		@Override
+		char[] getBlock(int k) {
+			return blocks.get(k);
+		}
+	}
+
+	/**
+	 * A range of a source. <code>linesBefore</code> is the number of '\n' of
+	 * the source before the range, and <code>lines</code> the number of '\n'
+	 * in the range.
+	 */
+	static class Piece {
+		final Source source;
+		final int start;
+		int length;
+		final int linesBefore;
+		int lines;
+
+		Piece(Source source, int start, int length) {
+			this.source = source;
+			this.start = start;
+			this.length = length;
+			linesBefore = source.newlinesBefore(start);
+			lines = source.newlinesBefore(start + length) - linesBefore;
+		}
+	}
+
+	/**
+	 * As the ones of <code>StringContent</code>, marks after an insertion
+	 * point move, and marks in a removed range go to its start.
+	 */
+	private static class Mark implements Position {
+		int offset;
+
+		Mark(int offset) {
+			this.offset = offset;
+		}
+
+		@Override
+		public int getOffset() {
+			return offset;
+		}
+	}
+
+	private MappedSource original;
+	private final AddBuffer added = new AddBuffer();
+	private final ArrayList<Piece> pieces = new ArrayList<Piece>();
+	/* offsets[i] is the offset of the piece #i, offsets[n] the text length */
+	private int[] offsets;
+	/* lines[i] is the number of '\n' before the piece #i */
+	private int[] lines;
+	private int maxLineLength;
+	private final ArrayList<WeakReference<Mark>> marks = new ArrayList<WeakReference<Mark>>();
+	/*
+	 * Incremented each time the original file changes, so that the edits made
+	 * before, whose pieces may refer to a file that is not mapped anymore,
+	 * cannot be undone
+	 */
+	private int generation;
+
+	/**
+	 * Maps the given file, that must be in the given encoding.
+	 */
+	public PieceTableContent(File file, Encoding encoding) throws IOException {
+		setOriginal(new MappedSource(file, encoding));
+	}
+
+	private void setOriginal(MappedSource source) {
+		original = source;
+		pieces.clear();
+		if (source.length() > 0) {
+			pieces.add(new Piece(source, 0, source.length()));
+		}
+		maxLineLength = source.getMaxLineLength();
+		updateIndex();
+	}
+
+	private void updateIndex() {
+		final int n = pieces.size();
+		offsets = new int[n + 1];
+		lines = new int[n + 1];
+		for (int i = 0; i < n; i++) {
+			final Piece p = pieces.get(i);
+			offsets[i + 1] = offsets[i] + p.length;
+			lines[i + 1] = lines[i] + p.lines;
+		}
+	}
+
+	private int getTextLength() {
+		return offsets[pieces.size()];
+	}
+
+	/**
+	 * Returns the piece that contains the given offset, or the piece count if
+	 * the offset is the text length.
+	 */
+	private int findPiece(int offset) {
+		int min = 0;
+		int max = pieces.size();
+		while (min < max) {
+			final int middle = (min + max + 1) >>> 1;
+			if (offsets[middle] <= offset) {
+				min = middle;
+			} else {
+				max = middle - 1;
+			}
+		}
+		return min;
+	}
+
+	/**
+	 * Makes sure that a piece starts at the given offset, and returns it.
+	 */
+	private int split(int offset) {
+		final int i = findPiece(offset);
+		if (i == pieces.size() || offsets[i] == offset) {
+			return i;
+		}
+		final Piece p = pieces.get(i);
+		final int n = offset - offsets[i];
+		pieces.set(i, new Piece(p.source, p.start, n));
+		pieces.add(i + 1, new Piece(p.source, p.start + n, p.length - n));
+		updateIndex();
+		return i + 1;
+	}
+
+	private void insertPieces(int where, List<Piece> list) {
+		pieces.addAll(split(where), list);
+		updateIndex();
+	}
+
+	private List<Piece> removePieces(int where, int length) {
+		final int i = split(where);
+		final int j = split(where + length);
+		final List<Piece> range = pieces.subList(i, j);
+		final ArrayList<Piece> removed = new ArrayList<Piece>(range);
+		range.clear();
+		updateIndex();
+		return removed;
+	}
+
+	private void updateMarksForInsert(int offset, int length) {
+		if (offset == 0) {
+			/* Marks at 0 stay at the beginning of the text */
+			offset = 1;
+		}
+		final Iterator<WeakReference<Mark>> it = marks.iterator();
+		while (it.hasNext()) {
+			final Mark m = it.next().get();
+			if (m == null) {
+				it.remove();
+			} else if (m.offset >= offset) {
+				m.offset += length;
+			}
+		}
+	}
+
+	private void updateMarksForRemove(int offset, int length) {
+		final Iterator<WeakReference<Mark>> it = marks.iterator();
+		while (it.hasNext()) {
+			final Mark m = it.next().get();
+			if (m == null) {
+				it.remove();
+			} else if (m.offset >= offset + length) {
+				m.offset -= length;
+			} else if (m.offset >= offset) {
+				m.offset = offset;
+			}
+		}
+	}
+
+	private void updateMaxLineLength(int offset) {
+		final int line = getLineOfOffset(offset);
+		final int end = (line + 1 < getLineCount()) ? getLineStart(line + 1) - 1
+				: getTextLength();
+		maxLineLength = Math.max(maxLineLength, end - getLineStart(line));
+	}
+
+	@Override
+	public synchronized Position createPosition(int offset)
+			throws BadLocationException {
+		final Mark m = new Mark(offset);
+		marks.add(new WeakReference<Mark>(m));
+		return m;
+	}
+
+	@Override
+	public int length() {
+		return getTextLength() + 1;
+	}
+
+	@Override
+	public synchronized UndoableEdit insertString(int where, String str)
+			throws BadLocationException {
+		if (where < 0 || where > getTextLength()) {
+			throw new BadLocationException("Invalid insert", where);
+		}
+		final int start = added.append(str);
+		final Piece piece = new Piece(added, start, str.length());
+		final int i = findPiece(where);
+		final Piece previous = (i > 0 && offsets[i] == where) ? pieces
+				.get(i - 1) : null;
+		if (previous != null && previous.source == added
+				&& previous.start + previous.length == start) {
+			/* Case of a text typed char after char */
+			previous.length += piece.length;
+			previous.lines += piece.lines;
+			updateIndex();
+		} else {
+			insertPieces(where, Arrays.asList(piece));
+		}
+		updateMarksForInsert(where, str.length());
+		updateMaxLineLength(where + str.length());
+		return new InsertEdit(where, piece);
+	}
+
+	@Override
+	public synchronized UndoableEdit remove(int where, int nitems)
+			throws BadLocationException {
+		if (where < 0 || nitems < 0 || where + nitems > getTextLength()) {
+			throw new BadLocationException("Invalid remove", where);
+		}
+		final List<Piece> removed = removePieces(where, nitems);
+		updateMarksForRemove(where, nitems);
+		return new RemoveEdit(where, nitems, removed);
+	}
+
+	@Override
+	public String getString(int where, int len) throws BadLocationException {
+		final Segment s = new Segment();
+		getChars(where, len, s);
+		return new String(s.array, s.offset, s.count);
+	}
+
+	@Override
+	public synchronized void getChars(int where, int len, Segment txt)
+			throws BadLocationException {
+		if (where < 0 || len < 0 || where + len > length()) {
+			throw new BadLocationException("Invalid range", where);
+		}
+		final int textLength = getTextLength();
+		final int i = findPiece(where);
+		if (i < pieces.size() && where + len <= offsets[i + 1]) {
+			/* The range may be in a block, that we can give as is */
+			final Piece p = pieces.get(i);
+			final int start = p.start + where - offsets[i];
+			final int k = p.source.findBlock(start);
+			final int blockStart = p.source.getBlockStart(k);
+			if (start + len <= p.source.getBlockStart(k + 1)) {
+				txt.array = p.source.getBlock(k);
+				txt.offset = start - blockStart;
+				txt.count = len;
+				return;
+			}
+		}
+		final char[] chars = new char[len];
+		int pos = 0;
+		for (int j = i; j < pieces.size() && pos < len; j++) {
+			final Piece p = pieces.get(j);
+			final int from = Math.max(where, offsets[j]);
+			final int n = Math.min(where + len, offsets[j + 1]) - from;
+			p.source.getChars(p.start + from - offsets[j], n, chars, pos);
+			pos += n;
+		}
+		if (where + len > textLength) {
+			chars[len - 1] = '\n';
+		}
+		txt.array = chars;
+		txt.offset = 0;
+		txt.count = len;
+	}
+
+	/**
+	 * Returns the number of lines of the text, including the line that ends
+	 * with the implicit '\n'.
+	 */
+	public synchronized int getLineCount() {
+		return lines[pieces.size()] + 1;
+	}
+
+	/**
+	 * Returns the offset of the first char of the given line.
+	 */
+	public synchronized int getLineStart(int line) {
+		if (line == 0) {
+			return 0;
+		}
+		/* We look for the '\n' #line-1 */
+		final int n = line - 1;
+		int min = 0;
+		int max = pieces.size() - 1;
+		while (min < max) {
+			final int middle = (min + max + 1) >>> 1;
+			if (lines[middle] <= n) {
+				min = middle;
+			} else {
+				max = middle - 1;
+			}
+		}
+		final Piece p = pieces.get(min);
+		return p.source.offsetOfNewline(p.linesBefore + n - lines[min])
+				- p.start + offsets[min] + 1;
+	}
+
+	/**
+	 * Returns the line that contains the given offset.
+	 */
+	public synchronized int getLineOfOffset(int offset) {
+		final int i = findPiece(offset);
+		if (i == pieces.size()) {
+			return lines[i];
+		}
+		final Piece p = pieces.get(i);
+		return lines[i] + p.source.newlinesBefore(p.start + offset - offsets[i])
+				- p.linesBefore;
+	}
+
+	/**
+	 * Returns the length of the longest line that the text has ever had. It
+	 * does not decrease when lines are shortened.
+	 */
+	public synchronized int getMaxLineLength() {
+		return maxLineLength;
+	}
+
+	/**
+	 * Writes the text in the given encoding, with a BOM for UTF16. Runs of
+	 * the original file are copied as they are if the encoding is the one of
+	 * the file, other runs are encoded.
+	 */
+	public synchronized void write(OutputStream out, Encoding encoding)
+			throws IOException {
+		if (encoding == Encoding.UTF16LE) {
+			out.write(0xFF);
+			out.write(0xFE);
+		} else if (encoding == Encoding.UTF16BE) {
+			out.write(0xFE);
+			out.write(0xFF);
+		}
+		final OutputStreamWriter writer = new OutputStreamWriter(out,
+				encoding.getCharset());
+		/*
+		 * The writer keeps a high surrogate until it gets the next char, so
+		 * bytes are only copied between complete surrogate pairs
+		 */
+		char last = 0;
+		for (final Piece p : pieces) {
+			final int end = p.start + p.length;
+			if (p.source == original && original.encoding == encoding
+					&& !Character.isHighSurrogate(last)
+					&& !Character.isLowSurrogate(p.source.charAt(p.start))
+					&& !Character.isHighSurrogate(p.source.charAt(end - 1))) {
+				writer.flush();
+				if (original.copyBytes(p.start, end, out)) {
+					last = 0;
+					continue;
+				}
+			}
+			int offset = p.start;
+			while (offset < end) {
+				final int k = p.source.findBlock(offset);
+				final int blockStart = p.source.getBlockStart(k);
+				final int n = Math.min(end, p.source.getBlockStart(k + 1))
+						- offset;
+				writer.write(p.source.getBlock(k), offset - blockStart, n);
+				offset += n;
+			}
+			last = p.source.charAt(end - 1);
+		}
+		writer.flush();
+	}
+
+	/**
+	 * Makes the given file, that must contain the current text, the original
+	 * file of the content, so that the add buffer and the pieces can be
+	 * dropped. The previous original file is unmapped, and the edits made
+	 * until now cannot be undone anymore.
+	 */
+	public synchronized void rebase(File file, Encoding encoding)
+			throws IOException {
+		final MappedSource source = new MappedSource(file, encoding);
+		if (source.length() != getTextLength()) {
+			source.close();
+			throw new IOException(file + " does not contain the current text");
+		}
+		final MappedSource previous = original;
+		setOriginal(source);
+		generation++;
+		previous.close();
+	}
+
+	private abstract class Edit extends AbstractUndoableEdit {
+		private static final long serialVersionUID = 1L;
+		private final int editGeneration = generation;
+
+		@Override
+		public boolean canUndo() {
+			synchronized (PieceTableContent.this) {
+				return super.canUndo() && editGeneration == generation;
+			}
+		}
+
+		@Override
+		public boolean canRedo() {
+			synchronized (PieceTableContent.this) {
+				return super.canRedo() && editGeneration == generation;
+			}
+		}
+	}
+
+	private class InsertEdit extends Edit {
+		private static final long serialVersionUID = 1L;
+		private final int where;
+		private final Piece piece;
+
+		InsertEdit(int where, Piece piece) {
+			this.where = where;
+			this.piece = piece;
+		}
+
+		@Override
+		public void undo() throws CannotUndoException {
+			super.undo();
+			synchronized (PieceTableContent.this) {
+				removePieces(where, piece.length);
+				updateMarksForRemove(where, piece.length);
+			}
+		}
+
+		@Override
+		public void redo() throws CannotRedoException {
+			super.redo();
+			synchronized (PieceTableContent.this) {
+				insertPieces(where, Arrays.asList(piece));
+				updateMarksForInsert(where, piece.length);
+			}
+		}
+	}
+
+	private class RemoveEdit extends Edit {
+		private static final long serialVersionUID = 1L;
+		private final int where;
+		private final int length;
+		private final List<Piece> removed;
+
+		RemoveEdit(int where, int length, List<Piece> removed) {
+			this.where = where;
+			this.length = length;
+			this.removed = removed;
+		}
+
+		@Override
+		public void undo() throws CannotUndoException {
+			super.undo();
+			synchronized (PieceTableContent.this) {
+				insertPieces(where, removed);
+				updateMarksForInsert(where, length);
+			}
+		}
+
+		@Override
+		public void redo() throws CannotRedoException {
+			super.redo();
+			synchronized (PieceTableContent.this) {
+				removePieces(where, length);
+				updateMarksForRemove(where, length);
+			}
+		}
+	}
+}
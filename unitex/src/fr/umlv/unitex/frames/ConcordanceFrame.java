@@ -130,6 +130,9 @@ public class ConcordanceFrame extends TabbableInternalFrame {
 			public void internalFrameClosing(InternalFrameEvent e) {
 				list.reset();
 				list.clearSelection();
+				if (index != null) {
+					index.close();
+				}
 			}
 
 			@Override
@@ -223,6 +223,13 @@ public class ConcordanceParameterFrame extends JInternalFrame {
 				final MultiCommands commands = new MultiCommands();
 				commands.addCommand(cmd);
 				setVisible(false);
+				/*
+				 * The statistics frame maps the output file, so we close it
+				 * before Stats writes it again
+				 */
+				GlobalProjectManager.search(output)
+						.getFrameManagerAs(InternalFrameManager.class)
+						.closeStatisticsFrame();
 				Launcher.exec(commands, true,
 						new LoadStatisticsDo(output, mode));
 			}
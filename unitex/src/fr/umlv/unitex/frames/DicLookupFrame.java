@@ -39,7 +39,10 @@ import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Vector;
+import java.util.concurrent.ExecutionException;
 
 import javax.swing.AbstractAction;
 import javax.swing.Action;
@@ -55,6 +58,7 @@ import javax.swing.JScrollPane;
 import javax.swing.JTextField;
 import javax.swing.ListModel;
 import javax.swing.ScrollPaneConstants;
+import javax.swing.SwingWorker;
 import javax.swing.Timer;
 import javax.swing.border.EmptyBorder;
 import javax.swing.border.TitledBorder;
@@ -68,6 +72,7 @@ import fr.umlv.unitex.config.ConfigManager;
 import fr.umlv.unitex.config.PreferencesListener;
 import fr.umlv.unitex.config.PreferencesManager;
 import fr.umlv.unitex.files.FileUtil;
+import fr.umlv.unitex.io.DictionaryLookup;
 import fr.umlv.unitex.listeners.LanguageListener;
 import fr.umlv.unitex.process.Launcher;
 import fr.umlv.unitex.process.commands.DicoCommand;
@@ -79,6 +84,7 @@ public class DicLookupFrame extends JInternalFrame {
 	JList systemDicList;
 	final BigTextList text = new BigTextList(true);
 	final JTextField inputText = new JTextField();
+	SwingWorker<List<String>, Void> lookupWorker;
 
 	DicLookupFrame() {
 		super("Dictionary Lookup", true, true);
@@ -232,18 +238,52 @@ public class DicLookupFrame extends JInternalFrame {
 			@Override
 			public void actionPerformed(ActionEvent arg0) {
 				text.reset();
+				lookupWorker = null;
 				final String s = inputText.getText();
 				if (s.equals(""))
 					return;
-				final File f = new File(Config.getUserCurrentLanguageDir(),
-						"dic_lookup.in");
-				FileUtil.write(s, f);
-				final DicoCommand cmd = getRunCmd();
-				if (cmd == null)
+				final ArrayList<File> bins = getSelectedDictionaries();
+				if (bins.isEmpty())
 					return;
-				Launcher.execWithoutTracing(cmd);
-				text.load(new File(Config.getUserCurrentLanguageDir(),
-						"dic_lookup.out"));
+				/*
+				 * We first try to look up the word with the dictionaries kept in
+				 * memory, and we only run Dico if that would not give the same
+				 * result
+				 */
+				lookupWorker = new SwingWorker<List<String>, Void>() {
+					@Override
+					protected List<String> doInBackground() throws Exception {
+						return DictionaryLookup.lookup(bins, ConfigManager
+								.getManager().getAlphabet(null), s);
+					}
+
+					@Override
+					protected void done() {
+						if (lookupWorker != this) {
+							/* Another lookup has been started */
+							return;
+						}
+						lookupWorker = null;
+						List<String> lines = null;
+						try {
+							lines = get();
+						} catch (final InterruptedException e) {
+							return;
+						} catch (final ExecutionException e) {
+							e.printStackTrace();
+						}
+						final File out = new File(
+								Config.getUserCurrentLanguageDir(),
+								"dic_lookup.out");
+						if (lines == null) {
+							lookupWithDico(s);
+							return;
+						}
+						FileUtil.write(new ArrayList<String>(lines), out);
+						text.load(out);
+					}
+				};
+				lookupWorker.execute();
 			}
 		};
 		scrollText.setPreferredSize(new Dimension(300, 120));
@@ -275,6 +315,34 @@ public class DicLookupFrame extends JInternalFrame {
 		return panel;
 	}
 
+	void lookupWithDico(String s) {
+		final File f = new File(Config.getUserCurrentLanguageDir(),
+				"dic_lookup.in");
+		FileUtil.write(s, f);
+		final DicoCommand cmd = getRunCmd();
+		if (cmd == null)
+			return;
+		Launcher.execWithoutTracing(cmd);
+		text.load(new File(Config.getUserCurrentLanguageDir(),
+				"dic_lookup.out"));
+	}
+
+	/**
+	 * Returns the .bin files of the selected dictionaries.
+	 */
+	ArrayList<File> getSelectedDictionaries() {
+		final ArrayList<File> bins = new ArrayList<File>();
+		for (final Object o : systemDicList.getSelectedValuesList()) {
+			bins.add(new File(new File(Config.getUnitexCurrentLanguageDir(),
+					"Dela"), (String) o));
+		}
+		for (final Object o : userDicList.getSelectedValuesList()) {
+			bins.add(new File(new File(Config.getUserCurrentLanguageDir(),
+					"Dela"), (String) o));
+		}
+		return bins;
+	}
+
 	DicoCommand getRunCmd() {
 		final Object[] userSelection = userDicList.getSelectedValues();
 		final Object[] systemSelection = systemDicList.getSelectedValues();
@@ -35,9 +35,12 @@ import javax.swing.event.DocumentListener;
 
 import fr.umlv.unitex.common.project.manager.GlobalProjectManager;
 import fr.umlv.unitex.graphrendering.GenericGraphBox;
+import fr.umlv.unitex.graphrendering.GenericGraphicalZone;
 import fr.umlv.unitex.graphrendering.GraphBox;
+import fr.umlv.unitex.graphtools.BoxQuery;
 import fr.umlv.unitex.graphtools.FindAndReplace;
 import fr.umlv.unitex.graphtools.FindAndReplaceData;
+import fr.umlv.unitex.graphtools.SequenceQuery;
 
 /**
  * This class defines a dialog that allow the user to search and replace the content of one or more boxes
@@ -389,14 +392,9 @@ public class FindAndReplaceDialog extends JDialog implements MultiInstanceFrameF
     Collections.addAll(replaceSeqList, tokens);
 
     int res = 0;
-    if (!graphComboBox.getSelectedItem().toString().equals(graphDefaultText)) {
-      res = FindAndReplace.replaceAllSeq(data.getGraphicalZone(), findSeqList, replaceSeqList, caseSensitiveSCheckBox
-        .isSelected(), useRegularExpressionsSCheckBox.isSelected());
-    } else {
-      for (GraphFrame f : graphFrames) {
-        res += FindAndReplace.replaceAllSeq(f.getGraphicalZone(), findSeqList, replaceSeqList, caseSensitiveSCheckBox
-          .isSelected(), useRegularExpressionsSCheckBox.isSelected());
-      }
+    final SequenceQuery query = createSequenceQuery();
+    for (GenericGraphicalZone zone : getSequenceSearchedZones()) {
+      res += FindAndReplace.replaceAllSeq(zone, query, replaceSeqList);
     }
     updateSeqReplaceResultTextField(res);
   }
@@ -417,12 +415,12 @@ public class FindAndReplaceDialog extends JDialog implements MultiInstanceFrameF
       return;
     }
     int i = 0;
+    final SequenceQuery query = createSequenceQuery();
     GenericGraphBox nextBox = data.nextBox();
     if (changeNextGraph(nextBox)) {
       return;
     }
-    while (i < data.getBoxes().size() && !FindAndReplace.isSeq(data.getGraphicalZone(), findSeqList, nextBox,
-      true, caseSensitiveSCheckBox.isSelected(), useRegularExpressionsSCheckBox.isSelected())) {
+    while (i < data.getBoxes().size() && !FindAndReplace.isSeq(data.getGraphicalZone(), query, nextBox, true)) {
       i++;
       nextBox = data.nextBox();
       if (changeNextGraph(nextBox)) {
@@ -464,12 +462,12 @@ public class FindAndReplaceDialog extends JDialog implements MultiInstanceFrameF
       return;
     }
     int i = 0;
+    final SequenceQuery query = createSequenceQuery();
     GenericGraphBox prevBox = data.prevBox();
     if (changePrevGraph(prevBox)) {
       return;
     }
-    while (i < data.getBoxes().size() && !FindAndReplace.isSeq(data.getGraphicalZone(), findSeqList, prevBox,
-      true, caseSensitiveSCheckBox.isSelected(), useRegularExpressionsSCheckBox.isSelected())) {
+    while (i < data.getBoxes().size() && !FindAndReplace.isSeq(data.getGraphicalZone(), query, prevBox, true)) {
       i++;
       prevBox = data.prevBox();
       if (changePrevGraph(prevBox)) {
@@ -547,18 +545,9 @@ public class FindAndReplaceDialog extends JDialog implements MultiInstanceFrameF
       return;
     }
     String msg = "";
-    if (!graphComboBox.getSelectedItem().toString().equals(graphDefaultText)) {
-      msg = FindAndReplace.checkReplaceAll(currentFrame.getGraphicalZone().getBoxes(), findTextField.getText(),
-        replaceTextField.getText(), currentFrame.getGraphicalZone(), useRegularExpressionsCheckBox.isSelected(),
-        caseSensitiveCheckBox.isSelected(), matchOnlyAWholeCheckBox.isSelected(), ignoreCommentBoxesCheckBox
-          .isSelected());
-    } else {
-      for (GraphFrame f : graphFrames) {
-        msg = FindAndReplace.checkReplaceAll(f.getGraphicalZone().getBoxes(), findTextField.getText(),
-          replaceTextField.getText(), f.getGraphicalZone(), useRegularExpressionsCheckBox.isSelected(),
-          caseSensitiveCheckBox.isSelected(), matchOnlyAWholeCheckBox.isSelected(), ignoreCommentBoxesCheckBox
-            .isSelected());
-      }
+    final BoxQuery query = createQuery();
+    for (GenericGraphicalZone zone : getSearchedZones()) {
+      msg = FindAndReplace.checkReplaceAll(zone.getBoxes(), replaceTextField.getText(), zone, query);
     }
     if (!msg.isEmpty()) {
       statusBarTextField.setText("Error one or more boxes won't be replaced: " + msg);
@@ -1234,18 +1223,8 @@ public class FindAndReplaceDialog extends JDialog implements MultiInstanceFrameF
   private void onNext() {
     int i = 0;
     data.getGraphicalZone().unSelectAllBoxes();
-    int res = 0;
-    if (!graphComboBox.getSelectedItem().toString().equals(graphDefaultText)) {
-      res = FindAndReplace.findAll(currentFrame.getGraphicalZone().getBoxes(), findTextField.getText(),
-        useRegularExpressionsCheckBox.isSelected(), caseSensitiveCheckBox.isSelected(), matchOnlyAWholeCheckBox
-          .isSelected(), ignoreCommentBoxesCheckBox.isSelected());
-    } else {
-      for (GraphFrame f : graphFrames) {
-        res += FindAndReplace.findAll(f.getGraphicalZone().getBoxes(), findTextField.getText(),
-          useRegularExpressionsCheckBox.isSelected(), caseSensitiveCheckBox.isSelected(), matchOnlyAWholeCheckBox
-            .isSelected(), ignoreCommentBoxesCheckBox.isSelected());
-      }
-    }
+    final BoxQuery query = createQuery();
+    int res = FindAndReplace.findAll(getSearchedZones(), query);
     if (res == 0) {
       data.getGraphicalZone().setHighlight(false);
       return;
@@ -1255,9 +1234,7 @@ public class FindAndReplaceDialog extends JDialog implements MultiInstanceFrameF
       if (onNextChangeGraph(nextBox)) {
         return;
       }
-      while (!FindAndReplace.find(data.getGraphicalZone(), nextBox, findTextField.getText(),
-        useRegularExpressionsCheckBox.isSelected(), caseSensitiveCheckBox.isSelected(), matchOnlyAWholeCheckBox
-          .isSelected(), ignoreCommentBoxesCheckBox.isSelected()) && i < data.getBoxes().size()) {
+      while (!FindAndReplace.find(data.getGraphicalZone(), nextBox, query) && i < data.getBoxes().size()) {
         i++;
         nextBox = data.nextBox();
         if (onNextChangeGraph(nextBox)) {
@@ -1293,18 +1270,8 @@ public class FindAndReplaceDialog extends JDialog implements MultiInstanceFrameF
   private void onPrev() {
     int i = 0;
     data.getGraphicalZone().unSelectAllBoxes();
-    int res = 0;
-    if (!graphComboBox.getSelectedItem().toString().equals(graphDefaultText)) {
-      res = FindAndReplace.findAll(currentFrame.getGraphicalZone().getBoxes(), findTextField.getText(),
-        useRegularExpressionsCheckBox.isSelected(), caseSensitiveCheckBox.isSelected(), matchOnlyAWholeCheckBox
-          .isSelected(), ignoreCommentBoxesCheckBox.isSelected());
-    } else {
-      for (GraphFrame f : graphFrames) {
-        res += FindAndReplace.findAll(f.getGraphicalZone().getBoxes(), findTextField.getText(),
-          useRegularExpressionsCheckBox.isSelected(), caseSensitiveCheckBox.isSelected(), matchOnlyAWholeCheckBox
-            .isSelected(), ignoreCommentBoxesCheckBox.isSelected());
-      }
-    }
+    final BoxQuery query = createQuery();
+    int res = FindAndReplace.findAll(getSearchedZones(), query);
     if (res == 0) {
       data.getGraphicalZone().setHighlight(false);
       return;
@@ -1314,9 +1281,7 @@ public class FindAndReplaceDialog extends JDialog implements MultiInstanceFrameF
       if (onPrevChangeGraph(prevBox)) {
         return;
       }
-      while (!FindAndReplace.find(data.getGraphicalZone(), prevBox, findTextField.getText(),
-        useRegularExpressionsCheckBox.isSelected(), caseSensitiveCheckBox.isSelected(), matchOnlyAWholeCheckBox
-          .isSelected(), ignoreCommentBoxesCheckBox.isSelected()) && i < data.getBoxes().size()) {
+      while (!FindAndReplace.find(data.getGraphicalZone(), prevBox, query) && i < data.getBoxes().size()) {
         i++;
         prevBox = data.prevBox();
         if (onPrevChangeGraph(prevBox)) {
@@ -1347,9 +1312,8 @@ public class FindAndReplaceDialog extends JDialog implements MultiInstanceFrameF
     if (findTextField.getText().equals(replaceTextField.getText())) {
       return;
     }
-    boolean wasReplaced = FindAndReplace.replace(data.getCurrentBox(), findTextField.getText(), replaceTextField
-      .getText(), data.getGraphicalZone(), useRegularExpressionsCheckBox.isSelected(), caseSensitiveCheckBox
-      .isSelected(), matchOnlyAWholeCheckBox.isSelected(), ignoreCommentBoxesCheckBox.isSelected());
+    boolean wasReplaced = FindAndReplace.replace(data.getCurrentBox(), replaceTextField.getText(),
+      data.getGraphicalZone(), createQuery());
     if (wasReplaced) {
       updateSingleReplaceResultTextField(1);
     } else {
@@ -1363,22 +1327,50 @@ public class FindAndReplaceDialog extends JDialog implements MultiInstanceFrameF
       return;
     }
     int i = 0;
-    if (graphComboBox.getSelectedItem().toString().equals(graphDefaultText)) {
-      for (GraphFrame graphFrame : graphFrames) {
-        i += FindAndReplace.replaceAll(graphFrame.getGraphicalZone().getBoxes(), findTextField.getText(),
-          replaceTextField.getText(), graphFrame.getGraphicalZone(), useRegularExpressionsCheckBox.isSelected(),
-          caseSensitiveCheckBox.isSelected(), matchOnlyAWholeCheckBox.isSelected(), ignoreCommentBoxesCheckBox
-            .isSelected());
-      }
-    } else {
-      i += FindAndReplace.replaceAll(currentFrame.getGraphicalZone().getBoxes(), findTextField.getText(),
-        replaceTextField.getText(), currentFrame.getGraphicalZone(), useRegularExpressionsCheckBox.isSelected(),
-        caseSensitiveCheckBox.isSelected(), matchOnlyAWholeCheckBox.isSelected(), ignoreCommentBoxesCheckBox
-          .isSelected());
+    final BoxQuery query = createQuery();
+    for (GenericGraphicalZone zone : getSearchedZones()) {
+      i += FindAndReplace.replaceAll(zone.getBoxes(), replaceTextField.getText(), zone, query);
     }
     updateSingleReplaceResultTextField(i);
   }
 
+  private BoxQuery createQuery() {
+    return new BoxQuery(findTextField.getText(), useRegularExpressionsCheckBox.isSelected(), caseSensitiveCheckBox
+      .isSelected(), matchOnlyAWholeCheckBox.isSelected(), ignoreCommentBoxesCheckBox.isSelected());
+  }
+
+  private SequenceQuery createSequenceQuery() {
+    return new SequenceQuery(findSeqList, caseSensitiveSCheckBox.isSelected(), useRegularExpressionsSCheckBox
+      .isSelected());
+  }
+
+  /**
+   * Returns the graphical zone of the selected graph, or the ones of all the graphs.
+   */
+  private ArrayList<GenericGraphicalZone> getSearchedZones() {
+    ArrayList<GenericGraphicalZone> zones = new ArrayList<GenericGraphicalZone>();
+    if (!graphComboBox.getSelectedItem().toString().equals(graphDefaultText)) {
+      zones.add(currentFrame.getGraphicalZone());
+    } else {
+      for (GraphFrame f : graphFrames) {
+        zones.add(f.getGraphicalZone());
+      }
+    }
+    return zones;
+  }
+
+  /**
+   * Same as getSearchedZones, but the sequence search works on the zone of the current data.
+   */
+  private ArrayList<GenericGraphicalZone> getSequenceSearchedZones() {
+    if (!graphComboBox.getSelectedItem().toString().equals(graphDefaultText)) {
+      ArrayList<GenericGraphicalZone> zones = new ArrayList<GenericGraphicalZone>();
+      zones.add(data.getGraphicalZone());
+      return zones;
+    }
+    return getSearchedZones();
+  }
+
   private boolean isValidTextField() {
     return isValidFindTextField() && isValidReplaceTextField();
   }
@@ -1396,18 +1388,8 @@ public class FindAndReplaceDialog extends JDialog implements MultiInstanceFrameF
       statusBarTextField.setText("");
       return;
     }
-    int res = 0;
-    if (!graphComboBox.getSelectedItem().toString().equals(graphDefaultText)) {
-      res = FindAndReplace.findAll(currentFrame.getGraphicalZone().getBoxes(), findTextField.getText(),
-        useRegularExpressionsCheckBox.isSelected(), caseSensitiveCheckBox.isSelected(), matchOnlyAWholeCheckBox
-          .isSelected(), ignoreCommentBoxesCheckBox.isSelected());
-    } else {
-      for (GraphFrame f : graphFrames) {
-        res += FindAndReplace.findAll(f.getGraphicalZone().getBoxes(), findTextField.getText(),
-          useRegularExpressionsCheckBox.isSelected(), caseSensitiveCheckBox.isSelected(), matchOnlyAWholeCheckBox
-            .isSelected(), ignoreCommentBoxesCheckBox.isSelected());
-      }
-    }
+    final BoxQuery query = createQuery();
+    int res = FindAndReplace.findAll(getSearchedZones(), query);
     String msg;
     switch (res) {
       case 0:
@@ -1475,24 +1457,7 @@ public class FindAndReplaceDialog extends JDialog implements MultiInstanceFrameF
     if (findSeqList.isEmpty()) {
       return -1;
     }
-    int res = 0;
-    if (!graphComboBox.getSelectedItem().toString().equals(graphDefaultText)) {
-      for (GenericGraphBox box : data.getBoxes()) {
-        if (FindAndReplace.isSeq(data.getGraphicalZone(), findSeqList, box, false, caseSensitiveSCheckBox.isSelected
-          (), useRegularExpressionsSCheckBox.isSelected())) {
-          res++;
-        }
-      }
-    } else {
-      for (GraphFrame f : graphFrames) {
-        for (GenericGraphBox box : f.getGraphicalZone().getBoxes()) {
-          if (FindAndReplace.isSeq(f.getGraphicalZone(), findSeqList, box, false, caseSensitiveSCheckBox.isSelected()
-            , useRegularExpressionsSCheckBox.isSelected())) {
-            res++;
-          }
-        }
-      }
-    }
+    int res = FindAndReplace.countSeq(getSequenceSearchedZones(), createSequenceQuery());
     String msg;
     switch (res) {
       case 0:
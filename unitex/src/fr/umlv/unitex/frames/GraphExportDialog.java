@@ -23,15 +23,6 @@ package fr.umlv.unitex.frames;
 import java.awt.BorderLayout;
 import java.awt.Cursor;
 import java.awt.FlowLayout;
-import java.awt.Graphics2D;
-import javax.imageio.IIOImage;
-import javax.imageio.ImageIO;
-import javax.imageio.ImageTypeSpecifier;
-import javax.imageio.ImageWriteParam;
-import javax.imageio.ImageWriter;
-import javax.imageio.metadata.IIOMetadata;
-import javax.imageio.metadata.IIOMetadataNode;
-import javax.imageio.stream.ImageOutputStream;
 import javax.swing.JButton;
 import javax.swing.JDialog;
 import javax.swing.JFileChooser;
@@ -43,6 +34,7 @@ import javax.swing.filechooser.FileNameExtensionFilter;
 
 import fr.umlv.unitex.graphrendering.DrawGraphParams;
 import fr.umlv.unitex.graphrendering.GenericGraphicalZone;
+import fr.umlv.unitex.graphrendering.GraphExporter;
 import fr.umlv.unitex.utils.KeyUtil;
 
 import javax.swing.JTextField;
@@ -52,7 +44,6 @@ import javax.swing.LayoutStyle.ComponentPlacement;
 import javax.swing.JLabel;
 import java.io.File;
 import java.io.IOException;
-import java.util.Iterator;
 import java.awt.event.ActionListener;
 import java.awt.event.ActionEvent;
 import java.awt.image.BufferedImage;
@@ -63,8 +54,6 @@ import javax.swing.JCheckBox;
 import javax.swing.event.ChangeListener;
 import javax.swing.event.ChangeEvent;
 
-import org.w3c.dom.Element;
-
 import java.awt.Dimension;
 import javax.swing.SwingConstants;
 
@@ -420,9 +409,9 @@ public class GraphExportDialog extends JDialog {
 		File imageFile = new File(fldFileName.getText());
 
 		if (isBitmapFormat(format)) {
-			BufferedImage img = createBitmap(params);
+			BufferedImage img = GraphExporter.createBitmap(grZone, params);
 			try {
-				saveBitmap(img, params.getDpi(),
+				GraphExporter.saveBitmap(img, format, params.getDpi(),
 						params.getCompressionQuality(), imageFile);
 			} catch (IOException e) {
 				throw new RuntimeException(e);
@@ -432,122 +421,4 @@ public class GraphExportDialog extends JDialog {
 			gf.saveGraphAsAnSVG(imageFile);
 		}
 	}
-
-	private BufferedImage createBitmap(DrawGraphParams params) {
-		int w = (int) Math.round(grZone.getWidth() * params.getTotalScale());
-		int h = (int) Math.round(grZone.getHeight() * params.getTotalScale());
-
-		final BufferedImage image = new BufferedImage(w, h,
-				BufferedImage.TYPE_INT_RGB);
-		Graphics2D g = image.createGraphics();
-		g.setBackground(params.getBackgroundColor());
-		g.clearRect(0, 0, w, h);
-		grZone.drawGraph(g, params);
-		BufferedImage cropedImage = image;
-		if (params.isCrop()) {
-			int bgcolor = params.getBackgroundColor().getRGB();
-			int width = image.getWidth();
-			int height = image.getHeight();
-			int minX = w;
-			int maxX = -1;
-			int minY = h;
-			int maxY = -1;
-			for (int x = 0; x < width; x++)
-				for (int y = 0; y < height; y++)
-					if (image.getRGB(x, y) != bgcolor) {
-						if (x < minX)
-							minX = x;
-						if (x > maxX)
-							maxX = x;
-						if (y < minY)
-							minY = y;
-						if (y > maxY)
-							maxY = y;
-					}
-			if (maxX != -1) {
-				int cropX, cropW, cropY, cropH;
-				if (minX > params.getCropMarginW())
-					cropX = minX - params.getCropMarginW();
-				else
-					cropX = 0;
-				if (maxX + params.getCropMarginW() < width)
-					cropW = maxX + params.getCropMarginW() - cropX + 1;
-				else
-					cropW = width - cropX;
-				if (minY > params.getCropMarginH())
-					cropY = minY - params.getCropMarginH();
-				else
-					cropY = 0;
-				if (maxY + params.getCropMarginH() < height)
-					cropH = maxY + params.getCropMarginH() - cropY + 1;
-				else
-					cropH = height - cropY;
-				cropedImage = image.getSubimage(cropX, cropY, cropW, cropH);
-			}
-		}
-
-		return cropedImage;
-	}
-
-	private void saveBitmap(BufferedImage sourceImage, int dpi, float quality,
-			File output) throws IOException {
-
-		Iterator<ImageWriter> it = ImageIO
-				.getImageWritersByFormatName(formatName(format));
-		boolean found = false;
-		while (it.hasNext() && !found) {
-			ImageWriter w = it.next();
-			ImageWriteParam wp = w.getDefaultWriteParam();
-			ImageTypeSpecifier ts = ImageTypeSpecifier
-					.createFromBufferedImageType(BufferedImage.TYPE_INT_RGB);
-			IIOMetadata meta = w.getDefaultImageMetadata(ts, wp);
-			if (!meta.isReadOnly() && meta.isStandardMetadataFormatSupported()) {
-				found = true;
-
-				if (format == FORMAT_PNG) {
-					double dpmm = dpi / 25.4;
-
-					IIOMetadataNode hor = new IIOMetadataNode(
-							"HorizontalPixelSize");
-					hor.setAttribute("value", Double.toString(dpmm));
-
-					IIOMetadataNode ver = new IIOMetadataNode(
-							"VerticalPixelSize");
-					ver.setAttribute("value", Double.toString(dpmm));
-
-					IIOMetadataNode dim = new IIOMetadataNode("Dimension");
-					dim.appendChild(hor);
-					dim.appendChild(ver);
-
-					IIOMetadataNode root = new IIOMetadataNode(
-							"javax_imageio_1.0");
-					root.appendChild(dim);
-
-					meta.mergeTree("javax_imageio_1.0", root);
-				} else if (format == FORMAT_JPEG) {
-					Element tree = (Element) meta
-							.getAsTree("javax_imageio_jpeg_image_1.0");
-					Element jfif = (Element) tree.getElementsByTagName(
-							"app0JFIF").item(0);
-					jfif.setAttribute("Xdensity", Integer.toString(dpi));
-					jfif.setAttribute("Ydensity", Integer.toString(dpi));
-					jfif.setAttribute("resUnits", "1"); // density is dots per
-														// inch
-					wp.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
-					wp.setCompressionQuality(quality);
-					meta.mergeTree("javax_imageio_jpeg_image_1.0", tree);
-				}
-
-				ImageOutputStream stream = ImageIO
-						.createImageOutputStream(output);
-				try {
-					w.setOutput(stream);
-					w.write(meta, new IIOImage(sourceImage, null, meta), wp);
-				} finally {
-					stream.close();
-				}
-
-			}
-		}
-	}
 }
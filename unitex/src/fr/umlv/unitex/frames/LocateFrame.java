@@ -401,7 +401,8 @@ public class LocateFrame extends JInternalFrame {
 				Grf2Fst2Command grfCmd = new Grf2Fst2Command().grf(grf)
 						.enableLoopAndRecursionDetection(true)
 						.tokenizationMode(null, grf).repositories()
-						.emitEmptyGraphWarning().displayGraphNames();
+						.emitEmptyGraphWarning().displayGraphNames()
+						.skipIfUpToDate();
 				if (debug.isSelected())
 					grfCmd = grfCmd.debug();
 				commands.addCommand(grfCmd);
@@ -466,7 +466,7 @@ public class PreprocessDialog extends JDialog {
 				final Grf2Fst2Command grfCmd = new Grf2Fst2Command().grf(grf)
 						.enableLoopAndRecursionDetection(true)
 						.tokenizationMode(null, grf).emitEmptyGraphWarning()
-						.displayGraphNames().repositories();
+						.displayGraphNames().repositories().skipIfUpToDate();
 				commands.addCommand(grfCmd);
 				String fst2Name = grfName.substring(0, grfName.length() - 3);
 				fst2Name = fst2Name + "fst2";
@@ -508,7 +508,8 @@ public class PreprocessDialog extends JDialog {
 				final Grf2Fst2Command grfCmd = new Grf2Fst2Command().grf(grf)
 						.enableLoopAndRecursionDetection(true)
 						.tokenizationMode(null, grf).repositories()
-						.emitEmptyGraphWarning().displayGraphNames();
+						.emitEmptyGraphWarning().displayGraphNames()
+						.skipIfUpToDate();
 				commands.addCommand(grfCmd);
 				String fst2Name = grfName.substring(0, grfName.length() - 3);
 				fst2Name = fst2Name + "fst2";
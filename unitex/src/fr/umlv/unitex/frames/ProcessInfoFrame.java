@@ -157,7 +157,7 @@ public class ProcessInfoFrame extends JInternalFrame {
 			public void actionPerformed(ActionEvent arg0){
 				String s = "";
 				for(int i=0; i < stderrList.getModel().getSize(); i++){
-					Couple c = (Couple) stderrList.getModel().get(i);
+					Couple c = stderrList.getModel().get(i);
 					s = s + c.getString() + "\n";}
 				Clipboard clipboard = Toolkit.getDefaultToolkit().getSystemClipboard();
 				StringSelection selection = new StringSelection(s);
@@ -22,6 +22,8 @@ package fr.umlv.unitex.frames;
 
 import java.awt.BorderLayout;
 import java.awt.Component;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
 import java.io.File;
 
 import javax.swing.JPanel;
@@ -29,22 +31,36 @@ import javax.swing.JScrollPane;
 import javax.swing.JTable;
 import javax.swing.ScrollPaneConstants;
 import javax.swing.SwingConstants;
+import javax.swing.event.InternalFrameAdapter;
+import javax.swing.event.InternalFrameEvent;
+import javax.swing.event.TableModelEvent;
+import javax.swing.event.TableModelListener;
 import javax.swing.table.DefaultTableCellRenderer;
 import javax.swing.table.TableCellRenderer;
-import javax.swing.table.TableModel;
-import javax.swing.table.TableRowSorter;
 
 import fr.umlv.unitex.config.ConfigManager;
+import fr.umlv.unitex.stats.StatisticsTableModel;
 import fr.umlv.unitex.stats.StatisticsTableModelMode0;
 import fr.umlv.unitex.stats.StatisticsTableModelMode1;
 import fr.umlv.unitex.stats.StatisticsTableModelMode2;
 import fr.umlv.unitex.utils.KeyUtil;
 
 public class StatisticsFrame extends TabbableInternalFrame {
+	/* The rows used to compute the preferred widths of the columns */
+	private static final int MAX_ROWS_FOR_WIDTHS = 1000;
+
 	StatisticsFrame(File file, int mode) {
 		super("Statistics", true, true, true, true);
 		final JPanel top = new JPanel(new BorderLayout());
 		final JTable table = createTable(file, mode);
+		final StatisticsTableModel model = (StatisticsTableModel) table
+				.getModel();
+		addInternalFrameListener(new InternalFrameAdapter() {
+			@Override
+			public void internalFrameClosing(InternalFrameEvent e) {
+				model.close();
+			}
+		});
 		table.setFont(ConfigManager.getManager().getTextFont(null));
 		final JScrollPane scroll = new JScrollPane(table);
 		scroll.setHorizontalScrollBarPolicy(ScrollPaneConstants.HORIZONTAL_SCROLLBAR_AS_NEEDED);
@@ -77,37 +93,77 @@ public class StatisticsFrame extends TabbableInternalFrame {
 	};
 
 	private JTable createTable(File file, int mode) {
+		final StatisticsTableModel model;
 		JTable t = null;
 		switch (mode) {
 		case 0: {
-			t = new JTable(new StatisticsTableModelMode0(file));
+			model = new StatisticsTableModelMode0(file);
+			t = new JTable(model);
 			t.getColumnModel().getColumn(0)
 					.setCellRenderer(rightJustifiedRenderer);
 			t.getColumnModel().getColumn(1).setCellRenderer(centeredRenderer);
 			break;
 		}
 		case 1: {
-			t = new JTable(new StatisticsTableModelMode1(file));
+			model = new StatisticsTableModelMode1(file);
+			t = new JTable(model);
 			break;
 		}
 		case 2: {
-			t = new JTable(new StatisticsTableModelMode2(file));
+			model = new StatisticsTableModelMode2(file);
+			t = new JTable(model);
 			break;
 		}
 		default:
 			throw new IllegalArgumentException("Invalid mode: " + mode);
 		}
 		setColumnsToTheirPreferredWidth(t);
-		final TableRowSorter<TableModel> sorter = new TableRowSorter<TableModel>(
-				t.getModel());
-		t.setRowSorter(sorter);
+		/*
+		 * We don't use a TableRowSorter, since it would read all the rows in
+		 * the EDT. The model sorts its rows itself in background
+		 */
+		final JTable table = t;
+		t.getTableHeader().addMouseListener(new MouseAdapter() {
+			@Override
+			public void mouseClicked(MouseEvent e) {
+				final int column = table.columnAtPoint(e.getPoint());
+				if (column != -1) {
+					model.sort(table.convertColumnIndexToModel(column));
+				}
+			}
+		});
+		model.addTableModelListener(new TableModelListener() {
+			@Override
+			public void tableChanged(TableModelEvent e) {
+				if (e.getLastRow() == Integer.MAX_VALUE) {
+					/* The rows have been sorted */
+					updateHeaders(table, model);
+				}
+			}
+		});
 		return t;
 	}
 
+	/**
+	 * Shows the sort order in the header of the sorted column.
+	 */
+	static void updateHeaders(JTable t, StatisticsTableModel model) {
+		for (int i = 0; i < t.getColumnCount(); i++) {
+			final int column = t.convertColumnIndexToModel(i);
+			String name = model.getColumnName(column);
+			if (column == model.getSortColumn()) {
+				name = name + (model.isSortAscending() ? " \u25B2" : " \u25BC");
+			}
+			t.getColumnModel().getColumn(i).setHeaderValue(name);
+		}
+		t.getTableHeader().repaint();
+	}
+
 	private void setColumnsToTheirPreferredWidth(JTable t) {
 		for (int i = 0; i < t.getColumnCount(); i++) {
 			int width = 75;
-			for (int j = 0; j < t.getRowCount(); j++) {
+			final int rows = Math.min(t.getRowCount(), MAX_ROWS_FOR_WIDTHS);
+			for (int j = 0; j < rows; j++) {
 				final TableCellRenderer r = t.getCellRenderer(j, i);
 				final Component c = r.getTableCellRendererComponent(t,
 						t.getValueAt(j, i), false, false, j, i);
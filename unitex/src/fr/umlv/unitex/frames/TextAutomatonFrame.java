@@ -44,6 +44,8 @@ import fr.umlv.unitex.process.ToDo;
 import fr.umlv.unitex.process.commands.*;
 import fr.umlv.unitex.tfst.Bounds;
 import fr.umlv.unitex.tfst.TagFilter;
+import fr.umlv.unitex.tfst.TfstReader;
+import fr.umlv.unitex.tfst.TfstSentence;
 import fr.umlv.unitex.tfst.TfstTableModel;
 import fr.umlv.unitex.tfst.TokensInfo;
 import fr.umlv.unitex.utils.KeyUtil;
@@ -110,6 +112,9 @@ public class TextAutomatonFrame extends TfstFrame {
 	File text_tfst;
 	File elag_tfst;
 	File elagsentence_grf;
+	/* Readers used to decode sentences without running Tfst2Grf */
+	TfstReader tfstReader;
+	TfstReader elagTfstReader;
 	boolean isAcurrentLoadingThread = false;
 	boolean isAcurrentElagLoadingThread = false;
 	Process currentElagLoadingProcess = null;
@@ -779,7 +784,12 @@ public class TextAutomatonFrame extends TfstFrame {
 		elag_tfst = new File(Config.getCurrentSntDir(), "text-elag.tfst");
 		elagsentence_grf = new File(Config.getCurrentSntDir(),
 				"currelagsentence.grf");
-		sentence_count = readSentenceCount(text_tfst);
+		tfstReader = openTfstReader(tfstReader, text_tfst);
+		if (tfstReader != null) {
+			sentence_count = tfstReader.getSentenceCount();
+		} else {
+			sentence_count = readSentenceCount(text_tfst);
+		}
 		String s = " " + sentence_count;
 		s = s + " sentence";
 		if (sentence_count > 1)
@@ -872,34 +882,30 @@ public class TextAutomatonFrame extends TfstFrame {
 		isAcurrentLoadingThread = true;
 		graphicalZone.empty();
 		sentenceTextArea.setText("");
-		Tfst2GrfCommand cmd = new Tfst2GrfCommand().automaton(text_tfst)
-				.sentence(z);
-		cmd = cmd.font(ConfigManager.getManager().getInputFont(null).getName())
-				.fontSize(ConfigManager.getManager().getInputFontSize(null));
-		Console.addCommand(cmd.getCommandLine(), false, Log.getCurrentLogID());
-		Process p;
-		try {
-			p = Runtime.getRuntime().exec(cmd.getCommandArguments(true));
-			final BufferedInputStream in = new BufferedInputStream(
-					p.getInputStream());
-			final BufferedInputStream err = new BufferedInputStream(
-					p.getErrorStream());
-			new EatStreamThread(in).start();
-			new EatStreamThread(err).start();
-			p.waitFor();
-		} catch (final IOException e1) {
-			e1.printStackTrace();
-		} catch (final InterruptedException e1) {
-			e1.printStackTrace();
+		tfstReader = openTfstReader(tfstReader, text_tfst);
+		final TfstSentence decoded = decodeSentence(tfstReader, z);
+		final String text;
+		if (decoded != null) {
+			text = decoded.getText();
+			showSentenceText(text);
+			TokensInfo.setTokensInfo(decoded.getTokens(), text);
+		} else {
+			Tfst2GrfCommand cmd = new Tfst2GrfCommand().automaton(text_tfst)
+					.sentence(z);
+			cmd = cmd.font(ConfigManager.getManager().getInputFont(null).getName())
+					.fontSize(ConfigManager.getManager().getInputFontSize(null));
+			runTfst2Grf(cmd);
+			text = readSentenceText();
+			TokensInfo.loadTokensInfo(sentence_tok, text);
 		}
-		final String text = readSentenceText();
-		TokensInfo.loadTokensInfo(sentence_tok, text);
 		final File f = new File(sentence_modified + String.valueOf(z) + ".grf");
 		final boolean isSentenceModified = f.exists();
 		if (isSentenceModified) {
 			loadSentenceGraph(new File(sentence_modified.getAbsolutePath()
 					+ String.valueOf(z) + ".grf"),n);
 			setModified(isSentenceModified);
+		} else if (decoded != null) {
+			loadSentenceGraph(GraphIO.createSentenceGraph(decoded), n);
 		} else {
 			loadSentenceGraph(sentence_grf,n);
 		}
@@ -923,10 +929,59 @@ public class TextAutomatonFrame extends TfstFrame {
 			isAcurrentElagLoadingThread = false;
 			return false;
 		}
-		final Tfst2GrfCommand cmd = new Tfst2GrfCommand().automaton(elag_tfst)
-				.sentence(z).output("currelagsentence")
-				.font(ConfigManager.getManager().getInputFont(null).getName())
-				.fontSize(ConfigManager.getManager().getInputFontSize(null));
+		elagTfstReader = openTfstReader(elagTfstReader, elag_tfst);
+		final TfstSentence decoded = decodeSentence(elagTfstReader, z);
+		if (decoded != null) {
+			setModified(false);
+			elaggraph.setup(GraphIO.createSentenceGraph(decoded), -1);
+		} else {
+			final Tfst2GrfCommand cmd = new Tfst2GrfCommand().automaton(elag_tfst)
+					.sentence(z).output("currelagsentence")
+					.font(ConfigManager.getManager().getInputFont(null).getName())
+					.fontSize(ConfigManager.getManager().getInputFontSize(null));
+			runTfst2Grf(cmd);
+			loadElagSentenceGraph(elagsentence_grf);
+		}
+		isAcurrentElagLoadingThread = false;
+		return true;
+	}
+
+	/**
+	 * Returns a reader for the given .tfst file, reusing the current one if the
+	 * file has not changed since it was opened. Returns <code>null</code> if
+	 * the file cannot be decoded directly, in which case Tfst2Grf is used.
+	 */
+	private static TfstReader openTfstReader(TfstReader current, File f) {
+		if (current != null) {
+			if (current.getFile().equals(f) && !current.isStale()) {
+				return current;
+			}
+			current.close();
+		}
+		if (!f.exists()) {
+			return null;
+		}
+		try {
+			return new TfstReader(f);
+		} catch (final IOException e) {
+			e.printStackTrace();
+			return null;
+		}
+	}
+
+	private static TfstSentence decodeSentence(TfstReader reader, int n) {
+		if (reader == null || n > reader.getSentenceCount()) {
+			return null;
+		}
+		try {
+			return reader.getSentence(n);
+		} catch (final IOException e) {
+			e.printStackTrace();
+			return null;
+		}
+	}
+
+	private static void runTfst2Grf(Tfst2GrfCommand cmd) {
 		Console.addCommand(cmd.getCommandLine(), false, Log.getCurrentLogID());
 		try {
 			final Process p = Runtime.getRuntime().exec(
@@ -938,14 +993,11 @@ public class TextAutomatonFrame extends TfstFrame {
 			new EatStreamThread(in).start();
 			new EatStreamThread(err).start();
 			p.waitFor();
-		} catch (final IOException e1) {
-			e1.printStackTrace();
+		} catch (final IOException e) {
+			e.printStackTrace();
 		} catch (final InterruptedException e) {
 			e.printStackTrace();
 		}
-		loadElagSentenceGraph(elagsentence_grf);
-		isAcurrentElagLoadingThread = false;
-		return true;
 	}
 
 	public void changeAntialiasingValue() {
@@ -965,9 +1017,7 @@ public class TextAutomatonFrame extends TfstFrame {
 			if (s == null || s.equals("")) {
 				return "";
 			}
-			sentenceTextArea.setFont(ConfigManager.getManager().getTextFont(
-					null));
-			sentenceTextArea.setText(s);
+			showSentenceText(s);
 			br.close();
 		} catch (final IOException e) {
 			e.printStackTrace();
@@ -975,12 +1025,22 @@ public class TextAutomatonFrame extends TfstFrame {
 		return s;
 	}
 
+	private void showSentenceText(String s) {
+		sentenceTextArea.setFont(ConfigManager.getManager().getTextFont(null));
+		sentenceTextArea.setText(s);
+	}
+
 	boolean loadSentenceGraph(File file,int sentence) {
-		setModified(false);
 		final GraphIO g = GraphIO.loadGraph(file, true, true);
 		if (g == null) {
+			setModified(false);
 			return false;
 		}
+		return loadSentenceGraph(g, sentence);
+	}
+
+	boolean loadSentenceGraph(GraphIO g,int sentence) {
+		setModified(false);
 		textfield.setFont(g.getInfo().getInput().getFont());
 		graphicalZone.setup(g,sentence);
 		tfstTableModel.init(g.getBoxes());
@@ -702,7 +702,7 @@ public class TransducerListConfigurationFrame extends JInternalFrame implements
 								.grf(graphFile)
 								.enableLoopAndRecursionDetection(true)
 								.alphabetTokenization(f_alphabet)
-                .repositories());
+                .repositories().skipIfUpToDate());
 
 					}
 					
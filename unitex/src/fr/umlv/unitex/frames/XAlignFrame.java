@@ -30,7 +30,6 @@ import java.awt.event.ActionListener;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.nio.MappedByteBuffer;
 import java.util.ArrayList;
 
 import javax.swing.BorderFactory;
@@ -52,6 +51,7 @@ import fr.umlv.unitex.common.project.manager.GlobalProjectManager;
 import fr.umlv.unitex.config.Config;
 import fr.umlv.unitex.config.ConfigManager;
 import fr.umlv.unitex.files.FileUtil;
+import fr.umlv.unitex.io.MappedFile;
 import fr.umlv.unitex.listeners.AlignmentListener;
 import fr.umlv.unitex.process.Launcher;
 import fr.umlv.unitex.process.ToDo;
@@ -95,15 +95,16 @@ public class XAlignFrame extends JInternalFrame {
 		tryToFindFonts(f1, f2);
 		setSize(800, 600);
 		/* First text */
-		final MappedByteBuffer buffer1 = XMLTextLoader
-				.buildMappedByteBuffer(f1);
-		final MappedByteBuffer buffer2 = XMLTextLoader
-				.buildMappedByteBuffer(f2);
-		text1 = new XMLTextModelImpl(buffer1);
-		text2 = new XMLTextModelImpl(buffer2);
-		final XMLTextLoader loader1 = new XMLTextLoader(text1, buffer1);
+		final MappedFile file1 = XMLTextLoader.map(f1);
+		final MappedFile file2 = XMLTextLoader.map(f2);
+		final XMLTextModelImpl textModel1 = new XMLTextModelImpl(file1);
+		final XMLTextModelImpl textModel2 = new XMLTextModelImpl(file2);
+		text1 = textModel1;
+		text2 = textModel2;
+		/* Texts and alignments are loaded in the background */
+		final XMLTextLoader loader1 = new XMLTextLoader(textModel1, file1);
 		loader1.load();
-		final XMLTextLoader loader2 = new XMLTextLoader(text2, buffer2);
+		final XMLTextLoader loader2 = new XMLTextLoader(textModel2, file2);
 		loader2.load();
 		model = new XAlignModelImpl(text1, text2);
 		concordModel1 = new ConcordanceModelImpl(text1, true, model);
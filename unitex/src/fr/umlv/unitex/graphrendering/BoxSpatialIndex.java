@@ -0,0 +1,339 @@
+/*
+ * Unitex
+ *
+ * Copyright (C) 2001-2021 Université Paris-Est Marne-la-Vallée <unitex@univ-mlv.fr>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA.
+ *
+ */
+package fr.umlv.unitex.graphrendering;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * This class is a uniform grid over the boxes and the transitions of a graph,
+ * used to find the items that intersect a given rectangle without looking at
+ * all of them. Boxes are numbered as in the graph box list, and transitions are
+ * numbered box after box, in the order of the transition lists, so that
+ * sorting item numbers gives back the drawing order.
+ *
+ * Since box fields are modified in many places, the index does not rely on
+ * notifications: {@link #update(ArrayList, Graphics2D)} compares a signature
+ * of the box geometry and transitions with the one of the last build, and
+ * rebuilds the grid only if they differ.
+ */
+class BoxSpatialIndex {
+	private static final int CELL_SIZE = 256;
+	/* Items that span more cells than this are tested for every query */
+	private static final int MAX_CELLS_PER_ITEM = 64;
+	/*
+	 * What is drawn around a box: outputs, ranges, variable marks, coverage
+	 * information
+	 */
+	private static final int BOX_MARGIN = 50;
+
+	private long signature;
+	private boolean built;
+	private GenericGraphBox[] boxes = new GenericGraphBox[0];
+	/* boxBounds[4*i..4*i+3] = x1,y1,x2,y2 of the painted area of the box #i */
+	private int[] boxBounds = new int[0];
+	private int nTransitions;
+	private GenericGraphBox[] transitionSrc = new GenericGraphBox[0];
+	private GenericGraphBox[] transitionDest = new GenericGraphBox[0];
+	private int[] transitionBounds = new int[0];
+	private final HashMap<Long, IntList> boxCells = new HashMap<Long, IntList>();
+	private final HashMap<Long, IntList> transitionCells = new HashMap<Long, IntList>();
+	private final IntList largeBoxes = new IntList();
+	private final IntList largeTransitions = new IntList();
+	/* Used to avoid reporting an item twice when it is in several cells */
+	private int[] boxStamps = new int[0];
+	private int[] transitionStamps = new int[0];
+	private int stamp;
+
+	private static class IntList {
+		int[] values = new int[4];
+		int size;
+
+		void add(int n) {
+			if (size == values.length) {
+				values = Arrays.copyOf(values, 2 * size);
+			}
+			values[size++] = n;
+		}
+	}
+
+	/**
+	 * Makes sure that the index describes the given boxes. If a graphical
+	 * context is given, boxes that have never been drawn are first sized with
+	 * it, as they would be by their first drawing.
+	 */
+	void update(ArrayList<GenericGraphBox> graphBoxes, Graphics2D g) {
+		if (g != null) {
+			for (final GenericGraphBox b : graphBoxes) {
+				b.updateWithContext(g);
+			}
+		}
+		final long sig = computeSignature(graphBoxes);
+		if (built && sig == signature && graphBoxes.size() == boxes.length) {
+			return;
+		}
+		signature = sig;
+		build(graphBoxes);
+	}
+
+	private static long computeSignature(ArrayList<GenericGraphBox> graphBoxes) {
+		long h = 17;
+		for (final GenericGraphBox b : graphBoxes) {
+			h = 31 * h + System.identityHashCode(b);
+			h = 31 * h + b.X;
+			h = 31 * h + b.X1;
+			h = 31 * h + b.Y1;
+			h = 31 * h + b.Width;
+			h = 31 * h + b.Height;
+			h = 31 * h + b.X_in;
+			h = 31 * h + b.Y_in;
+			h = 31 * h + b.X_out;
+			h = 31 * h + b.Y_out;
+			final String transduction = b.transduction;
+			h = 31 * h + (transduction == null ? 0 : transduction.length());
+			for (final GenericGraphBox dest : b.transitions) {
+				h = 31 * h + System.identityHashCode(dest);
+			}
+			h = 31 * h + b.transitions.size();
+		}
+		return h;
+	}
+
+	private void build(ArrayList<GenericGraphBox> graphBoxes) {
+		built = true;
+		final int n = graphBoxes.size();
+		boxes = graphBoxes.toArray(new GenericGraphBox[n]);
+		boxBounds = new int[4 * n];
+		boxStamps = new int[n];
+		nTransitions = 0;
+		for (final GenericGraphBox b : boxes) {
+			nTransitions += b.transitions.size();
+		}
+		transitionSrc = new GenericGraphBox[nTransitions];
+		transitionDest = new GenericGraphBox[nTransitions];
+		transitionBounds = new int[4 * nTransitions];
+		transitionStamps = new int[nTransitions];
+		boxCells.clear();
+		transitionCells.clear();
+		largeBoxes.size = 0;
+		largeTransitions.size = 0;
+		for (int i = 0; i < n; i++) {
+			final GenericGraphBox b = boxes[i];
+			int extraWidth = 0;
+			int extraHeight = 0;
+			if (b.transduction != null && b.transduction.length() > 0) {
+				/* A generous estimation of the output size */
+				final int size = b.parentGraphicalZone == null ? 20
+						: b.parentGraphicalZone.getGraphPresentationInfo()
+								.getOutput().getFont().getSize();
+				extraWidth = b.transduction.length() * size;
+				extraHeight = 2 * size;
+			}
+			boxBounds[4 * i] = Math.min(Math.min(b.X, b.X1), b.X_in)
+					- BOX_MARGIN;
+			boxBounds[4 * i + 1] = b.Y1 - BOX_MARGIN;
+			boxBounds[4 * i + 2] = Math.max(
+					Math.max(b.X, b.X1) + b.Width, b.X_out)
+					+ BOX_MARGIN + extraWidth;
+			boxBounds[4 * i + 3] = b.Y1 + b.Height + BOX_MARGIN + extraHeight;
+			insert(boxCells, largeBoxes, boxBounds, i);
+		}
+		int t = 0;
+		for (final GenericGraphBox src : boxes) {
+			for (final GenericGraphBox dest : src.transitions) {
+				transitionSrc[t] = src;
+				transitionDest[t] = dest;
+				/*
+				 * Curves between two boxes never go further than the sum of
+				 * the diameters used by GenericGraphBox.drawTransition
+				 */
+				final int margin = 30 + src.Height / 2 + dest.Height / 2;
+				transitionBounds[4 * t] = Math.min(
+						Math.min(src.X1, src.X_in),
+						Math.min(dest.X1, dest.X_in))
+						- margin;
+				transitionBounds[4 * t + 1] = Math.min(src.Y1, dest.Y1)
+						- margin;
+				transitionBounds[4 * t + 2] = Math.max(
+						Math.max(src.X1 + src.Width, src.X_out),
+						Math.max(dest.X1 + dest.Width, dest.X_out))
+						+ margin;
+				transitionBounds[4 * t + 3] = Math.max(src.Y1 + src.Height,
+						dest.Y1 + dest.Height) + margin;
+				insert(transitionCells, largeTransitions, transitionBounds, t);
+				t++;
+			}
+		}
+	}
+
+	private static long cellKey(int cx, int cy) {
+		return (((long) cx) << 32) ^ (cy & 0xFFFFFFFFL);
+	}
+
+	private static int cell(int coordinate) {
+		return Math.floorDiv(coordinate, CELL_SIZE);
+	}
+
+	private static void insert(HashMap<Long, IntList> cells, IntList large,
+			int[] bounds, int item) {
+		final int cx1 = cell(bounds[4 * item]);
+		final int cy1 = cell(bounds[4 * item + 1]);
+		final int cx2 = cell(bounds[4 * item + 2]);
+		final int cy2 = cell(bounds[4 * item + 3]);
+		if ((long) (cx2 - cx1 + 1) * (cy2 - cy1 + 1) > MAX_CELLS_PER_ITEM) {
+			large.add(item);
+			return;
+		}
+		for (int cx = cx1; cx <= cx2; cx++) {
+			for (int cy = cy1; cy <= cy2; cy++) {
+				final Long key = cellKey(cx, cy);
+				IntList list = cells.get(key);
+				if (list == null) {
+					list = new IntList();
+					cells.put(key, list);
+				}
+				list.add(item);
+			}
+		}
+	}
+
+	/**
+	 * Returns, in increasing order, the numbers of the items whose bounds
+	 * intersect the given rectangle.
+	 */
+	private int[] query(HashMap<Long, IntList> cells, IntList large,
+			int[] bounds, int[] stamps, Rectangle r) {
+		stamp++;
+		if (stamp == 0) {
+			Arrays.fill(boxStamps, 0);
+			Arrays.fill(transitionStamps, 0);
+			stamp = 1;
+		}
+		final IntList res = new IntList();
+		final int x1 = r.x;
+		final int y1 = r.y;
+		final int x2 = r.x + r.width;
+		final int y2 = r.y + r.height;
+		for (int i = 0; i < large.size; i++) {
+			collect(large.values[i], bounds, stamps, x1, y1, x2, y2, res);
+		}
+		final int cx1 = cell(x1);
+		final int cy1 = cell(y1);
+		final int cx2 = cell(x2);
+		final int cy2 = cell(y2);
+		if ((long) (cx2 - cx1 + 1) * (cy2 - cy1 + 1) > cells.size()) {
+			/* Cheaper to visit the non empty cells than the rectangle ones */
+			for (final IntList list : cells.values()) {
+				for (int i = 0; i < list.size; i++) {
+					collect(list.values[i], bounds, stamps, x1, y1, x2, y2,
+							res);
+				}
+			}
+		} else {
+			for (int cx = cx1; cx <= cx2; cx++) {
+				for (int cy = cy1; cy <= cy2; cy++) {
+					final IntList list = cells.get(cellKey(cx, cy));
+					if (list == null) {
+						continue;
+					}
+					for (int i = 0; i < list.size; i++) {
+						collect(list.values[i], bounds, stamps, x1, y1, x2, y2,
+								res);
+					}
+				}
+			}
+		}
+		final int[] items = Arrays.copyOf(res.values, res.size);
+		Arrays.sort(items);
+		return items;
+	}
+
+	private void collect(int item, int[] bounds, int[] stamps, int x1, int y1,
+			int x2, int y2, IntList res) {
+		if (stamps[item] == stamp) {
+			return;
+		}
+		stamps[item] = stamp;
+		if (bounds[4 * item] <= x2 && bounds[4 * item + 2] >= x1
+				&& bounds[4 * item + 1] <= y2 && bounds[4 * item + 3] >= y1) {
+			res.add(item);
+		}
+	}
+
+	/**
+	 * Returns, in drawing order, the numbers of the boxes that may draw
+	 * something in the given rectangle.
+	 */
+	int[] getBoxes(Rectangle r) {
+		return query(boxCells, largeBoxes, boxBounds, boxStamps, r);
+	}
+
+	/**
+	 * Returns, in drawing order, the numbers of the transitions that may draw
+	 * something in the given rectangle.
+	 */
+	int[] getTransitions(Rectangle r) {
+		return query(transitionCells, largeTransitions, transitionBounds,
+				transitionStamps, r);
+	}
+
+	/**
+	 * Returns a rectangle that contains everything the boxes and the
+	 * transitions may draw, or null if there is no box.
+	 */
+	Rectangle getBounds() {
+		if (boxes.length == 0) {
+			return null;
+		}
+		int x1 = Integer.MAX_VALUE;
+		int y1 = Integer.MAX_VALUE;
+		int x2 = Integer.MIN_VALUE;
+		int y2 = Integer.MIN_VALUE;
+		for (int i = 0; i < boxBounds.length; i += 4) {
+			x1 = Math.min(x1, boxBounds[i]);
+			y1 = Math.min(y1, boxBounds[i + 1]);
+			x2 = Math.max(x2, boxBounds[i + 2]);
+			y2 = Math.max(y2, boxBounds[i + 3]);
+		}
+		for (int i = 0; i < 4 * nTransitions; i += 4) {
+			x1 = Math.min(x1, transitionBounds[i]);
+			y1 = Math.min(y1, transitionBounds[i + 1]);
+			x2 = Math.max(x2, transitionBounds[i + 2]);
+			y2 = Math.max(y2, transitionBounds[i + 3]);
+		}
+		return new Rectangle(x1, y1, x2 - x1 + 1, y2 - y1 + 1);
+	}
+
+	GenericGraphBox getBox(int n) {
+		return boxes[n];
+	}
+
+	GenericGraphBox getTransitionSource(int n) {
+		return transitionSrc[n];
+	}
+
+	GenericGraphBox getTransitionDestination(int n) {
+		return transitionDest[n];
+	}
+}
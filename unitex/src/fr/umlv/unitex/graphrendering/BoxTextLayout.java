@@ -0,0 +1,190 @@
+/*
+ * Unitex
+ *
+ * Copyright (C) 2001-2021 Université Paris-Est Marne-la-Vallée <unitex@univ-mlv.fr>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA.
+ *
+ */
+package fr.umlv.unitex.graphrendering;
+
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.font.FontRenderContext;
+import java.awt.font.TextLayout;
+import java.util.ArrayList;
+
+/**
+ * This class caches the text measures of a box: the metrics of the input,
+ * output and variable fonts, the width of the box lines and their text
+ * layouts. All these values depend on the font rendering context of the
+ * graphical context, which changes with the zoom, so they are computed again
+ * only when the lines, the fonts or that context change. A box has one such
+ * object to compute its size and one to be drawn, so that drawing at a given
+ * zoom does not invalidate the measures.
+ */
+class BoxTextLayout {
+	private static final String[] NO_LINES = new String[0];
+
+	private FontRenderContext frc;
+	private Font inputFont;
+	private Font outputFont;
+	private FontMetrics inputMetrics;
+	private FontMetrics outputMetrics;
+	private FontMetrics variableMetrics;
+	private String[] lines = NO_LINES;
+	private TextLayout[] layouts;
+	private int maxLineWidth = -1;
+	/* Last output and range expression measured, with their sizes */
+	private String output;
+	private int outputWidth;
+	private String range;
+	private TextLayout rangeLayout;
+
+	/**
+	 * Makes sure that the cached values describe the given lines drawn with
+	 * the given fonts in the given graphical context. The font of the context
+	 * is not modified.
+	 */
+	void validate(Graphics2D g, Font input, Font out, ArrayList<String> l,
+			int n) {
+		final FontRenderContext c = g.getFontRenderContext();
+		if (!c.equals(frc) || !input.equals(inputFont)
+				|| !out.equals(outputFont)) {
+			frc = c;
+			inputFont = input;
+			outputFont = out;
+			inputMetrics = g.getFontMetrics(input);
+			outputMetrics = g.getFontMetrics(out);
+			variableMetrics = g.getFontMetrics(GenericGraphBox.variableFont);
+			layouts = null;
+			maxLineWidth = -1;
+			output = null;
+			range = null;
+			rangeLayout = null;
+		}
+		if (!sameLines(l, n)) {
+			lines = (n == 0) ? NO_LINES : l.subList(0, n).toArray(
+					new String[n]);
+			layouts = null;
+			maxLineWidth = -1;
+		}
+	}
+
+	private boolean sameLines(ArrayList<String> l, int n) {
+		if (n != lines.length) {
+			return false;
+		}
+		for (int i = 0; i < n; i++) {
+			final String s = l.get(i);
+			if (s != lines[i] && !s.equals(lines[i])) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the height of a box line.
+	 */
+	int getLineHeight() {
+		return inputMetrics.getHeight();
+	}
+
+	/**
+	 * Returns the descent of the input font.
+	 */
+	int getDescent() {
+		return inputMetrics.getDescent();
+	}
+
+	int getCharWidth(char c) {
+		return inputMetrics.charWidth(c);
+	}
+
+	int getOutputHeight() {
+		return outputMetrics.getHeight();
+	}
+
+	int getOutputCharWidth(char c) {
+		return outputMetrics.charWidth(c);
+	}
+
+	/**
+	 * Returns the width of the given output in the output font.
+	 */
+	int getOutputWidth(String s) {
+		if (!s.equals(output)) {
+			output = s;
+			outputWidth = outputMetrics.stringWidth(s);
+		}
+		return outputWidth;
+	}
+
+	int getVariableLineHeight() {
+		return variableMetrics.getHeight();
+	}
+
+	int getVariableDescent() {
+		return variableMetrics.getDescent();
+	}
+
+	int getVariableStringWidth(String s) {
+		return variableMetrics.stringWidth(s);
+	}
+
+	/**
+	 * Returns the width of the largest line.
+	 */
+	int getMaxLineWidth() {
+		if (maxLineWidth == -1) {
+			int max = 0;
+			for (final String s : lines) {
+				final int w = inputMetrics.stringWidth(s);
+				if (max < w)
+					max = w;
+			}
+			maxLineWidth = max;
+		}
+		return maxLineWidth;
+	}
+
+	/**
+	 * Returns the text layout of the line #i in the input font, or null if
+	 * the line is empty.
+	 */
+	TextLayout getLine(int i) {
+		if (layouts == null) {
+			layouts = new TextLayout[lines.length];
+		}
+		if (layouts[i] == null && !lines[i].equals("")) {
+			layouts[i] = new TextLayout(lines[i], inputFont, frc);
+		}
+		return layouts[i];
+	}
+
+	/**
+	 * Returns the text layout of the given range expression in the input
+	 * font.
+	 */
+	TextLayout getRange(String s) {
+		if (!s.equals(range)) {
+			range = s;
+			rangeLayout = new TextLayout(s, inputFont, frc);
+		}
+		return rangeLayout;
+	}
+}
@@ -34,7 +34,7 @@ import fr.umlv.unitex.config.Config;
 import fr.umlv.unitex.config.ConfigManager;
 import fr.umlv.unitex.diff.GraphDecoratorConfig;
 import fr.umlv.unitex.exceptions.*;
-import fr.umlv.unitex.frames.GraphFrame;
+import fr.umlv.unitex.grf.GraphPresentationInfo;
 import fr.umlv.unitex.tfst.tagging.TaggingState;
 
 /**
@@ -183,12 +183,27 @@ public class GenericGraphBox {
 	public static final Font variableFont = new Font("Times New Roman",
 			Font.BOLD, 30);
 	Graphics2D context;
+	/**
+	 * Text measures used to compute the size of the box, with the font
+	 * rendering context of <code>context</code>
+	 */
+	private final BoxTextLayout measureLayout = new BoxTextLayout();
+	/**
+	 * Text measures and layouts used to draw the box, with the font rendering
+	 * context of the last graphical context it was drawn in
+	 */
+	private final BoxTextLayout drawLayout = new BoxTextLayout();
 	/**
 	 * Number of the box
 	 */
 	int identificationNumber; // number used to numerote the state
 
 	private boolean highlight = false;
+	/**
+	 * Position of the box in the box list of its graphical zone when it was
+	 * last computed
+	 */
+	private int boxNumberHint = -1;
 	private boolean isModified = false;
 
 	/**
@@ -243,7 +258,17 @@ public class GenericGraphBox {
 	}
 	
 	public int getBoxNumber() {
-		return parentGraphicalZone.graphBoxes.indexOf(this);
+		final ArrayList<GenericGraphBox> boxes = parentGraphicalZone.graphBoxes;
+		/*
+		 * This method is called for every box and transition drawn, so we
+		 * first check if the box is still where it was on the previous call
+		 */
+		if (boxNumberHint >= 0 && boxNumberHint < boxes.size()
+				&& boxes.get(boxNumberHint) == this) {
+			return boxNumberHint;
+		}
+		boxNumberHint = boxes.indexOf(this);
+		return boxNumberHint;
 	}
 
 	/**
@@ -282,8 +307,20 @@ public class GenericGraphBox {
 		return s.replace(':', File.separatorChar);
 	}
 
+	/**
+	 * Returns the file of the graph that contains this box, or null if it
+	 * has never been saved.
+	 */
+	private File getCurrentGraph() {
+		if (!(parentGraphicalZone instanceof GraphicalZone)) {
+			return null;
+		}
+		return ((GraphicalZone) parentGraphicalZone).getGraphFile();
+	}
+
 	private boolean existsGraph(int n) {
-		if (parentGraphicalZone.parentFrame == null) {
+		if (parentGraphicalZone.parentFrame == null
+				&& getCurrentGraph() == null) {
 			/*
 			 * If this method is called from a graph diff frame, we answer true
 			 * to avoid problems
@@ -332,8 +369,7 @@ public class GenericGraphBox {
 		}
 		s = s.replace(':', File.separatorChar);
 		if (!f.isAbsolute()) {
-			final File currentGraph = ((GraphFrame) parentGraphicalZone.parentFrame)
-					.getGraph();
+			final File currentGraph = getCurrentGraph();
 			if (currentGraph == null) {
 				// if we try to open a subgraph inside a newly created graph
 				// with no name
@@ -396,8 +432,7 @@ public class GenericGraphBox {
 			}
 			s = s.replace(':', File.separatorChar);
 			if (!f.isAbsolute()) {
-				final File currentGraph = ((GraphFrame) parentGraphicalZone.parentFrame)
-						.getGraph();
+				final File currentGraph = getCurrentGraph();
 				if (currentGraph == null) {
 					// if we try to open a subgraph inside a newly created graph
 					// with no name
@@ -844,9 +879,7 @@ public class GenericGraphBox {
 		final String range = getRangeOutput(transduction);
 		if (range.equals(""))
 			return;
-		final TextLayout textlayout = new TextLayout(range, parentGraphicalZone
-				.getGraphPresentationInfo().getInput().getFont(),
-				g.getFontRenderContext());
+		final TextLayout textlayout = drawLayout.getRange(range);
 		g.setColor(rangeColor);
 		g.setFont(rangeFont);
 		textlayout.draw(g, X1 + 2, Y1 - 5);
@@ -856,9 +889,7 @@ public class GenericGraphBox {
 		final String range = getRangeOutput(transduction);
 		if (range.equals(""))
 			return 0;
-		final TextLayout textlayout = new TextLayout(range, parentGraphicalZone
-				.getGraphPresentationInfo().getInput().getFont(),
-				g.getFontRenderContext());
+		final TextLayout textlayout = drawLayout.getRange(range);
 		return (int) (textlayout.getBounds().getWidth() + 10);
 	}
 
@@ -955,10 +986,8 @@ public class GenericGraphBox {
 			if (commentBox) {
 				g.setColor(Color.GREEN.darker());
 			}
-			if (!l.equals("")) {
-				final TextLayout textlayout = new TextLayout(l,
-						parentGraphicalZone.getGraphPresentationInfo()
-							.getInput().getFont(), g.getFontRenderContext());
+			final TextLayout textlayout = drawLayout.getLine(i);
+			if (textlayout != null) {
 				textlayout
 					.draw(g, X1 + 5, Y1 - descent + 3 + (i + 1) * h_ligne);
 			}
@@ -974,7 +1003,7 @@ public class GenericGraphBox {
 			g.setFont(parentGraphicalZone.getGraphPresentationInfo()
 					.getOutput().getFont());
 			g.drawString(output, X1 + 5, Y1 + Height
-					+ g.getFontMetrics().getHeight());
+					+ drawLayout.getOutputHeight());
 		}
 		drawRange(g);
 	}
@@ -1052,32 +1081,33 @@ public class GenericGraphBox {
 		}
 		g.setColor(c);
 		g.setFont(variableFont);
-		g.drawString(lines.get(0), X1 + 5, Y1 - g.getFontMetrics().getDescent()
+		g.drawString(lines.get(0), X1 + 5, Y1 - drawLayout.getVariableDescent()
 				+ get_h_variable_ligne());
 		g.setFont(parentGraphicalZone.getGraphPresentationInfo().getOutput()
 				.getFont());
 
 		final int yShift = outputVariable ?
-			Height + g.getFontMetrics().getHeight() :
-			- g.getFontMetrics().getHeight() / 2;
+			Height + drawLayout.getOutputHeight() :
+			- drawLayout.getOutputHeight() / 2;
 
 		final int xShift = closeVariable ? 
-			g.getFontMetrics().charWidth('|') / 2:
-			g.getFontMetrics().charWidth('|') * 2;
+			drawLayout.getOutputCharWidth('|') / 2:
+			drawLayout.getOutputCharWidth('|') * 2;
 
 		g.drawString(transduction, X1 + xShift, Y1 + yShift);
 	}
 
 	private void drawVariableSelected(Graphics2D g, DrawGraphParams params) {
 		Color c = params.getSelectedColor();
+		/* Here, the font of g is still the input one */
 		final int yShift = outputVariable ?
-				Height + g.getFontMetrics().getHeight() :
-					- g.getFontMetrics().getHeight() / 2;
+				Height + drawLayout.getLineHeight() :
+					- drawLayout.getLineHeight() / 2;
 		final int yFillShift = outputVariable ?
-				Height   + g.getFontMetrics().getDescent() :
-					- Height/2 - g.getFontMetrics().getDescent()/2;
-		final int xShift = closeVariable ? g.getFontMetrics().charWidth('|')/2:
-				g.getFontMetrics().charWidth('|')*2;
+				Height   + drawLayout.getDescent() :
+					- Height/2 - drawLayout.getDescent()/2;
+		final int xShift = closeVariable ? drawLayout.getCharWidth('|')/2:
+				drawLayout.getCharWidth('|')*2;
 		if (parentGraphicalZone.decorator != null) {
 			c = parentGraphicalZone.decorator.getBoxOutputColor(getBoxNumber(),c);
 		}
@@ -1085,19 +1115,15 @@ public class GenericGraphBox {
 		GraphicalToolBox.fillRect(g, X1, Y1, Width, Height);
 		g.setColor(params.getCommentColor());
 		g.setFont(variableFont);
-		g.drawString(lines.get(0), X1 + 5, Y1 - g.getFontMetrics().getDescent()
+		g.drawString(lines.get(0), X1 + 5, Y1 - drawLayout.getVariableDescent()
 			+ get_h_variable_ligne());
 		g.setColor(params.getSelectedColor());
 		GraphicalToolBox.fillRect(
 			g,
 			X1 + xShift,
 			Y1 + yFillShift,
-			g.getFontMetrics(
-				parentGraphicalZone.getGraphPresentationInfo()
-				.getOutput().getFont()).stringWidth(transduction),
-				g.getFontMetrics(
-					parentGraphicalZone.getGraphPresentationInfo()
-					.getOutput().getFont()).getHeight() - 1);
+			drawLayout.getOutputWidth(transduction),
+			drawLayout.getOutputHeight() - 1);
 		g.setColor(params.getBackgroundColor());
 		g.setFont(parentGraphicalZone.getGraphPresentationInfo().getOutput().getFont());
 		g.drawString(transduction, X1 + xShift, Y1 + yShift);
@@ -1110,18 +1136,18 @@ public class GenericGraphBox {
 	private void drawContextMark(Graphics2D g, DrawGraphParams params) {
 		g.setColor(params.getContextColor());
 		g.setFont(variableFont);
-		g.drawString(lines.get(0), X1 + 5, Y1 - g.getFontMetrics().getDescent()
+		g.drawString(lines.get(0), X1 + 5, Y1 - drawLayout.getVariableDescent()
 				+ get_h_variable_ligne());
 	}
 
 	private void drawGenericGrfMark(Graphics2D g, DrawGraphParams params) {
 		g.setColor(params.getGenericGrfColor());
 		g.setFont(variableFont);
-		g.drawString(lines.get(0), X1 + 5, Y1 - g.getFontMetrics().getDescent()
+		g.drawString(lines.get(0), X1 + 5, Y1 - drawLayout.getVariableDescent()
 				+ get_h_variable_ligne());
 		if(!"".equals(transduction)) {
 			g.drawString(transduction, X1 + 10, Y1 + Height
-					+ g.getFontMetrics().getHeight());
+					+ drawLayout.getVariableLineHeight());
 		}
 	}
 
@@ -1136,7 +1162,7 @@ public class GenericGraphBox {
 	private void drawMorphologicalModeMark(Graphics2D g, DrawGraphParams params) {
 		g.setColor(params.getMorphologicalModeColor());
 		g.setFont(variableFont);
-		g.drawString(lines.get(0), X1 + 5, Y1 - g.getFontMetrics().getDescent()
+		g.drawString(lines.get(0), X1 + 5, Y1 - drawLayout.getVariableDescent()
 				+ get_h_variable_ligne());
 	}
 
@@ -1317,10 +1343,10 @@ public class GenericGraphBox {
 						Width - 4, h_ligne);
 			}
 			g.setColor(params.getForegroundColor());
-			final TextLayout textlayout = new TextLayout(l, parentGraphicalZone
-					.getGraphPresentationInfo().getInput().getFont(),
-					g.getFontRenderContext());
-			textlayout.draw(g, X1 + 5, Y1 - descent + 3 + (i + 1) * h_ligne);
+			final TextLayout textlayout = drawLayout.getLine(i);
+			if (textlayout != null) {
+				textlayout.draw(g, X1 + 5, Y1 - descent + 3 + (i + 1) * h_ligne);
+			}
 		}
 		// prints the output, if any
 		if (parentGraphicalZone.decorator == null) {
@@ -1334,14 +1360,13 @@ public class GenericGraphBox {
 			g.setFont(parentGraphicalZone.getGraphPresentationInfo()
 					.getOutput().getFont());
 			g.drawString(output, X1 + 5, Y1 + Height
-					+ g.getFontMetrics().getHeight());
+					+ drawLayout.getOutputHeight());
 		}
 		drawRange(g);
 	}
 
 	void drawOtherSelected(Graphics2D g, DrawGraphParams params) {
 		int i;
-		String l;
 		if (variable) {
 			drawVariableSelected(g, params);
 			return;
@@ -1389,11 +1414,8 @@ public class GenericGraphBox {
 		// prints the lines of the box
 		g.setColor(params.getBackgroundColor());
 		for (i = 0; i < n_lines; i++) {
-			l = lines.get(i);
-			if (!l.equals("")) {
-				final TextLayout textlayout = new TextLayout(l,
-						parentGraphicalZone.getGraphPresentationInfo()
-						.getInput().getFont(), g.getFontRenderContext());
+			final TextLayout textlayout = drawLayout.getLine(i);
+			if (textlayout != null) {
 				textlayout
 				.draw(g, X1 + 5, Y1 - descent + 3 + (i + 1) * h_ligne);
 			}
@@ -1406,21 +1428,14 @@ public class GenericGraphBox {
 			.fillRect(
 					g,
 					X1 + 5,
-					Y1 + Height + g.getFontMetrics().getDescent(),
-					g.getFontMetrics(
-							parentGraphicalZone
-							.getGraphPresentationInfo()
-							.getOutput().getFont())
-					.stringWidth(output),
-					g.getFontMetrics(
-							parentGraphicalZone
-							.getGraphPresentationInfo()
-							.getOutput().getFont()).getHeight() + 1);
+					Y1 + Height + drawLayout.getDescent(),
+					drawLayout.getOutputWidth(output),
+					drawLayout.getOutputHeight() + 1);
 			g.setColor(params.getBackgroundColor());
 			g.setFont(parentGraphicalZone.getGraphPresentationInfo()
 					.getOutput().getFont());
 			g.drawString(output, X1 + 5, Y1 + Height
-					+ g.getFontMetrics().getHeight());
+					+ drawLayout.getOutputHeight());
 		}
 		drawRange(g);
 	}
@@ -1456,10 +1471,13 @@ public class GenericGraphBox {
 	 */
 	public void draw(Graphics2D g, DrawGraphParams params) {
 		updateWithContext(g);
-		g.setFont(parentGraphicalZone.getGraphPresentationInfo().getInput()
-				.getFont());
-		h_ligne = g.getFontMetrics().getHeight();
-		descent = g.getFontMetrics().getDescent();
+		final GraphPresentationInfo info = parentGraphicalZone
+				.getGraphPresentationInfo();
+		g.setFont(info.getInput().getFont());
+		drawLayout.validate(g, info.getInput().getFont(), info.getOutput()
+				.getFont(), lines, n_lines);
+		h_ligne = drawLayout.getLineHeight();
+		descent = drawLayout.getDescent();
 		if (singleDragging) {
 			// if the box is being dragged just under the mouse,
 			// we just draw its frame
@@ -1502,12 +1520,11 @@ public class GenericGraphBox {
 	 * @return the height
 	 */
 	int get_h_ligne() {
-		if (context == null) {
+		final BoxTextLayout layout = getMeasureLayout();
+		if (layout == null) {
 			return 0;
 		}
-		context.setFont(parentGraphicalZone.getGraphPresentationInfo()
-				.getInput().getFont());
-		return context.getFontMetrics().getHeight();
+		return layout.getLineHeight();
 	}
 
 	/**
@@ -1516,11 +1533,24 @@ public class GenericGraphBox {
 	 * @return the height
 	 */
 	int get_h_variable_ligne() {
-		if (context == null) {
+		final BoxTextLayout layout = getMeasureLayout();
+		if (layout == null) {
+			return 0;
+		}
+		return layout.getVariableLineHeight();
+	}
+
+	/**
+	 * Returns the width of the given string in the variable font.
+	 *
+	 * @return the width
+	 */
+	int variableStringWidth(String s) {
+		final BoxTextLayout layout = getMeasureLayout();
+		if (layout == null) {
 			return 0;
 		}
-		context.setFont(variableFont);
-		return context.getFontMetrics().getHeight();
+		return layout.getVariableStringWidth(s);
 	}
 
 	/**
@@ -1529,20 +1559,26 @@ public class GenericGraphBox {
 	 * @return the width
 	 */
 	int maxLineWidth() {
-		if (context == null) {
+		final BoxTextLayout layout = getMeasureLayout();
+		if (layout == null) {
 			return 0;
 		}
-		int i, max = 0;
-		String s;
-		max = 0;
-		final FontMetrics f = context.getFontMetrics(parentGraphicalZone
-				.getGraphPresentationInfo().getInput().getFont());
-		for (i = 0; i < n_lines; i++) {
-			s = lines.get(i);
-			if (max < f.stringWidth(s))
-				max = f.stringWidth(s);
+		return layout.getMaxLineWidth();
+	}
+
+	/**
+	 * Returns the text measures of the box lines in the measuring context, or
+	 * null if the box has not been given such a context yet.
+	 */
+	private BoxTextLayout getMeasureLayout() {
+		if (context == null) {
+			return null;
 		}
-		return max;
+		final GraphPresentationInfo info = parentGraphicalZone
+				.getGraphPresentationInfo();
+		measureLayout.validate(context, info.getInput().getFont(), info
+				.getOutput().getFont(), lines, n_lines);
+		return measureLayout;
 	}
 
 	/**
@@ -126,6 +126,23 @@ public abstract class GenericGraphicalZone extends JComponent {
 
 	ArrayList<GraphDecorator> decorators = new ArrayList<GraphDecorator>();
 
+	/**
+	 * Spatial index used to draw and hit-test only the boxes and transitions
+	 * that are concerned
+	 */
+	final BoxSpatialIndex boxIndex = new BoxSpatialIndex();
+	/**
+	 * Image of the static part of the graph, used when painting on screen
+	 */
+	final GraphLayerCache staticLayer = new GraphLayerCache();
+	/*
+	 * Which items must be drawn by drawAllBoxes and drawAllTransitions: all of
+	 * them, only the ones of the static layer, or only the other ones
+	 */
+	static final int ALL_ITEMS = 0;
+	static final int STATIC_ITEMS = 1;
+	static final int DYNAMIC_ITEMS = 2;
+
 	protected abstract void initializeEmptyGraph();
 
 	GenericGraphicalZone(GraphIO g, GraphTextField t, final JInternalFrame p,
@@ -436,11 +453,10 @@ public abstract class GenericGraphicalZone extends JComponent {
 	 *         -1 if no box was selected by the click
 	 */
 	int getSelectedBox(int x, int y) {
-		int i, L;
 		GenericGraphBox g;
-		L = graphBoxes.size();
-		for (i = 0; i < L; i++) {
-			g = graphBoxes.get(i);
+		boxIndex.update(graphBoxes, null);
+		for (final int i : boxIndex.getBoxes(new Rectangle(x, y, 0, 0))) {
+			g = boxIndex.getBox(i);
 			if (x >= g.X && x <= g.X + g.Width && y >= g.Y1
 					&& y <= g.Y1 + g.Height)
 				return i;
@@ -655,6 +671,26 @@ public abstract class GenericGraphicalZone extends JComponent {
 
 	abstract public void drawGraph(Graphics2D f, DrawGraphParams params);
 
+	/**
+	 * Returns a rectangle, in graph coordinates, that contains everything
+	 * <code>drawGraph</code> may draw with the given parameters. By default,
+	 * this is the whole zone.
+	 */
+	public Rectangle getContentBounds(DrawGraphParams params) {
+		return new Rectangle(0, 0, getWidth(), getHeight());
+	}
+
+	/**
+	 * Sizes the boxes that have never been drawn with the given context, as
+	 * their first drawing would do. This is needed before using box sizes of
+	 * a graph that has never been displayed.
+	 */
+	public void updateBoxes(Graphics2D g) {
+		for (final GenericGraphBox b : graphBoxes) {
+			b.updateWithContext(g);
+		}
+	}
+
 	/**
 	 * Draws all graph's transitions
 	 *
@@ -662,17 +698,64 @@ public abstract class GenericGraphicalZone extends JComponent {
 	 *            the graphical context
 	 */
 	void drawAllTransitions(Graphics2D gr, DrawGraphParams params) {
-		int i, L;
-		GenericGraphBox g;
+		drawAllTransitions(gr, params, ALL_ITEMS);
+	}
+
+	/**
+	 * Draws the graph's transitions of the given layer. If the graphical
+	 * context has a clip, only the transitions that may intersect it are drawn.
+	 *
+	 * @param gr
+	 *            the graphical context
+	 * @param layer
+	 *            <code>ALL_ITEMS</code>, <code>STATIC_ITEMS</code> or
+	 *            <code>DYNAMIC_ITEMS</code>
+	 */
+	void drawAllTransitions(Graphics2D gr, DrawGraphParams params, int layer) {
 		if (graphBoxes.isEmpty())
 			return;
-		L = graphBoxes.size();
-		for (i = 0; i < L; i++) {
-			g = graphBoxes.get(i);
-			g.drawTransitions(gr, params);
+		final Rectangle clip = gr.getClipBounds();
+		if (clip == null) {
+			for (final GenericGraphBox g : graphBoxes) {
+				if (layer == ALL_ITEMS) {
+					g.drawTransitions(gr, params);
+					continue;
+				}
+				for (final GenericGraphBox dest : g.transitions) {
+					if (isInLayer(g, dest, layer)) {
+						g.updateWithContext(gr);
+						g.drawTransition(gr, dest, params);
+					}
+				}
+			}
+			return;
+		}
+		boxIndex.update(graphBoxes, gr);
+		for (final int i : boxIndex.getTransitions(clip)) {
+			final GenericGraphBox src = boxIndex.getTransitionSource(i);
+			final GenericGraphBox dest = boxIndex.getTransitionDestination(i);
+			if (isInLayer(src, dest, layer)) {
+				src.drawTransition(gr, dest, params);
+			}
 		}
 	}
 
+	/**
+	 * A box belongs to the static layer if it is neither selected nor being
+	 * dragged
+	 */
+	static boolean isStaticBox(GenericGraphBox g) {
+		return !g.isSelected() && !g.singleDragging;
+	}
+
+	private static boolean isInLayer(GenericGraphBox src, GenericGraphBox dest,
+			int layer) {
+		if (layer == ALL_ITEMS)
+			return true;
+		final boolean isStatic = isStaticBox(src) && isStaticBox(dest);
+		return isStatic == (layer == STATIC_ITEMS);
+	}
+
 	/**
 	 * Adds transitions from the last mouse click position to all selected boxes
 	 *
@@ -716,20 +799,43 @@ public abstract class GenericGraphicalZone extends JComponent {
 	 *            the graphical context
 	 */
 	void drawAllBoxes(Graphics2D gr, DrawGraphParams params) {
-		int i, L;
-		GenericGraphBox g;
+		drawAllBoxes(gr, params, ALL_ITEMS);
+	}
+
+	/**
+	 * Draws the boxes of the given layer. If the graphical context has a clip,
+	 * only the boxes that may intersect it are drawn.
+	 *
+	 * @param gr
+	 *            the graphical context
+	 * @param layer
+	 *            <code>ALL_ITEMS</code>, <code>STATIC_ITEMS</code> or
+	 *            <code>DYNAMIC_ITEMS</code>
+	 */
+	void drawAllBoxes(Graphics2D gr, DrawGraphParams params, int layer) {
 		if (graphBoxes.isEmpty())
 			return;
-		L = graphBoxes.size();
-		for (i = 0; i < L; i++) {
-			g = graphBoxes.get(i);
-			g.draw(gr, params);
+		final Rectangle clip = gr.getClipBounds();
+		if (clip == null) {
+			for (final GenericGraphBox g : graphBoxes) {
+				if (layer == ALL_ITEMS
+						|| isStaticBox(g) == (layer == STATIC_ITEMS))
+					g.draw(gr, params);
+			}
+			return;
+		}
+		boxIndex.update(graphBoxes, gr);
+		for (final int i : boxIndex.getBoxes(clip)) {
+			final GenericGraphBox g = boxIndex.getBox(i);
+			if (layer == ALL_ITEMS || isStaticBox(g) == (layer == STATIC_ITEMS))
+				g.draw(gr, params);
 		}
 	}
 
 	/**
 	 * Draws the grid of the graph if the <code>isGrid</code> field is set to
-	 * <code>true</code>
+	 * <code>true</code>. Only the points inside the clip of the graphical
+	 * context are drawn.
 	 *
 	 * @param f
 	 *            the graphical context
@@ -741,11 +847,87 @@ public abstract class GenericGraphicalZone extends JComponent {
 		f.setColor(params.getForegroundColor());
 		final int W = getWidth();
 		final int H = getHeight();
-		for (x = 10; x < W - 20; x = x + nPixels)
-			for (y = 10; y < H - 20; y = y + nPixels)
+		int xMin = 10, yMin = 10, xMax = W - 20, yMax = H - 20;
+		final Rectangle clip = f.getClipBounds();
+		if (clip != null) {
+			/* We start on the first grid point that is in the clip */
+			if (clip.x > xMin)
+				xMin += ((clip.x - xMin - 1) / nPixels) * nPixels;
+			if (clip.y > yMin)
+				yMin += ((clip.y - yMin - 1) / nPixels) * nPixels;
+			xMax = Math.min(xMax, clip.x + clip.width + 1);
+			yMax = Math.min(yMax, clip.y + clip.height + 1);
+		}
+		for (x = xMin; x < xMax; x = x + nPixels)
+			for (y = yMin; y < yMax; y = y + nPixels)
 				f.drawLine(x, y, x + 1, y);
 	}
 
+	/**
+	 * Returns a key that describes everything that is drawn in the static
+	 * layer with the given parameters, so that the layer is only rendered
+	 * again when one of those things changes.
+	 */
+	long getStaticLayerKey(DrawGraphParams params) {
+		long h = 17;
+		h = 31 * h + Double.doubleToLongBits(params.getTotalScale());
+		h = 31 * h + (params.isAntialiasing() ? 1 : 2);
+		h = 31 * h + (params.isFrame() ? 1 : 2);
+		h = 31 * h + (params.isFilename() ? 1 : 2);
+		h = 31 * h + (params.isPathname() ? 1 : 2);
+		h = 31 * h + params.getBackgroundColor().getRGB();
+		h = 31 * h + params.getForegroundColor().getRGB();
+		h = 31 * h + params.getCommentColor().getRGB();
+		h = 31 * h + params.getSelectedColor().getRGB();
+		h = 31 * h + params.getSubgraphColor().getRGB();
+		h = 31 * h + params.getPackageColor().getRGB();
+		h = 31 * h + params.getUnreachableGraphColor().getRGB();
+		h = 31 * h + params.getOutputVariableColor().getRGB();
+		h = 31 * h + params.getContextColor().getRGB();
+		h = 31 * h + params.getMorphologicalModeColor().getRGB();
+		h = 31 * h + params.getGenericGrfColor().getRGB();
+		h = 31 * h + getWidth();
+		h = 31 * h + getHeight();
+		h = 31 * h + (isGrid ? nPixels : -1);
+		final GraphPresentationInfo info = getGraphPresentationInfo();
+		h = 31 * h + info.getInput().getFont().hashCode();
+		h = 31 * h + info.getOutput().getFont().hashCode();
+		h = 31 * h + (info.isRightToLeft() ? 1 : 2);
+		for (final GenericGraphBox g : graphBoxes) {
+			h = 31 * h + System.identityHashCode(g);
+			if (!isStaticBox(g)) {
+				continue;
+			}
+			h = 31 * h + g.X;
+			h = 31 * h + g.X1;
+			h = 31 * h + g.Y1;
+			h = 31 * h + g.Width;
+			h = 31 * h + g.Height;
+			h = 31 * h + g.X_in;
+			h = 31 * h + g.Y_in;
+			h = 31 * h + g.X_out;
+			h = 31 * h + g.Y_out;
+			h = 31 * h + (g.getContent() == null ? 0 : g.getContent().hashCode());
+			h = 31 * h + (g.getHighlight() ? 1 : 2);
+			h = 31 * h + g.greyed.hashCode();
+			h = 31 * h + (g.hasOutgoingTransitions ? 1 : 2);
+			for (final GenericGraphBox dest : g.transitions) {
+				h = 31 * h + System.identityHashCode(dest);
+				h = 31 * h + (isStaticBox(dest) ? 1 : 2);
+			}
+		}
+		return h;
+	}
+
+	/**
+	 * Forces the static layer to be rendered again on next paint. This is
+	 * needed for changes that are not visible in the boxes, like the creation
+	 * of a subgraph file that was missing.
+	 */
+	public void invalidateStaticLayer() {
+		staticLayer.invalidate();
+	}
+
 	/*
 	 * Box alignment methods
 	 */
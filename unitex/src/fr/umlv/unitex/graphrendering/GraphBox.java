@@ -21,7 +21,6 @@
 package fr.umlv.unitex.graphrendering;
 
 import java.awt.Color;
-import java.awt.FontMetrics;
 import java.awt.Graphics2D;
 import java.util.ArrayList;
 import java.util.Stack;
@@ -58,7 +57,7 @@ public class GraphBox extends GenericGraphBox {
 	/*
 	 * The following methods are used to manipulate the box text
 	 */
-	private int test_transduction(char s[], int i) {
+	private static int test_transduction(char s[], int i) {
 		int compteur;
 		if (s[i] != '/')
 			return 0;
@@ -77,6 +76,95 @@ public class GraphBox extends GenericGraphBox {
 		return (c == '+' || c == '\uff0b');
 	}
 
+	/**
+	 * Adds to the given list the names of the graphs called by a box with the
+	 * given content, as they would appear in the greyed lines of the box. No
+	 * box is created, so that this method can be used to get the calls of a
+	 * graph without the cost of box layout.
+	 * 
+	 * @param content
+	 *            the content of a box that is not the final state
+	 * @param calls
+	 *            the list to fill
+	 */
+	public static void getSubgraphCalls(String content, ArrayList<String> calls) {
+		final int L = content.length();
+		if (L == 0 || tokenizeCommentBox(content, null)) {
+			return;
+		}
+		if (content.charAt(0) == '$') {
+			/* Variables, context marks, $G and morphological mode marks */
+			if (content.charAt(L - 1) == '(' || content.charAt(L - 1) == ')'
+					|| content.equals("$[") || content.equals("$![")
+					|| content.equals("$]") || content.equals("$*")
+					|| content.equals("$G") || content.startsWith("$G/")
+					|| content.equals("$<") || content.equals("$>")) {
+				return;
+			}
+		}
+		final char line[] = content.toCharArray();
+		int n = 0;
+		while ((n != L) && (test_transduction(line, n) == 0))
+			n++;
+		if (n == 3 && content.startsWith("<E>")) {
+			return;
+		}
+		/*
+		 * We follow tokenizeTextWithoutTransduction, stopping where it would
+		 * throw an exception
+		 */
+		final StringBuilder tmp = new StringBuilder();
+		int i = 0;
+		while (i < n) {
+			if (line[i] == ':') {
+				// case of a sub graph call
+				i++;
+				tmp.setLength(0);
+				while ((i < n) && !isAPlusChar(line[i])) {
+					if (line[i] == '\\') {
+						tmp.append(line[i++]);
+						if (i >= n)
+							return;
+					}
+					tmp.append(line[i++]);
+				}
+				if (tmp.length() == 0)
+					return;
+				i++;
+				calls.add(tmp.toString());
+			} else {
+				// all other cases
+				while ((i < n) && !isAPlusChar(line[i])) {
+					final char c = line[i];
+					if (c == '"' || c == '<' || c == '{') {
+						final char closing = (c == '"') ? '"' : (c == '<') ? '>'
+								: '}';
+						i++;
+						while ((i < n) && line[i] != closing) {
+							if (line[i] == '\\') {
+								i++;
+								if (i >= n)
+									return;
+							}
+							i++;
+						}
+						if (i >= n)
+							return;
+						i++;
+					} else {
+						if (c == '\\') {
+							i++;
+							if (i >= n)
+								return;
+						}
+						i++;
+					}
+				}
+				i++;
+			}
+		}
+	}
+
 	private void tokenizeTextWithoutTransduction(String s)
 			throws BackSlashAtEndOfLineException, MissingGraphNameException,
 			NoClosingQuoteException, NoClosingSupException,
@@ -194,19 +282,11 @@ public class GraphBox extends GenericGraphBox {
 	}
 
 	private int maxVariableLineWidth() {
-		if (context == null) {
-			return 0;
-		}
-		final FontMetrics f = context.getFontMetrics(variableFont);
-		return f.stringWidth("(");
+		return variableStringWidth("(");
 	}
 
 	private int maxContextMarkLineWidth(String mark) {
-		if (context == null) {
-			return 0;
-		}
-		final FontMetrics f = context.getFontMetrics(variableFont);
-		return f.stringWidth(mark);
+		return variableStringWidth(mark);
 	}
 
 	/**
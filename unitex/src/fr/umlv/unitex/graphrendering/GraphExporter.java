@@ -0,0 +1,760 @@
+/*
+ * Unitex
+ *
+ * Copyright (C) 2001-2021 Université Paris-Est Marne-la-Vallée <unitex@univ-mlv.fr>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA.
+ *
+ */
+package fr.umlv.unitex.graphrendering;
+
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.metadata.IIOMetadataNode;
+import javax.imageio.stream.ImageOutputStream;
+import javax.swing.SwingUtilities;
+
+import org.w3c.dom.Element;
+
+import fr.umlv.unitex.config.ConfigManager;
+import fr.umlv.unitex.config.Preferences;
+import fr.umlv.unitex.config.PreferencesManager;
+import fr.umlv.unitex.frames.GraphExportDialog;
+import fr.umlv.unitex.grf.GraphPresentationInfo;
+import fr.umlv.unitex.io.Encoding;
+import fr.umlv.unitex.io.GraphIO;
+import fr.umlv.unitex.io.SVG;
+
+/**
+ * This class exports graphs to SVG, PNG or JPEG files without displaying
+ * them. A batch export renders the graphs of a directory tree on a pool of
+ * threads, each thread drawing in its own offscreen image, while the Swing
+ * components of the graphs are created on the event dispatch thread. It
+ * writes in the output directory a manifest giving the time spent on each
+ * graph.
+ *
+ * It can be used from the command line, see {@link #main(String[])}.
+ */
+public class GraphExporter {
+	public static final String MANIFEST = "export-manifest.txt";
+
+	private final int format;
+	private int zoom = 100;
+	private int dpi = DrawGraphParams.BASE_DPI;
+	private float quality = 0.95f;
+	private boolean antialiasing = true;
+	private boolean crop = true;
+	private int cropMarginW = 0;
+	private int cropMarginH = 0;
+	/* The offscreen image of each thread, reused from graph to graph */
+	private final ThreadLocal<BufferedImage> surfaces = new ThreadLocal<BufferedImage>();
+
+	/**
+	 * @param format
+	 *            <code>GraphExportDialog.FORMAT_PNG</code>,
+	 *            <code>FORMAT_JPEG</code> or <code>FORMAT_SVG</code>
+	 */
+	public GraphExporter(int format) {
+		if (GraphExportDialog.formatName(format) == null) {
+			throw new IllegalArgumentException("Invalid format: " + format);
+		}
+		this.format = format;
+	}
+
+	public void setZoom(int zoom) {
+		this.zoom = zoom;
+	}
+
+	public void setDpi(int dpi) {
+		this.dpi = dpi;
+	}
+
+	public void setQuality(float quality) {
+		this.quality = quality;
+	}
+
+	public void setAntialiasing(boolean antialiasing) {
+		this.antialiasing = antialiasing;
+	}
+
+	public void setCrop(boolean crop) {
+		this.crop = crop;
+	}
+
+	public void setCropMargins(int w, int h) {
+		cropMarginW = w;
+		cropMarginH = h;
+	}
+
+	/**
+	 * What happened to a graph during an export
+	 */
+	public static class Result {
+		final File graph;
+		final File output;
+		int width;
+		int height;
+		long time;
+		String error;
+
+		Result(File graph, File output) {
+			this.graph = graph;
+			this.output = output;
+		}
+
+		public File getGraph() {
+			return graph;
+		}
+
+		public File getOutput() {
+			return output;
+		}
+
+		/**
+		 * @return the time spent on the graph in milliseconds
+		 */
+		public long getTime() {
+			return time;
+		}
+
+		/**
+		 * @return null if the graph was exported, an error message otherwise
+		 */
+		public String getError() {
+			return error;
+		}
+	}
+
+	/**
+	 * Exports the given graph to the given file. Errors are reported in the
+	 * result, so that one bad graph does not stop a batch export.
+	 */
+	public Result export(File grf, File output) {
+		final long start = System.nanoTime();
+		final Result result = new Result(grf, output);
+		try {
+			final GraphIO gio = GraphIO.loadGraph(grf, false, false);
+			if (gio == null) {
+				result.error = "cannot load graph";
+			} else {
+				final File dir = output.getParentFile();
+				if (dir != null && !dir.mkdirs() && !dir.isDirectory()) {
+					throw new IOException("cannot create directory " + dir);
+				}
+				final GraphicalZone zone = createZone(gio, grf);
+				if (format == GraphExportDialog.FORMAT_SVG) {
+					exportSVG(zone, grf, output);
+					result.width = zone.getWidth();
+					result.height = zone.getHeight();
+				} else {
+					final BufferedImage image = exportBitmap(zone, output);
+					result.width = image.getWidth();
+					result.height = image.getHeight();
+				}
+			}
+		} catch (final IOException e) {
+			result.error = e.toString();
+		} catch (final RuntimeException e) {
+			result.error = e.toString();
+		}
+		result.time = (System.nanoTime() - start) / 1000000;
+		return result;
+	}
+
+	/**
+	 * Creates the zone of a graph on the event dispatch thread, since it is a
+	 * Swing component whose text field registers itself in tables shared by
+	 * all components. Boxes are then sized and drawn by the calling thread,
+	 * which only works on the graph and its own image.
+	 */
+	private static GraphicalZone createZone(final GraphIO gio, final File grf)
+			throws IOException {
+		if (SwingUtilities.isEventDispatchThread()) {
+			return new GraphicalZone(gio, grf);
+		}
+		final GraphicalZone[] zone = new GraphicalZone[1];
+		try {
+			SwingUtilities.invokeAndWait(new Runnable() {
+				@Override
+				public void run() {
+					zone[0] = new GraphicalZone(gio, grf);
+				}
+			});
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("interrupted");
+		} catch (final InvocationTargetException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new IOException(e.getCause());
+		}
+		return zone[0];
+	}
+
+	private void exportSVG(GraphicalZone zone, File grf, File output)
+			throws IOException {
+		final Graphics2D g = getSurface(1, 1).createGraphics();
+		try {
+			zone.updateBoxes(g);
+			final OutputStreamWriter writer = Encoding.UTF8
+					.getOutputStreamWriter(output);
+			if (writer == null) {
+				throw new IOException("cannot write " + output);
+			}
+			try {
+				new SVG(writer, zone, grf, g).save();
+			} finally {
+				writer.close();
+			}
+		} finally {
+			g.dispose();
+		}
+	}
+
+	private BufferedImage exportBitmap(GraphicalZone zone, File output)
+			throws IOException {
+		final DrawGraphParams params = zone.defaultDrawParams();
+		params.setScaleFactor(zoom / 100.0);
+		params.setDpi(dpi);
+		params.setCompressionQuality(quality);
+		params.setAntialiasing(antialiasing);
+		params.setCrop(crop);
+		params.setCropMarginW(cropMarginW);
+		params.setCropMarginH(cropMarginH);
+		final double scale = params.getTotalScale();
+		final BufferedImage surface = getSurface(
+				(int) Math.round(zone.getWidth() * scale),
+				(int) Math.round(zone.getHeight() * scale));
+		/*
+		 * Boxes are sized with an unscaled context, as the SVG export and the
+		 * screen do, so that the zoom does not change the layout
+		 */
+		final Graphics2D g = surface.createGraphics();
+		try {
+			zone.updateBoxes(g);
+		} finally {
+			g.dispose();
+		}
+		final BufferedImage image = createBitmap(zone, params, surface);
+		saveBitmap(image, format, dpi, quality, output);
+		return image;
+	}
+
+	/**
+	 * Returns the offscreen image of the current thread, enlarged if needed.
+	 */
+	private BufferedImage getSurface(int width, int height) {
+		BufferedImage surface = surfaces.get();
+		if (surface == null || surface.getWidth() < width
+				|| surface.getHeight() < height) {
+			final int w = (surface == null) ? width : Math.max(width,
+					surface.getWidth());
+			final int h = (surface == null) ? height : Math.max(height,
+					surface.getHeight());
+			surface = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+			surfaces.set(surface);
+		}
+		return surface;
+	}
+
+	/**
+	 * Draws the graph of the given zone in a new image, and returns the part
+	 * of the image that contains the graph, cropped if asked in the
+	 * parameters.
+	 */
+	public static BufferedImage createBitmap(GenericGraphicalZone zone,
+			DrawGraphParams params) {
+		return createBitmap(zone, params, null);
+	}
+
+	/**
+	 * Same as {@link #createBitmap(GenericGraphicalZone, DrawGraphParams)},
+	 * but draws in the upper left corner of the given image if it is large
+	 * enough. The result is then a part of this image.
+	 */
+	private static BufferedImage createBitmap(GenericGraphicalZone zone,
+			DrawGraphParams params, BufferedImage surface) {
+		final double scale = params.getTotalScale();
+		final int w = (int) Math.round(zone.getWidth() * scale);
+		final int h = (int) Math.round(zone.getHeight() * scale);
+		BufferedImage image = surface;
+		if (image == null || image.getWidth() < w || image.getHeight() < h) {
+			image = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+		}
+		final Graphics2D g = image.createGraphics();
+		try {
+			g.setBackground(params.getBackgroundColor());
+			g.clearRect(0, 0, w, h);
+			zone.drawGraph(g, params);
+		} finally {
+			g.dispose();
+		}
+		final Rectangle all = new Rectangle(0, 0, w, h);
+		if (!params.isCrop()) {
+			return image.getSubimage(0, 0, w, h);
+		}
+		/*
+		 * Nothing is drawn outside the content bounds, so we only have to
+		 * look at their margins to find the pixels that are really used
+		 */
+		final Rectangle bounds = zone.getContentBounds(params);
+		final int x1 = (int) Math.floor(bounds.x * scale) - 1;
+		final int y1 = (int) Math.floor(bounds.y * scale) - 1;
+		final int x2 = (int) Math.ceil((bounds.x + bounds.width) * scale) + 1;
+		final int y2 = (int) Math.ceil((bounds.y + bounds.height) * scale) + 1;
+		final Rectangle content = getCropBounds(image, new Rectangle(x1, y1, x2
+				- x1, y2 - y1).intersection(all), params.getBackgroundColor()
+				.getRGB());
+		if (content == null) {
+			return image.getSubimage(0, 0, w, h);
+		}
+		final Rectangle r = new Rectangle(content.x - params.getCropMarginW(),
+				content.y - params.getCropMarginH(), content.width + 2
+						* params.getCropMarginW(), content.height + 2
+						* params.getCropMarginH()).intersection(all);
+		return image.getSubimage(r.x, r.y, r.width, r.height);
+	}
+
+	/**
+	 * Returns the smallest rectangle that contains the pixels of the given
+	 * area that are not of the background color, or null if there is none.
+	 * The image must be a <code>TYPE_INT_RGB</code> one that is not a
+	 * subimage. Rows and columns are read from the borders of the area and we
+	 * stop at the first used ones.
+	 */
+	static Rectangle getCropBounds(BufferedImage image, Rectangle area,
+			int background) {
+		if (area.isEmpty()) {
+			return null;
+		}
+		final int[] pixels = ((DataBufferInt) image.getRaster()
+				.getDataBuffer()).getData();
+		final int scan = image.getWidth();
+		final int bg = background & 0xFFFFFF;
+		final int xMin = area.x;
+		final int xMax = area.x + area.width;
+		int y1 = area.y;
+		int y2 = area.y + area.height - 1;
+		while (y1 <= y2 && isEmptyRow(pixels, scan, y1, xMin, xMax, bg)) {
+			y1++;
+		}
+		if (y1 > y2) {
+			return null;
+		}
+		while (isEmptyRow(pixels, scan, y2, xMin, xMax, bg)) {
+			y2--;
+		}
+		int x1 = xMin;
+		int x2 = xMax - 1;
+		while (isEmptyColumn(pixels, scan, x1, y1, y2, bg)) {
+			x1++;
+		}
+		while (isEmptyColumn(pixels, scan, x2, y1, y2, bg)) {
+			x2--;
+		}
+		return new Rectangle(x1, y1, x2 - x1 + 1, y2 - y1 + 1);
+	}
+
+	private static boolean isEmptyRow(int[] pixels, int scan, int y, int x1,
+			int x2, int bg) {
+		final int start = y * scan;
+		for (int i = start + x1; i < start + x2; i++) {
+			if ((pixels[i] & 0xFFFFFF) != bg) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean isEmptyColumn(int[] pixels, int scan, int x,
+			int y1, int y2, int bg) {
+		for (int i = y1 * scan + x; i <= y2 * scan + x; i += scan) {
+			if ((pixels[i] & 0xFFFFFF) != bg) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Saves the given image as a PNG or JPEG file with the given resolution.
+	 */
+	public static void saveBitmap(BufferedImage sourceImage, int format,
+			int dpi, float quality, File output) throws IOException {
+		final Iterator<ImageWriter> it = ImageIO
+				.getImageWritersByFormatName(GraphExportDialog
+						.formatName(format));
+		boolean found = false;
+		while (it.hasNext() && !found) {
+			final ImageWriter w = it.next();
+			final ImageWriteParam wp = w.getDefaultWriteParam();
+			final ImageTypeSpecifier ts = ImageTypeSpecifier
+					.createFromBufferedImageType(BufferedImage.TYPE_INT_RGB);
+			final IIOMetadata meta = w.getDefaultImageMetadata(ts, wp);
+			if (!meta.isReadOnly() && meta.isStandardMetadataFormatSupported()) {
+				found = true;
+				if (format == GraphExportDialog.FORMAT_PNG) {
+					final double dpmm = dpi / 25.4;
+					final IIOMetadataNode hor = new IIOMetadataNode(
+							"HorizontalPixelSize");
+					hor.setAttribute("value", Double.toString(dpmm));
+					final IIOMetadataNode ver = new IIOMetadataNode(
+							"VerticalPixelSize");
+					ver.setAttribute("value", Double.toString(dpmm));
+					final IIOMetadataNode dim = new IIOMetadataNode("Dimension");
+					dim.appendChild(hor);
+					dim.appendChild(ver);
+					final IIOMetadataNode root = new IIOMetadataNode(
+							"javax_imageio_1.0");
+					root.appendChild(dim);
+					meta.mergeTree("javax_imageio_1.0", root);
+				} else if (format == GraphExportDialog.FORMAT_JPEG) {
+					final Element tree = (Element) meta
+							.getAsTree("javax_imageio_jpeg_image_1.0");
+					final Element jfif = (Element) tree.getElementsByTagName(
+							"app0JFIF").item(0);
+					jfif.setAttribute("Xdensity", Integer.toString(dpi));
+					jfif.setAttribute("Ydensity", Integer.toString(dpi));
+					// density is dots per inch
+					jfif.setAttribute("resUnits", "1");
+					wp.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+					wp.setCompressionQuality(quality);
+					meta.mergeTree("javax_imageio_jpeg_image_1.0", tree);
+				}
+				final ImageOutputStream stream = ImageIO
+						.createImageOutputStream(output);
+				if (stream == null) {
+					throw new IOException("cannot write " + output);
+				}
+				try {
+					w.setOutput(stream);
+					w.write(meta, new IIOImage(sourceImage, null, meta), wp);
+				} finally {
+					stream.close();
+					w.dispose();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Exports the given graph, or all the graphs of the given directory tree,
+	 * into the output directory, where the tree is reproduced, and writes the
+	 * manifest there. Results are given in the order of the graph paths.
+	 * This method must not be called from the event dispatch thread, that
+	 * the export threads use to create the zones of the graphs.
+	 */
+	public List<Result> exportAll(File input, File outputDir, int nThreads)
+			throws IOException, InterruptedException {
+		if (SwingUtilities.isEventDispatchThread()) {
+			throw new IllegalStateException(
+					"exportAll cannot be called from the event dispatch thread");
+		}
+		final ArrayList<File> graphs = new ArrayList<File>();
+		final File root;
+		if (input.isDirectory()) {
+			root = input;
+			collectGraphs(input, graphs);
+		} else {
+			root = input.getAbsoluteFile().getParentFile();
+			graphs.add(input);
+		}
+		final String extension = "."
+				+ GraphExportDialog.formatDefaultExtension(format);
+		final ArrayList<Callable<Result>> tasks = new ArrayList<Callable<Result>>();
+		for (final File grf : graphs) {
+			final String path = getRelativePath(root, grf);
+			final File output = new File(outputDir, path.substring(0,
+					path.length() - ".grf".length())
+					+ extension);
+			tasks.add(new Callable<Result>() {
+				@Override
+				public Result call() {
+					return export(grf, output);
+				}
+			});
+		}
+		final ExecutorService pool = Executors.newFixedThreadPool(nThreads,
+				new ThreadFactory() {
+					@Override
+					public Thread newThread(Runnable r) {
+						final Thread t = new Thread(r, "Graph export");
+						t.setDaemon(true);
+						return t;
+					}
+				});
+		final ArrayList<Result> results = new ArrayList<Result>();
+		try {
+			for (final Future<Result> f : pool.invokeAll(tasks)) {
+				results.add(f.get());
+			}
+		} catch (final ExecutionException e) {
+			/* Should not happen, since export catches everything */
+			throw new IOException(e.getCause());
+		} finally {
+			pool.shutdown();
+		}
+		writeManifest(new File(outputDir, MANIFEST), root, outputDir, results);
+		return results;
+	}
+
+	private static void collectGraphs(File dir, List<File> graphs) {
+		final File[] files = dir.listFiles();
+		if (files == null) {
+			return;
+		}
+		Arrays.sort(files);
+		for (final File f : files) {
+			if (f.getName().startsWith(".")) {
+				/* .svn and other hidden directories */
+				continue;
+			}
+			if (f.isDirectory()) {
+				collectGraphs(f, graphs);
+			} else if (f.getName().toLowerCase().endsWith(".grf")) {
+				graphs.add(f);
+			}
+		}
+	}
+
+	private static String getRelativePath(File root, File f) {
+		return root.getAbsoluteFile().toURI()
+				.relativize(f.getAbsoluteFile().toURI()).getPath();
+	}
+
+	/**
+	 * The manifest has a tab separated line per graph, giving the graph, the
+	 * exported file, its size, the time spent in milliseconds and the status.
+	 */
+	private static void writeManifest(File manifest, File root,
+			File outputDir, List<Result> results) throws IOException {
+		final OutputStreamWriter w = Encoding.UTF8
+				.getOutputStreamWriter(manifest);
+		if (w == null) {
+			throw new IOException("cannot write " + manifest);
+		}
+		final BufferedWriter writer = new BufferedWriter(w);
+		try {
+			writer.write("graph\toutput\twidth\theight\tms\tstatus\n");
+			for (final Result r : results) {
+				writer.write(getRelativePath(root, r.graph) + "\t"
+						+ getRelativePath(outputDir, r.output) + "\t"
+						+ r.width + "\t" + r.height + "\t" + r.time + "\t"
+						+ (r.error == null ? "OK" : r.error) + "\n");
+			}
+		} finally {
+			writer.close();
+		}
+	}
+
+	/**
+	 * Configuration used from the command line, where there is no Unitex user
+	 * directory: graphs are presented according to the given configuration
+	 * file of a language, or to the default preferences if there is none.
+	 */
+	private static class HeadlessConfigManager extends ConfigManager {
+		private final Preferences preferences;
+
+		HeadlessConfigManager(File config) {
+			preferences = (config == null) ? new Preferences()
+					: PreferencesManager.loadPreferences(config, null);
+		}
+
+		@Override
+		public GraphPresentationInfo getGraphPresentationPreferences(
+				String language) {
+			return preferences.getInfo().clone();
+		}
+
+		@Override
+		public Font getInputFont(String language) {
+			return preferences.getInfo().getInput().getFont();
+		}
+
+		@Override
+		public int getInputFontSize(String language) {
+			return preferences.getInfo().getInput().getSize();
+		}
+
+		@Override
+		public boolean isRightToLeftForGraphs(String language) {
+			return preferences.isRightToLeftForGraphs();
+		}
+
+		@Override
+		public boolean isRightToLeftForText(String language) {
+			return preferences.isRightToLeftForText();
+		}
+
+		@Override
+		public Encoding getEncoding(String language) {
+			return preferences.getEncoding();
+		}
+
+		@Override
+		public File getDefaultGraphRepositoryPath(String language) {
+			return preferences.getGraphRepositoryPath();
+		}
+	}
+
+	private static void usage() {
+		System.err.println("Usage: GraphExporter [OPTIONS] <graph or directory> <output directory>");
+		System.err.println();
+		System.err.println("Exports a graph, or all the graphs of a directory tree, without displaying");
+		System.err.println("them. A manifest named " + MANIFEST + " is written in the output directory.");
+		System.err.println();
+		System.err.println("  --format=png|jpeg|svg  output format (default png)");
+		System.err.println("  --zoom=N               zoom in percents (default 100)");
+		System.err.println("  --dpi=N                resolution (default " + DrawGraphParams.BASE_DPI + ")");
+		System.err.println("  --quality=F            JPEG quality between 0 and 1 (default 0.95)");
+		System.err.println("  --no-antialiasing      do not use antialiasing");
+		System.err.println("  --no-crop              do not crop images");
+		System.err.println("  --margin=W,H           crop margins in pixels (default 0,0)");
+		System.err.println("  --config=FILE          Unitex language Config file giving the graph presentation");
+		System.err.println("  --threads=N            number of threads (default: number of processors)");
+		System.exit(1);
+	}
+
+	/**
+	 * Command line entry point. Run without arguments to get the usage.
+	 */
+	public static void main(String[] args) {
+		if (System.getProperty("java.awt.headless") == null) {
+			System.setProperty("java.awt.headless", "true");
+		}
+		int format = GraphExportDialog.FORMAT_PNG;
+		int zoom = 100;
+		int dpi = DrawGraphParams.BASE_DPI;
+		float quality = 0.95f;
+		boolean antialiasing = true;
+		boolean crop = true;
+		int marginW = 0;
+		int marginH = 0;
+		File config = null;
+		int nThreads = Runtime.getRuntime().availableProcessors();
+		final ArrayList<String> files = new ArrayList<String>();
+		try {
+			for (final String arg : args) {
+				if (!arg.startsWith("--")) {
+					files.add(arg);
+				} else if (arg.startsWith("--format=")) {
+					final String s = arg.substring("--format=".length());
+					if (s.equalsIgnoreCase("png")) {
+						format = GraphExportDialog.FORMAT_PNG;
+					} else if (s.equalsIgnoreCase("jpeg")
+							|| s.equalsIgnoreCase("jpg")) {
+						format = GraphExportDialog.FORMAT_JPEG;
+					} else if (s.equalsIgnoreCase("svg")) {
+						format = GraphExportDialog.FORMAT_SVG;
+					} else {
+						usage();
+					}
+				} else if (arg.startsWith("--zoom=")) {
+					zoom = Integer.parseInt(arg.substring("--zoom=".length()));
+				} else if (arg.startsWith("--dpi=")) {
+					dpi = Integer.parseInt(arg.substring("--dpi=".length()));
+				} else if (arg.startsWith("--quality=")) {
+					quality = Float.parseFloat(arg.substring("--quality="
+							.length()));
+				} else if (arg.equals("--no-antialiasing")) {
+					antialiasing = false;
+				} else if (arg.equals("--no-crop")) {
+					crop = false;
+				} else if (arg.startsWith("--margin=")) {
+					final String[] s = arg.substring("--margin=".length())
+							.split(",");
+					marginW = Integer.parseInt(s[0]);
+					marginH = Integer.parseInt(s[s.length - 1]);
+				} else if (arg.startsWith("--config=")) {
+					config = new File(arg.substring("--config=".length()));
+				} else if (arg.startsWith("--threads=")) {
+					nThreads = Integer.parseInt(arg.substring("--threads="
+							.length()));
+				} else {
+					usage();
+				}
+			}
+		} catch (final NumberFormatException e) {
+			usage();
+		}
+		if (files.size() != 2 || zoom <= 0 || dpi <= 0 || nThreads <= 0
+				|| marginW < 0 || marginH < 0) {
+			usage();
+		}
+		final File input = new File(files.get(0));
+		if (!input.exists()) {
+			System.err.println("Cannot find " + input);
+			System.exit(1);
+		}
+		ConfigManager.setManager(new HeadlessConfigManager(config));
+		final GraphExporter exporter = new GraphExporter(format);
+		exporter.setZoom(zoom);
+		exporter.setDpi(dpi);
+		exporter.setQuality(quality);
+		exporter.setAntialiasing(antialiasing);
+		exporter.setCrop(crop);
+		exporter.setCropMargins(marginW, marginH);
+		final long start = System.nanoTime();
+		final List<Result> results;
+		try {
+			results = exporter.exportAll(input, new File(files.get(1)),
+					nThreads);
+		} catch (final IOException e) {
+			System.err.println(e.getMessage());
+			System.exit(1);
+			return;
+		} catch (final InterruptedException e) {
+			System.exit(1);
+			return;
+		}
+		int errors = 0;
+		for (final Result r : results) {
+			if (r.error != null) {
+				errors++;
+				System.err.println(r.graph + ": " + r.error);
+			}
+		}
+		System.out.println((results.size() - errors) + " graph(s) exported in "
+				+ (System.nanoTime() - start) / 1000000 + " ms"
+				+ (errors == 0 ? "" : ", " + errors + " error(s)"));
+		System.exit(errors == 0 ? 0 : 2);
+	}
+}
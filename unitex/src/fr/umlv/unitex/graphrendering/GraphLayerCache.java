@@ -0,0 +1,104 @@
+/*
+ * Unitex
+ *
+ * Copyright (C) 2001-2021 Université Paris-Est Marne-la-Vallée <unitex@univ-mlv.fr>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA.
+ *
+ */
+package fr.umlv.unitex.graphrendering;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+
+/**
+ * This class keeps an image of the part of a graphical zone that does not
+ * change while the user works on a selection: background, grid, and the boxes
+ * and transitions that are not involved in the selection. The image covers the
+ * clip area of the last paint, in device pixels, so that it can be copied as
+ * is on the screen.
+ *
+ * The content of the layer is described by a key computed by the caller. The
+ * image is rendered again when the key, the clip area or the transform of the
+ * graphical context change.
+ */
+class GraphLayerCache {
+	private BufferedImage image;
+	private Rectangle deviceBounds;
+	private AffineTransform transform;
+	private long key;
+
+	/**
+	 * Returns a graphical context to render the layer into, set up like the
+	 * given one, or null if the cached image can be used as is. The caller
+	 * must dispose the returned context.
+	 */
+	Graphics2D begin(Graphics2D g, long newKey) {
+		final Rectangle clip = g.getClipBounds();
+		if (clip == null || clip.isEmpty()) {
+			invalidate();
+			return null;
+		}
+		final AffineTransform t = g.getTransform();
+		final Rectangle bounds = t.createTransformedShape(clip).getBounds();
+		if (image != null && newKey == key && t.equals(transform)
+				&& bounds.equals(deviceBounds)) {
+			return null;
+		}
+		if (image == null || image.getWidth() != bounds.width
+				|| image.getHeight() != bounds.height) {
+			image = new BufferedImage(bounds.width, bounds.height,
+					BufferedImage.TYPE_INT_RGB);
+		}
+		key = newKey;
+		transform = t;
+		deviceBounds = bounds;
+		final Graphics2D res = image.createGraphics();
+		res.setRenderingHints(g.getRenderingHints());
+		res.translate(-bounds.x, -bounds.y);
+		res.transform(t);
+		res.setClip(clip);
+		return res;
+	}
+
+	/**
+	 * Copies the layer in the given graphical context.
+	 */
+	void draw(Graphics2D g) {
+		if (image == null) {
+			return;
+		}
+		final AffineTransform old = g.getTransform();
+		g.setTransform(new AffineTransform());
+		g.drawImage(image, deviceBounds.x, deviceBounds.y, null);
+		g.setTransform(old);
+	}
+
+	/**
+	 * Returns <code>true</code> if the layer can be drawn in the given context.
+	 */
+	boolean isUsable(Graphics2D g) {
+		final Rectangle clip = g.getClipBounds();
+		return clip != null && !clip.isEmpty();
+	}
+
+	void invalidate() {
+		image = null;
+		deviceBounds = null;
+		transform = null;
+	}
+}
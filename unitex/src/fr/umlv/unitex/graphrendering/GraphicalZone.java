@@ -38,6 +38,7 @@ import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
 import java.awt.event.MouseMotionListener;
+import java.awt.geom.AffineTransform;
 import java.awt.print.PageFormat;
 import java.awt.print.Printable;
 import java.beans.PropertyVetoException;
@@ -124,6 +125,35 @@ public class GraphicalZone extends GenericGraphicalZone implements Printable {
 		createPopup();
 	}
 
+	/**
+	 * Graph file of a zone that is not in a <code>GraphFrame</code>
+	 */
+	private File graphFile;
+
+	/**
+	 * Constructs a <code>GraphicalZone</code> that is not in a frame, in order
+	 * to render a graph without displaying it.
+	 *
+	 * @param gio
+	 *            the graph
+	 * @param graph
+	 *            the file of the graph, used to draw its name
+	 */
+	public GraphicalZone(GraphIO gio, File graph) {
+		super(gio, new TextField(0, null), null, null);
+		graphFile = graph;
+	}
+
+	/**
+	 * @return the graph file, or null if the graph has never been saved
+	 */
+	public File getGraphFile() {
+		if (parentFrame == null) {
+			return graphFile;
+		}
+		return ((GraphFrame) parentFrame).getGraph();
+	}
+
 	Action surroundWithInputVar;
 
 	public Action getSurroundWithInputVarAction() {
@@ -1585,6 +1615,11 @@ public class GraphicalZone extends GenericGraphicalZone implements Printable {
 		@Override
 		public void mouseEntered(MouseEvent e) {
 			mouseInGraphicalZone = true;
+			/*
+			 * Subgraphs may have been created or removed while the mouse was
+			 * elsewhere
+			 */
+			invalidateStaticLayer();
 			fireGraphChanged(false);
 		}
 
@@ -1679,11 +1714,59 @@ public class GraphicalZone extends GenericGraphicalZone implements Printable {
 		setClipZone(f_old.getClipBounds());
 		final Graphics2D f = (Graphics2D) f_old;
 		DrawGraphParams params = defaultDrawParams();
-		drawGraph(f, params);
+		if (decorator != null || !staticLayer.isUsable(f)) {
+			drawGraph(f, params);
+			return;
+		}
+		/*
+		 * On screen, the parts of the graph that are not concerned by the
+		 * current selection are taken from a cached image, so that moving
+		 * the selection does not redraw the whole graph
+		 */
+		final Graphics2D layer = staticLayer.begin(f,
+				getStaticLayerKey(params));
+		if (layer != null) {
+			drawStaticLayer(layer, params, STATIC_ITEMS);
+			layer.dispose();
+		}
+		staticLayer.draw(f);
+		drawDynamicLayer(f, params, true);
+	}
+
+	/**
+	 * Unless a frame or a grid is drawn, the content of the graph is made of
+	 * the boxes, the transitions, and the file name and the date at the
+	 * bottom left corner.
+	 */
+	@Override
+	public Rectangle getContentBounds(DrawGraphParams params) {
+		if (params.isFrame() || isGrid) {
+			return super.getContentBounds(params);
+		}
+		boxIndex.update(graphBoxes, null);
+		Rectangle r = boxIndex.getBounds();
+		if (params.isFilename() || params.isDate()) {
+			final Rectangle text = new Rectangle(0, getHeight() - 80,
+					getWidth(), 80);
+			r = (r == null) ? text : r.union(text);
+		}
+		return (r == null) ? new Rectangle() : r;
 	}
 
 	@Override
 	public void drawGraph(Graphics2D f, DrawGraphParams params) {
+		final AffineTransform old = f.getTransform();
+		drawStaticLayer(f, params, ALL_ITEMS);
+		f.setTransform(old);
+		drawDynamicLayer(f, params, false);
+	}
+
+	/**
+	 * Draws the background, the frame, the file name, the grid and the boxes
+	 * and transitions of the given layer
+	 */
+	private void drawStaticLayer(Graphics2D f, DrawGraphParams params,
+			int layer) {
 		f.scale(params.getTotalScale(), params.getTotalScale());
 		if (params.isAntialiasing()) {
 			f.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
@@ -1703,7 +1786,7 @@ public class GraphicalZone extends GenericGraphicalZone implements Printable {
 		}
 		f.setColor(params.getForegroundColor());
 		if (decorator == null) {
-			final File file = ((GraphFrame) parentFrame).getGraph();
+			final File file = getGraphFile();
 			if (params.isFilename()) {
 				if (params.isPathname())
 					f.drawString((file != null) ? file.getAbsolutePath() : "",
@@ -1713,9 +1796,29 @@ public class GraphicalZone extends GenericGraphicalZone implements Printable {
 							getHeight() - 45);
 			}
 		}
+		drawGrid(f, params);
+		drawAllTransitions(f, params, layer);
+		drawAllBoxes(f, params, layer);
+	}
+
+	/**
+	 * Draws the date and what changes while editing: the transitions being
+	 * created, the boxes and transitions involved in the selection if
+	 * <code>drawItems</code> is true, the rollover and the selection rectangle
+	 */
+	private void drawDynamicLayer(Graphics2D f, DrawGraphParams params,
+			boolean drawItems) {
+		f.scale(params.getTotalScale(), params.getTotalScale());
+		if (params.isAntialiasing()) {
+			f.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+					RenderingHints.VALUE_ANTIALIAS_ON);
+		} else {
+			f.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+					RenderingHints.VALUE_ANTIALIAS_OFF);
+		}
+		f.setColor(params.getForegroundColor());
 		if (params.isDate())
 			f.drawString(new Date().toString(), 20, getHeight() - 25);
-		drawGrid(f, params);
 		if (mouseInGraphicalZone && !selectedBoxes.isEmpty()) {
 			if (EDITING_MODE == MyCursors.REVERSE_LINK_BOXES) {
 				drawTransitionsFromMousePointerToSelectedBoxes(f, params);
@@ -1723,8 +1826,10 @@ public class GraphicalZone extends GenericGraphicalZone implements Printable {
 				drawTransitionsFromSelectedBoxesToMousePointer(f, params);
 			}
 		}
-		drawAllTransitions(f,params);
-		drawAllBoxes(f,params);
+		if (drawItems) {
+			drawAllTransitions(f, params, DYNAMIC_ITEMS);
+			drawAllBoxes(f, params, DYNAMIC_ITEMS);
+		}
 		drawRollover(f,params);
 		if (selecting) {
 			// here we draw the selection rectangle
@@ -1772,7 +1877,7 @@ public class GraphicalZone extends GenericGraphicalZone implements Printable {
 			f.setStroke(oldStroke);
 		}
 		f.setColor(params.getForegroundColor());
-		final File file = ((GraphFrame) parentFrame).getGraph();
+		final File file = getGraphFile();
 		if (getGraphPresentationInfo().isFilename()) {
 			if (getGraphPresentationInfo().isPathname())
 				f.drawString((file != null) ? file.getAbsolutePath() : "", 20,
@@ -496,6 +496,11 @@ public class TfstGraphicalZone extends GenericGraphicalZone implements
 		}
 		this.sentence=sentence;
 		setGraphPresentationInfo(g.getInfo());
+		if (g.needsLayout()) {
+			final Dimension laidOut = layoutSentenceGraph();
+			setSize(laidOut);
+			setPreferredSize(laidOut);
+		}
 		fireActionPerformed();
 		/* Now that anyone is aware of the change, we just have to replace
 		 * the state selection by the previous one, if any
@@ -511,6 +516,112 @@ public class TfstGraphicalZone extends GenericGraphicalZone implements
 		repaint();
 	}
 
+	private static final int LAYOUT_MARGIN = 40;
+	private static final int LAYOUT_H_GAP = 30;
+	private static final int LAYOUT_V_GAP = 20;
+
+	/**
+	 * Positions the boxes of a sentence graph that was decoded directly from
+	 * the .tfst file. Boxes are placed in columns according to their longest
+	 * distance from the initial box, and each column is vertically centered.
+	 * Boxes must have been sized before calling this method.
+	 * 
+	 * @return the dimension of the resulting graph
+	 */
+	private Dimension layoutSentenceGraph() {
+		final int n = graphBoxes.size();
+		final HashMap<GenericGraphBox, Integer> index = new HashMap<GenericGraphBox, Integer>();
+		for (int i = 0; i < n; i++) {
+			index.put(graphBoxes.get(i), i);
+		}
+		/* Longest path ranks, computed in topological order */
+		final int[] incoming = new int[n];
+		for (final GenericGraphBox b : graphBoxes) {
+			for (final GenericGraphBox dest : b.getTransitions()) {
+				incoming[index.get(dest)]++;
+			}
+		}
+		final int[] column = new int[n];
+		final int[] queue = new int[n];
+		int head = 0, tail = 0;
+		for (int i = 0; i < n; i++) {
+			if (incoming[i] == 0) {
+				queue[tail++] = i;
+			}
+		}
+		while (head < tail) {
+			final int i = queue[head++];
+			for (final GenericGraphBox dest : graphBoxes.get(i)
+					.getTransitions()) {
+				final int d = index.get(dest);
+				if (column[d] < column[i] + 1) {
+					column[d] = column[i] + 1;
+				}
+				if (--incoming[d] == 0) {
+					queue[tail++] = d;
+				}
+			}
+		}
+		int nColumns = 0;
+		for (int i = 0; i < n; i++) {
+			if (incoming[i] != 0) {
+				/* Should not happen, since sentence automata are acyclic */
+				column[i] = n;
+			}
+			if (i != 1 && column[i] + 1 > nColumns) {
+				nColumns = column[i] + 1;
+			}
+		}
+		/* The final box is always alone in the last column */
+		if (n > 1) {
+			column[1] = nColumns++;
+		}
+		final int[] columnWidth = new int[nColumns];
+		final int[] columnHeight = new int[nColumns];
+		final int hOutput = getFontMetrics(
+				getGraphPresentationInfo().getOutput().getFont()).getHeight();
+		final ArrayList<ArrayList<GenericGraphBox>> columns = new ArrayList<ArrayList<GenericGraphBox>>();
+		for (int c = 0; c < nColumns; c++) {
+			columns.add(new ArrayList<GenericGraphBox>());
+		}
+		for (int i = 0; i < n; i++) {
+			final int c = Math.min(column[i], nColumns - 1);
+			final GenericGraphBox b = graphBoxes.get(i);
+			columns.get(c).add(b);
+			columnWidth[c] = Math.max(columnWidth[c], b.Width);
+			columnHeight[c] += boxSlotHeight(b, hOutput);
+		}
+		int maxHeight = 0;
+		for (int c = 0; c < nColumns; c++) {
+			maxHeight = Math.max(maxHeight, columnHeight[c]);
+		}
+		int x = LAYOUT_MARGIN;
+		for (int c = 0; c < nColumns; c++) {
+			int y = LAYOUT_MARGIN + (maxHeight - columnHeight[c]) / 2;
+			for (final GenericGraphBox b : columns.get(c)) {
+				final int slot = boxSlotHeight(b, hOutput);
+				b.translateToPosition(x, y + b.Height / 2 + LAYOUT_V_GAP / 2);
+				y += slot;
+			}
+			x += columnWidth[c] + LAYOUT_H_GAP;
+		}
+		final int width = x + LAYOUT_MARGIN;
+		if (getGraphPresentationInfo().isRightToLeft()) {
+			for (final GenericGraphBox b : graphBoxes) {
+				b.translateToPosition(width - b.getX(), b.getY());
+			}
+		}
+		return new Dimension(width, maxHeight + 2 * LAYOUT_MARGIN);
+	}
+
+	private static int boxSlotHeight(GenericGraphBox b, int hOutput) {
+		int h = b.Height + LAYOUT_V_GAP;
+		if (b.transduction != null && !b.transduction.equals("")) {
+			h += hOutput;
+		}
+		return h;
+	}
+
 	public boolean isBoxNotPreferred(TfstGraphBox box) {
 		return model.isNotPreferred(box);
 	}
@@ -0,0 +1,229 @@
+/*
+ * Unitex
+ *
+ * Copyright (C) 2001-2021 Université Paris-Est Marne-la-Vallée <unitex@univ-mlv.fr>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA.
+ *
+ */
+package fr.umlv.unitex.graphtools;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import fr.umlv.unitex.graphrendering.GenericGraphBox;
+
+/**
+ * This class represents a search of the find and replace dialog, compiled once
+ * so that it can be tested on many boxes without compiling patterns or
+ * checking the search again for each of them.
+ */
+public class BoxQuery {
+	private final String search;
+	private final boolean useRegex;
+	private final boolean caseSensitive;
+	private final boolean wholeLine;
+	private final boolean ignoreComment;
+	/*
+	 * Pattern used to look for the search inside a box content or a line: the
+	 * regex itself, or the quoted search for a case insensitive search. It is
+	 * null if not needed or if the regex is not valid.
+	 */
+	private final Pattern pattern;
+	/* Pattern used to match a whole line with a regex, or null */
+	private final Pattern linePattern;
+
+	/**
+	 * @param search        the sequence to search for.
+	 * @param useRegex      true if the search must use regular expressions, false otherwise.
+	 * @param caseSensitive true if the search must be case sensitive, false otherwise.
+	 * @param wholeLine     true if the search must match a whole line only, false otherwise.
+	 * @param ignoreComment true if the search must ignore comment boxes, false otherwise.
+	 */
+	public BoxQuery(String search, boolean useRegex, boolean caseSensitive,
+			boolean wholeLine, boolean ignoreComment) {
+		this.search = search;
+		this.useRegex = useRegex;
+		this.caseSensitive = caseSensitive;
+		this.wholeLine = wholeLine;
+		this.ignoreComment = ignoreComment;
+		if (useRegex) {
+			pattern = compile(search);
+			linePattern = wholeLine ? compile("^" + search + "$") : null;
+		} else {
+			pattern = caseSensitive ? null : Pattern.compile(
+					Pattern.quote(search), Pattern.CASE_INSENSITIVE);
+			linePattern = null;
+		}
+	}
+
+	/**
+	 * Returns the compiled pattern, or null if the regex is not valid.
+	 */
+	static Pattern compile(String regex) {
+		try {
+			return Pattern.compile(regex);
+		} catch (final PatternSyntaxException e) {
+			return null;
+		}
+	}
+
+	public String getSearch() {
+		return search;
+	}
+
+	public boolean isUseRegex() {
+		return useRegex;
+	}
+
+	public boolean isCaseSensitive() {
+		return caseSensitive;
+	}
+
+	public boolean isWholeLine() {
+		return wholeLine;
+	}
+
+	public boolean isIgnoreComment() {
+		return ignoreComment;
+	}
+
+	/**
+	 * Returns true if the given box can be matched by this search: a normal
+	 * box that is not empty, and not a comment box if comments are ignored.
+	 */
+	boolean isSearchable(GenericGraphBox box) {
+		return !(box.isStandaloneBox() && ignoreComment)
+				&& box.getType() == GenericGraphBox.NORMAL
+				&& !box.getContent().equals("<E>");
+	}
+
+	/**
+	 * Returns true if and only if the box contains the search.
+	 */
+	public boolean matches(GenericGraphBox box) {
+		if (!isSearchable(box)) {
+			return false;
+		}
+		final String content = box.getContent();
+		if (wholeLine) {
+			return matchesAnyLine(content);
+		}
+		if (useRegex) {
+			return pattern != null && pattern.matcher(content).find();
+		}
+		if (caseSensitive) {
+			return content.contains(search);
+		}
+		return pattern.matcher(content).find();
+	}
+
+	/**
+	 * Tests the lines of the given content as <code>content.split("\\+")</code>
+	 * would give them, without building the array.
+	 */
+	private boolean matchesAnyLine(String content) {
+		int start = 0;
+		final int length = content.length();
+		while (true) {
+			int end = content.indexOf('+', start);
+			if (end == -1) {
+				end = length;
+			}
+			if (end == start && length > 0 && isOnlyPlus(content, start)) {
+				/* split ignores trailing empty lines */
+				return false;
+			}
+			if (matchesLine(content.substring(start, end))) {
+				return true;
+			}
+			if (end == length) {
+				return false;
+			}
+			start = end + 1;
+		}
+	}
+
+	private static boolean isOnlyPlus(String s, int start) {
+		for (int i = start; i < s.length(); i++) {
+			if (s.charAt(i) != '+') {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns true if the given box line is matched by a whole line search.
+	 */
+	boolean matchesLine(String line) {
+		if (useRegex) {
+			return linePattern != null && linePattern.matcher(line).find();
+		}
+		if (caseSensitive) {
+			return line.equals(search);
+		}
+		return line.equalsIgnoreCase(search);
+	}
+
+	/**
+	 * Returns the content the box would have once the search is replaced, not
+	 * normalized yet, or null if the box must not be modified.
+	 */
+	String replace(GenericGraphBox box, String replace) {
+		if (box.isStandaloneBox() && ignoreComment) {
+			return null;
+		}
+		final String content = box.getContent();
+		if (wholeLine) {
+			return replaceLines(content.split("\\+"), replace);
+		}
+		if (box.getType() != GenericGraphBox.NORMAL || content.equals("<E>")) {
+			return null;
+		}
+		if (useRegex) {
+			if (pattern == null) {
+				return null;
+			}
+			return pattern.matcher(content).replaceAll(replace);
+		}
+		if (caseSensitive) {
+			return content.replace(search, replace);
+		}
+		return pattern.matcher(content).replaceAll(replace);
+	}
+
+	private String replaceLines(String[] tokens, String replace) {
+		final StringBuilder sb = new StringBuilder();
+		String prefix = "";
+		for (final String token : tokens) {
+			sb.append(prefix);
+			prefix = "+";
+			if (!matchesLine(token)) {
+				sb.append(token);
+			} else if (useRegex) {
+				sb.append(pattern == null ? token : pattern.matcher(token)
+						.replaceAll(replace));
+			} else if (caseSensitive) {
+				sb.append(token.replace(search, replace));
+			} else {
+				final Matcher m = pattern.matcher(token);
+				sb.append(m.replaceAll(replace));
+			}
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,146 @@
+/*
+ * Unitex
+ *
+ * Copyright (C) 2001-2021 Université Paris-Est Marne-la-Vallée <unitex@univ-mlv.fr>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA.
+ *
+ */
+package fr.umlv.unitex.graphtools;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import fr.umlv.unitex.graphrendering.GenericGraphBox;
+import fr.umlv.unitex.graphrendering.GenericGraphicalZone;
+
+/**
+ * This class is an inverted index of the lines of the boxes of a graphical
+ * zone, as obtained by splitting box contents on <code>+</code>. It is used to
+ * find the boxes that contain a given line, and the boxes whose whole content
+ * is a given string, without testing all boxes.
+ *
+ * Box contents are modified in many places, so the index checks that the
+ * contents it was built from are still the current ones each time it is
+ * used, and is built again if they are not.
+ */
+class BoxTokenIndex {
+	private static final Map<GenericGraphicalZone, BoxTokenIndex> indexes = new WeakHashMap<GenericGraphicalZone, BoxTokenIndex>();
+
+	private GenericGraphBox[] boxes = new GenericGraphBox[0];
+	private String[] contents = new String[0];
+	private final HashMap<String, ArrayList<GenericGraphBox>> lines = new HashMap<String, ArrayList<GenericGraphBox>>();
+	private final HashMap<String, ArrayList<GenericGraphBox>> foldedLines = new HashMap<String, ArrayList<GenericGraphBox>>();
+	private final HashMap<String, ArrayList<GenericGraphBox>> foldedContents = new HashMap<String, ArrayList<GenericGraphBox>>();
+
+	/**
+	 * Returns the up to date index of the given zone.
+	 */
+	static BoxTokenIndex get(GenericGraphicalZone zone) {
+		BoxTokenIndex index;
+		synchronized (indexes) {
+			index = indexes.get(zone);
+			if (index == null) {
+				index = new BoxTokenIndex();
+				indexes.put(zone, index);
+			}
+		}
+		index.update(zone.getBoxes());
+		return index;
+	}
+
+	private synchronized void update(ArrayList<GenericGraphBox> graphBoxes) {
+		if (isUpToDate(graphBoxes)) {
+			return;
+		}
+		final int n = graphBoxes.size();
+		boxes = graphBoxes.toArray(new GenericGraphBox[n]);
+		contents = new String[n];
+		lines.clear();
+		foldedLines.clear();
+		foldedContents.clear();
+		for (int i = 0; i < n; i++) {
+			final GenericGraphBox box = boxes[i];
+			final String content = box.getContent();
+			contents[i] = content;
+			add(foldedContents, fold(content), box);
+			for (final String line : content.split("\\+")) {
+				add(lines, line, box);
+				add(foldedLines, fold(line), box);
+			}
+		}
+	}
+
+	private boolean isUpToDate(ArrayList<GenericGraphBox> graphBoxes) {
+		if (graphBoxes.size() != boxes.length) {
+			return false;
+		}
+		for (int i = 0; i < boxes.length; i++) {
+			final GenericGraphBox box = graphBoxes.get(i);
+			if (box != boxes[i] || box.getContent() != contents[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static void add(HashMap<String, ArrayList<GenericGraphBox>> map,
+			String key, GenericGraphBox box) {
+		ArrayList<GenericGraphBox> list = map.get(key);
+		if (list == null) {
+			list = new ArrayList<GenericGraphBox>(1);
+			map.put(key, list);
+		}
+		/* A box with the same line twice must be listed once */
+		if (list.isEmpty() || list.get(list.size() - 1) != box) {
+			list.add(box);
+		}
+	}
+
+	/**
+	 * Returns a string such that two strings have the same folded form if and
+	 * only if they are equal according to <code>String.equalsIgnoreCase</code>.
+	 */
+	static String fold(String s) {
+		final char[] tmp = s.toCharArray();
+		for (int i = 0; i < tmp.length; i++) {
+			tmp[i] = Character.toLowerCase(Character.toUpperCase(tmp[i]));
+		}
+		return new String(tmp);
+	}
+
+	/**
+	 * Returns the boxes that may have a line equal to the given one. With a
+	 * case insensitive search, the result may contain boxes whose lines only
+	 * have the same folded form, which must be checked by the caller.
+	 */
+	synchronized ArrayList<GenericGraphBox> getBoxesWithLine(String line,
+			boolean caseSensitive) {
+		final ArrayList<GenericGraphBox> res = caseSensitive ? lines.get(line)
+				: foldedLines.get(fold(line));
+		return res == null ? new ArrayList<GenericGraphBox>() : res;
+	}
+
+	/**
+	 * Returns the boxes whose content may be equal to the given one, ignoring
+	 * case. The result must be checked by the caller.
+	 */
+	synchronized ArrayList<GenericGraphBox> getBoxesWithContent(String content) {
+		final ArrayList<GenericGraphBox> res = foldedContents.get(fold(content));
+		return res == null ? new ArrayList<GenericGraphBox>() : res;
+	}
+}
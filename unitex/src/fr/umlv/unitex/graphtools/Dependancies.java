@@ -21,17 +21,14 @@
 package fr.umlv.unitex.graphtools;
 
 import java.io.File;
-import java.io.FilenameFilter;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 
-import fr.umlv.unitex.config.Config;
-import fr.umlv.unitex.graphrendering.GenericGraphBox;
-import fr.umlv.unitex.io.GraphIO;
-
 /**
- * This class provides methods for building graph dependencies.
+ * This class provides methods for building graph dependencies. The graph calls
+ * are taken from the <code>GraphDependencyIndex</code>, so that only the graphs
+ * modified since the last request have to be parsed again.
  * 
  * @author Sébastien Paumier
  */
@@ -49,11 +46,14 @@ public class Dependancies {
 		if (!rootDir.isDirectory())
 			throw new IllegalArgumentException("Directory expected");
 		final HashMap<File, ArrayList<GraphCall>> map = new HashMap<File, ArrayList<GraphCall>>();
-		getAllGraphDependencies(rootDir, map);
+		for (final File f : GraphDependencyIndex.updateDirectory(rootDir)) {
+			computeGraphDependencies(f, map, false, true);
+		}
+		final File target = grf.getAbsoluteFile();
 		for (final File f : map.keySet()) {
 			final ArrayList<GraphCall> list = map.get(f);
 			for (final GraphCall c : list) {
-				if (c.getGrf().equals(grf)) {
+				if (c.getGrf().equals(target)) {
 					callers.add(new GraphCall(f));
 				}
 			}
@@ -67,7 +67,7 @@ public class Dependancies {
 	 */
 	public static ArrayList<GraphCall> getAllSubgraphs(File grf) {
 		final HashMap<File, ArrayList<GraphCall>> map = new HashMap<File, ArrayList<GraphCall>>();
-		computeGraphDependencies(grf, map, true, false);
+		computeGraphDependencies(grf.getAbsoluteFile(), map, true, false);
 		final ArrayList<GraphCall> result = new ArrayList<GraphCall>();
 		for (final ArrayList<GraphCall> values : map.values()) {
 			for (final GraphCall f : values) {
@@ -80,59 +80,35 @@ public class Dependancies {
 		return result;
 	}
 
-	private static void getAllGraphDependencies(File rootDir,
-			HashMap<File, ArrayList<GraphCall>> map) {
-		final File[] files = rootDir.listFiles(new FilenameFilter() {
-			@Override
-			public boolean accept(File dir, String name) {
-				final File tmp = new File(dir, name);
-				return name.endsWith(".grf") || tmp.isDirectory();
-			}
-		});
-		if (files == null)
-			return;
-		for (final File f : files) {
-			if (f.isFile())
-				computeGraphDependencies(f, map, false, true);
-			else
-				getAllGraphDependencies(f, map);
-		}
-	}
-
 	/**
 	 * This function computes the list of graphs directly called from grf. main
 	 * is supposed to be true only if grf is the main graph on which the
 	 * dependency request was made.
 	 */
-	private static ArrayList<GraphCall> getSubgraphs(File grf,
-			boolean emitErrorMessages, boolean main, boolean whoCallsMode) {
-		GraphIO io;
-		try {
-			io = GraphIO.loadGraph(grf, false, false);
-			if (io == null)
-				return null;
-		} catch (final Exception e) {
+	private static ArrayList<GraphCall> getSubgraphs(File grf, boolean main,
+			boolean whoCallsMode) {
+		final GraphDependencyIndex.Entry e = GraphDependencyIndex
+				.getEntry(grf);
+		if (e == null)
 			return null;
-		}
 		final ArrayList<GraphCall> subgraphs = new ArrayList<GraphCall>();
-		final boolean[] accessible = new boolean[io.getBoxes().size()];
-		final int[] coaccessible = new int[io.getBoxes().size()];
-		for (int i = 0; i < coaccessible.length; i++)
-			coaccessible[i] = UNTESTED;
-		markAccessibleBoxes(io.getBoxes(), accessible, 0);
-		for (int i = 0; i < io.getBoxes().size(); i++) {
-			if (isCoaccessibleBoxes(io.getBoxes(), coaccessible, i)) {
-				coaccessible[i] = TESTED_TRUE;
-			} else {
-				coaccessible[i] = TESTED_FALSE;
+		for (int i = 0; i < e.callees.length; i++) {
+			if (whoCallsMode) {
+				/*
+				 * When we look for graph callers, we don't make any distinction
+				 * between direct and indirect graphs
+				 */
+				subgraphs.add(new GraphCall(e.callees[i], true, true));
+			} else if (main) {
+				/*
+				 * In the main graph, useless graphs are also collected, and a
+				 * graph is useless if it appears in at least one useless box
+				 */
+				subgraphs.add(new GraphCall(e.callees[i], e.allUseful[i], true));
+			} else if (e.anyUseful[i]) {
+				subgraphs.add(new GraphCall(e.callees[i], true, false));
 			}
 		}
-		for (int i = 0; i < io.getBoxes().size(); i++) {
-			final boolean useful = accessible[i]
-					&& coaccessible[i] == TESTED_TRUE;
-			addSubgraphs(subgraphs, io.getBoxes().get(i), grf,
-					emitErrorMessages, useful, main, whoCallsMode);
-		}
 		return subgraphs;
 	}
 
@@ -151,144 +127,12 @@ public class Dependancies {
 		if (map.containsKey(grf))
 			return;
 		/* We look for the graphs that all directly called from grf */
-		final ArrayList<GraphCall> files = getSubgraphs(grf, false, main,
-				whoCallsMode);
-		if (files == null)
+		final ArrayList<GraphCall> res = getSubgraphs(grf, main, whoCallsMode);
+		if (res == null)
 			return;
-		final ArrayList<GraphCall> res = new ArrayList<GraphCall>();
-		for (final GraphCall c : files) {
-			res.add(c);
-		}
 		map.put(grf, res);
 		for (final GraphCall f : res) {
 			computeGraphDependencies(f.getGrf(), map, false, whoCallsMode);
 		}
 	}
-
-	/**
-	 * Adds to the given list the subgraphs contained in the given box.
-	 */
-	private static void addSubgraphs(ArrayList<GraphCall> subgraphs,
-			GenericGraphBox box, File parent, boolean emitErrorMessages,
-			boolean useful, boolean main, boolean whoCallsMode) {
-		if (!whoCallsMode && !useful && !main) {
-			/*
-			 * useless graphs are only collected 1) in whoCallsMode 2) or if we
-			 * are in the main graph
-			 */
-			return;
-		}
-		for (int i = 0; i < box.lines.size(); i++) {
-			if (box.greyed.get(i)) {
-				/* If we have a subgraph call */
-				final File f = getSubgraph(box.lines.get(i), parent,
-						emitErrorMessages);
-				if (f != null && !subgraphs.contains(f) && !f.equals(parent)) {
-					boolean there = false;
-					for (final GraphCall c : subgraphs) {
-						if (c.getGrf().equals(f)) {
-							/*
-							 * The graph may already be present in our list, but
-							 * with a different usefulness. In such a case, we
-							 * update the usefulness in order to indicate that
-							 * the graph appears in at least one useless path
-							 */
-							if (!useful) {
-								c.setUseful(false);
-							}
-							there = true;
-						}
-					}
-					if (!there) {
-						if (whoCallsMode) {
-							/*
-							 * When we look for graph callers, we don't make any
-							 * distinction between direct and indirect graphs
-							 */
-							subgraphs.add(new GraphCall(f, true, true));
-						} else {
-							subgraphs.add(new GraphCall(f, useful, main));
-						}
-					}
-				}
-			}
-		}
-	}
-
-	private static File getSubgraph(String s, File parent,
-			@SuppressWarnings("unused") boolean emitErrorMessages) {
-		if (!s.endsWith(".grf")) {
-			s = s + ".grf";
-		}
-		/* replace ':' by '/' resp. '\\' */
-		if (s.startsWith(":")) {
-			// if the graph is located in the package repository
-			return new File(
-					GenericGraphBox.getNormalizeGraphCall(s));
-		}
-		// otherwise
-		File f = new File(s);
-		if (Config.getCurrentSystem() == Config.WINDOWS_SYSTEM
-				&& f.isAbsolute()) {
-			// first we test if we have an absolute windows pathname,
-			// in order to avoid wrong transformations like:
-			//
-			// C:\\foo\foo.grf => C\\\foo\foo.grf
-			//
-			return f;
-		}
-		s = s.replace(':', File.separatorChar);
-		if (!f.isAbsolute()) {
-			f = new File(parent.getParentFile(), s);
-		}
-		return f;
-	}
-
-	private static void markAccessibleBoxes(ArrayList<GenericGraphBox> boxes,
-			boolean[] marked, int n) {
-		if (marked[n] == true)
-			return;
-		marked[n] = true;
-		final GenericGraphBox b = boxes.get(n);
-		final ArrayList<GenericGraphBox> dest = b.getTransitions();
-		if (dest == null)
-			return;
-		for (final GenericGraphBox box : dest) {
-			markAccessibleBoxes(boxes, marked, boxes.indexOf(box));
-		}
-	}
-
-	private final static int UNTESTED = 0;
-	private final static int TESTED_TRUE = 1;
-	private final static int TESTED_FALSE = 2;
-	private final static int BEING_TESTED = 3;
-
-	private static boolean isCoaccessibleBoxes(
-			ArrayList<GenericGraphBox> boxes, int[] marked, int n) {
-		if (marked[n] == TESTED_FALSE || marked[n] == TESTED_TRUE) {
-			return marked[n] == TESTED_TRUE;
-		}
-		if (marked[n] == BEING_TESTED) {
-			return false;
-		}
-		marked[n] = BEING_TESTED;
-		final GenericGraphBox b = boxes.get(n);
-		if (b.type == GenericGraphBox.FINAL) {
-			marked[n] = TESTED_TRUE;
-			return true;
-		}
-		final ArrayList<GenericGraphBox> dest = b.getTransitions();
-		if (dest == null) {
-			marked[n] = TESTED_FALSE;
-			return false;
-		}
-		for (final GenericGraphBox box : dest) {
-			if (isCoaccessibleBoxes(boxes, marked, boxes.indexOf(box))) {
-				marked[n] = UNTESTED;
-				return true;
-			}
-		}
-		marked[n] = UNTESTED;
-		return false;
-	}
 }
@@ -27,8 +27,12 @@ import fr.umlv.unitex.graphrendering.GenericGraphicalZone;
 import fr.umlv.unitex.graphrendering.GraphicalZone;
 
 import java.util.ArrayList;
-import java.util.regex.Pattern;
-import java.util.regex.PatternSyntaxException;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 /**
  * This class contains static methods that allow to find and replace the content of one or more boxes.
@@ -37,48 +41,6 @@ import java.util.regex.PatternSyntaxException;
  */
 public class FindAndReplace {
 
-  private static boolean contains(String search, String content, boolean caseSensitive) {
-    if (caseSensitive) {
-      return content.contains(search);
-    }
-    return Pattern.compile(Pattern.quote(search), Pattern.CASE_INSENSITIVE).matcher(content).find();
-  }
-
-  /**
-   * Returns true if and only if the specified regex is a valid regex.
-   *
-   * @param regex the regex to test.
-   * @return true if regex is valid, false otherwise.
-   */
-  private static boolean isRegex(String regex) {
-    boolean isRegex;
-    try {
-      Pattern.compile(regex);
-      isRegex = true;
-    } catch (PatternSyntaxException e) {
-      isRegex = false;
-    }
-    return isRegex;
-  }
-
-  /**
-   * Returns true if and only if the content of g has been replaced.
-   * Replace the content of g with replace if it contains search.
-   *
-   * @param g       the box containing the string to replace.
-   * @param search  the sequence to search for.
-   * @param replace the sequence to replace with.
-   * @param zone    the GenericGraphicalZone containing the box.
-   * @return true if the content has been replaced, false otherwise.
-   */
-  private static boolean replace(GenericGraphBox g, String search, String replace, GenericGraphicalZone zone) {
-    if (g.getType() == GraphBox.NORMAL && !g.getContent().equals("<E>")) {
-      String newContent = g.getContent().replace(search, replace);
-      return setNewText(g, zone, newContent);
-    }
-    return false;
-  }
-
   private static boolean setNewText(GenericGraphBox g, GenericGraphicalZone zone, String newContent) {
     if (!newContent.equals(g.getContent())) {
       newContent = newContent.replaceAll("\\++", "+").replaceAll("^\\+", "")
@@ -91,32 +53,6 @@ public class FindAndReplace {
     return false;
   }
 
-  private static boolean replaceCaseInsensitive(GenericGraphBox g, String search, String replace, GenericGraphicalZone zone) {
-    if (g.getType() == GraphBox.NORMAL && !g.getContent().equals("<E>")) {
-      String newContent = g.getContent().replaceAll("(?i)" + Pattern.quote(search), replace);
-      return setNewText(g, zone, newContent);
-    }
-    return false;
-  }
-
-  /**
-   * Returns true if and only if the content of g has been replaced.
-   * Replace the content of g with replace if it matches regex.
-   *
-   * @param g       the box containing the string to replace.
-   * @param regex   the sequence to search for.
-   * @param replace the sequence to replace with.
-   * @param zone    the GenericGraphicalZone containing the box.
-   * @return true if the content has been replaced, false otherwise.
-   */
-  private static boolean replaceRegex(GenericGraphBox g, String regex, String replace, GenericGraphicalZone zone) {
-    if (isRegex(regex) && g.getType() == GraphBox.NORMAL && !g.getContent().equals("<E>")) {
-      String newContent = g.getContent().replaceAll(regex, replace);
-      return setNewText(g, zone, newContent);
-    }
-    return false;
-  }
-
   /**
    * Returns the number of occurrence of search in boxes.
    *
@@ -130,31 +66,91 @@ public class FindAndReplace {
    */
   public static int findAll(ArrayList<GenericGraphBox> boxes, String search, boolean useRegex, boolean caseSensitive,
                             boolean wholeLine, boolean ignoreComment) {
+    return findAll(boxes, new BoxQuery(search, useRegex, caseSensitive, wholeLine, ignoreComment));
+  }
+
+  /**
+   * Returns the number of boxes matched by the query.
+   *
+   * @param boxes the list containing the boxes.
+   * @param query the compiled search.
+   * @return the number of boxes matched by the query.
+   */
+  public static int findAll(ArrayList<GenericGraphBox> boxes, BoxQuery query) {
     int i = 0;
-    if (wholeLine) {
-      for (GenericGraphBox box : boxes) {
-        String[] tokens = box.getContent().split("\\+");
-        if (!(box.isStandaloneBox() && ignoreComment) && searchArray(tokens, search, useRegex, caseSensitive) && box
-          .getType() == GenericGraphBox.NORMAL && !box.getContent().equals("<E>")) {
-          i++;
-        }
+    for (GenericGraphBox box : boxes) {
+      if (query.matches(box)) {
+        i++;
       }
-    } else if (!useRegex) {
-      for (GenericGraphBox box : boxes) {
-        if (!(box.isStandaloneBox() && ignoreComment) && contains(search, box.getContent(), caseSensitive) && box
-          .getType() == GenericGraphBox.NORMAL && !box.getContent().equals("<E>")) {
-          i++;
-        }
+    }
+    return i;
+  }
+
+  /**
+   * Returns the number of boxes matched by the query in the given graphical zone. When the
+   * search is about whole lines without regular expressions, the boxes are looked up in an
+   * index of the box lines instead of being all tested.
+   *
+   * @param zone  the GenericGraphicalZone containing the boxes.
+   * @param query the compiled search.
+   * @return the number of boxes matched by the query.
+   */
+  public static int findAll(GenericGraphicalZone zone, BoxQuery query) {
+    if (!query.isWholeLine() || query.isUseRegex()) {
+      return findAll(zone.getBoxes(), query);
+    }
+    int i = 0;
+    for (GenericGraphBox box : BoxTokenIndex.get(zone).getBoxesWithLine(query.getSearch(), query.isCaseSensitive())) {
+      if (query.matches(box)) {
+        i++;
       }
-    } else {
-      for (GenericGraphBox box : boxes) {
-        if (!(box.isStandaloneBox() && ignoreComment) && isRegex(search) && Pattern.compile(search).matcher(box
-          .getContent()).find() && box.getType() == GenericGraphBox.NORMAL && !box.getContent().equals("<E>")) {
-          i++;
+    }
+    return i;
+  }
+
+  /**
+   * Returns the number of boxes matched by the query in all the given graphical zones.
+   * The zones are searched in parallel. They must not be modified during the search.
+   *
+   * @param zones the GenericGraphicalZones containing the boxes.
+   * @param query the compiled search.
+   * @return the number of boxes matched by the query.
+   */
+  public static int findAll(List<? extends GenericGraphicalZone> zones, final BoxQuery query) {
+    final ArrayList<Callable<Integer>> tasks = new ArrayList<Callable<Integer>>();
+    for (final GenericGraphicalZone zone : zones) {
+      tasks.add(new Callable<Integer>() {
+        @Override
+        public Integer call() {
+          return findAll(zone, query);
         }
+      });
+    }
+    return sum(tasks);
+  }
+
+  /**
+   * Runs the given counting tasks in parallel and returns the sum of their results.
+   */
+  private static int sum(ArrayList<Callable<Integer>> tasks) {
+    if (tasks.size() == 1) {
+      try {
+        return tasks.get(0).call();
+      } catch (Exception e) {
+        throw new RuntimeException(e);
       }
     }
-    return i;
+    int res = 0;
+    try {
+      for (Future<Integer> f : ForkJoinPool.commonPool().invokeAll(tasks)) {
+        res += f.get();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (ExecutionException e) {
+      throw new RuntimeException(e.getCause());
+    }
+    return res;
   }
 
   /**
@@ -170,53 +166,23 @@ public class FindAndReplace {
    * @return true if the box contains search, false otherwise.
    */
   public static boolean find(GenericGraphicalZone zone, GenericGraphBox box, String search, boolean useRegex, boolean caseSensitive, boolean wholeLine, boolean ignoreComment) {
-    if (box.isStandaloneBox() && ignoreComment || box.getContent().equals("<E>") || box.getType() != GenericGraphBox.NORMAL) {
-      zone.setHighlight(false);
-      return false;
-    }
-    if (wholeLine) {
-      String[] tokens = box.getContent().split("\\+");
-      if (searchArray(tokens, search, useRegex, caseSensitive)) {
-        zone.setHighlight(box, true);
-        return true;
-      }
-    } else {
-      if (!useRegex) {
-        if (contains(search, box.getContent(), caseSensitive)) {
-          zone.setHighlight(box, true);
-          return true;
-        }
-      } else {
-        if (isRegex(search) && Pattern.compile(search).matcher(box.getContent()).find()) {
-          zone.setHighlight(box, true);
-          return true;
-        }
-      }
-    }
-    zone.setHighlight(false);
-    return false;
+    return find(zone, box, new BoxQuery(search, useRegex, caseSensitive, wholeLine, ignoreComment));
   }
 
-  private static boolean searchArray(String[] tokens, String search, boolean useRegex, boolean caseSensitive) {
-    if (useRegex) {
-      for (String token : tokens) {
-        if (isRegex("^" + search + "$") && Pattern.compile("^" + search + "$").matcher(token).find()) {
-          return true;
-        }
-      }
-    } else {
-      for (String token : tokens) {
-        if (caseSensitive) {
-          if (token.equals(search)) {
-            return true;
-          }
-        } else {
-          if (token.equalsIgnoreCase(search)) {
-            return true;
-          }
-        }
-      }
+  /**
+   * Returns true if and only if this box is matched by the query, and highlights it if so.
+   *
+   * @param zone  the GenericGraphicalZone containing the box.
+   * @param box   the box containing the string to search
+   * @param query the compiled search.
+   * @return true if the box is matched by the query, false otherwise.
+   */
+  public static boolean find(GenericGraphicalZone zone, GenericGraphBox box, BoxQuery query) {
+    if (query.matches(box)) {
+      zone.setHighlight(box, true);
+      return true;
     }
+    zone.setHighlight(false);
     return false;
   }
 
@@ -235,25 +201,22 @@ public class FindAndReplace {
    * @return true if the content has been replaced, false otherwise.
    */
   public static boolean replace(GenericGraphBox box, String search, String replace, GenericGraphicalZone zone, boolean useRegex, boolean caseSensitive, boolean wholeLine, boolean ignoreComment) {
-    if (box.isStandaloneBox() && ignoreComment) {
-      return false;
-    }
-    if (wholeLine) {
-      String[] tokens = box.getContent().split("\\+");
-      String newContent = replaceArrayToString(tokens, search, replace, useRegex, caseSensitive);
-      if (setNewText(box, zone, newContent)) return true;
-    } else {
-      if (useRegex) {
-        return replaceRegex(box, search, replace, zone);
-      } else {
-        if (caseSensitive) {
-          return replace(box, search, replace, zone);
-        } else {
-          return replaceCaseInsensitive(box, search, replace, zone);
-        }
-      }
-    }
-    return false;
+    return replace(box, replace, zone, new BoxQuery(search, useRegex, caseSensitive, wholeLine, ignoreComment));
+  }
+
+  /**
+   * Returns true if and only if the content of box has been replaced.
+   * Replace what is matched by the query in box with replace.
+   *
+   * @param box     the box containing the string to replace.
+   * @param replace the sequence to replace with.
+   * @param zone    the GenericGraphicalZone containing the box.
+   * @param query   the compiled search.
+   * @return true if the content has been replaced, false otherwise.
+   */
+  public static boolean replace(GenericGraphBox box, String replace, GenericGraphicalZone zone, BoxQuery query) {
+    final String newContent = query.replace(box, replace);
+    return newContent != null && setNewText(box, zone, newContent);
   }
 
   /**
@@ -270,96 +233,40 @@ public class FindAndReplace {
    * @return the number of boxes which content has been replaced.
    */
   public static int replaceAll(ArrayList<GenericGraphBox> boxes, String search, String replace, GenericGraphicalZone zone, boolean useRegex, boolean caseSensitive, boolean wholeLine, boolean ignoreComment) {
+    return replaceAll(boxes, replace, zone, new BoxQuery(search, useRegex, caseSensitive, wholeLine, ignoreComment));
+  }
+
+  /**
+   * Replace all boxes and returns the number of boxes which content has been replaced.
+   *
+   * @param boxes   the list containing the boxes.
+   * @param replace the sequence to replace with.
+   * @param zone    the GenericGraphicalZone containing the box.
+   * @param query   the compiled search.
+   * @return the number of boxes which content has been replaced.
+   */
+  public static int replaceAll(ArrayList<GenericGraphBox> boxes, String replace, GenericGraphicalZone zone, BoxQuery query) {
     int i = 0;
     for (GenericGraphBox box : boxes) {
-      if (replace(box, search, replace, zone, useRegex, caseSensitive, wholeLine, ignoreComment)) {
+      if (replace(box, replace, zone, query)) {
         i++;
       }
     }
     return i;
   }
 
-  private static String replaceArrayToString(String[] tokens, String search, String replace, boolean useRegex,
-                                             boolean caseSensitive) {
-    StringBuilder sb = new StringBuilder();
-    String prefix = "";
-    if (useRegex) {
-      for (String token : tokens) {
-        sb.append(prefix);
-        prefix = "+";
-        if (isRegex("^" + search + "$") && Pattern.compile("^" + search + "$").matcher(token).find()) {
-          sb.append(token.replaceAll(search, replace));
-        } else {
-          sb.append(token);
-        }
-      }
-    } else {
-      for (String token : tokens) {
-        sb.append(prefix);
-        prefix = "+";
-        if (caseSensitive) {
-          if (token.equals(search)) {
-            sb.append(token.replace(search, replace));
-          } else {
-            sb.append(token);
-          }
-        } else {
-          if (token.equalsIgnoreCase(search)) {
-            sb.append(token.replaceAll("(?i)" + Pattern.quote(search), replace));
-          } else {
-            sb.append(token);
-          }
-        }
-      }
-    }
-    return sb.toString();
-  }
-
-  private static void checkReplace(GenericGraphBox box, String search, String replace, GenericGraphicalZone zone, boolean useRegex, boolean caseSensitive, boolean wholeLine, boolean ignoreComment) throws BackSlashAtEndOfLineException, NoClosingSupException, NoClosingQuoteException, NoClosingRoundBracketException, MissingGraphNameException {
-    if (box.isStandaloneBox() && ignoreComment) {
+  private static void checkReplace(GenericGraphBox box, String replace, GenericGraphicalZone zone, BoxQuery query) throws BackSlashAtEndOfLineException, NoClosingSupException, NoClosingQuoteException, NoClosingRoundBracketException, MissingGraphNameException {
+    String newContent = query.replace(box, replace);
+    if (newContent == null) {
       return;
     }
-    if (wholeLine) {
-      String[] tokens = box.getContent().split("\\+");
-      String newContent = replaceArrayToString(tokens, search, replace, useRegex, caseSensitive);
-      checkNewText(box, zone, newContent);
-    } else {
-      if (useRegex) {
-        checkReplaceRegex(box, search, replace, zone);
-      } else {
-        if (caseSensitive) {
-          checkReplace(box, search, replace, zone);
-        } else {
-          checkReplaceCaseInsensitive(box, search, replace, zone);
-        }
-      }
-    }
-  }
-
-  private static void checkReplaceCaseInsensitive(GenericGraphBox g, String search, String replace, GenericGraphicalZone zone) throws BackSlashAtEndOfLineException, NoClosingSupException, NoClosingQuoteException, NoClosingRoundBracketException, MissingGraphNameException {
-    if (g.getType() == GenericGraphBox.NORMAL && !g.getContent().equals("<E>")) {
-      String newContent = g.getContent().replaceAll("(?i)" + Pattern.quote(search), replace);
-      checkNewText(g, zone, newContent);
-    }
-  }
-
-
-  private static void checkReplaceRegex(GenericGraphBox g, String regex, String replace, GenericGraphicalZone zone) throws BackSlashAtEndOfLineException, NoClosingSupException, NoClosingQuoteException, NoClosingRoundBracketException, MissingGraphNameException {
-    if (isRegex(regex) && g.getType() == GenericGraphBox.NORMAL && !g.getContent().equals("<E>")) {
-      String newContent = g.getContent().replaceAll(regex, replace);
-      checkNewText(g, zone, newContent);
-    }
-  }
-
-  private static void checkReplace(GenericGraphBox g, String search, String replace, GenericGraphicalZone zone) throws BackSlashAtEndOfLineException, NoClosingSupException, NoClosingQuoteException, NoClosingRoundBracketException, MissingGraphNameException {
-    if (g.getType() == GenericGraphBox.NORMAL && !g.getContent().equals("<E>")) {
-      String newContent = g.getContent().replace(search, replace).replaceAll("\\++", "+").replaceAll("^\\+", "")
-        .replaceAll("\\+$", "");
+    if (!query.isWholeLine() && !query.isUseRegex() && query.isCaseSensitive()) {
+      newContent = newContent.replaceAll("\\++", "+").replaceAll("^\\+", "").replaceAll("\\+$", "");
       if (newContent.isEmpty()) {
         newContent = "<E>";
       }
-      checkNewText(g, zone, newContent);
     }
+    checkNewText(box, zone, newContent);
   }
 
   private static void checkNewText(GenericGraphBox box, GenericGraphicalZone zone, String newContent) throws BackSlashAtEndOfLineException, NoClosingSupException, NoClosingQuoteException, NoClosingRoundBracketException, MissingGraphNameException {
@@ -382,9 +289,22 @@ public class FindAndReplace {
    * @return the string containing an error message.
    */
   public static String checkReplaceAll(ArrayList<GenericGraphBox> boxes, String search, String replace, GenericGraphicalZone zone, boolean useRegex, boolean caseSensitive, boolean wholeLine, boolean ignoreComment) {
+    return checkReplaceAll(boxes, replace, zone, new BoxQuery(search, useRegex, caseSensitive, wholeLine, ignoreComment));
+  }
+
+  /**
+   * Returns a String containing an error message if one or more boxes cannot be replaced.
+   *
+   * @param boxes   the list containing the boxes.
+   * @param replace the sequence to replace with.
+   * @param zone    the GenericGraphicalZone containing the box.
+   * @param query   the compiled search.
+   * @return the string containing an error message.
+   */
+  public static String checkReplaceAll(ArrayList<GenericGraphBox> boxes, String replace, GenericGraphicalZone zone, BoxQuery query) {
     for (GenericGraphBox box : boxes) {
       try {
-        checkReplace(box, search, replace, zone, useRegex, caseSensitive, wholeLine, ignoreComment);
+        checkReplace(box, replace, zone, query);
       } catch (BackSlashAtEndOfLineException e) {
         return "Unexpected \'\\\' at end of line";
       } catch (NoClosingSupException e) {
@@ -400,25 +320,45 @@ public class FindAndReplace {
     return "";
   }
 
-  private static boolean findNextInSeq(GenericGraphicalZone zone, ArrayList<String> seq, GenericGraphBox box, int i, boolean
-    highlight, boolean caseSensitive, boolean useRegex) {
-    if (i >= seq.size()) {
-      return true;
-    }
-    if (!boxEquals(seq.get(i), box.getContent(), caseSensitive, useRegex)) {
-      return false;
-    } else if (highlight) {
-      box.setHighlight(true);
-      zone.getSelectedBoxes().add(box);
+  /**
+   * Returns the boxes of the sequence that starts with box if it matches the query, or null
+   * otherwise. No box is modified, and the results of the box tests are kept in cache.
+   */
+  private static ArrayList<GenericGraphBox> matchSeq(SequenceQuery query, GenericGraphBox box,
+                                                     IdentityHashMap<GenericGraphBox, byte[]> cache) {
+    final int n = query.size();
+    if (!query.matches(0, box, cache)) {
+      return null;
+    }
+    ArrayList<GenericGraphBox> seq = new ArrayList<GenericGraphBox>(n);
+    seq.add(box);
+    if (n == 1) {
+      return seq;
+    }
+    if (box.getTransitions().size() != 1) {
+      return null;
+    }
+    GenericGraphBox current = box.getTransitions().get(0);
+    for (int i = 1; i < n; i++) {
+      if (!query.matches(i, current, cache)) {
+        return null;
+      }
+      seq.add(current);
+      if (current.getTransitions().isEmpty()) {
+        return (i == n - 1) ? seq : null;
+      }
+      if ((i != n - 1 && current.getTransitions().size() > 1) || (current.getHasIncomingTransitions() > 1)) {
+        return null;
+      }
+      current = current.getTransitions().get(0);
     }
-    if (box.getTransitions().isEmpty()) {
-      return i == (seq.size() - 1);
+    return seq;
+  }
 
-    }
-    if ((i - seq.size() != -1 && box.getTransitions().size() > 1) || (box.getHasIncomingTransitions() > 1)) {
-      return false;
-    }
-    return findNextInSeq(zone, seq, box.getTransitions().get(0), i + 1, highlight, caseSensitive, useRegex);
+  private static void clearSeqHighlight(GenericGraphicalZone graphicalZone) {
+    graphicalZone.setHighlight(false);
+    graphicalZone.unSelectAllBoxes();
+    graphicalZone.removeHighlight();
   }
 
   /**
@@ -434,36 +374,84 @@ public class FindAndReplace {
    */
   public static boolean isSeq(GenericGraphicalZone graphicalZone, ArrayList<String> findSeqList, GenericGraphBox
     genericGraphBox, boolean highlight, boolean caseSensitive, boolean useRegex) {
-    if (findSeqList.size() == 1 && boxEquals(findSeqList.get(0), genericGraphBox.getContent(), caseSensitive, useRegex)) {
-      if (highlight) {
-        //genericGraphBox.setSelected(highlight);
-        genericGraphBox.setHighlight(true);
-        graphicalZone.getSelectedBoxes().add(genericGraphBox);
-        graphicalZone.setHighlight(genericGraphBox, true);
-      }
-      return true;
+    return isSeq(graphicalZone, new SequenceQuery(findSeqList, caseSensitive, useRegex), genericGraphBox, highlight);
+  }
+
+  /**
+   * Returns true if and only if this box and the following boxes match the sequence. If they
+   * do not, the highlighted and selected boxes of the graphical zone are cleared.
+   *
+   * @param graphicalZone   the GenericGraphicalZone containing the sequence.
+   * @param query           the compiled sequence to search for.
+   * @param genericGraphBox the first box of the sequence.
+   * @param highlight       true if the sequence must be highlighted, false otherwise.
+   * @return true if the box and the following boxes match the sequence, false otherwise.
+   */
+  public static boolean isSeq(GenericGraphicalZone graphicalZone, SequenceQuery query, GenericGraphBox
+    genericGraphBox, boolean highlight) {
+    final ArrayList<GenericGraphBox> seq = matchSeq(query, genericGraphBox,
+      new IdentityHashMap<GenericGraphBox, byte[]>());
+    if (seq == null) {
+      clearSeqHighlight(graphicalZone);
+      return false;
     }
-    if (boxEquals(findSeqList.get(0), genericGraphBox.getContent(), caseSensitive, useRegex) && genericGraphBox
-      .getTransitions().size() == 1) {
-      if (highlight) {
-        //genericGraphBox.setSelected(highlight);
-        genericGraphBox.setHighlight(true);
-        graphicalZone.getSelectedBoxes().add(genericGraphBox);
-        graphicalZone.setHighlight(genericGraphBox, true);
+    if (highlight) {
+      for (GenericGraphBox box : seq) {
+        box.setHighlight(true);
+        graphicalZone.getSelectedBoxes().add(box);
+        if (box == genericGraphBox) {
+          graphicalZone.setHighlight(box, true);
+        }
       }
-      if (!findNextInSeq(graphicalZone, findSeqList, genericGraphBox.getTransitions().get(0), 1, highlight,
-        caseSensitive, useRegex)) {
-        graphicalZone.unSelectAllBoxes();
-        graphicalZone.setHighlight(false);
-        graphicalZone.removeHighlight();
-        return false;
+    }
+    return true;
+  }
+
+  /**
+   * Returns, in the order of the graph, the first boxes of all the sequences of the graphical
+   * zone that match the query. Each box is tested at most once for each element of the sequence, and no box is modified.
+   */
+  private static ArrayList<GenericGraphBox> findAllSeq(GenericGraphicalZone zone, SequenceQuery query) {
+    final IdentityHashMap<GenericGraphBox, byte[]> cache = new IdentityHashMap<GenericGraphBox, byte[]>();
+    final ArrayList<GenericGraphBox> res = new ArrayList<GenericGraphBox>();
+    if (query.size() == 0) {
+      return res;
+    }
+    /* Without regular expressions, only the boxes equal to the first element can start a sequence */
+    final ArrayList<GenericGraphBox> candidates = query.isUseRegex() ? zone.getBoxes()
+      : BoxTokenIndex.get(zone).getBoxesWithContent(query.getElement(0));
+    for (GenericGraphBox box : candidates) {
+      if (matchSeq(query, box, cache) != null) {
+        res.add(box);
       }
-      return true;
     }
-    graphicalZone.setHighlight(false);
-    graphicalZone.unSelectAllBoxes();
-    graphicalZone.removeHighlight();
-    return false;
+    return res;
+  }
+
+  /**
+   * Returns the number of sequences that match the query in all the given graphical zones.
+   * The zones are searched in parallel, and then, as a failed <code>isSeq</code> would do,
+   * their highlighted and selected boxes are cleared.
+   *
+   * @param zones the GenericGraphicalZones containing the boxes.
+   * @param query the compiled sequence to search for.
+   * @return the number of sequences that match the query.
+   */
+  public static int countSeq(List<? extends GenericGraphicalZone> zones, final SequenceQuery query) {
+    final ArrayList<Callable<Integer>> tasks = new ArrayList<Callable<Integer>>();
+    for (final GenericGraphicalZone zone : zones) {
+      tasks.add(new Callable<Integer>() {
+        @Override
+        public Integer call() {
+          return findAllSeq(zone, query).size();
+        }
+      });
+    }
+    final int res = sum(tasks);
+    for (GenericGraphicalZone zone : zones) {
+      clearSeqHighlight(zone);
+    }
+    return res;
   }
 
   /**
@@ -479,15 +467,25 @@ public class FindAndReplace {
    */
   public static int replaceAllSeq(GenericGraphicalZone zone, ArrayList<String> findSeqList, ArrayList<String>
     replaceSeqList, boolean caseSensitive, boolean useRegex) {
-    ArrayList<GenericGraphBox> boxes = new ArrayList<GenericGraphBox>();
-    for (GenericGraphBox box : zone.getBoxes()) {
-      if (isSeq(zone, findSeqList, box, false, caseSensitive, useRegex)) {
-        boxes.add(box);
-      }
-    }
+    return replaceAllSeq(zone, new SequenceQuery(findSeqList, caseSensitive, useRegex), replaceSeqList);
+  }
+
+  /**
+   * Replace all sequence with replaceSeqList and returns the number of sequences
+   * which have been replaced.
+   *
+   * @param zone           the GenericGraphicalZone containing the sequence.
+   * @param query          the compiled sequence to search for.
+   * @param replaceSeqList the list containing the sequence to replace with.
+   * @return the number of sequences which have been replaced.
+   */
+  public static int replaceAllSeq(GenericGraphicalZone zone, SequenceQuery query, ArrayList<String> replaceSeqList) {
+    final ArrayList<GenericGraphBox> boxes = findAllSeq(zone, query);
+    clearSeqHighlight(zone);
     int res = 0;
     for (GenericGraphBox box : boxes) {
-      isSeq(zone, findSeqList, box, true, caseSensitive, useRegex);
+      /* Previous replacements may have modified the sequence, so we check it again */
+      isSeq(zone, query, box, true);
       ArrayList<GenericGraphBox> currentSeq = new ArrayList<GenericGraphBox>();
       for (int i = 0; i < zone.getSelectedBoxes().size(); i++) {
         currentSeq.add(zone.getSelectedBoxes().get(i));
@@ -553,16 +551,6 @@ public class FindAndReplace {
     return true;
   }
 
-  private static boolean boxEquals(String search, String content, boolean caseSensitive, boolean useRegex) {
-    if (useRegex) {
-      String pattern = "^" + search + "$";
-      return isRegex(pattern) && Pattern.compile(pattern).matcher(content).find();
-    } else if (caseSensitive) {
-      return content.equals(search);
-    }
-    return content.equalsIgnoreCase(search);
-  }
-
   /**
    * Returns a String containing an error message if one or more boxes cannot be replaced.
    *
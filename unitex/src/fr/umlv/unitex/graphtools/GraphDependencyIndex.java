@@ -0,0 +1,489 @@
+/*
+ * Unitex
+ *
+ * Copyright (C) 2001-2021 Université Paris-Est Marne-la-Vallée <unitex@univ-mlv.fr>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA.
+ *
+ */
+package fr.umlv.unitex.graphtools;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import fr.umlv.unitex.config.Config;
+import fr.umlv.unitex.graphrendering.GenericGraphBox;
+import fr.umlv.unitex.graphrendering.GraphBox;
+import fr.umlv.unitex.io.GraphIO;
+
+/**
+ * This class maintains the graph call edges used by <code>Dependancies</code>.
+ * For each graph, it stores the graphs called by its boxes, with the
+ * usefulness of the boxes that contain the calls. Entries are validated by the
+ * modification date and the size of the graph file, so that only modified
+ * graphs are parsed again.
+ *
+ * The entries of the graphs found under a root directory are saved in a file
+ * of the user directory, so that they survive restarts without adding files
+ * to the graph directories, that are often under version control. When many
+ * graphs must be parsed, they are parsed in parallel.
+ */
+public class GraphDependencyIndex {
+	private static final String INDEX_DIR_NAME = "graph_dependencies";
+	/* The name of the index file that was written in the root directories */
+	private static final String OLD_INDEX_FILE_NAME = "graph_dependencies.idx";
+	private static final int INDEX_VERSION = 2;
+	/* Below this number of graphs per task, graphs are parsed sequentially */
+	private static final int PARSE_THRESHOLD = 16;
+
+	/* Entries shared by all root directories, keyed by absolute graph file */
+	private static final ConcurrentHashMap<File, Entry> entries = new ConcurrentHashMap<File, Entry>();
+	/* Root directories whose index file has already been read */
+	private static final HashSet<File> loadedRoots = new HashSet<File>();
+
+	/**
+	 * The calls of a graph, as they were when the graph had the given date and
+	 * size
+	 */
+	static class Entry {
+		final long lastModified;
+		final long length;
+		final File[] callees;
+		/* true if all the boxes that call the graph are useful */
+		final boolean[] allUseful;
+		/* true if at least one box that calls the graph is useful */
+		final boolean[] anyUseful;
+
+		Entry(long lastModified, long length, File[] callees,
+				boolean[] allUseful, boolean[] anyUseful) {
+			this.lastModified = lastModified;
+			this.length = length;
+			this.callees = callees;
+			this.allUseful = allUseful;
+			this.anyUseful = anyUseful;
+		}
+
+		boolean isUpToDate(File grf) {
+			return grf.lastModified() == lastModified
+					&& grf.length() == length;
+		}
+	}
+
+	private GraphDependencyIndex() {
+		/* Only static methods */
+	}
+
+	/**
+	 * Returns the calls of the given graph, parsing it if needed, or null if
+	 * the graph cannot be loaded.
+	 */
+	static Entry getEntry(File grf) {
+		final File key = grf.getAbsoluteFile();
+		final Entry e = entries.get(key);
+		if (e != null && e.isUpToDate(key)) {
+			return e;
+		}
+		return parse(key);
+	}
+
+	/**
+	 * Returns the given graph and all the graphs it calls, directly or not, or
+	 * null if one of them cannot be loaded.
+	 */
+	public static ArrayList<File> getSubgraphClosure(File grf) {
+		final ArrayList<File> res = new ArrayList<File>();
+		final HashSet<File> visited = new HashSet<File>();
+		final File start = grf.getAbsoluteFile();
+		res.add(start);
+		visited.add(start);
+		for (int i = 0; i < res.size(); i++) {
+			final File f = res.get(i);
+			final Entry e = f.exists() ? getEntry(f) : null;
+			if (e == null) {
+				return null;
+			}
+			for (final File callee : e.callees) {
+				if (visited.add(callee)) {
+					res.add(callee);
+				}
+			}
+		}
+		return res;
+	}
+
+	/**
+	 * Makes sure that all the graphs of the given directory, recursively, are
+	 * indexed and up to date, and returns them. The index file of the
+	 * directory is loaded the first time and saved when entries have changed.
+	 */
+	static ArrayList<File> updateDirectory(File rootDir) {
+		final File root = rootDir.getAbsoluteFile();
+		final File indexFile = getIndexFile(root);
+		synchronized (loadedRoots) {
+			if (loadedRoots.add(root)) {
+				new File(root, OLD_INDEX_FILE_NAME).delete();
+				load(indexFile, root);
+			}
+		}
+		final ArrayList<File> graphs = new ArrayList<File>();
+		listGraphs(root, graphs);
+		final ArrayList<File> stale = new ArrayList<File>();
+		for (final File f : graphs) {
+			final Entry e = entries.get(f);
+			if (e == null || !e.isUpToDate(f)) {
+				stale.add(f);
+			}
+		}
+		if (!stale.isEmpty()) {
+			/*
+			 * We read the preferences once on this thread, so that the
+			 * parsing threads don't have to load them concurrently
+			 */
+			Config.getCurrentSystem();
+			ForkJoinPool.commonPool().invoke(
+					new ParseTask(stale, 0, stale.size()));
+			save(indexFile, root, graphs);
+		}
+		return graphs;
+	}
+
+	/**
+	 * Returns the index file of the given root directory in the user
+	 * directory, or null if there is no user directory.
+	 */
+	private static File getIndexFile(File root) {
+		final File dir = Config.getUserDir();
+		if (dir == null) {
+			return null;
+		}
+		return new File(new File(dir, INDEX_DIR_NAME), Integer.toHexString(root
+				.getPath().hashCode())
+				+ ".idx");
+	}
+
+	private static class ParseTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final ArrayList<File> files;
+		private final int from, to;
+
+		ParseTask(ArrayList<File> files, int from, int to) {
+			this.files = files;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= PARSE_THRESHOLD) {
+				for (int i = from; i < to; i++) {
+					parse(files.get(i));
+				}
+				return;
+			}
+			final int middle = (from + to) / 2;
+			invokeAll(new ParseTask(files, from, middle), new ParseTask(
+					files, middle, to));
+		}
+	}
+
+	private static void listGraphs(File dir, ArrayList<File> graphs) {
+		final File[] files = dir.listFiles(new FilenameFilter() {
+			@Override
+			public boolean accept(File d, String name) {
+				return name.endsWith(".grf") || new File(d, name).isDirectory();
+			}
+		});
+		if (files == null)
+			return;
+		for (final File f : files) {
+			if (f.isDirectory())
+				listGraphs(f, graphs);
+			else
+				graphs.add(f);
+		}
+	}
+
+	/**
+	 * Parses the given graph and stores its entry. Returns null and removes
+	 * any previous entry if the graph cannot be loaded.
+	 */
+	private static Entry parse(File grf) {
+		final long lastModified = grf.lastModified();
+		final long length = grf.length();
+		GraphIO io;
+		try {
+			io = GraphIO.loadGraph(grf, false, false);
+		} catch (final Exception e) {
+			io = null;
+		}
+		if (io == null) {
+			entries.remove(grf);
+			return null;
+		}
+		/*
+		 * We only need the structure of the graph, so that we don't ask for
+		 * the box objects
+		 */
+		final int nBoxes = io.getnBoxes();
+		final int[][] transitions = new int[nBoxes][];
+		for (int i = 0; i < nBoxes; i++) {
+			transitions[i] = io.getBoxTransitions(i);
+		}
+		final boolean[] accessible = new boolean[nBoxes];
+		final int[] coaccessible = new int[nBoxes];
+		for (int i = 0; i < coaccessible.length; i++)
+			coaccessible[i] = UNTESTED;
+		if (nBoxes > 0) {
+			markAccessibleBoxes(transitions, accessible, 0);
+		}
+		for (int i = 0; i < nBoxes; i++) {
+			if (isCoaccessibleBoxes(transitions, coaccessible, i)) {
+				coaccessible[i] = TESTED_TRUE;
+			} else {
+				coaccessible[i] = TESTED_FALSE;
+			}
+		}
+		/* For each callee: {all occurrences useful, one occurrence useful} */
+		final LinkedHashMap<File, boolean[]> calls = new LinkedHashMap<File, boolean[]>();
+		final ArrayList<String> names = new ArrayList<String>();
+		for (int i = 0; i < nBoxes; i++) {
+			if (i == FINAL_BOX) {
+				continue;
+			}
+			final boolean useful = accessible[i]
+					&& coaccessible[i] == TESTED_TRUE;
+			names.clear();
+			GraphBox.getSubgraphCalls(io.getBoxContent(i), names);
+			for (final String name : names) {
+				/* If we have a subgraph call */
+				final File f = getSubgraph(name, grf).getAbsoluteFile();
+				if (f.equals(grf)) {
+					continue;
+				}
+				final boolean[] flags = calls.get(f);
+				if (flags == null) {
+					calls.put(f, new boolean[] { useful, useful });
+				} else {
+					flags[0] &= useful;
+					flags[1] |= useful;
+				}
+			}
+		}
+		final int n = calls.size();
+		final File[] callees = new File[n];
+		final boolean[] allUseful = new boolean[n];
+		final boolean[] anyUseful = new boolean[n];
+		int k = 0;
+		for (final Map.Entry<File, boolean[]> c : calls.entrySet()) {
+			callees[k] = c.getKey();
+			allUseful[k] = c.getValue()[0];
+			anyUseful[k] = c.getValue()[1];
+			k++;
+		}
+		final Entry e = new Entry(lastModified, length, callees, allUseful,
+				anyUseful);
+		entries.put(grf, e);
+		return e;
+	}
+
+	/**
+	 * Reads the entries saved in the given index file, if it is the one of
+	 * the given root, since two roots may have the same hash code. Entries
+	 * are validated when they are used, so there is nothing else to check.
+	 */
+	private static void load(File indexFile, File root) {
+		if (indexFile == null || !indexFile.exists()) {
+			return;
+		}
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new BufferedInputStream(
+					new FileInputStream(indexFile)));
+			if (in.readInt() != INDEX_VERSION
+					|| !in.readUTF().equals(root.getPath())) {
+				return;
+			}
+			final int n = in.readInt();
+			for (int i = 0; i < n; i++) {
+				final File grf = new File(in.readUTF());
+				final long lastModified = in.readLong();
+				final long length = in.readLong();
+				final int nCalls = in.readInt();
+				final File[] callees = new File[nCalls];
+				final boolean[] allUseful = new boolean[nCalls];
+				final boolean[] anyUseful = new boolean[nCalls];
+				for (int j = 0; j < nCalls; j++) {
+					callees[j] = new File(in.readUTF());
+					final int flags = in.readByte();
+					allUseful[j] = (flags & 1) != 0;
+					anyUseful[j] = (flags & 2) != 0;
+				}
+				if (!entries.containsKey(grf)) {
+					entries.put(grf, new Entry(lastModified, length, callees,
+							allUseful, anyUseful));
+				}
+			}
+		} catch (final IOException e) {
+			/* A corrupted index is just ignored, it will be rebuilt */
+		} finally {
+			if (in != null) {
+				try {
+					in.close();
+				} catch (final IOException e) {
+					/* */
+				}
+			}
+		}
+	}
+
+	private static void save(File indexFile, File root, ArrayList<File> graphs) {
+		if (indexFile == null) {
+			return;
+		}
+		final File tmp = new File(indexFile.getPath() + ".tmp");
+		DataOutputStream out = null;
+		try {
+			indexFile.getParentFile().mkdirs();
+			out = new DataOutputStream(new BufferedOutputStream(
+					new FileOutputStream(tmp)));
+			final ArrayList<File> indexed = new ArrayList<File>();
+			for (final File f : graphs) {
+				if (entries.containsKey(f)) {
+					indexed.add(f);
+				}
+			}
+			out.writeInt(INDEX_VERSION);
+			out.writeUTF(root.getPath());
+			out.writeInt(indexed.size());
+			for (final File f : indexed) {
+				final Entry e = entries.get(f);
+				out.writeUTF(f.getPath());
+				out.writeLong(e.lastModified);
+				out.writeLong(e.length);
+				out.writeInt(e.callees.length);
+				for (int j = 0; j < e.callees.length; j++) {
+					out.writeUTF(e.callees[j].getPath());
+					out.writeByte((e.allUseful[j] ? 1 : 0)
+							| (e.anyUseful[j] ? 2 : 0));
+				}
+			}
+			out.close();
+			out = null;
+			if (indexFile.exists() && !indexFile.delete()) {
+				tmp.delete();
+				return;
+			}
+			tmp.renameTo(indexFile);
+		} catch (final IOException e) {
+			/* The index is only a cache, we can live without it */
+			tmp.delete();
+		} finally {
+			if (out != null) {
+				try {
+					out.close();
+				} catch (final IOException e) {
+					/* */
+				}
+				tmp.delete();
+			}
+		}
+	}
+
+	/**
+	 * Resolves a subgraph call like <code>foo</code>, <code>:foo</code> or
+	 * <code>dir:foo.grf</code> made from the given graph.
+	 */
+	static File getSubgraph(String s, File parent) {
+		if (!s.endsWith(".grf")) {
+			s = s + ".grf";
+		}
+		/* replace ':' by '/' resp. '\\' */
+		if (s.startsWith(":")) {
+			// if the graph is located in the package repository
+			return new File(GenericGraphBox.getNormalizeGraphCall(s));
+		}
+		// otherwise
+		File f = new File(s);
+		if (Config.getCurrentSystem() == Config.WINDOWS_SYSTEM
+				&& f.isAbsolute()) {
+			// first we test if we have an absolute windows pathname,
+			// in order to avoid wrong transformations like:
+			//
+			// C:\\foo\foo.grf => C\\\foo\foo.grf
+			//
+			return f;
+		}
+		s = s.replace(':', File.separatorChar);
+		if (!f.isAbsolute()) {
+			f = new File(parent.getParentFile(), s);
+		}
+		return f;
+	}
+
+	/* In a graph, the box #1 is always the final state */
+	private final static int FINAL_BOX = 1;
+
+	private static void markAccessibleBoxes(int[][] transitions,
+			boolean[] marked, int n) {
+		if (marked[n] == true)
+			return;
+		marked[n] = true;
+		for (final int dest : transitions[n]) {
+			markAccessibleBoxes(transitions, marked, dest);
+		}
+	}
+
+	private final static int UNTESTED = 0;
+	private final static int TESTED_TRUE = 1;
+	private final static int TESTED_FALSE = 2;
+	private final static int BEING_TESTED = 3;
+
+	private static boolean isCoaccessibleBoxes(int[][] transitions,
+			int[] marked, int n) {
+		if (marked[n] == TESTED_FALSE || marked[n] == TESTED_TRUE) {
+			return marked[n] == TESTED_TRUE;
+		}
+		if (marked[n] == BEING_TESTED) {
+			return false;
+		}
+		marked[n] = BEING_TESTED;
+		if (n == FINAL_BOX) {
+			marked[n] = TESTED_TRUE;
+			return true;
+		}
+		for (final int dest : transitions[n]) {
+			if (isCoaccessibleBoxes(transitions, marked, dest)) {
+				marked[n] = UNTESTED;
+				return true;
+			}
+		}
+		marked[n] = UNTESTED;
+		return false;
+	}
+}
@@ -0,0 +1,99 @@
+/*
+ * Unitex
+ *
+ * Copyright (C) 2001-2021 Université Paris-Est Marne-la-Vallée <unitex@univ-mlv.fr>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA.
+ *
+ */
+package fr.umlv.unitex.graphtools;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.regex.Pattern;
+
+import fr.umlv.unitex.graphrendering.GenericGraphBox;
+
+/**
+ * This class represents a search for a sequence of complete boxes, with the
+ * patterns of its elements compiled once.
+ */
+public class SequenceQuery {
+	private final String[] elements;
+	private final Pattern[] patterns;
+	private final boolean caseSensitive;
+	private final boolean useRegex;
+
+	/**
+	 * @param seq           the list containing the sequence to search for.
+	 * @param caseSensitive true if the search must be case sensitive, false otherwise.
+	 * @param useRegex      true if the search must use regular expressions, false otherwise.
+	 */
+	public SequenceQuery(ArrayList<String> seq, boolean caseSensitive,
+			boolean useRegex) {
+		this.elements = seq.toArray(new String[seq.size()]);
+		this.caseSensitive = caseSensitive;
+		this.useRegex = useRegex;
+		patterns = new Pattern[elements.length];
+		if (useRegex) {
+			for (int i = 0; i < elements.length; i++) {
+				patterns[i] = BoxQuery.compile("^" + elements[i] + "$");
+			}
+		}
+	}
+
+	public int size() {
+		return elements.length;
+	}
+
+	public String getElement(int i) {
+		return elements[i];
+	}
+
+	public boolean isUseRegex() {
+		return useRegex;
+	}
+
+	/**
+	 * Returns true if the content of the given box matches the element #i of
+	 * the sequence.
+	 */
+	boolean matches(int i, String content) {
+		if (useRegex) {
+			return patterns[i] != null && patterns[i].matcher(content).find();
+		} else if (caseSensitive) {
+			return content.equals(elements[i]);
+		}
+		return content.equalsIgnoreCase(elements[i]);
+	}
+
+	/**
+	 * Same as {@link #matches(int, String)}, but remembers the results in the
+	 * given cache, so that a box is tested only once for a given element even
+	 * if it is reached from several sequence starts.
+	 */
+	boolean matches(int i, GenericGraphBox box,
+			IdentityHashMap<GenericGraphBox, byte[]> cache) {
+		byte[] results = cache.get(box);
+		if (results == null) {
+			results = new byte[elements.length];
+			cache.put(box, results);
+		}
+		if (results[i] == 0) {
+			results[i] = (byte) (matches(i, box.getContent()) ? 1 : 2);
+		}
+		return results[i] == 1;
+	}
+}
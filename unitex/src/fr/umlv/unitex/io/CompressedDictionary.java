@@ -0,0 +1,402 @@
+/*
+ * Unitex
+ *
+ * Copyright (C) 2001-2021 Université Paris-Est Marne-la-Vallée <unitex@univ-mlv.fr>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA.
+ *
+ */
+package fr.umlv.unitex.io;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class reads a dictionary compressed by the Compress program, that is
+ * to say a .bin file containing the minimal automaton of the inflected forms
+ * and a .inf file containing the compressed codes of the entries.
+ *
+ * Only the classic .bin format is supported: a 4 bytes header giving the size
+ * of the file, followed by the states. A state starts with 2 bytes giving its
+ * number of transitions, the highest bit being set if the state is not
+ * final. A final state is followed by the 3 bytes of the number of its line
+ * in the .inf file. Then, each transition is made of 2 bytes for its char and
+ * 3 bytes for the position of its destination state.
+ *
+ * The .bin file is mapped and the .inf file is loaded once, so that lookups
+ * don't have to read anything. Lookups can be done from several threads.
+ */
+public class CompressedDictionary {
+	private static final int HEADER_SIZE = 4;
+	private static final int MAX_CACHED_QUERIES = 256;
+
+	private final File bin;
+	private volatile MappedFile automaton;
+	private final long length;
+	/* The lines of the .inf file, each line being a list of codes */
+	private final String[] codes;
+	/* The results of the last exact lookups */
+	private final LinkedHashMap<String, List<String>> queries = new LinkedHashMap<String, List<String>>(
+			16, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(
+				Map.Entry<String, List<String>> eldest) {
+			return size() > MAX_CACHED_QUERIES;
+		}
+	};
+
+	private CompressedDictionary(File bin, MappedFile automaton, String[] codes) {
+		this.bin = bin;
+		this.automaton = automaton;
+		this.length = automaton.length();
+		this.codes = codes;
+	}
+
+	public File getBin() {
+		return bin;
+	}
+
+	/**
+	 * Loads the given .bin file and the .inf file with the same name. Returns
+	 * <code>null</code> if the files cannot be read or if the .bin file is not
+	 * in the classic format.
+	 */
+	public static CompressedDictionary load(File bin) {
+		final String name = bin.getName();
+		final int dot = name.lastIndexOf('.');
+		final File inf = new File(bin.getParentFile(), ((dot == -1) ? name
+				: name.substring(0, dot)) + ".inf");
+		if (!bin.exists() || !inf.exists()) {
+			return null;
+		}
+		MappedFile automaton = null;
+		FileInputStream stream = null;
+		try {
+			stream = new FileInputStream(bin);
+			final FileChannel channel = stream.getChannel();
+			if (channel.size() < HEADER_SIZE + 2) {
+				return null;
+			}
+			/* The mapping remains valid once the channel is closed */
+			automaton = new MappedFile(channel);
+		} catch (final IOException e) {
+			return null;
+		} finally {
+			if (stream != null) {
+				try {
+					stream.close();
+				} catch (final IOException e) {
+					/* */
+				}
+			}
+		}
+		if (read32(automaton, 0) != automaton.length()) {
+			/* Not a classic .bin file */
+			automaton.release();
+			return null;
+		}
+		final String[] codes = loadCodes(inf);
+		if (codes == null) {
+			automaton.release();
+			return null;
+		}
+		return new CompressedDictionary(bin, automaton, codes);
+	}
+
+	/**
+	 * The .inf file starts with its number of lines, followed by the lines.
+	 */
+	private static String[] loadCodes(File inf) {
+		final InputStreamReader reader = Encoding.getInputStreamReader(inf);
+		if (reader == null) {
+			return null;
+		}
+		final BufferedReader r = new BufferedReader(reader);
+		try {
+			final ArrayList<String> lines = new ArrayList<String>();
+			String line = r.readLine();
+			if (line == null) {
+				return new String[0];
+			}
+			try {
+				Integer.parseInt(line.trim());
+			} catch (final NumberFormatException e) {
+				/* There is no line count */
+				lines.add(line);
+			}
+			while ((line = r.readLine()) != null) {
+				lines.add(line);
+			}
+			return lines.toArray(new String[lines.size()]);
+		} catch (final IOException e) {
+			return null;
+		} finally {
+			try {
+				r.close();
+			} catch (final IOException e) {
+				/* */
+			}
+		}
+	}
+
+	private static long read32(MappedFile m, long pos) {
+		return (0xFFL & m.get(pos)) << 24 | (0xFFL & m.get(pos + 1)) << 16
+				| (0xFFL & m.get(pos + 2)) << 8 | (0xFFL & m.get(pos + 3));
+	}
+
+	private static int read24(MappedFile m, long pos) {
+		return (0xFF & m.get(pos)) << 16 | (0xFF & m.get(pos + 1)) << 8
+				| (0xFF & m.get(pos + 2));
+	}
+
+	private static int read16(MappedFile m, long pos) {
+		return (0xFF & m.get(pos)) << 8 | (0xFF & m.get(pos + 1));
+	}
+
+	/**
+	 * Thrown when the dictionary contains something we cannot decode, so
+	 * that the caller can fall back on the Dico program.
+	 */
+	public static class UnsupportedDictionaryException extends Exception {
+		private static final long serialVersionUID = 1L;
+
+		UnsupportedDictionaryException(String message) {
+			super(message);
+		}
+	}
+
+	/**
+	 * Returns the DELAF lines of the given word. As with Dico, a lower case
+	 * letter of the dictionary also matches the corresponding upper case
+	 * letter of the word.
+	 */
+	public List<String> lookup(String word)
+			throws UnsupportedDictionaryException {
+		synchronized (queries) {
+			final List<String> cached = queries.get(word);
+			if (cached != null) {
+				return cached;
+			}
+		}
+		final MappedFile m = getAutomaton();
+		final ArrayList<String> result = new ArrayList<String>();
+		try {
+			lookup(m, word, 0, HEADER_SIZE, new StringBuilder(), result);
+		} catch (final IndexOutOfBoundsException e) {
+			throw new UnsupportedDictionaryException("Invalid .bin file: "
+					+ bin);
+		}
+		synchronized (queries) {
+			queries.put(word, result);
+		}
+		return result;
+	}
+
+	private void lookup(MappedFile m, String word, int i, long state,
+			StringBuilder form, List<String> result)
+			throws UnsupportedDictionaryException {
+		int n = read16(m, state);
+		long pos = state + 2;
+		final boolean isFinal = (n & 0x8000) == 0;
+		int code = -1;
+		if (isFinal) {
+			code = read24(m, pos);
+			pos += 3;
+		} else {
+			n = n & 0x7FFF;
+		}
+		if (i == word.length()) {
+			if (isFinal) {
+				addEntries(form.toString(), code, result);
+			}
+			return;
+		}
+		final char c = word.charAt(i);
+		final char lower = Character.toLowerCase(c);
+		for (int t = 0; t < n; t++, pos += 5) {
+			final char d = (char) read16(m, pos);
+			if (d == c || (d == lower && lower != c)) {
+				form.append(d);
+				lookup(m, word, i + 1, checkState(read24(m, pos + 2)), form,
+						result);
+				form.setLength(form.length() - 1);
+			}
+		}
+	}
+
+	/**
+	 * Returns at most <code>max</code> DELAF lines whose inflected forms
+	 * start with the given prefix, in the order of the automaton.
+	 */
+	public List<String> lookupPrefix(String prefix, int max)
+			throws UnsupportedDictionaryException {
+		final MappedFile m = getAutomaton();
+		final ArrayList<String> result = new ArrayList<String>();
+		try {
+			long state = HEADER_SIZE;
+			for (int i = 0; i < prefix.length() && state != -1; i++) {
+				state = getTransition(m, state, prefix.charAt(i));
+			}
+			if (state != -1) {
+				explore(m, state, new StringBuilder(prefix), result, max);
+			}
+		} catch (final IndexOutOfBoundsException e) {
+			throw new UnsupportedDictionaryException("Invalid .bin file: "
+					+ bin);
+		}
+		return result;
+	}
+
+	private long getTransition(MappedFile m, long state, char c) {
+		int n = read16(m, state);
+		long pos = state + 2;
+		if ((n & 0x8000) == 0) {
+			pos += 3;
+		} else {
+			n = n & 0x7FFF;
+		}
+		for (int t = 0; t < n; t++, pos += 5) {
+			if (read16(m, pos) == c) {
+				return checkState(read24(m, pos + 2));
+			}
+		}
+		return -1;
+	}
+
+	private void explore(MappedFile m, long state, StringBuilder form,
+			List<String> result, int max) throws UnsupportedDictionaryException {
+		int n = read16(m, state);
+		long pos = state + 2;
+		if ((n & 0x8000) == 0) {
+			addEntries(form.toString(), read24(m, pos), result);
+			pos += 3;
+		} else {
+			n = n & 0x7FFF;
+		}
+		for (int t = 0; t < n && result.size() < max; t++, pos += 5) {
+			form.append((char) read16(m, pos));
+			explore(m, checkState(read24(m, pos + 2)), form, result, max);
+			form.setLength(form.length() - 1);
+		}
+		while (result.size() > max) {
+			result.remove(result.size() - 1);
+		}
+	}
+
+	private long checkState(long state) {
+		if (state < HEADER_SIZE || state + 2 > length) {
+			throw new IndexOutOfBoundsException();
+		}
+		return state;
+	}
+
+	private MappedFile getAutomaton() throws UnsupportedDictionaryException {
+		final MappedFile m = automaton;
+		if (m == null) {
+			throw new UnsupportedDictionaryException("Dictionary released: "
+					+ bin);
+		}
+		return m;
+	}
+
+	private void addEntries(String inflected, int code, List<String> result)
+			throws UnsupportedDictionaryException {
+		if (code < 0 || code >= codes.length) {
+			throw new UnsupportedDictionaryException("Invalid code #" + code
+					+ " in " + bin);
+		}
+		final String line = codes[code];
+		int start = 0;
+		for (int i = 0; i <= line.length(); i++) {
+			if (i == line.length() || line.charAt(i) == ',') {
+				result.add(uncompress(inflected, line.substring(start, i)));
+				start = i + 1;
+			} else if (line.charAt(i) == '\\') {
+				/* Protected chars don't separate codes */
+				i++;
+			}
+		}
+	}
+
+	/**
+	 * Builds the DELAF line from an inflected form and a compressed code. The
+	 * code is either <code>.CODES</code> if the lemma is the inflected form,
+	 * or <code>nSUFFIX.CODES</code> if the lemma is obtained by removing n
+	 * chars at the end of the inflected form and adding the suffix.
+	 */
+	static String uncompress(String inflected, String code)
+			throws UnsupportedDictionaryException {
+		final StringBuilder b = new StringBuilder();
+		protect(inflected, b);
+		b.append(',');
+		if (code.startsWith(".")) {
+			return b.append(code).toString();
+		}
+		int i = 0;
+		int n = 0;
+		while (i < code.length() && Character.isDigit(code.charAt(i))) {
+			n = n * 10 + (code.charAt(i) - '0');
+			i++;
+		}
+		if (i == 0 || n > inflected.length()) {
+			/* Codes made token by token, for instance */
+			throw new UnsupportedDictionaryException(
+					"Unsupported compressed code: " + code);
+		}
+		protect(inflected.substring(0, inflected.length() - n), b);
+		while (i < code.length() && code.charAt(i) != '.') {
+			final char c = code.charAt(i);
+			if (c == '\\' && i + 1 < code.length()) {
+				i++;
+				if (!Character.isDigit(code.charAt(i))) {
+					/* Digits are only protected from the length */
+					b.append('\\');
+				}
+			}
+			b.append(code.charAt(i));
+			i++;
+		}
+		return b.append(code.substring(i)).toString();
+	}
+
+	private static void protect(String s, StringBuilder b) {
+		for (int i = 0; i < s.length(); i++) {
+			final char c = s.charAt(i);
+			if (c == ',' || c == '.' || c == '\\') {
+				b.append('\\');
+			}
+			b.append(c);
+		}
+	}
+
+	/**
+	 * Drops the mapping of the .bin file.
+	 */
+	public void release() {
+		final MappedFile m = automaton;
+		automaton = null;
+		if (m != null) {
+			m.release();
+		}
+	}
+}
@@ -0,0 +1,233 @@
+/*
+ * Unitex
+ *
+ * Copyright (C) 2001-2021 Université Paris-Est Marne-la-Vallée <unitex@univ-mlv.fr>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA.
+ *
+ */
+package fr.umlv.unitex.io;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+
+import fr.umlv.unitex.io.CompressedDictionary.UnsupportedDictionaryException;
+
+/**
+ * This class keeps the compressed dictionaries that have been used in memory,
+ * so that looking up a word in them does not need to run Dico. A dictionary
+ * is loaded again if its .bin file has been modified.
+ */
+public class DictionaryLookup {
+	private static final int MAX_DICTIONARIES = 32;
+	private static final FileCache<CompressedDictionary> dictionaries = new FileCache<CompressedDictionary>(
+			MAX_DICTIONARIES);
+	private static final FileCache<Alphabet> alphabets = new FileCache<Alphabet>(
+			4);
+
+	private DictionaryLookup() {
+		/* */
+	}
+
+	/**
+	 * Returns the dictionary for the given .bin file, loading it if needed,
+	 * or <code>null</code> if it cannot be read by
+	 * <code>CompressedDictionary</code>.
+	 */
+	public static CompressedDictionary getDictionary(File bin) {
+		final long length = bin.length();
+		final long lastModified = bin.lastModified();
+		synchronized (dictionaries) {
+			CompressedDictionary d = dictionaries.get(bin, length,
+					lastModified);
+			if (d == null) {
+				d = CompressedDictionary.load(bin);
+				if (d != null) {
+					dictionaries.put(bin, length, lastModified, d);
+				}
+			}
+			return d;
+		}
+	}
+
+	/**
+	 * Returns the DELAF lines of the given word in the given dictionaries, or
+	 * <code>null</code> if Dico must be used to get the same result. That is
+	 * the case if one of the dictionaries cannot be read, if a dictionary has
+	 * a priority, if the word is not made of a single token for the given
+	 * alphabet, or if the case equivalences of the alphabet for the letters of
+	 * the word are not the ones of <code>CompressedDictionary</code>.
+	 */
+	public static List<String> lookup(List<File> bins, File alphabet,
+			String word) {
+		for (final File bin : bins) {
+			if (hasPriority(bin)) {
+				return null;
+			}
+		}
+		final Alphabet a = getAlphabet(alphabet);
+		if (a == null || !a.isSimpleWord(word)) {
+			return null;
+		}
+		final ArrayList<String> result = new ArrayList<String>();
+		for (final File bin : bins) {
+			final CompressedDictionary d = getDictionary(bin);
+			if (d == null) {
+				return null;
+			}
+			try {
+				result.addAll(d.lookup(word));
+			} catch (final UnsupportedDictionaryException e) {
+				return null;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Tests if the name of the given .bin file ends with - or +, which gives
+	 * a priority to the dictionary for Dico.
+	 */
+	private static boolean hasPriority(File bin) {
+		final String name = bin.getName();
+		final int dot = name.lastIndexOf('.');
+		if (dot <= 0) {
+			return false;
+		}
+		final char c = name.charAt(dot - 1);
+		return c == '-' || c == '+';
+	}
+
+	private static Alphabet getAlphabet(File f) {
+		if (f == null || !f.exists()) {
+			return null;
+		}
+		final long length = f.length();
+		final long lastModified = f.lastModified();
+		synchronized (alphabets) {
+			Alphabet a = alphabets.get(f, length, lastModified);
+			if (a == null) {
+				final String content = Encoding.getContent(f);
+				if (content == null) {
+					return null;
+				}
+				a = new Alphabet(content);
+				alphabets.put(f, length, lastModified, a);
+			}
+			return a;
+		}
+	}
+
+	/**
+	 * The letters of an alphabet file and their lower case equivalents. Each
+	 * line of the file is either a letter, or an upper case letter followed
+	 * by its lower case equivalents, or # followed by the bounds of an
+	 * interval of letters without case.
+	 */
+	private static class Alphabet {
+		private final BitSet letters = new BitSet();
+		private final HashMap<Character, String> lowerCases = new HashMap<Character, String>();
+
+		Alphabet(String content) {
+			for (final String line : content.split("\n")) {
+				final String l = line.endsWith("\r") ? line.substring(0,
+						line.length() - 1) : line;
+				if (l.length() == 0) {
+					continue;
+				}
+				if (l.charAt(0) == '#') {
+					if (l.length() >= 3) {
+						letters.set(l.charAt(1), l.charAt(2) + 1);
+					}
+					continue;
+				}
+				final char upper = l.charAt(0);
+				letters.set(upper);
+				final StringBuilder lower = new StringBuilder();
+				final String previous = lowerCases.get(upper);
+				if (previous != null) {
+					lower.append(previous);
+				}
+				for (int i = 1; i < l.length(); i++) {
+					letters.set(l.charAt(i));
+					lower.append(l.charAt(i));
+				}
+				lowerCases.put(upper, lower.toString());
+			}
+		}
+
+		/**
+		 * Tests if the given word is a single token, and if, for each of its
+		 * letters, the letters it can match in a dictionary are only itself
+		 * and the one given by <code>Character.toLowerCase</code>.
+		 */
+		boolean isSimpleWord(String word) {
+			if (word.length() == 0) {
+				return false;
+			}
+			for (int i = 0; i < word.length(); i++) {
+				final char c = word.charAt(i);
+				if (!letters.get(c)) {
+					return false;
+				}
+				final char lower = Character.toLowerCase(c);
+				final String l = lowerCases.get(c);
+				boolean found = (lower == c);
+				if (l != null) {
+					for (int j = 0; j < l.length(); j++) {
+						final char d = l.charAt(j);
+						if (d == lower) {
+							found = true;
+						} else if (d != c) {
+							return false;
+						}
+					}
+				}
+				if (!found) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * Returns at most <code>max</code> DELAF lines whose inflected forms
+	 * start with the given prefix in the given dictionaries, or
+	 * <code>null</code> if one of the dictionaries cannot be read.
+	 */
+	public static List<String> lookupPrefix(List<File> bins, String prefix,
+			int max) {
+		final ArrayList<String> result = new ArrayList<String>();
+		for (final File bin : bins) {
+			if (result.size() >= max) {
+				break;
+			}
+			final CompressedDictionary d = getDictionary(bin);
+			if (d == null) {
+				return null;
+			}
+			try {
+				result.addAll(d.lookupPrefix(prefix, max - result.size()));
+			} catch (final UnsupportedDictionaryException e) {
+				return null;
+			}
+		}
+		return result;
+	}
+}
@@ -20,15 +20,21 @@
  */
 package fr.umlv.unitex.io;
 
+import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
 import java.io.UnsupportedEncodingException;
 import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
 import java.util.Scanner;
 
 import fr.umlv.unitex.config.Preferences;
@@ -68,43 +74,6 @@ public enum Encoding {
 			return "UTF-8";
 		}
 
-		@Override
-		public boolean isValidEncoding(File f) {
-			FileInputStream stream;
-			try {
-				stream = new FileInputStream(f);
-			} catch (final FileNotFoundException e) {
-				return false;
-			}
-			InputStreamReader reader;
-			try {
-				reader = new InputStreamReader(stream, getCharset());
-			} catch (final UnsupportedEncodingException e) {
-				return false;
-			}
-			int c = 0;
-			int i = 0;
-			try {
-				while ((c = reader.read()) != -1 && ++i < 4096) {
-					if (c == 65533) {
-						/* Decoding error */
-						reader.close();
-						stream.close();
-						return false;
-					}
-					if (c > 128) {
-						/* We stop on the first valid utf8 multi-byte char */
-						break;
-					}
-				}
-				reader.close();
-				stream.close();
-			} catch (final IOException e) {
-				return false;
-			}
-			return true;
-		}
-
 		@Override
 		public char readChar(ByteBuffer buffer) {
 			int c = buffer.get() & 0xFF;
@@ -173,64 +142,147 @@ public enum Encoding {
 	 * should not.
 	 */
 	public boolean isValidEncoding(File f) {
-		if (f.length() < 2 || f.length() % 2 != 0)
-			return false;
+		return getEncoding(f) == this;
+	}
+
+	/* Number of bytes read at the beginning of a file to find its encoding */
+	private static final int HEADER_SIZE = 8192;
+	private static final FileCache<Encoding> cache = new FileCache<Encoding>(
+			4096);
+
+	/**
+	 * Returns the encoding of the given file, or <code>null</code> if it is
+	 * not a valid UTF16LE, UTF16BE or UTF8 file. The encoding is found from
+	 * the beginning of the file, and it is cached until the file is modified.
+	 */
+	public static Encoding getEncoding(File f) {
+		final long length = f.length();
+		final long lastModified = f.lastModified();
+		final Encoding e = cache.get(f, length, lastModified);
+		if (e != null) {
+			return e;
+		}
 		FileInputStream stream;
 		try {
 			stream = new FileInputStream(f);
-		} catch (final FileNotFoundException e) {
-			return false;
+		} catch (final FileNotFoundException e1) {
+			return null;
 		}
-		InputStreamReader reader;
 		try {
-			reader = new InputStreamReader(stream, getCharset());
-		} catch (final UnsupportedEncodingException e) {
-			return false;
+			return sniff(f, stream, length, lastModified);
+		} catch (final IOException e1) {
+			return null;
+		} finally {
+			try {
+				stream.close();
+			} catch (final IOException e1) {
+				/* */
+			}
 		}
-		int c = 0;
-		try {
-			c = reader.read();
-			reader.close();
-			stream.close();
-		} catch (final IOException e) {
-			return false;
+	}
+
+	/**
+	 * Reads at most <code>HEADER_SIZE</code> bytes from the given stream,
+	 * that must be at the beginning of the file, and returns the encoding they
+	 * correspond to.
+	 */
+	private static Encoding sniff(File f, InputStream stream, long length,
+			long lastModified) throws IOException {
+		final byte[] header = new byte[HEADER_SIZE];
+		int n = 0;
+		int read;
+		while (n < HEADER_SIZE
+				&& (read = stream.read(header, n, HEADER_SIZE - n)) != -1) {
+			n += read;
+		}
+		final Encoding e = getEncoding(header, n, length, n < HEADER_SIZE);
+		if (e != null) {
+			cache.put(f, length, lastModified, e);
 		}
-		return c == 0xFEFF;
+		return e;
 	}
 
-	public static Encoding getEncoding(File f) {
-		if (UTF16LE.isValidEncoding(f))
-			return UTF16LE;
-		if (UTF16BE.isValidEncoding(f))
-			return UTF16BE;
-		if (UTF8.isValidEncoding(f))
-			return UTF8;
-		return null;
+	private static Encoding getEncoding(byte[] header, int n, long length,
+			boolean wholeFile) {
+		if (n >= 2 && length % 2 == 0) {
+			final int a = 0xFF & header[0];
+			final int b = 0xFF & header[1];
+			/* For UTF16 files, we need the BOM and an even size */
+			if (a == 0xFF && b == 0xFE) {
+				return UTF16LE;
+			}
+			if (a == 0xFE && b == 0xFF) {
+				return UTF16BE;
+			}
+		}
+		final CharsetDecoder decoder = Charset.forName("UTF-8").newDecoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		final CharBuffer chars = CharBuffer.allocate(n);
+		/*
+		 * If we don't have the whole file, an incomplete sequence at the end
+		 * of the header is not an error
+		 */
+		decoder.decode(ByteBuffer.wrap(header, 0, n), chars, wholeFile);
+		if (wholeFile) {
+			decoder.flush(chars);
+		}
+		chars.flip();
+		for (int i = 0; i < chars.limit() && i < 4095; i++) {
+			final char c = chars.get(i);
+			if (c == 65533) {
+				/* Decoding error */
+				return null;
+			}
+			if (c > 128) {
+				/* We stop on the first valid utf8 multi-byte char */
+				break;
+			}
+		}
+		return UTF8;
 	}
 
 	/**
 	 * Returns a reader for the given file. For UTF16 encodings, we skip the
-	 * BOM.
+	 * BOM. The file is only opened once, its beginning being used to find
+	 * the encoding if it is not cached.
 	 */
 	public static InputStreamReader getInputStreamReader(File f) {
-		final Encoding e = getEncoding(f);
-		if (e == null)
-			return null;
+		final long length = f.length();
+		final long lastModified = f.lastModified();
+		FileInputStream stream = null;
 		try {
-			final InputStreamReader r = new InputStreamReader(
-					new FileInputStream(f), e.getCharset());
+			stream = new FileInputStream(f);
+			final BufferedInputStream in = new BufferedInputStream(stream,
+					HEADER_SIZE);
+			Encoding e = cache.get(f, length, lastModified);
+			if (e == null) {
+				in.mark(HEADER_SIZE);
+				e = sniff(f, in, length, lastModified);
+				in.reset();
+			}
+			if (e == null) {
+				stream.close();
+				return null;
+			}
+			final InputStreamReader r = new InputStreamReader(in,
+					e.getCharset());
 			if (e == UTF16LE || e == UTF16BE) {
 				if (r.read() != 0xFEFF) {
 					/* Should not happen */
+					r.close();
 					return null;
 				}
 			}
 			return r;
-		} catch (final UnsupportedEncodingException e1) {
-			return null;
-		} catch (final FileNotFoundException e1) {
-			return null;
 		} catch (final IOException e1) {
+			if (stream != null) {
+				try {
+					stream.close();
+				} catch (final IOException e2) {
+					/* */
+				}
+			}
 			return null;
 		}
 	}
@@ -273,10 +325,11 @@ public enum Encoding {
 		if (reader == null) {
 			return null;
 		}
-		int c;
+		final char[] buffer = new char[8192];
+		int n;
 		try {
-			while ((c = reader.read()) != -1) {
-				builder.append((char) c);
+			while ((n = reader.read(buffer)) != -1) {
+				builder.append(buffer, 0, n);
 			}
 			reader.close();
 		} catch (final IOException e) {
@@ -0,0 +1,88 @@
+/*
+ * Unitex
+ *
+ * Copyright (C) 2001-2021 Université Paris-Est Marne-la-Vallée <unitex@univ-mlv.fr>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA.
+ *
+ */
+package fr.umlv.unitex.io;
+
+import java.io.File;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * This class caches a value computed from the content of a file, like its
+ * encoding. A value is only returned if the file still has the size and the
+ * date it had when the value was computed. The least recently used values
+ * are forgotten when there are too many of them.
+ */
+public class FileCache<V> {
+	private static class CachedValue<V> {
+		final long length;
+		final long lastModified;
+		final V value;
+
+		CachedValue(long length, long lastModified, V value) {
+			this.length = length;
+			this.lastModified = lastModified;
+			this.value = value;
+		}
+	}
+
+	private final LinkedHashMap<String, CachedValue<V>> entries;
+
+	public FileCache(final int maxEntries) {
+		entries = new LinkedHashMap<String, CachedValue<V>>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(
+					Map.Entry<String, CachedValue<V>> eldest) {
+				return size() > maxEntries;
+			}
+		};
+	}
+
+	/**
+	 * Returns the value cached for the given file, or <code>null</code> if
+	 * there is none or if the file has been modified since.
+	 */
+	public V get(File f, long length, long lastModified) {
+		final CachedValue<V> e;
+		synchronized (entries) {
+			e = entries.get(f.getAbsolutePath());
+		}
+		if (e == null || e.length != length || e.lastModified != lastModified) {
+			return null;
+		}
+		return e.value;
+	}
+
+	/**
+	 * Caches a value for the given file. <code>length</code> and
+	 * <code>lastModified</code> must have been read before the content of the
+	 * file, so that a modification made meanwhile invalidates the value.
+	 */
+	public void put(File f, long length, long lastModified, V value) {
+		if (lastModified == 0) {
+			/* The file does not exist */
+			return;
+		}
+		synchronized (entries) {
+			entries.put(f.getAbsolutePath(), new CachedValue<V>(length,
+					lastModified, value));
+		}
+	}
+}
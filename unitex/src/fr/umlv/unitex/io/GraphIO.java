@@ -25,14 +25,15 @@ import java.awt.Font;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
 
 import javax.swing.JOptionPane;
 
+import fr.umlv.unitex.FontInfo;
 import fr.umlv.unitex.Unitex;
 import fr.umlv.unitex.common.project.manager.GlobalProjectManager;
 import fr.umlv.unitex.config.ConfigManager;
@@ -44,6 +45,7 @@ import fr.umlv.unitex.graphrendering.GraphBox;
 import fr.umlv.unitex.graphrendering.TfstGraphBox;
 import fr.umlv.unitex.grf.GraphMetaData;
 import fr.umlv.unitex.grf.GraphPresentationInfo;
+import fr.umlv.unitex.tfst.TfstSentence;
 
 /**
  * This class provides methods for loading and saving graphs.
@@ -73,6 +75,21 @@ public class GraphIO {
 	private int nBoxes;
 	private File grf;
 	private final GraphMetaData metadata;
+	/**
+	 * Indicates that boxes have no coordinates yet and must be laid out by the
+	 * graphical zone that will display them
+	 */
+	private boolean needsLayout;
+	/*
+	 * Boxes as they were read from the graph file. The transitions of the box
+	 * #n are boxTransitions[transitionStart[n]..transitionStart[n+1]-1]
+	 */
+	private boolean sentenceGraph;
+	private String[] boxContents;
+	private int[] boxX;
+	private int[] boxY;
+	private int[] transitionStart;
+	private int[] boxTransitions;
 
 	private GraphIO() {
 		info = ConfigManager.getManager().getGraphPresentationPreferences(null)
@@ -100,7 +117,6 @@ public class GraphIO {
 			boolean emitErrorMessage) {
 		final GraphIO res = new GraphIO();
 		res.grf = grfFile;
-		InputStreamReader reader;
 		if (!grfFile.exists()) {
 			if (emitErrorMessage) {
 				String[] options = { "Yes", "No" };
@@ -146,7 +162,7 @@ public class GraphIO {
 			return null;
 		}
 		try {
-			reader = Encoding.getInputStreamReader(grfFile);
+			final GrfTokenizer reader = GrfTokenizer.open(grfFile);
 			if (reader == null) {
 				if (emitErrorMessage)
 					JOptionPane.showMessageDialog(null,
@@ -155,7 +171,7 @@ public class GraphIO {
 							JOptionPane.ERROR_MESSAGE);
 				return null;
 			}
-			UnicodeIO.skipLine(reader); // ignoring #...
+			reader.skipLine(); // ignoring #...
 			res.readSize(reader);
 			res.readInputFont(reader);
 			res.readOutputFont(reader);
@@ -164,7 +180,7 @@ public class GraphIO {
 			res.readSubgraphColor(reader);
 			res.readCommentColor(reader);
 			res.readSelectedColor(reader);
-			UnicodeIO.skipLine(reader); // ignoring DBOXES
+			reader.skipLine(); // ignoring DBOXES
 			res.readDrawFrame(reader);
 			res.readDate(reader);
 			res.readFile(reader);
@@ -174,12 +190,15 @@ public class GraphIO {
 				res.info.setRightToLeft(ConfigManager.getManager()
 						.isRightToLeftForText(null));
 			}
-			UnicodeIO.skipLine(reader); // ignoring DRST
-			UnicodeIO.skipLine(reader); // ignoring FITS
-			UnicodeIO.skipLine(reader); // ignoring PORIENT
+			reader.skipLine(); // ignoring DRST
+			reader.skipLine(); // ignoring FITS
+			reader.skipLine(); // ignoring PORIENT
 			/* Reading metadata until we find the # line */
 			String line;
-			while (!(line = UnicodeIO.readLine(reader)).equals("#")) {
+			while (!"#".equals(line = reader.readLine())) {
+				if (line == null) {
+					throw new IOException("Unexpected end of graph header");
+				}
 				final int pos = line.indexOf("=");
 				if (pos == -1) {
 					if (emitErrorMessage)
@@ -196,29 +215,22 @@ public class GraphIO {
 				res.metadata.set(key, value);
 			}
 			res.readBoxNumber(reader);
-			res.boxes = new ArrayList<GenericGraphBox>();
-			if (isSentenceGraph) {
-				// adding initial state
-				res.boxes.add(new TfstGraphBox(0, 0, 0, null));
-				// adding final state
-				res.boxes.add(new TfstGraphBox(0, 0, 1, null));
-				// adding other states
-				for (int i = 2; i < res.nBoxes; i++)
-					res.boxes.add(new TfstGraphBox(0, 0, 2, null));
-				for (int i = 0; i < res.nBoxes; i++)
+			/*
+			 * Boxes are only read into arrays here. The box objects will be
+			 * created by the first call to getBoxes()
+			 */
+			res.sentenceGraph = isSentenceGraph;
+			res.boxContents = new String[res.nBoxes];
+			res.boxX = new int[res.nBoxes];
+			res.boxY = new int[res.nBoxes];
+			res.transitionStart = new int[res.nBoxes + 1];
+			res.boxTransitions = new int[2 * res.nBoxes + 1];
+			for (int i = 0; i < res.nBoxes; i++) {
+				if (isSentenceGraph)
 					res.readSentenceGraphLine(reader, i);
-			} else {
-				// adding initial state
-				res.boxes.add(new GraphBox(0, 0, 0, null));
-				// adding final state
-				res.boxes.add(new GraphBox(0, 0, 1, null));
-				// adding other states
-				for (int i = 2; i < res.nBoxes; i++)
-					res.boxes.add(new GraphBox(0, 0, 2, null));
-				for (int i = 0; i < res.nBoxes; i++)
+				else
 					res.readGraphLine(reader, i);
 			}
-			reader.close();
 		} catch (final IllegalStateException e) {
 			if (emitErrorMessage)
 				JOptionPane.showMessageDialog(null, grfFile.getAbsolutePath()
@@ -243,93 +255,83 @@ public class GraphIO {
 		return res;
 	}
 
-	private void readSize(InputStreamReader r) throws IOException {
+	/**
+	 * This method builds a sentence graph from a sentence decoded from a .tfst
+	 * file, as Tfst2Grf would have produced it with the current input font.
+	 * The boxes are not positioned: see {@link #needsLayout()}.
+	 * 
+	 * @param sentence
+	 *            the decoded sentence
+	 * @return a <code>GraphIO</code> object describing the sentence graph
+	 */
+	public static GraphIO createSentenceGraph(TfstSentence sentence) {
+		final GraphIO res = new GraphIO();
+		final Font font = ConfigManager.getManager().getInputFont(null);
+		final int size = ConfigManager.getManager().getInputFontSize(null);
+		res.info.getInput().setSize(size);
+		res.info.getInput().setFont(
+				new Font(font.getName(), Font.PLAIN, (int) (size / 0.72)));
+		res.info.setRightToLeft(ConfigManager.getManager()
+				.isRightToLeftForText(null));
+		res.nBoxes = sentence.getBoxCount();
+		res.boxes = new ArrayList<GenericGraphBox>();
+		// adding initial state
+		res.boxes.add(new TfstGraphBox(0, 0, 0, null));
+		// adding final state
+		res.boxes.add(new TfstGraphBox(0, 0, 1, null));
+		// adding other states
+		for (int i = 2; i < res.nBoxes; i++)
+			res.boxes.add(new TfstGraphBox(0, 0, 2, null));
+		for (int i = 0; i < res.nBoxes; i++) {
+			final TfstGraphBox g = (TfstGraphBox) res.boxes.get(i);
+			g.setContentWithBounds(sentence.getBoxContent(i));
+			for (final int dest : sentence.getBoxTransitions(i)) {
+				g.addTransitionTo(res.boxes.get(dest));
+			}
+		}
+		res.needsLayout = true;
+		return res;
+	}
+
+	/**
+	 * @return <code>true</code> if the boxes of this graph have not been
+	 *         positioned yet
+	 */
+	public boolean needsLayout() {
+		return needsLayout;
+	}
+
+	private void readSize(GrfTokenizer r) throws IOException {
 		// skipping the chars preceeding the width and height
-		UnicodeIO.skipChars(r, 5);
-		char c;
-		// reading width
-		width = 0;
-		int z = -1;
-		while ((z = UnicodeIO.readChar(r)) != -1
-				&& UnicodeIO.isDigit((c = (char) z)))
-			width = width * 10 + (c - '0');
-		if (z == -1)
-			throw new IOException("Number expected");
-		// reading height
-		z = -1;
-		while ((z = UnicodeIO.readChar(r)) != -1
-				&& UnicodeIO.isDigit((c = (char) z)))
-			height = height * 10 + (c - '0');
-		if (z == -1)
-			throw new IOException("Number expected");
+		r.skip(5);
+		width = r.readNumber("Number expected");
+		height = r.readNumber("Number expected");
 	}
 
-	private void readInputFont(InputStreamReader r) throws IOException {
-		UnicodeIO.skipChars(r, 5);
-		String s = "";
-		char c;
-		int z = -1;
-		while ((z = (char) UnicodeIO.readChar(r)) != ':' && z != -1)
-			s = s + (char) z;
-		if (z == -1)
-			throw new IOException("Error while reading input font information");
-		final boolean bold = ((z = UnicodeIO.readChar(r)) == 'B');
-		if (z != 'B' && z != ' ')
-			throw new IOException("Error while reading input font information");
-		if (z == -1)
-			throw new IOException("Error while reading input font information");
-		final boolean italic = ((z = UnicodeIO.readChar(r)) == 'I');
-		if (z != 'I' && z != ' ')
-			throw new IOException("Error while reading input font information");
-		if (z == -1)
-			throw new IOException("Error while reading input font information");
-		int size = 0;
-		z = -1;
-		while ((z = UnicodeIO.readChar(r)) != -1
-				&& UnicodeIO.isDigit((c = (char) z)))
-			size = size * 10 + (c - '0');
-		if (z == -1)
-			throw new IOException("Error while reading input font information");
-		info.getInput().setSize(size);
-		int style;
-		if (bold && italic)
-			style = Font.BOLD | Font.ITALIC;
-		else if (bold)
-			style = Font.BOLD;
-		else if (italic)
-			style = Font.ITALIC;
-		else
-			style = Font.PLAIN;
-		info.getInput().setFont(new Font(s, style, (int) (size / 0.72)));
+	private void readInputFont(GrfTokenizer r) throws IOException {
+		r.skip(5);
+		readFont(r, info.getInput(),
+				"Error while reading input font information");
 	}
 
-	private void readOutputFont(InputStreamReader r) throws IOException {
-		UnicodeIO.skipChars(r, 6);
-		String s = "";
-		char c;
-		int z = -1;
-		while ((z = (char) UnicodeIO.readChar(r)) != ':' && z != -1)
-			s = s + (char) z;
-		if (z == -1)
-			throw new IOException("Error while reading output font information");
-		final boolean bold = ((z = UnicodeIO.readChar(r)) == 'B');
+	private void readOutputFont(GrfTokenizer r) throws IOException {
+		r.skip(6);
+		readFont(r, info.getOutput(),
+				"Error while reading output font information");
+	}
+
+	private static void readFont(GrfTokenizer r, FontInfo font, String error)
+			throws IOException {
+		final String s = r.readUntil(':', error);
+		int z;
+		final boolean bold = ((z = r.read()) == 'B');
 		if (z != 'B' && z != ' ')
-			throw new IOException("Error while reading output font information");
-		if (z == -1)
-			throw new IOException("Error while reading output font information");
-		final boolean italic = ((z = UnicodeIO.readChar(r)) == 'I');
+			throw new IOException(error);
+		final boolean italic = ((z = r.read()) == 'I');
 		if (z != 'I' && z != ' ')
-			throw new IOException("Error while reading output font information");
-		if (z == -1)
-			throw new IOException("Error while reading output font information");
-		int size = 0;
-		z = -1;
-		while ((z = UnicodeIO.readChar(r)) != -1
-				&& UnicodeIO.isDigit((c = (char) z)))
-			size = size * 10 + (c - '0');
-		if (z == -1)
-			throw new IOException("Error while reading output font information");
-		info.getOutput().setSize(size);
+			throw new IOException(error);
+		final int size = r.readNumber(error);
+		font.setSize(size);
 		int style;
 		if (bold && italic)
 			style = Font.BOLD | Font.ITALIC;
@@ -339,277 +341,225 @@ public class GraphIO {
 			style = Font.ITALIC;
 		else
 			style = Font.PLAIN;
-		info.getOutput().setFont(new Font(s, style, (int) (size / 0.72)));
+		font.setFont(new Font(s, style, (int) (size / 0.72)));
 	}
 
-	private void readBackgroundColor(InputStreamReader r) throws IOException {
-		UnicodeIO.skipChars(r, 7);
-		char c;
-		int n = 0;
-		int z = -1;
-		while ((z = UnicodeIO.readChar(r)) != -1
-				&& UnicodeIO.isDigit((c = (char) z)))
-			n = n * 10 + (c - '0');
-		if (z == -1)
-			throw new IOException(
-					"Error while reading background color information");
-		info.setBackgroundColor(new Color(n));
+	private void readBackgroundColor(GrfTokenizer r) throws IOException {
+		info.setBackgroundColor(readColor(r,
+				"Error while reading background color information"));
 	}
 
-	private void readForegroundColor(InputStreamReader r) throws IOException {
-		UnicodeIO.skipChars(r, 7);
-		char c;
-		int n = 0;
-		int z = -1;
-		while ((z = UnicodeIO.readChar(r)) != -1
-				&& UnicodeIO.isDigit((c = (char) z)))
-			n = n * 10 + (c - '0');
-		if (z == -1)
-			throw new IOException(
-					"Error while reading foreground color information");
-		info.setForegroundColor(new Color(n));
+	private void readForegroundColor(GrfTokenizer r) throws IOException {
+		info.setForegroundColor(readColor(r,
+				"Error while reading foreground color information"));
 	}
 
-	private void readSubgraphColor(InputStreamReader r) throws IOException {
-		UnicodeIO.skipChars(r, 7);
-		char c;
-		int n = 0;
-		int z = -1;
-		while ((z = UnicodeIO.readChar(r)) != -1
-				&& UnicodeIO.isDigit((c = (char) z)))
-			n = n * 10 + (c - '0');
-		if (z == -1)
-			throw new IOException(
-					"Error while reading subgraph color information");
-		info.setSubgraphColor(new Color(n));
+	private void readSubgraphColor(GrfTokenizer r) throws IOException {
+		info.setSubgraphColor(readColor(r,
+				"Error while reading subgraph color information"));
 	}
 
-	private void readSelectedColor(InputStreamReader r) throws IOException {
-		UnicodeIO.skipChars(r, 7);
-		char c;
-		int n = 0;
-		int z = -1;
-		while ((z = UnicodeIO.readChar(r)) != -1
-				&& UnicodeIO.isDigit((c = (char) z)))
-			n = n * 10 + (c - '0');
-		if (z == -1)
-			throw new IOException(
-					"Error while reading selected color information");
-		info.setSelectedColor(new Color(n));
+	private void readSelectedColor(GrfTokenizer r) throws IOException {
+		info.setSelectedColor(readColor(r,
+				"Error while reading selected color information"));
 	}
 
-	private void readCommentColor(InputStreamReader r) throws IOException {
-		UnicodeIO.skipChars(r, 7);
-		char c;
-		int n = 0;
-		int z = -1;
-		while ((z = UnicodeIO.readChar(r)) != -1
-				&& UnicodeIO.isDigit((c = (char) z)))
-			n = n * 10 + (c - '0');
-		if (z == -1)
-			throw new IOException(
-					"Error while reading comment color information");
-		info.setCommentColor(new Color(n));
+	private void readCommentColor(GrfTokenizer r) throws IOException {
+		info.setCommentColor(readColor(r,
+				"Error while reading comment color information"));
 	}
 
-	private void readDrawFrame(InputStreamReader r) throws IOException {
-		UnicodeIO.skipChars(r, 7);
-		int z;
-		info.setFrame((z = UnicodeIO.readChar(r)) == 'y');
-		if (z != 'y' && z != 'n')
-			throw new IOException("Error while reading frame information");
-		if (-1 == UnicodeIO.readChar(r))
-			throw new IOException("Error while reading frame information");
+	private static Color readColor(GrfTokenizer r, String error)
+			throws IOException {
+		r.skip(7);
+		return new Color(r.readNumber(error));
 	}
 
-	private void readDate(InputStreamReader r) throws IOException {
-		UnicodeIO.skipChars(r, 6);
-		int z;
-		info.setDate((z = UnicodeIO.readChar(r)) == 'y');
-		if (z != 'y' && z != 'n')
-			throw new IOException("Error while reading date information");
-		if (-1 == UnicodeIO.readChar(r))
-			throw new IOException("Error while reading date information");
+	private void readDrawFrame(GrfTokenizer r) throws IOException {
+		info.setFrame(readYesNo(r, 7, "Error while reading frame information"));
 	}
 
-	private void readFile(InputStreamReader r) throws IOException {
-		UnicodeIO.skipChars(r, 6);
-		int z;
-		info.setFilename((z = UnicodeIO.readChar(r)) == 'y');
-		if (z != 'y' && z != 'n')
-			throw new IOException("Error while reading file name information");
-		if (-1 == UnicodeIO.readChar(r))
-			throw new IOException("Error while reading file name information");
+	private void readDate(GrfTokenizer r) throws IOException {
+		info.setDate(readYesNo(r, 6, "Error while reading date information"));
 	}
 
-	private void readDirectory(InputStreamReader r) throws IOException {
-		UnicodeIO.skipChars(r, 5);
-		int z;
-		info.setPathname((z = UnicodeIO.readChar(r)) == 'y');
-		if (z != 'y' && z != 'n')
-			throw new IOException("Error while reading path name information");
-		if (-1 == UnicodeIO.readChar(r))
-			throw new IOException("Error while reading path name information");
+	private void readFile(GrfTokenizer r) throws IOException {
+		info.setFilename(readYesNo(r, 6,
+				"Error while reading file name information"));
 	}
 
-	private void readRightToLeft(InputStreamReader r) throws IOException {
-		UnicodeIO.skipChars(r, 5);
-		int z;
-		info.setRightToLeft((z = UnicodeIO.readChar(r)) == 'y');
+	private void readDirectory(GrfTokenizer r) throws IOException {
+		info.setPathname(readYesNo(r, 5,
+				"Error while reading path name information"));
+	}
+
+	private void readRightToLeft(GrfTokenizer r) throws IOException {
+		info.setRightToLeft(readYesNo(r, 5,
+				"Error while reading right to left information"));
+	}
+
+	/**
+	 * Reads a y/n flag preceeded by the given number of chars and followed by
+	 * a new line
+	 */
+	private static boolean readYesNo(GrfTokenizer r, int skip, String error)
+			throws IOException {
+		r.skip(skip);
+		final int z = r.read();
 		if (z != 'y' && z != 'n')
-			throw new IOException(
-					"Error while reading right to left information");
-		if (-1 == UnicodeIO.readChar(r))
-			throw new IOException(
-					"Error while reading right to left information");
+			throw new IOException(error);
+		if (-1 == r.read())
+			throw new IOException(error);
+		return z == 'y';
 	}
 
-	private void readBoxNumber(InputStreamReader r) throws IOException {
-		char c;
-		nBoxes = 0;
-		int z = -1;
-		while ((z = UnicodeIO.readChar(r)) != -1
-				&& UnicodeIO.isDigit((c = (char) z)))
-			nBoxes = nBoxes * 10 + (c - '0');
-		if (z == -1)
-			throw new IOException("Error while reading graph box number");
+	private void readBoxNumber(GrfTokenizer r) throws IOException {
+		nBoxes = r.readNumber("Error while reading graph box number");
 	}
 
-	private void readGraphLine(InputStreamReader r, int n) throws IOException {
-		final GenericGraphBox g = boxes.get(n);
+	private void readGraphLine(GrfTokenizer r, int n) throws IOException {
 		int z;
-		if ((z = UnicodeIO.readChar(r)) == 's') {
+		if ((z = r.read()) == 's') {
 			// is a "s" was read, then we read the " char
-			z = UnicodeIO.readChar(r);
+			z = r.read();
 		}
 		if (z != '"')
 			throw new IOException("Error #1 while reading graph box #" + n);
-		String s = "";
+		final StringBuilder s = new StringBuilder();
 		int c;
-		while ((c = UnicodeIO.readChar(r)) != '"') {
+		while ((c = r.read()) != '"') {
 			if (c == -1)
 				throw new IOException("Error #2 while reading graph box #" + n);
 			if (c == '\\') {
-				c = UnicodeIO.readChar(r);
+				c = r.read();
 				if (c == -1)
 					throw new IOException("Error #3 while reading graph box #"
 							+ n);
 				if (c != '\\') {
 					// case of \: \+ and \"
-					if (c == '"')
-						s = s + (char) c;
-					else
-						s = s + "\\" + (char) c;
+					if (c != '"')
+						s.append('\\');
+					s.append((char) c);
 				} else {
 					// case of \\\" that must be transformed into \"
-					c = UnicodeIO.readChar(r);
+					c = r.read();
 					if (c == -1)
 						throw new IOException(
 								"Error #4 while reading graph box #" + n);
 					if (c == '\\') {
 						// we are in the case \\\" -> \"
-						c = UnicodeIO.readChar(r);
+						c = r.read();
 						if (c == -1)
 							throw new IOException(
 									"Error #5 while reading graph box #" + n);
-						s = s + "\\" + (char) c;
+						s.append('\\').append((char) c);
 					} else {
 						// we are in the case \\a -> \\a
-						s = s + "\\\\";
+						s.append("\\\\");
 						if (c != '"')
-							s = s + (char) c;
+							s.append((char) c);
 						else
 							break;
 					}
 				}
 			} else
-				s = s + (char) c;
+				s.append((char) c);
 		}
 		// skipping the space after "
-		if (UnicodeIO.readChar(r) != ' ')
+		if (r.read() != ' ')
 			throw new IOException("Error #6 while reading graph box #" + n);
-		// reading the X coordinate
-		int x = 0;
-		int neg = 1;
-		c = UnicodeIO.readChar(r);
-		if (c == -1)
-			throw new IOException("Error #7 while reading graph box #" + n);
-		if (c == '-') {
-			neg = -1;
-		} else if (UnicodeIO.isDigit((char) c)) {
-			x = ((char) c - '0');
+		boxX[n] = r.readSignedNumber("Error #7 while reading graph box #" + n);
+		boxY[n] = r.readSignedNumber("Error #10 while reading graph box #" + n);
+		if (n != 1) {
+			// 1 is the final state, which content is <E>
+			if (s.length() == 0) {
+				throw new IllegalStateException(
+						"The graph contains an unexpected empty box that is not the final state");
+			}
+			boxContents[n] = s.toString();
 		} else {
-			throw new IOException("Error #8 while reading graph box #" + n);
+			boxContents[n] = "<E>";
 		}
-		c = -1;
-		while ((c = UnicodeIO.readChar(r)) != -1 && UnicodeIO.isDigit((char) c)) {
-			x = x * 10 + ((char) c - '0');
+		readTransitions(r, n, "Error #13 while reading graph box #" + n,
+				"Error #14 while reading graph box #" + n);
+		// skipping the end-of-line
+		if (r.read() != '\n')
+			throw new IOException("Error #15 while reading graph box #" + n);
+	}
+
+	/**
+	 * Reads the transitions of the box #n. Transitions are stored one box
+	 * after the other, so that the ones of the box #n start where the ones of
+	 * the box #n-1 end.
+	 */
+	private void readTransitions(GrfTokenizer r, int n, String countError,
+			String destError) throws IOException {
+		final int trans = r.readNumber(countError);
+		int k = transitionStart[n];
+		if (k + trans > boxTransitions.length) {
+			boxTransitions = Arrays.copyOf(boxTransitions,
+					Math.max(2 * boxTransitions.length, k + trans));
 		}
-		if (c == -1)
-			throw new IOException("Error #9 while reading graph box #" + n);
-		x = x * neg;
-		// reading the Y coordinate
-		int y = 0;
-		neg = 1;
-		c = UnicodeIO.readChar(r);
-		if (c == -1)
-			throw new IOException("Error #10 while reading graph box #" + n);
-		if (c == '-') {
-			neg = -1;
-		} else if (UnicodeIO.isDigit((char) c)) {
-			y = ((char) c - '0');
-		} else {
-			throw new IOException("Error #11 while reading graph box #" + n);
+		for (int j = 0; j < trans; j++) {
+			final int dest = r.readNumber(destError);
+			if (dest >= nBoxes)
+				throw new IOException(destError);
+			boxTransitions[k++] = dest;
 		}
-		c = -1;
-		while ((c = UnicodeIO.readChar(r)) != -1 && UnicodeIO.isDigit((char) c)) {
-			y = y * 10 + ((char) c - '0');
+		transitionStart[n + 1] = k;
+	}
+
+	/**
+	 * Creates the box objects from the data read in the graph file. This is
+	 * done on the first call to <code>getBoxes()</code>, so that tools that
+	 * only need the structure of a graph don't pay for the box layout. The
+	 * caller must hold the lock of this object, since graphs may be read by
+	 * several threads at once.
+	 */
+	private void buildBoxes() {
+		final ArrayList<GenericGraphBox> res = new ArrayList<GenericGraphBox>();
+		// adding initial state, final state and other states
+		for (int i = 0; i < Math.max(2, nBoxes); i++) {
+			final int type = (i < 2) ? i : 2;
+			if (sentenceGraph)
+				res.add(new TfstGraphBox(0, 0, type, null));
+			else
+				res.add(new GraphBox(0, 0, type, null));
 		}
-		if (c == -1)
-			throw new IOException("Error #12 while reading graph box #" + n);
-		y = y * neg;
-		g.setX(x);
-		g.setY(y);
-		g.setX1(g.getX());
-		g.setY1(g.getY());
-		g.setX_in(g.getX());
-		g.setY_in(g.getY());
-		g.setX_out(g.getX() + g.getWidth() + 5);
-		g.setY_out(g.getY_in());
-		if (n != 1) {
-			// 1 is the final state, which content is <E>
-			g.setContent(s);
-			// we will need to call g.update() to size the box according to the
-			// text
-		} else {
-			g.setContent("<E>");
+		for (int n = 0; n < nBoxes; n++) {
+			final GenericGraphBox g = res.get(n);
+			g.setX(boxX[n]);
+			g.setY(boxY[n]);
+			g.setX1(g.getX());
+			g.setY1(g.getY());
 			g.setX_in(g.getX());
 			g.setY_in(g.getY());
-			g.setX1(g.getX());
-			g.setY1(g.getY() - 10);
+			g.setX_out(g.getX() + g.getWidth() + 5);
 			g.setY_out(g.getY_in());
-			g.setX_out(g.getX_in() + 25);
-		}
-		int trans = 0;
-		c = -1;
-		while ((c = UnicodeIO.readChar(r)) != -1 && UnicodeIO.isDigit((char) c))
-			trans = trans * 10 + ((char) c - '0');
-		if (c == -1)
-			throw new IOException("Error #13 while reading graph box #" + n);
-		for (int j = 0; j < trans; j++) {
-			int dest = 0;
-			c = -1;
-			while ((c = UnicodeIO.readChar(r)) != -1
-					&& UnicodeIO.isDigit((char) c))
-				dest = dest * 10 + ((char) c - '0');
-			if (c == -1)
-				throw new IOException("Error #14 while reading graph box #" + n);
-			g.addTransitionTo(boxes.get(dest));
+			if (n != 1) {
+				// we will need to call g.update() to size the box according to
+				// the text
+				if (sentenceGraph)
+					((TfstGraphBox) g).setContentWithBounds(boxContents[n]);
+				else
+					g.setContent(boxContents[n]);
+			} else {
+				if (sentenceGraph)
+					((TfstGraphBox) g).setContentWithBounds("<E>");
+				else
+					g.setContent("<E>");
+				g.setX_in(g.getX());
+				g.setY_in(g.getY());
+				g.setX1(g.getX());
+				g.setY1(g.getY() - 10);
+				g.setY_out(g.getY_in());
+				g.setX_out(g.getX_in() + 25);
+			}
+			for (int k = transitionStart[n]; k < transitionStart[n + 1]; k++) {
+				g.addTransitionTo(res.get(boxTransitions[k]));
+			}
 		}
-		// skipping the end-of-line
-		final int foo = UnicodeIO.readChar(r);
-		if (foo != '\n')
-			throw new IOException("Error #15 while reading graph box #" + n);
+		boxes = res;
 	}
 
 	/**
@@ -746,7 +696,7 @@ public class GraphIO {
 						key + "=" + metadata.getValue(key) + "\n");
 			}
 			UnicodeIO.writeString(writer, "#\n");
-			nBoxes = boxes.size();
+			nBoxes = getBoxes().size();
 			UnicodeIO.writeString(writer, String.valueOf(nBoxes) + "\n");
 			for (int i = 0; i < nBoxes; i++) {
 				final GenericGraphBox g = boxes.get(i);
@@ -799,88 +749,60 @@ public class GraphIO {
 		}
 	}
 
-	private void readSentenceGraphLine(InputStreamReader r, int n) {
-		final TfstGraphBox g = (TfstGraphBox) boxes.get(n);
-		if (UnicodeIO.readChar(r) == 's') {
+	private void readSentenceGraphLine(GrfTokenizer r, int n)
+			throws IOException {
+		if (r.read() == 's') {
 			// is a "s" was read, then we read the " char
-			UnicodeIO.readChar(r);
+			r.read();
 		}
-		String s = "";
-		char c;
-		while ((c = (char) UnicodeIO.readChar(r)) != '"') {
+		final StringBuilder s = new StringBuilder();
+		int c;
+		while ((c = r.read()) != '"') {
+			if (c == -1)
+				throw new IOException("Error while reading sentence graph box #"
+						+ n);
 			if (c == '\\') {
-				c = (char) UnicodeIO.readChar(r);
+				c = r.read();
 				if (c != '\\') {
 					// case of \: \+ and \"
-					if (c == '"')
-						s = s + c;
-					else
-						s = s + "\\" + c;
+					if (c != '"')
+						s.append('\\');
+					s.append((char) c);
 				} else {
 					// case of \\\" that must must be transformed into \"
-					c = (char) UnicodeIO.readChar(r);
+					c = r.read();
 					if (c == '\\') {
 						// we are in the case \\\" -> \"
-						c = (char) UnicodeIO.readChar(r);
-						s = s + "\\" + c;
+						c = r.read();
+						s.append('\\').append((char) c);
 					} else {
 						// we are in the case \\a -> \\a
-						s = s + "\\\\" + c;
+						s.append("\\\\").append((char) c);
 					}
 				}
 			} else
-				s = s + c;
+				s.append((char) c);
 		}
 		// skipping the space after "
-		UnicodeIO.readChar(r);
-		// reading the X coordinate
-		int x = 0;
-		while (UnicodeIO.isDigit((c = (char) UnicodeIO.readChar(r))))
-			x = x * 10 + (c - '0');
-		// reading the Y coordinate
-		int y = 0;
-		while (UnicodeIO.isDigit((c = (char) UnicodeIO.readChar(r))))
-			y = y * 10 + (c - '0');
+		r.read();
+		// reading the X and Y coordinates
+		final int x = r.readNumber(null);
+		final int y = r.readNumber(null);
 		if (ConfigManager.getManager().getGraphPresentationPreferences(null)
 				.isRightToLeft()
 				|| info.isRightToLeft()) {
 			info.setRightToLeft(true);
-			g.setX(width - x);
-		} else {
-			g.setX(x);
-		}
-		g.setY(y);
-		g.setX1(g.getX());
-		g.setY1(g.getY());
-		g.setX_in(g.getX());
-		g.setY_in(g.getY());
-		g.setX_out(g.getX() + g.getWidth() + 5);
-		g.setY_out(g.getY_in());
-		if (n != 1) {
-			// 1 is the final state, which content is <E>
-			g.setContentWithBounds(s);
-			// we will need to call g.update() to size the box according to the
-			// text
+			boxX[n] = width - x;
 		} else {
-			g.setContentWithBounds("<E>");
-			g.setX_in(g.getX());
-			g.setY_in(g.getY());
-			g.setX1(g.getX());
-			g.setY1(g.getY() - 10);
-			g.setY_out(g.getY_in());
-			g.setX_out(g.getX_in() + 25);
-		}
-		int trans = 0;
-		while (UnicodeIO.isDigit((c = (char) UnicodeIO.readChar(r))))
-			trans = trans * 10 + (c - '0');
-		for (int j = 0; j < trans; j++) {
-			int dest = 0;
-			while (UnicodeIO.isDigit((c = (char) UnicodeIO.readChar(r))))
-				dest = dest * 10 + (c - '0');
-			g.addTransitionTo(boxes.get(dest));
+			boxX[n] = x;
 		}
+		boxY[n] = y;
+		// 1 is the final state, which content is <E>
+		boxContents[n] = (n != 1) ? s.toString() : "<E>";
+		readTransitions(r, n, null, "Invalid transition in sentence graph box #"
+				+ n);
 		// skipping the end-of-line
-		UnicodeIO.readChar(r);
+		r.read();
 	}
 
 	/**
@@ -1000,7 +922,7 @@ public class GraphIO {
 			UnicodeIO.writeString(writer, "FITS 100\n");
 			UnicodeIO.writeString(writer, "PORIENT L\n");
 			UnicodeIO.writeString(writer, "#\n");
-			nBoxes = boxes.size();
+			nBoxes = getBoxes().size();
 			UnicodeIO.writeString(writer, String.valueOf(nBoxes) + "\n");
 			for (int i = 0; i < nBoxes; i++) {
 				final TfstGraphBox g = (TfstGraphBox) boxes.get(i);
@@ -1049,10 +971,43 @@ public class GraphIO {
 		return info;
 	}
 
-	public ArrayList<GenericGraphBox> getBoxes() {
+	public synchronized ArrayList<GenericGraphBox> getBoxes() {
+		if (boxes == null && boxContents != null) {
+			buildBoxes();
+		}
 		return boxes;
 	}
 
+	/**
+	 * Returns the content of the box #n. For a loaded graph, this does not
+	 * require the box objects to be built, so that tools that only need the
+	 * structure of graphs, like <code>Dependancies</code>, can avoid it.
+	 */
+	public synchronized String getBoxContent(int n) {
+		if (boxes == null && boxContents != null) {
+			return boxContents[n];
+		}
+		return boxes.get(n).getContent();
+	}
+
+	/**
+	 * Returns the numbers of the boxes that the box #n has transitions to. As
+	 * for <code>getBoxContent</code>, the box objects are not built if they
+	 * have not been yet.
+	 */
+	public synchronized int[] getBoxTransitions(int n) {
+		if (boxes == null && boxContents != null) {
+			return Arrays.copyOfRange(boxTransitions, transitionStart[n],
+					transitionStart[n + 1]);
+		}
+		final ArrayList<GenericGraphBox> dest = boxes.get(n).getTransitions();
+		final int[] res = new int[dest.size()];
+		for (int i = 0; i < res.length; i++) {
+			res[i] = boxes.indexOf(dest.get(i));
+		}
+		return res;
+	}
+
 	public int getWidth() {
 		return width;
 	}
@@ -0,0 +1,177 @@
+/*
+ * Unitex
+ *
+ * Copyright (C) 2001-2021 Université Paris-Est Marne-la-Vallée <unitex@univ-mlv.fr>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA.
+ *
+ */
+package fr.umlv.unitex.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+
+/**
+ * This class reads the characters of a .grf file. The whole file is decoded at
+ * once into a char array, and the methods below work on that array, so that
+ * reading a graph does not cost a stream call per character. As with
+ * <code>UnicodeIO.readChar</code>, a <code>0x0D</code> character and the
+ * character that follows it are read as a single <code>'\n'</code>.
+ */
+class GrfTokenizer {
+	private final char[] buffer;
+	private final int length;
+	private int pos;
+
+	private GrfTokenizer(char[] buffer, int length, int pos) {
+		this.buffer = buffer;
+		this.length = length;
+		this.pos = pos;
+	}
+
+	/**
+	 * Decodes the given file. Returns null if the file is not a Unicode file.
+	 */
+	static GrfTokenizer open(File f) throws IOException {
+		final Encoding e = Encoding.getEncoding(f);
+		if (e == null) {
+			return null;
+		}
+		final byte[] bytes = Files.readAllBytes(f.toPath());
+		final CharBuffer chars = Charset.forName(e.getCharset()).decode(
+				ByteBuffer.wrap(bytes));
+		int start = chars.position();
+		if (e == Encoding.UTF16LE || e == Encoding.UTF16BE) {
+			if (chars.remaining() == 0 || chars.get(start) != 0xFEFF) {
+				/* Should not happen */
+				return null;
+			}
+			start++;
+		}
+		if (chars.hasArray()) {
+			return new GrfTokenizer(chars.array(), chars.arrayOffset()
+					+ chars.limit(), chars.arrayOffset() + start);
+		}
+		final char[] tmp = new char[chars.limit()];
+		chars.get(tmp);
+		return new GrfTokenizer(tmp, tmp.length, start);
+	}
+
+	/**
+	 * Returns the next character, or -1 at the end of the file.
+	 */
+	int read() {
+		if (pos >= length) {
+			return -1;
+		}
+		final char c = buffer[pos++];
+		if (c == 0x0d) {
+			pos++;
+			return '\n';
+		}
+		return c;
+	}
+
+	void skip(int n) {
+		for (int i = 0; i < n; i++) {
+			read();
+		}
+	}
+
+	void skipLine() {
+		int c;
+		while ((c = read()) != '\n' && c != -1) {/**/
+		}
+	}
+
+	/**
+	 * Reads a line. The \n, if any, is not put in the result. Returns null at
+	 * the end of file.
+	 */
+	String readLine() {
+		if (pos >= length) {
+			return null;
+		}
+		final int start = pos;
+		int end = pos;
+		int c;
+		while ((c = read()) != '\n' && c != -1) {
+			end = pos;
+		}
+		return new String(buffer, start, end - start);
+	}
+
+	/**
+	 * Reads the characters until the given one, which is consumed but not put
+	 * in the result.
+	 *
+	 * @throws IOException
+	 *             with the given message if the end of file is reached first
+	 */
+	String readUntil(char stop, String error) throws IOException {
+		final int start = pos;
+		int end = pos;
+		int c;
+		while ((c = read()) != stop) {
+			if (c == -1) {
+				throw new IOException(error);
+			}
+			end = pos;
+		}
+		return new String(buffer, start, end - start);
+	}
+
+	/**
+	 * Reads a sequence of digits. The first non digit character is consumed.
+	 *
+	 * @throws IOException
+	 *             with the given message if the end of file is reached, unless
+	 *             the message is null
+	 */
+	int readNumber(String error) throws IOException {
+		int n = 0;
+		int c;
+		while ((c = read()) != -1 && c >= '0' && c <= '9') {
+			n = n * 10 + (c - '0');
+		}
+		if (c == -1 && error != null) {
+			throw new IOException(error);
+		}
+		return n;
+	}
+
+	/**
+	 * Same as {@link #readNumber(String)} but for a sequence of digits that may
+	 * be preceded by a minus sign. There must be at least one char.
+	 */
+	int readSignedNumber(String error) throws IOException {
+		final int c = read();
+		if (c == -1) {
+			throw new IOException(error);
+		}
+		if (c == '-') {
+			return -readNumber(error);
+		}
+		if (c < '0' || c > '9') {
+			throw new IOException(error);
+		}
+		pos--;
+		return readNumber(error);
+	}
+}
@@ -0,0 +1,160 @@
+/*
+ * Unitex
+ *
+ * Copyright (C) 2001-2021 Université Paris-Est Marne-la-Vallée <unitex@univ-mlv.fr>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA.
+ *
+ */
+package fr.umlv.unitex.io;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * This class maps a whole file of any size as read-only segments of
+ * <code>SEGMENT_SIZE</code> bytes, since a single
+ * <code>MappedByteBuffer</code> cannot exceed 2 GB. All reads are absolute, so
+ * that a <code>MappedFile</code> can be shared between threads.
+ */
+public class MappedFile {
+	public static final int SEGMENT_SHIFT = 30;
+	public static final long SEGMENT_SIZE = 1L << SEGMENT_SHIFT;
+
+	private final long length;
+	private MappedByteBuffer[] segments;
+
+	public MappedFile(FileChannel channel) throws IOException {
+		this(channel, 0, 0);
+	}
+
+	/**
+	 * Maps the file from the byte <code>start</code>, which becomes the
+	 * position 0. Each segment overlaps the next one by <code>overlap</code>
+	 * bytes, so that a value of at most <code>overlap</code> bytes that starts
+	 * in a segment can always be read from it.
+	 */
+	public MappedFile(FileChannel channel, long start, int overlap)
+			throws IOException {
+		length = Math.max(0, channel.size() - start);
+		final int n = (int) ((length + SEGMENT_SIZE - 1) >> SEGMENT_SHIFT);
+		segments = new MappedByteBuffer[n];
+		for (int i = 0; i < n; i++) {
+			final long from = i * SEGMENT_SIZE;
+			final long to = Math.min(length, from + SEGMENT_SIZE + overlap);
+			segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start
+					+ from, to - from);
+		}
+	}
+
+	public long length() {
+		return length;
+	}
+
+	public int getSegmentCount() {
+		return segments.length;
+	}
+
+	/**
+	 * Returns the segment #i, that starts at <code>i*SEGMENT_SIZE</code>. The
+	 * caller must only use absolute reads on it, or work on a duplicate. Its
+	 * limit includes the overlap with the next segment.
+	 */
+	public ByteBuffer getSegment(int i) {
+		return segments[i];
+	}
+
+	public byte get(long pos) {
+		return segments[(int) (pos >> SEGMENT_SHIFT)].get((int) (pos & (SEGMENT_SIZE - 1)));
+	}
+
+	/**
+	 * Copies <code>dst.length</code> bytes from the given position into
+	 * <code>dst</code>, even if they are spread over two segments.
+	 */
+	public void get(long pos, byte[] dst) {
+		int done = 0;
+		while (done < dst.length) {
+			final long p = pos + done;
+			final ByteBuffer segment = segments[(int) (p >> SEGMENT_SHIFT)]
+					.duplicate();
+			final int offset = (int) (p & (SEGMENT_SIZE - 1));
+			final int n = Math.min(dst.length - done, segment.limit() - offset);
+			segment.position(offset);
+			segment.get(dst, done, n);
+			done += n;
+		}
+	}
+
+	/**
+	 * Drops the references to the mapped segments, so that the mappings can
+	 * be released by the garbage collector.
+	 */
+	public void release() {
+		segments = null;
+	}
+
+	/**
+	 * Unmaps the segments now instead of waiting for the garbage collector,
+	 * since a mapped file can be neither replaced nor truncated on Windows.
+	 * The caller must make sure that nothing reads the file anymore, as a read
+	 * in an unmapped segment would crash the VM. If the segments cannot be
+	 * unmapped explicitly, they are only released.
+	 */
+	public void unmap() {
+		final MappedByteBuffer[] s = segments;
+		segments = null;
+		if (s == null) {
+			return;
+		}
+		try {
+			for (final MappedByteBuffer segment : s) {
+				unmap(segment);
+			}
+		} catch (final Exception e) {
+			/* Not a supported VM: we let the garbage collector do it */
+			System.gc();
+		}
+	}
+
+	private static void unmap(MappedByteBuffer buffer) throws Exception {
+		Method invokeCleaner;
+		try {
+			invokeCleaner = Class.forName("sun.misc.Unsafe").getMethod(
+					"invokeCleaner", ByteBuffer.class);
+		} catch (final NoSuchMethodException e) {
+			invokeCleaner = null;
+		}
+		if (invokeCleaner != null) {
+			/* Java 9 and later */
+			final Field f = invokeCleaner.getDeclaringClass().getDeclaredField(
+					"theUnsafe");
+			f.setAccessible(true);
+			invokeCleaner.invoke(f.get(null), buffer);
+			return;
+		}
+		/* Java 8 */
+		final Method cleaner = buffer.getClass().getMethod("cleaner");
+		cleaner.setAccessible(true);
+		final Object c = cleaner.invoke(buffer);
+		if (c != null) {
+			c.getClass().getMethod("clean").invoke(c);
+		}
+	}
+}
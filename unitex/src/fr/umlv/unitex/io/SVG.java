@@ -23,6 +23,7 @@ package fr.umlv.unitex.io;
 import java.awt.Color;
 import java.awt.Font;
 import java.awt.Graphics2D;
+import java.io.File;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
 import java.util.ArrayList;
@@ -40,7 +41,7 @@ import fr.umlv.unitex.grf.GraphPresentationInfo;
  */
 public class SVG {
 	private final OutputStreamWriter writer;
-	private final GraphFrame frame;
+	private final File graph;
 	private final GraphicalZone graphicalZone;
 	private final Graphics2D graphics;
 	private final GraphPresentationInfo info;
@@ -48,10 +49,24 @@ public class SVG {
 	private int descent;
 
 	public SVG(OutputStreamWriter writer, GraphFrame frame) {
+		this(writer, frame.getGraphicalZone(), frame.getGraph(),
+				(Graphics2D) frame.getGraphicalZone().getGraphics());
+	}
+
+	/**
+	 * Builds a SVG writer for a graphical zone that may not be displayed.
+	 *
+	 * @param graph
+	 *            the graph file, or null if the graph has never been saved
+	 * @param graphics
+	 *            the graphical context used to measure texts
+	 */
+	public SVG(OutputStreamWriter writer, GraphicalZone graphicalZone,
+			File graph, Graphics2D graphics) {
 		this.writer = writer;
-		this.frame = frame;
-		this.graphicalZone = frame.getGraphicalZone();
-		this.graphics = (Graphics2D) graphicalZone.getGraphics();
+		this.graph = graph;
+		this.graphicalZone = graphicalZone;
+		this.graphics = graphics;
 		this.info = graphicalZone.getGraphPresentationInfo();
 	}
 
@@ -62,8 +77,8 @@ public class SVG {
 				+ "\" height=\"" + graphicalZone.getHeight()
 				+ "\" version=\"1.1\" xmlns=\"http://www.w3.org/2000/svg\">\n");
 		writer.write("<desc>\n\tThis SVG file was created by Unitex/GramLab (http://unitexgramlab.org).\n");
-                final String graphName = frame.getGraph() != null ?
-                                         frame.getGraph().getAbsolutePath() :
+                final String graphName = graph != null ?
+                                         graph.getAbsolutePath() :
                                          "(Unsaved)";
 		writer.write("\tIt represents the graph named: "
 				+ graphName + "\n</desc>\n");
@@ -82,18 +97,22 @@ public class SVG {
 					2);
 		}
 		// if necessary, we print the file name
-		final Font defaultFont = graphicalZone.getFont();
-                final String graphName = frame.getGraph() != null ?
-                                         frame.getGraph().getAbsolutePath() :
+		Font defaultFont = graphicalZone.getFont();
+		if (defaultFont == null) {
+			/* The zone is not displayed */
+			defaultFont = graphics.getFont();
+		}
+                final String graphName = graph != null ?
+                                         graph.getAbsolutePath() :
                                          "(Unsaved)";
 		if (info.isFilename()) {
 			if (info.isPathname())
-				drawText((frame.getGraph() != null) ? graphName : "", 20,
+				drawText((graph != null) ? graphName : "", 20,
 						graphicalZone.getHeight() - 45,
 						info.getForegroundColor(), defaultFont);
 			else
-				drawText((frame.getGraph() != null) ? frame.getGraph()
-						.getName() : "", 20, graphicalZone.getHeight() - 45,
+				drawText((graph != null) ? graph.getName() : "", 20,
+						graphicalZone.getHeight() - 45,
 						info.getForegroundColor(), defaultFont);
 		}
 		// if necessary, we print the date of the day
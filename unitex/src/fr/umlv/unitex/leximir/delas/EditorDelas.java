@@ -27,6 +27,7 @@ import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
@@ -58,6 +59,7 @@ import javax.swing.JInternalFrame;
 import javax.swing.event.InternalFrameAdapter;
 import javax.swing.event.InternalFrameEvent;
 import fr.umlv.unitex.leximir.delas.menu.MenuDelas;
+import fr.umlv.unitex.leximir.model.DelasTableModel;
 import fr.umlv.unitex.leximir.model.DictionaryPath;
 import fr.umlv.unitex.leximir.util.DuplicationFinder;
 import fr.umlv.unitex.leximir.util.Utils;
@@ -71,7 +73,7 @@ import java.nio.charset.Charset;
  */
 public final class EditorDelas extends javax.swing.JInternalFrame {
 
-    private DefaultTableModel tableModel;
+    private DelasTableModel tableModel;
     private DefaultTableModel defaulttableModel;
     private boolean unsaved = false;
     private String workingDirectory;
@@ -94,7 +96,7 @@ public final class EditorDelas extends javax.swing.JInternalFrame {
             this.setTitle("LeXimir Editor for Dela dictionaries of simple words");
             tableModel = GridHelper.getOpenEditorforDelas(alldelas, dic);
             JTable table = new JTable(getTableModel());
-            RowSorter<DefaultTableModel> sort = new TableRowSorter<>(tableModel);
+            RowSorter<DelasTableModel> sort = new TableRowSorter<>(tableModel);
             for (String d : DictionaryPath.dictionary) {
                 jComboBoxDic.addItem(d);
             }
@@ -749,23 +751,31 @@ public final class EditorDelas extends javax.swing.JInternalFrame {
 
     private void jButtonSearchActionPerformed(java.awt.event.ActionEvent evt) {
         String text = jTextFieldSearch.getText();
-        TableRowSorter<DefaultTableModel> rowSorter;
-        rowSorter = new TableRowSorter<>(tableModel);
-        this.getjTable1().setRowSorter(rowSorter);
-        this.getjTable1().removeAll();
-       
         try {
 	        if (text.length() == 0) {
-	            rowSorter.setRowFilter(null);
+	            showRows(null);
 	        } else {
-	            rowSorter.setRowFilter(RowFilter.regexFilter(text));
+	            showRows(tableModel.filter(text));
 	        }
         }catch(PatternSyntaxException e) {
         	JOptionPane.showMessageDialog(null, "Error in regular expression");
-            return;
         }
-            
-        jTable1.setModel(rowSorter.getModel());
+    }
+
+    /**
+     * Shows the given rows of the model, or all rows if rows is null
+     */
+    private void showRows(final BitSet rows) {
+        TableRowSorter<DelasTableModel> rowSorter = new TableRowSorter<>(tableModel);
+        if (rows != null) {
+            rowSorter.setRowFilter(new RowFilter<DelasTableModel, Integer>() {
+                @Override
+                public boolean include(Entry<? extends DelasTableModel, ? extends Integer> entry) {
+                    return rows.get(entry.getIdentifier());
+                }
+            });
+        }
+        this.getjTable1().setRowSorter(rowSorter);
         jLabel13.setText(String.valueOf(this.getjTable1().getRowCount()));
     }
 
@@ -1015,12 +1025,8 @@ public final class EditorDelas extends javax.swing.JInternalFrame {
         if (evt.getKeyCode() == KeyEvent.VK_ENTER) {
             JTextField textField = (JTextField) evt.getSource();
             String text = textField.getText();
-            TableRowSorter<DefaultTableModel> rowSorter;
-            rowSorter = new TableRowSorter<>(tableModel);
-            this.getjTable1().setRowSorter(rowSorter);
-            this.getjTable1().removeAll();
             if (text.trim().length() == 0) {
-                rowSorter.setRowFilter(null);
+                showRows(null);
             } else {
                 if (jCheckBoxExtract.isSelected()) {
                     text = "^" + text + "$";
@@ -1029,18 +1035,12 @@ public final class EditorDelas extends javax.swing.JInternalFrame {
                         text = "^" + text;
                     }
                 }
-                RowFilter<Object, Object> rowFilter;
                 try {
-                	rowFilter = RowFilter.regexFilter(text, 0);
+                	showRows(tableModel.filter(text, 0));
                 }catch(PatternSyntaxException e) {
                 	JOptionPane.showMessageDialog(null, "Error in regular expression");
-                	return;
                 }
-                rowSorter.setRowFilter(rowFilter);
-                
             }
-            jTable1.setModel(rowSorter.getModel());
-            jLabel13.setText(String.valueOf(this.getjTable1().getRowCount()));
         }
     }
 
@@ -1048,12 +1048,8 @@ public final class EditorDelas extends javax.swing.JInternalFrame {
         if (evt.getKeyCode() == KeyEvent.VK_ENTER) {
             JTextField textField = (JTextField) evt.getSource();
             String text = textField.getText();
-            TableRowSorter<DefaultTableModel> rowSorter;
-            rowSorter = new TableRowSorter<>(tableModel);
-            this.getjTable1().setRowSorter(rowSorter);
-            this.getjTable1().removeAll();
             if (text.trim().length() == 0) {
-                rowSorter.setRowFilter(null);
+                showRows(null);
             } else {
                 if (jCheckBoxExtract.isSelected()) {
                     text = "^" + text + "$";
@@ -1062,17 +1058,12 @@ public final class EditorDelas extends javax.swing.JInternalFrame {
                 		text = "^" + text;
                 	}
                 }
-                RowFilter<Object, Object> rowFilter;
                 try {
-                	rowFilter = RowFilter.regexFilter(text, 2);
+                	showRows(tableModel.filter(text, 2));
                 }catch(PatternSyntaxException e) {
                 	JOptionPane.showMessageDialog(null, "Error in regular expression");
-                	return;
                 }
-                rowSorter.setRowFilter(rowFilter);
             }
-            jTable1.setModel(rowSorter.getModel());
-            jLabel13.setText(String.valueOf(this.getjTable1().getRowCount()));
         }
     }
 
@@ -1080,12 +1071,8 @@ public final class EditorDelas extends javax.swing.JInternalFrame {
         if (evt.getKeyCode() == KeyEvent.VK_ENTER) {
             JTextField textField = (JTextField) evt.getSource();
             String text = textField.getText();
-            TableRowSorter<DefaultTableModel> rowSorter;
-            rowSorter = new TableRowSorter<>(tableModel);
-            this.getjTable1().setRowSorter(rowSorter);
-            this.getjTable1().removeAll();
             if (text.trim().length() == 0) {
-                rowSorter.setRowFilter(null);
+                showRows(null);
             } else {
                 if (jCheckBoxExtract.isSelected()) {
                     text = "^" + text + "$";
@@ -1094,55 +1081,35 @@ public final class EditorDelas extends javax.swing.JInternalFrame {
                         text = "." + text;
                     }
                 }
-                RowFilter<Object, Object> rowFilter;
                 try {
-                	rowFilter = RowFilter.regexFilter(text, 3);
+                	showRows(tableModel.filter(text, 3));
                 }catch(PatternSyntaxException e) {
                 	JOptionPane.showMessageDialog(null, "Error in regular expression");
-                	return;
                 }
-                rowSorter.setRowFilter(rowFilter);
             }
-            jTable1.setModel(rowSorter.getModel());
-            jLabel13.setText(String.valueOf(this.getjTable1().getRowCount()));
         }
     }
 
     private void jTextFieldLemmaKeyPressed(java.awt.event.KeyEvent evt) {
-        TableRowSorter<DefaultTableModel> rowSorter = null;
-        try {
-            if (evt.getKeyCode() == KeyEvent.VK_ENTER) {
-                JTextField textField = (JTextField) evt.getSource();
-                String text = textField.getText();
-
-                rowSorter = new TableRowSorter<>(tableModel);
-
-                this.getjTable1().setRowSorter(rowSorter);
-
-                if (text.trim().length() == 0) {
-                    rowSorter.setRowFilter(null);
+        if (evt.getKeyCode() == KeyEvent.VK_ENTER) {
+            JTextField textField = (JTextField) evt.getSource();
+            String text = textField.getText();
+            if (text.trim().length() == 0) {
+                showRows(null);
+            } else {
+                if (jCheckBoxExtract.isSelected()) {
+                    text = "^" + text + "$";
                 } else {
-                    if (jCheckBoxExtract.isSelected()) {
-                        text = "^" + text + "$";
-                    } else {
-                        if (!text.contains(".") && !text.contains("$") && !text.contains("[") && !text.contains("]")) {
-                            text = "^" + text;
-                        }
-                    }
-                    RowFilter<Object, Object> rowFilter;
-                    try {
-                    	rowFilter = RowFilter.regexFilter(text, 1);
-                    }catch(PatternSyntaxException e) {
-                    	JOptionPane.showMessageDialog(null, "Error in regular expression");
-                    	return;
+                    if (!text.contains(".") && !text.contains("$") && !text.contains("[") && !text.contains("]")) {
+                        text = "^" + text;
                     }
-                    rowSorter.setRowFilter(rowFilter);
                 }
-                jTable1.setModel(rowSorter.getModel());
-                jLabel13.setText(String.valueOf(this.getjTable1().getRowCount()));
+                try {
+                	showRows(tableModel.filter(text, 1));
+                }catch(PatternSyntaxException e) {
+                	JOptionPane.showMessageDialog(null, "Error in regular expression");
+                }
             }
-        } catch (java.util.regex.PatternSyntaxException e) {
-            rowSorter.setRowFilter(null);
         }
     }
 
@@ -1150,12 +1117,8 @@ public final class EditorDelas extends javax.swing.JInternalFrame {
         if (evt.getKeyCode() == KeyEvent.VK_ENTER) {
             JTextField textField = (JTextField) evt.getSource();
             String text = textField.getText();
-            TableRowSorter<DefaultTableModel> rowSorter;
-            rowSorter = new TableRowSorter<>(tableModel);
-            this.getjTable1().setRowSorter(rowSorter);
-            this.getjTable1().removeAll();
             if (text.trim().length() == 0) {
-                rowSorter.setRowFilter(null);
+                showRows(null);
             } else {
             	if (jCheckBoxExtract.isSelected()) {
             		text = "^" + text + "$";
@@ -1164,17 +1127,12 @@ public final class EditorDelas extends javax.swing.JInternalFrame {
             			text = text + "$";
             		}
                 }
-            	RowFilter<Object, Object> rowFilter;
                 try {
-                	rowFilter = RowFilter.regexFilter(text, 1);
+                	showRows(tableModel.filter(text, 1));
                 }catch(PatternSyntaxException e) {
                 	JOptionPane.showMessageDialog(null, "Error in regular expression");
-                	return;
                 }
-                rowSorter.setRowFilter(rowFilter);
             }
-            jTable1.setModel(rowSorter.getModel());
-            jLabel13.setText(String.valueOf(this.getjTable1().getRowCount()));
         }
     }
 
@@ -1184,50 +1142,52 @@ public final class EditorDelas extends javax.swing.JInternalFrame {
         String fst = jTextField3.getText();
         String SynSem = jTextField4.getText();
         String comment = jTextField5.getText();
-        TableRowSorter<DefaultTableModel> rowSorter;
-        rowSorter = new TableRowSorter<>(tableModel);
-        this.getjTable1().setRowSorter(rowSorter);
-        this.getjTable1().removeAll();
-        List<RowFilter<Object, Object>> filters = new ArrayList<>();
+        /* The rows matching all the criteria, null meaning all rows */
+        BitSet rows = null;
         try {
 	        if (pos.length() != 0) {
 	        	if (!pos.contains(".") && !pos.contains("$") && !pos.contains("[") && !pos.contains("]")) {
 	        		pos = "^" + pos;
 	        	}
-	            filters.add(RowFilter.regexFilter(pos, 0));
+	            rows = and(rows, tableModel.filter(pos, 0));
 	        }
 	        if (lemma.length() != 0) {
 	        	if (!lemma.contains(".") && !lemma.contains("$") && !lemma.contains("[") && !lemma.contains("]")) {
 	        		lemma = "^" + lemma;
 	        	}
-	            filters.add(RowFilter.regexFilter(lemma, 1));
+	            rows = and(rows, tableModel.filter(lemma, 1));
 	        }
 	        if (fst.length() != 0) {
 	        	if (!fst.contains(".") && !fst.contains("$") && !fst.contains("[") && !fst.contains("]")) {
 	        		fst = "^" + fst;
 	        	}
-	            filters.add(RowFilter.regexFilter(fst, 2));
+	            rows = and(rows, tableModel.filter(fst, 2));
 	        }
 	        if (SynSem.length() != 0) {
 	        	if (!SynSem.contains(".") && !SynSem.contains("$") && !SynSem.contains("[") && !SynSem.contains("]")) {
 	        		SynSem = "^" + SynSem;
 	        	}
-	            filters.add(RowFilter.regexFilter(SynSem, 3));
+	            rows = and(rows, tableModel.filter(SynSem, 3));
 	        }
 	        if (comment.length() != 0) {
 	        	if (!comment.contains(".") && !comment.contains("$") && !comment.contains("[") && !comment.contains("]")) {
 	        		comment = "^" + comment;
 	        	}
-	            filters.add(RowFilter.regexFilter(comment, 4));
+	            rows = and(rows, tableModel.filter(comment, 4));
 	        }
         }catch(PatternSyntaxException e) {
         	JOptionPane.showMessageDialog(null, "Error in regular expression");
         	return;
         }
-        RowFilter<Object, Object> rf = RowFilter.andFilter(filters);
-        rowSorter.setRowFilter(rf);
-        jTable1.setModel(rowSorter.getModel());
-        jLabel13.setText(String.valueOf(this.getjTable1().getRowCount()));
+        showRows(rows);
+    }
+
+    private static BitSet and(BitSet a, BitSet b) {
+        if (a == null) {
+            return b;
+        }
+        a.and(b);
+        return a;
     }
 
     private void jMenuDuplicateMouseClicked(java.awt.event.MouseEvent evt) {
@@ -1275,13 +1235,8 @@ public final class EditorDelas extends javax.swing.JInternalFrame {
         jTextField3.setText("");
         jTextField4.setText("");
         jTextField5.setText("");
-        TableRowSorter<DefaultTableModel> rowSorter;
-        rowSorter = new TableRowSorter<>(tableModel);
-        rowSorter.setRowFilter(null);
-        this.getjTable1().setRowSorter(rowSorter);
-        this.getjTable1().removeAll();
+        showRows(null);
         this.getjTable1().repaint();
-        jLabel13.setText(String.valueOf(this.getjTable1().getRowCount()));
     }
 
     private void jButtonHelpActionPerformed(java.awt.event.ActionEvent evt) {
@@ -1326,40 +1281,25 @@ public final class EditorDelas extends javax.swing.JInternalFrame {
     }
 
     private void jTextFieldCommentKeyPressed(java.awt.event.KeyEvent evt) {
-        TableRowSorter<DefaultTableModel> rowSorter = null;
-        try {
-            if (evt.getKeyCode() == KeyEvent.VK_ENTER) {
-                JTextField textField = (JTextField) evt.getSource();
-                String text = textField.getText();
-
-                rowSorter = new TableRowSorter<>(tableModel);
-
-                this.getjTable1().setRowSorter(rowSorter);
-
-                if (text.trim().length() == 0) {
-                    rowSorter.setRowFilter(null);
+        if (evt.getKeyCode() == KeyEvent.VK_ENTER) {
+            JTextField textField = (JTextField) evt.getSource();
+            String text = textField.getText();
+            if (text.trim().length() == 0) {
+                showRows(null);
+            } else {
+                if (jCheckBoxExtract.isSelected()) {
+                    text = "^" + text + "$";
                 } else {
-                    if (jCheckBoxExtract.isSelected()) {
-                        text = "^" + text + "$";
-                    } else {
-                        if (!text.contains(".") && !text.contains("$")) {
-                            text = "^" + text;
-                        }
-                    }
-                    RowFilter<Object, Object> rowFilter;
-                    try {
-                    	rowFilter = RowFilter.regexFilter(text, 4);
-                    }catch(PatternSyntaxException e) {
-                    	JOptionPane.showMessageDialog(null, "Error in regular expression");
-                    	return;
+                    if (!text.contains(".") && !text.contains("$")) {
+                        text = "^" + text;
                     }
-                    rowSorter.setRowFilter(rowFilter);
                 }
-                jTable1.setModel(rowSorter.getModel());
-                jLabel13.setText(String.valueOf(this.getjTable1().getRowCount()));
+                try {
+                	showRows(tableModel.filter(text, 4));
+                }catch(PatternSyntaxException e) {
+                	JOptionPane.showMessageDialog(null, "Error in regular expression");
+                }
             }
-        } catch (java.util.regex.PatternSyntaxException e) {
-            rowSorter.setRowFilter(null);
         }
     }
 
@@ -1439,7 +1379,7 @@ public final class EditorDelas extends javax.swing.JInternalFrame {
     /**
      * @return the gm
      */
-    public DefaultTableModel getTableModel() {
+    public DelasTableModel getTableModel() {
         return tableModel;
     }
 
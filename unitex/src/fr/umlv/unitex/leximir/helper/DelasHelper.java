@@ -27,7 +27,13 @@ import java.lang.reflect.Field;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import fr.umlv.unitex.io.Encoding;
 import fr.umlv.unitex.leximir.model.Delas;
+import fr.umlv.unitex.leximir.model.DelasTableModel;
 import fr.umlv.unitex.leximir.model.DictionaryPath;
 import fr.umlv.unitex.leximir.util.Utils;
 
@@ -36,6 +42,9 @@ import fr.umlv.unitex.leximir.util.Utils;
  * @author Rojo Rabelisoa
  */
 public class DelasHelper {
+    /* Number of lines parsed by a parallel task */
+    private static final int PARSING_RANGE = 8192;
+
     /**
      * This function return a list of dictionary in directory path
      * @return
@@ -58,6 +67,81 @@ public class DelasHelper {
         return list;
     }
 
+    /**
+     * This function returns the names of the dictionaries to open, as they are
+     * shown in the Dict. File column
+     */
+    private static List<String> getDictionaryNames(boolean allDelas, File dic) throws FileNotFoundException, IOException {
+        if (allDelas) {
+            return getDicDelasPath(DictionaryPath.allDelas);
+        }
+        if (dic != null) {
+            return Arrays.asList(dic.getAbsolutePath());
+        }
+        return new ArrayList<>();
+    }
+
+    /**
+     * This function reads the lines of the dictionaries, in parallel. Files
+     * whose encoding is unknown are read first in the current thread, since
+     * they may need the transcoding dialog.
+     * @return the lines of each dictionary, in the order of the names
+     */
+    private static List<ArrayList<String>> readDictionaries(boolean allDelas, List<String> names) throws IOException {
+        final List<String> paths = new ArrayList<>();
+        for (String dela : names) {
+            if (allDelas) {
+                paths.add(DictionaryPath.allDelas + File.separator + dela);
+                DictionaryPath.dictionary.add(dela);
+            } else {
+                paths.add(dela);
+                DictionaryPath.dictionary.add(new File(dela).getName());
+            }
+        }
+        List<ArrayList<String>> lines = new ArrayList<>();
+        List<Callable<ArrayList<String>>> tasks = new ArrayList<>();
+        for (final String path : paths) {
+            if (Encoding.getEncoding(new File(path)) == null) {
+                lines.add(Utils.readFile(path));
+                tasks.add(null);
+                continue;
+            }
+            lines.add(null);
+            tasks.add(new Callable<ArrayList<String>>() {
+                @Override
+                public ArrayList<String> call() throws IOException {
+                    return Utils.readFile(path);
+                }
+            });
+        }
+        List<Future<ArrayList<String>>> futures = new ArrayList<>();
+        for (Callable<ArrayList<String>> task : tasks) {
+            futures.add((task == null) ? null : ForkJoinPool.commonPool().submit(task));
+        }
+        for (int i = 0; i < futures.size(); i++) {
+            if (futures.get(i) != null) {
+                lines.set(i, get(futures.get(i)));
+            }
+        }
+        return lines;
+    }
+
+    private static <T> T get(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
     /**
      * This function return all line in delas dictionary into Object[][] 
      * @param allDelas if allDelas is true, the function takes all delas in delas folder, else it takes dictionary selected in configuration
@@ -66,56 +150,22 @@ public class DelasHelper {
      * @throws IOException 
      */
     public static Object[][] getAllDelasFromDicToObject(boolean allDelas,File dic) throws FileNotFoundException, IOException {
-        List<String> list= new ArrayList<>();
-      
-        if(allDelas){
-            list = getDicDelasPath(DictionaryPath.allDelas);
-        }
-        else if(dic!=null){
-            list = Arrays.asList(dic.getAbsolutePath().toString());
-        }
+        List<String> list = getDictionaryNames(allDelas, dic);
+        List<ArrayList<String>> files = readDictionaries(allDelas, list);
         Delas delas = new Delas();
         Field[] lf = delas.getClass().getDeclaredFields();
         int count = 0;
-        for(String dela:list){
-            //String path = Utils.getValueXml("pathDelas")+"/"+dela;
-            String path="";
-            if(allDelas){
-            	path = DictionaryPath.allDelas + File.separator + dela;
-            }
-            else{
-            	path = dela;
-            }
-
-            ArrayList<String> readFile = Utils.readFile(path);
+        for (ArrayList<String> readFile : files) {
             count += readFile.size();
-            if(allDelas) {
-            	DictionaryPath.dictionary.add(dela);
-            }
-            else{
-            	DictionaryPath.dictionary.add(new File(dela).getName());
-            }
         }
         
         Object[][] ob = new Object[count][lf.length];
         int k=0;
         int lemmaId=0;
-        for(String dela:list){
+        for(int d = 0; d < list.size(); d++){
             String pOs,lemma,fSTCode,SynSem,comment,lemmaInv;
-            
-            String dicFile=dela;
-          
-            String path = "";
-            if(allDelas)
-            	path = DictionaryPath.allDelas+File.separator+dela;
-            else {
-	            path = dela;
-	           	            
-	            dicFile = new File(path).getName();
-	            
-	        }
-            ArrayList<String> readFile = Utils.readFile(path);
-            for(String s:readFile){
+            String dicFile = allDelas ? list.get(d) : new File(list.get(d)).getName();
+            for(String s:files.get(d)){
                 lemma = getLemaInDelas(s);
                 lemmaInv = Utils.reverseString(lemma);
                 SynSem = getSynSemInDelas(s);
@@ -132,6 +182,57 @@ public class DelasHelper {
         return ob;
     }
 
+    /**
+     * This function loads the delas dictionaries into a table model. Files are
+     * read and their lines are parsed in parallel.
+     * @param allDelas if allDelas is true, the function takes all delas in delas folder, else it takes the given dictionary
+     * @return
+     * @throws FileNotFoundException
+     * @throws IOException 
+     */
+    public static DelasTableModel getAllDelasFromDicToModel(boolean allDelas, File dic) throws FileNotFoundException, IOException {
+        List<String> list = getDictionaryNames(allDelas, dic);
+        List<ArrayList<String>> files = readDictionaries(allDelas, list);
+        int count = 0;
+        for (ArrayList<String> readFile : files) {
+            count += readFile.size();
+        }
+        DelasTableModel model = new DelasTableModel(count);
+        for (int d = 0; d < list.size(); d++) {
+            final ArrayList<String> lines = files.get(d);
+            final int n = lines.size();
+            final String[] pos = new String[n];
+            final String[] lemma = new String[n];
+            final String[] fst = new String[n];
+            final String[] synSem = new String[n];
+            final String[] comment = new String[n];
+            List<Callable<Void>> tasks = new ArrayList<>();
+            for (int start = 0; start < n; start += PARSING_RANGE) {
+                final int from = start;
+                final int to = Math.min(n, start + PARSING_RANGE);
+                tasks.add(new Callable<Void>() {
+                    @Override
+                    public Void call() {
+                        for (int i = from; i < to; i++) {
+                            String s = lines.get(i);
+                            lemma[i] = getLemaInDelas(s);
+                            synSem[i] = getSynSemInDelas(s);
+                            fst[i] = getFstCodeInDelas(s);
+                            pos[i] = getPosInDelas(s);
+                            comment[i] = getCommentInDelas(s);
+                        }
+                        return null;
+                    }
+                });
+            }
+            for (Future<Void> f : ForkJoinPool.commonPool().invokeAll(tasks)) {
+                get(f);
+            }
+            model.addRows(pos, lemma, fst, synSem, comment, allDelas ? list.get(d) : new File(list.get(d)).getName());
+        }
+        return model;
+    }
+
     private static void delasToObject(Object[][] ob, int k, Delas tmp) {
         ob[k][0] = tmp.getpOS();
         ob[k][1] = tmp.getLemma();
@@ -23,6 +23,7 @@ package fr.umlv.unitex.leximir.helper;
 import java.io.File;
 import java.io.IOException;
 import javax.swing.table.DefaultTableModel;
+import fr.umlv.unitex.leximir.model.DelasTableModel;
 
 
 /**
@@ -36,11 +37,8 @@ public class GridHelper {
      * @return 
      * @throws IOException 
      */
-    public static DefaultTableModel getOpenEditorforDelas(boolean alldelas,File dic) throws IOException {
-        
-        String[] header = {"POS","Lemma","FST Code","SynSem Feature","Comment","Inv Lemma","Lemma ID","Dict. File"};
-        Object[][] data = DelasHelper.getAllDelasFromDicToObject(alldelas,dic);
-        return new DefaultTableModel(data,header);
+    public static DelasTableModel getOpenEditorforDelas(boolean alldelas,File dic) throws IOException {
+        return DelasHelper.getAllDelasFromDicToModel(alldelas,dic);
     }
     /**
      * This function complete Jtable of Delaf with Fst Code
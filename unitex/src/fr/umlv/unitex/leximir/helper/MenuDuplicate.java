@@ -22,40 +22,81 @@ package fr.umlv.unitex.leximir.helper;
 
 import java.awt.Color;
 import java.awt.Component;
+import java.util.BitSet;
 import javax.swing.JFrame;
 import javax.swing.*;
 import javax.swing.table.DefaultTableCellRenderer;
+import javax.swing.table.DefaultTableModel;
 
 /**
+ * This frame shows groups of duplicated entries. Groups can be added while
+ * the frame is visible, and each group is painted with a different color than
+ * the previous one.
+ *
  * @author Anas Ait cheikh
  */
 public class MenuDuplicate extends JFrame {
 
     JTable table;
+    private final DefaultTableModel tableModel;
+    /* Rows belonging to groups painted in gray */
+    private final BitSet shaded = new BitSet();
+    private int groups = 0;
 
-    public MenuDuplicate(JTable t) {
-        table = t;
+    public MenuDuplicate(String[] header) {
+        tableModel = new DefaultTableModel(new Object[][]{}, header) {
+            @Override
+            public boolean isCellEditable(int rowIndex, int columnIndex) {
+                return false;
+            }
+        };
+        table = new JTable(tableModel);
+        table.setColumnSelectionAllowed(true);
+        table.getTableHeader().setReorderingAllowed(false);
+        table.getColumnModel().getSelectionModel().setSelectionMode(javax.swing.ListSelectionModel.SINGLE_SELECTION);
         table.setDefaultRenderer(Object.class, paintGrid());
         this.setTitle("Duplicated values");
-        int row= table.getModel().getRowCount();
-        int cols= table.getModel().getColumnCount();
         table.setRowHeight(20);
         JScrollPane scrollpane = new JScrollPane(table, JScrollPane.VERTICAL_SCROLLBAR_AS_NEEDED,
                 JScrollPane.HORIZONTAL_SCROLLBAR_AS_NEEDED);
         this.getContentPane().add(scrollpane);
-        int h = (row > 20) ? 20 : row;
-        this.setSize(cols * 124, 62 + h * 20);
+        updateSize();
         this.add(scrollpane);
         this.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
         this.setVisible(true);
         this.setLocationRelativeTo(null);
     }
+
+    /**
+     * Adds a group of duplicated entries at the end of the table.
+     */
+    public void addGroup(Object[][] rows) {
+        int first = tableModel.getRowCount();
+        if (groups % 2 == 0) {
+            shaded.set(first, first + rows.length);
+        }
+        groups++;
+        for (Object[] row : rows) {
+            tableModel.addRow(row);
+        }
+        if (first < 20) {
+            updateSize();
+        }
+    }
+
+    private void updateSize() {
+        int row = tableModel.getRowCount();
+        int cols = tableModel.getColumnCount();
+        int h = (row > 20) ? 20 : row;
+        this.setSize(cols * 124, 62 + h * 20);
+    }
+
     private DefaultTableCellRenderer paintGrid() {
         return new DefaultTableCellRenderer() {
             @Override
             public Component getTableCellRendererComponent(JTable table, Object value, boolean isSelected, boolean hasFocus, int row, int column) {
                 final Component c = super.getTableCellRendererComponent(table, value, isSelected, hasFocus, row, column);
-                c.setBackground((row / 2)%2 == 0 ? Color.LIGHT_GRAY : Color.WHITE);
+                c.setBackground(shaded.get(row) ? Color.LIGHT_GRAY : Color.WHITE);
                 c.setForeground(Color.black);
                 return c;
             }
@@ -0,0 +1,614 @@
+/*
+ * Unitex
+ *
+ * Copyright (C) 2001-2018 Université Paris-Est Marne-la-Vallée <unitex@univ-mlv.fr>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA.
+ *
+ */
+package fr.umlv.unitex.leximir.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import javax.swing.table.AbstractTableModel;
+
+/**
+ * This table model stores Delas entries by column. POS, FST codes, SynSem
+ * features and dictionary names are stored as int codes, since there are few
+ * different values. For lemmas and comments, indexes are built when a filter
+ * needs them: rows sorted by value for prefix searches, rows sorted by
+ * reversed value for suffix searches, and trigrams for other literals.
+ * Indexes are dropped when the data changes.
+ */
+public class DelasTableModel extends AbstractTableModel {
+    private static final long serialVersionUID = 1L;
+    public static final int POS = 0;
+    public static final int LEMMA = 1;
+    public static final int FST = 2;
+    public static final int SYNSEM = 3;
+    public static final int COMMENT = 4;
+    public static final int LEMMA_INV = 5;
+    public static final int LEMMA_ID = 6;
+    public static final int DIC = 7;
+    private static final String[] HEADER = {"POS", "Lemma", "FST Code", "SynSem Feature", "Comment", "Inv Lemma", "Lemma ID", "Dict. File"};
+
+    private int size = 0;
+    private int[] lemmaIds;
+    private final Column[] columns = new Column[HEADER.length];
+
+    public DelasTableModel(int capacity) {
+        capacity = Math.max(16, capacity);
+        lemmaIds = new int[capacity];
+        for (int c : new int[]{POS, FST, SYNSEM, DIC}) {
+            columns[c] = new Column(true, capacity);
+        }
+        for (int c : new int[]{LEMMA, COMMENT}) {
+            columns[c] = new Column(false, capacity);
+        }
+    }
+
+    @Override
+    public int getRowCount() {
+        return size;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return HEADER.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return HEADER[column];
+    }
+
+    @Override
+    public boolean isCellEditable(int row, int column) {
+        return true;
+    }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        checkRow(row);
+        switch (column) {
+            case LEMMA_INV:
+                return reverse(columns[LEMMA].get(row));
+            case LEMMA_ID:
+                return lemmaIds[row];
+            default:
+                return columns[column].get(row);
+        }
+    }
+
+    /**
+     * Returns the value of the given cell as a String, as displayed in the
+     * table.
+     */
+    public String getString(int row, int column) {
+        return String.valueOf(getValueAt(row, column));
+    }
+
+    @Override
+    public void setValueAt(Object value, int row, int column) {
+        checkRow(row);
+        switch (column) {
+            case LEMMA_INV:
+                /* The inverted lemma is always computed from the lemma */
+                return;
+            case LEMMA_ID:
+                lemmaIds[row] = (value instanceof Integer) ? (Integer) value : Integer.parseInt(String.valueOf(value));
+                break;
+            default:
+                columns[column].set(row, String.valueOf(value));
+        }
+        fireTableCellUpdated(row, column);
+        if (column == LEMMA) {
+            fireTableCellUpdated(row, LEMMA_INV);
+        }
+    }
+
+    /**
+     * Adds a row made of the 8 values of a Delas entry, in the order of the
+     * columns.
+     */
+    public void addRow(Object[] data) {
+        insertRow(size, data);
+    }
+
+    public void insertRow(int row, Object[] data) {
+        if (row < 0 || row > size) {
+            throw new ArrayIndexOutOfBoundsException(row);
+        }
+        ensureCapacity(size + 1);
+        System.arraycopy(lemmaIds, row, lemmaIds, row + 1, size - row);
+        for (Column c : columns) {
+            if (c != null) {
+                c.insert(row, size);
+            }
+        }
+        size++;
+        setRow(row, data);
+        fireTableRowsInserted(row, row);
+    }
+
+    public void removeRow(int row) {
+        checkRow(row);
+        System.arraycopy(lemmaIds, row + 1, lemmaIds, row, size - row - 1);
+        for (Column c : columns) {
+            if (c != null) {
+                c.remove(row, size);
+            }
+        }
+        size--;
+        fireTableRowsDeleted(row, row);
+    }
+
+    /**
+     * Adds rows without notifying listeners, for the loading of dictionaries.
+     * Entries are given by column.
+     */
+    public void addRows(String[] pos, String[] lemma, String[] fst, String[] synSem, String[] comment, String dic) {
+        int n = lemma.length;
+        ensureCapacity(size + n);
+        for (int i = 0; i < n; i++) {
+            lemmaIds[size] = size;
+            columns[POS].set(size, pos[i]);
+            columns[LEMMA].set(size, lemma[i]);
+            columns[FST].set(size, fst[i]);
+            columns[SYNSEM].set(size, synSem[i]);
+            columns[COMMENT].set(size, comment[i]);
+            columns[DIC].set(size, dic);
+            size++;
+        }
+    }
+
+    private void setRow(int row, Object[] data) {
+        for (int c = 0; c < HEADER.length; c++) {
+            if (c == LEMMA_INV) {
+                continue;
+            }
+            Object value = (c < data.length) ? data[c] : null;
+            if (c == LEMMA_ID) {
+                lemmaIds[row] = (value instanceof Integer) ? (Integer) value : row;
+            } else {
+                columns[c].set(row, (value == null) ? "" : String.valueOf(value));
+            }
+        }
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= lemmaIds.length) {
+            return;
+        }
+        int n = Math.max(capacity, 2 * lemmaIds.length);
+        lemmaIds = Arrays.copyOf(lemmaIds, n);
+        for (Column c : columns) {
+            if (c != null) {
+                c.grow(n);
+            }
+        }
+    }
+
+    private void checkRow(int row) {
+        if (row < 0 || row >= size) {
+            throw new ArrayIndexOutOfBoundsException(row);
+        }
+    }
+
+    static String reverse(String s) {
+        return new StringBuilder(s).reverse().toString();
+    }
+
+    /**
+     * Returns the rows whose value in the given column is matched by the given
+     * regular expression, in the same way as <code>RowFilter.regexFilter</code>.
+     */
+    public BitSet filter(String regex, int column) {
+        Pattern p = Pattern.compile(regex);
+        if (column == LEMMA_INV || column == LEMMA_ID) {
+            BitSet result = new BitSet(size);
+            Matcher m = p.matcher("");
+            for (int i = 0; i < size; i++) {
+                if (m.reset(getString(i, column)).find()) {
+                    result.set(i);
+                }
+            }
+            return result;
+        }
+        return columns[column].filter(regex, p, size);
+    }
+
+    /**
+     * Returns the rows that have at least one value matched by the given
+     * regular expression, in the same way as
+     * <code>RowFilter.regexFilter</code> with no column.
+     */
+    public BitSet filter(String regex) {
+        Pattern.compile(regex);
+        BitSet result = new BitSet(size);
+        for (int c = 0; c < HEADER.length; c++) {
+            result.or(filter(regex, c));
+        }
+        return result;
+    }
+
+    /**
+     * Returns the regular expression itself if it only contains literal chars,
+     * <code>null</code> otherwise.
+     */
+    static String getLiteral(String regex) {
+        for (int i = 0; i < regex.length(); i++) {
+            if ("\\.[]{}()*+?^$|".indexOf(regex.charAt(i)) != -1) {
+                return null;
+            }
+        }
+        return regex;
+    }
+
+    /**
+     * Escapes made of a backslash and a single letter that do not match a
+     * literal char
+     */
+    private static final String SINGLE_ESCAPES = "dDwWsShHvVbBRXAzZGtnrfae";
+
+    /**
+     * Returns the longest sequence of chars that any string matched by the
+     * given regular expression must contain, or an empty string if we cannot
+     * tell.
+     */
+    static String getRequiredLiteral(String regex) {
+        if (regex.indexOf('|') != -1 || regex.indexOf('(') != -1) {
+            return "";
+        }
+        String best = "";
+        StringBuilder run = new StringBuilder();
+        int n = regex.length();
+        for (int i = 0; i < n; i++) {
+            char c = regex.charAt(i);
+            boolean literal = true;
+            if (c == '\\') {
+                if (i + 1 < n && !Character.isLetterOrDigit(regex.charAt(i + 1))) {
+                    c = regex.charAt(++i);
+                } else if (i + 1 < n && SINGLE_ESCAPES.indexOf(regex.charAt(i + 1)) != -1) {
+                    /* A class like \d or \w */
+                    i++;
+                    literal = false;
+                } else {
+                    /* An escape like \x41, \u0041, \0101 or \Q...\E */
+                    return "";
+                }
+            } else if (c == '[') {
+                /* We skip the char class */
+                i++;
+                if (i < n && regex.charAt(i) == '^') {
+                    i++;
+                }
+                if (i < n && regex.charAt(i) == ']') {
+                    i++;
+                }
+                while (i < n && regex.charAt(i) != ']') {
+                    if (regex.charAt(i) == '\\') {
+                        if (i + 1 < n && regex.charAt(i + 1) == 'Q') {
+                            return "";
+                        }
+                        i++;
+                    }
+                    i++;
+                }
+                literal = false;
+            } else if (c == '{') {
+                /* We skip the content of the quantifier */
+                while (i + 1 < n && regex.charAt(i) != '}') {
+                    i++;
+                }
+                literal = false;
+            } else if (".^$*+?}".indexOf(c) != -1) {
+                literal = false;
+            }
+            char next = (i + 1 < n) ? regex.charAt(i + 1) : 0;
+            if (literal && next != '?' && next != '*' && next != '{') {
+                run.append(c);
+                if (next != '+') {
+                    continue;
+                }
+            }
+            if (run.length() > best.length()) {
+                best = run.toString();
+            }
+            run.setLength(0);
+        }
+        return (run.length() > best.length()) ? run.toString() : best;
+    }
+
+    /**
+     * A column of strings, stored either as codes of distinct values or as
+     * plain strings.
+     */
+    private static class Column {
+        private final boolean encoded;
+        private int[] codes;
+        private final ArrayList<String> values;
+        private final HashMap<String, Integer> ids;
+        private String[] strings;
+        /* The indexes, built when needed */
+        private int[] byValue;
+        private String[] reversed;
+        private int[] byReversedValue;
+        private HashMap<String, int[]> trigrams;
+
+        Column(boolean encoded, int capacity) {
+            this.encoded = encoded;
+            if (encoded) {
+                codes = new int[capacity];
+                values = new ArrayList<>();
+                ids = new HashMap<>();
+            } else {
+                strings = new String[capacity];
+                values = null;
+                ids = null;
+            }
+        }
+
+        String get(int row) {
+            return encoded ? values.get(codes[row]) : strings[row];
+        }
+
+        void set(int row, String value) {
+            if (encoded) {
+                Integer id = ids.get(value);
+                if (id == null) {
+                    id = values.size();
+                    values.add(value);
+                    ids.put(value, id);
+                }
+                codes[row] = id;
+            } else {
+                strings[row] = value;
+            }
+            dropIndexes();
+        }
+
+        void grow(int capacity) {
+            if (encoded) {
+                codes = Arrays.copyOf(codes, capacity);
+            } else {
+                strings = Arrays.copyOf(strings, capacity);
+            }
+        }
+
+        void insert(int row, int size) {
+            if (encoded) {
+                System.arraycopy(codes, row, codes, row + 1, size - row);
+            } else {
+                System.arraycopy(strings, row, strings, row + 1, size - row);
+            }
+            dropIndexes();
+        }
+
+        void remove(int row, int size) {
+            if (encoded) {
+                System.arraycopy(codes, row + 1, codes, row, size - row - 1);
+            } else {
+                System.arraycopy(strings, row + 1, strings, row, size - row - 1);
+                strings[size - 1] = null;
+            }
+            dropIndexes();
+        }
+
+        private void dropIndexes() {
+            byValue = null;
+            reversed = null;
+            byReversedValue = null;
+            trigrams = null;
+        }
+
+        BitSet filter(String regex, Pattern p, int size) {
+            BitSet result = new BitSet(size);
+            Matcher m = p.matcher("");
+            if (encoded) {
+                /* We only have to test each distinct value once */
+                boolean[] matching = new boolean[values.size()];
+                for (int i = 0; i < matching.length; i++) {
+                    matching[i] = m.reset(values.get(i)).find();
+                }
+                for (int i = 0; i < size; i++) {
+                    if (matching[codes[i]]) {
+                        result.set(i);
+                    }
+                }
+                return result;
+            }
+            String literal;
+            if (regex.startsWith("^") && regex.endsWith("$")
+                    && (literal = getLiteral(regex.substring(1, regex.length() - 1))) != null) {
+                for (int i = getStart(getIndex(size), strings, literal, size); i < size; i++) {
+                    int row = byValue[i];
+                    if (!strings[row].equals(literal)) {
+                        break;
+                    }
+                    result.set(row);
+                }
+                return result;
+            }
+            if (regex.startsWith("^") && (literal = getLiteral(regex.substring(1))) != null) {
+                for (int i = getStart(getIndex(size), strings, literal, size); i < size; i++) {
+                    int row = byValue[i];
+                    if (!strings[row].startsWith(literal)) {
+                        break;
+                    }
+                    result.set(row);
+                }
+                return result;
+            }
+            if (regex.endsWith("$") && (literal = getLiteral(regex.substring(0, regex.length() - 1))) != null) {
+                String prefix = reverse(literal);
+                for (int i = getStart(getReversedIndex(size), reversed, prefix, size); i < size; i++) {
+                    int row = byReversedValue[i];
+                    if (!reversed[row].startsWith(prefix)) {
+                        break;
+                    }
+                    result.set(row);
+                }
+                return result;
+            }
+            String required = getRequiredLiteral(regex);
+            if (required.length() >= 3) {
+                for (int row : getCandidates(required, size)) {
+                    if (m.reset(strings[row]).find()) {
+                        result.set(row);
+                    }
+                }
+                return result;
+            }
+            for (int i = 0; i < size; i++) {
+                if (m.reset(strings[i]).find()) {
+                    result.set(i);
+                }
+            }
+            return result;
+        }
+
+        /**
+         * Returns the position in the index of the first row whose value is
+         * greater or equal to the given one.
+         */
+        private static int getStart(int[] index, String[] v, String value, int size) {
+            int min = 0;
+            int max = size;
+            while (min < max) {
+                int middle = (min + max) >>> 1;
+                if (v[index[middle]].compareTo(value) < 0) {
+                    min = middle + 1;
+                } else {
+                    max = middle;
+                }
+            }
+            return min;
+        }
+
+        private int[] getIndex(int size) {
+            if (byValue == null) {
+                byValue = sort(strings, size);
+            }
+            return byValue;
+        }
+
+        private int[] getReversedIndex(int size) {
+            if (byReversedValue == null) {
+                reversed = new String[size];
+                for (int i = 0; i < size; i++) {
+                    reversed[i] = reverse(strings[i]);
+                }
+                byReversedValue = sort(reversed, size);
+            }
+            return byReversedValue;
+        }
+
+        /**
+         * Returns the rows sorted by value.
+         */
+        private static int[] sort(String[] v, int size) {
+            int[] rows = new int[size];
+            for (int i = 0; i < size; i++) {
+                rows[i] = i;
+            }
+            int[] tmp = new int[size];
+            for (int width = 1; width < size; width *= 2) {
+                for (int start = 0; start < size; start += 2 * width) {
+                    int middle = Math.min(start + width, size);
+                    int end = Math.min(start + 2 * width, size);
+                    int a = start;
+                    int b = middle;
+                    int k = start;
+                    while (a < middle && b < end) {
+                        tmp[k++] = (v[rows[b]].compareTo(v[rows[a]]) < 0) ? rows[b++] : rows[a++];
+                    }
+                    while (a < middle) {
+                        tmp[k++] = rows[a++];
+                    }
+                    while (b < end) {
+                        tmp[k++] = rows[b++];
+                    }
+                }
+                int[] swap = rows;
+                rows = tmp;
+                tmp = swap;
+            }
+            return rows;
+        }
+
+        /**
+         * Returns the rows that contain all the trigrams of the given string.
+         */
+        private int[] getCandidates(String required, int size) {
+            if (trigrams == null) {
+                buildTrigrams(size);
+            }
+            int[] result = null;
+            for (int i = 0; i + 3 <= required.length(); i++) {
+                int[] rows = trigrams.get(required.substring(i, i + 3));
+                if (rows == null) {
+                    return new int[0];
+                }
+                /* rows[0] is the number of rows of the list */
+                int[] list = Arrays.copyOfRange(rows, 1, rows[0] + 1);
+                result = (result == null) ? list : intersect(result, list);
+            }
+            return result;
+        }
+
+        private void buildTrigrams(int size) {
+            trigrams = new HashMap<>();
+            for (int row = 0; row < size; row++) {
+                String s = strings[row];
+                for (int i = 0; i + 3 <= s.length(); i++) {
+                    String key = s.substring(i, i + 3);
+                    int[] rows = trigrams.get(key);
+                    if (rows == null) {
+                        rows = new int[4];
+                    } else if (rows[rows[0]] == row) {
+                        /* The trigram appears twice in the value */
+                        continue;
+                    } else if (rows[0] + 1 == rows.length) {
+                        rows = Arrays.copyOf(rows, 2 * rows.length);
+                    }
+                    rows[++rows[0]] = row;
+                    trigrams.put(key, rows);
+                }
+            }
+        }
+
+        private static int[] intersect(int[] a, int[] b) {
+            int[] result = new int[Math.min(a.length, b.length)];
+            int n = 0;
+            for (int i = 0, j = 0; i < a.length && j < b.length;) {
+                if (a[i] < b[j]) {
+                    i++;
+                } else if (a[i] > b[j]) {
+                    j++;
+                } else {
+                    result[n++] = a[i];
+                    i++;
+                    j++;
+                }
+            }
+            return Arrays.copyOf(result, n);
+        }
+    }
+}
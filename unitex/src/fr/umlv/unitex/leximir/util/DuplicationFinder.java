@@ -23,6 +23,15 @@ package fr.umlv.unitex.leximir.util;
 import java.awt.BorderLayout;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 import javax.swing.JButton;
 import fr.umlv.unitex.leximir.helper.MenuDuplicate;
 import javax.swing.JDialog;
@@ -33,15 +42,31 @@ import javax.swing.JPanel;
 import javax.swing.JProgressBar;
 import javax.swing.SwingWorker;
 import javax.swing.JTable;
-import javax.swing.table.DefaultTableModel;
+import javax.swing.table.TableModel;
 
 /**
+ * This worker looks for the entries of a Delas table that have the same values
+ * in the key columns, by default the lemma and the FST code. Entries are
+ * grouped by key with hash maps, each task of the worker taking care of the
+ * keys of a given hash shard. Groups are sent to a <code>MenuDuplicate</code>
+ * frame as soon as they are known.
  *
  * @author Anas Ait cheikh
  */
-public class DuplicationFinder extends SwingWorker<Integer, Object> {
-    JTable jtableRes;
-    JTable jtableSrc;
+public class DuplicationFinder extends SwingWorker<Integer, Object[][]> {
+    public static final int LEMMA = 1;
+    public static final int FST = 2;
+    public static final int SYNSEM = 3;
+    public static final int DIC = 7;
+    private static final int[] SHOWN_COLUMNS = new int[]{LEMMA, FST, SYNSEM, DIC};
+    /* Number of groups sent at once to the result frame */
+    private static final int GROUPS_PER_CHUNK = 256;
+
+    /* The values of the table, by column, for the rows visible in the view */
+    private final HashMap<Integer, String[]> columns = new HashMap<>();
+    private final int[] keyColumns;
+    private final int rowCount;
+    private MenuDuplicate menu;
     private JFrame frame = new JFrame();
     private JDialog dialog = new JDialog(frame, "Processing data", true);
     private JProgressBar progressBar = new JProgressBar();
@@ -50,26 +75,32 @@ public class DuplicationFinder extends SwingWorker<Integer, Object> {
     private JButton b = new JButton("Cancel");
 
     public DuplicationFinder(JTable src) {
+        this(src, new int[]{LEMMA, FST});
+    }
 
-        jtableSrc = src;
-        jtableRes = new JTable();
-        jtableRes.setModel(new javax.swing.table.DefaultTableModel(
-                new Object[][]{},
-                new String[]{
-                    "Duplicate value", "Lemma", "Fst", "SynSem", "dic"
-                }
-        ) {
-            boolean[] canEdit = new boolean[]{
-                false, false, false, false, false
-            };
-
-            public boolean isCellEditable(int rowIndex, int columnIndex) {
-                return canEdit[columnIndex];
-            }
-        });
-        jtableRes.setColumnSelectionAllowed(true);
-        jtableRes.getTableHeader().setReorderingAllowed(false);
-        jtableRes.getColumnModel().getSelectionModel().setSelectionMode(javax.swing.ListSelectionModel.SINGLE_SELECTION);
+    /**
+     * @param src the table to check, only its visible rows being considered
+     * @param keyColumns the model columns that must be equal for two entries
+     * to be duplicates
+     */
+    public DuplicationFinder(JTable src, int[] keyColumns) {
+        this.keyColumns = keyColumns.clone();
+        /*
+         * We copy the values from the model here, in the Swing thread, so that
+         * the worker never calls the table
+         */
+        TableModel model = src.getModel();
+        rowCount = src.getRowCount();
+        int[] modelRows = new int[rowCount];
+        for (int i = 0; i < rowCount; i++) {
+            modelRows[i] = src.convertRowIndexToModel(i);
+        }
+        for (int c : SHOWN_COLUMNS) {
+            readColumn(model, modelRows, c);
+        }
+        for (int c : keyColumns) {
+            readColumn(model, modelRows, c);
+        }
 
         progressBar.setString("");
         progressBar.setStringPainted(true);
@@ -90,44 +121,136 @@ public class DuplicationFinder extends SwingWorker<Integer, Object> {
         dialog.setVisible(true);
         
     }
-    
+
+    private void readColumn(TableModel model, int[] modelRows, int column) {
+        if (columns.containsKey(column)) {
+            return;
+        }
+        String[] values = new String[modelRows.length];
+        for (int i = 0; i < modelRows.length; i++) {
+            values[i] = String.valueOf(model.getValueAt(modelRows[i], column));
+        }
+        columns.put(column, values);
+    }
+
     /**
-     * This function search the table for any duplicate values and 
-     * add it to the jtable that contains the results
+     * This function groups the rows by key and sends the groups of more than
+     * one row to the frame that shows the results
      */
     @Override
     protected Integer doInBackground() throws Exception {
-        DefaultTableModel tableModel = (DefaultTableModel) jtableRes.getModel();
-       
-        for (int i = 0; i < jtableSrc.getRowCount() - 1; i++) {
-            String lema = jtableSrc.getValueAt(i, 1).toString();
-            String fst = jtableSrc.getValueAt(i, 2).toString();
-            String SynSem = jtableSrc.getValueAt(i, 3).toString();
-            String dic = jtableSrc.getValueAt(i, 7).toString();
-            for (int j = i + 1; j < jtableSrc.getRowCount(); j++) {
-                String lemaCompare = jtableSrc.getValueAt(j, 1).toString();
-                String fstCompare = jtableSrc.getValueAt(j, 2).toString();
-                String SynSemCompare = jtableSrc.getValueAt(j, 3).toString();
-                String dicCompare = jtableSrc.getValueAt(j, 7).toString();
-                if (lemaCompare.equals(lema) && fstCompare.equals(fst)) {
-                    Object[] rowCompare = new Object[]{j, lemaCompare, fstCompare, SynSemCompare, dicCompare};
-                    Object[] row = new Object[]{i, lema, fst, SynSem, dic};
-                    tableModel.addRow(row);
-                    tableModel.addRow(rowCompare);
+        final String[] keys = new String[rowCount];
+        for (int i = 0; i < rowCount; i++) {
+            keys[i] = getKey(i);
+        }
+        final int shards = ForkJoinPool.commonPool().getParallelism();
+        List<Callable<List<int[]>>> tasks = new ArrayList<>();
+        for (int s = 0; s < shards; s++) {
+            final int shard = s;
+            tasks.add(new Callable<List<int[]>>() {
+                @Override
+                public List<int[]> call() {
+                    return findDuplicates(keys, shard, shards);
                 }
+            });
+        }
+        List<int[]> groups = new ArrayList<>();
+        for (Future<List<int[]>> f : ForkJoinPool.commonPool().invokeAll(tasks)) {
+            groups.addAll(f.get());
+        }
+        /* Groups are shown in the order of their first row */
+        Collections.sort(groups, new Comparator<int[]>() {
+            @Override
+            public int compare(int[] a, int[] b) {
+                return Integer.compare(a[0], b[0]);
+            }
+        });
+        Object[][][] chunk = new Object[Math.min(GROUPS_PER_CHUNK, groups.size())][][];
+        int n = 0;
+        for (int[] group : groups) {
+            if (isCancelled()) {
+                break;
+            }
+            chunk[n++] = getRows(group);
+            if (n == chunk.length) {
+                publish(chunk);
+                chunk = new Object[Math.min(GROUPS_PER_CHUNK, groups.size())][][];
+                n = 0;
             }
         }
-        jtableRes.repaint();
-        return 0;
+        if (n > 0) {
+            publish(Arrays.copyOf(chunk, n));
+        }
+        return groups.size();
+    }
+
+    private String getKey(int row) {
+        StringBuilder key = new StringBuilder();
+        for (int c : keyColumns) {
+            /* A char that cannot appear in a Delas line separates the values */
+            key.append(columns.get(c)[row]).append('\n');
+        }
+        return key.toString();
+    }
 
+    /**
+     * Returns the groups of rows with the same key, among the rows whose key
+     * belongs to the given shard.
+     */
+    static List<int[]> findDuplicates(String[] keys, int shard, int shards) {
+        HashMap<String, int[]> map = new HashMap<>();
+        for (int i = 0; i < keys.length; i++) {
+            if (Math.floorMod(keys[i].hashCode(), shards) != shard) {
+                continue;
+            }
+            int[] rows = map.get(keys[i]);
+            if (rows == null) {
+                /* rows[0] is the number of rows of the group */
+                rows = new int[2];
+            } else if (rows[0] + 1 == rows.length) {
+                rows = Arrays.copyOf(rows, 2 * rows.length);
+            }
+            rows[++rows[0]] = i;
+            map.put(keys[i], rows);
+        }
+        List<int[]> groups = new ArrayList<>();
+        for (int[] rows : map.values()) {
+            if (rows[0] > 1) {
+                groups.add(Arrays.copyOfRange(rows, 1, rows[0] + 1));
+            }
+        }
+        return groups;
+    }
+
+    private Object[][] getRows(int[] group) {
+        Object[][] rows = new Object[group.length][];
+        for (int k = 0; k < group.length; k++) {
+            int i = group[k];
+            rows[k] = new Object[]{i, columns.get(LEMMA)[i], columns.get(FST)[i],
+                columns.get(SYNSEM)[i], columns.get(DIC)[i]};
+        }
+        return rows;
+    }
+
+    @Override
+    protected void process(List<Object[][]> chunks) {
+        if (isCancelled()) {
+            return;
+        }
+        if (menu == null) {
+            menu = new MenuDuplicate(new String[]{
+                "Duplicate value", "Lemma", "Fst", "SynSem", "dic"
+            });
+        }
+        for (Object[][] group : chunks) {
+            menu.addGroup(group);
+        }
     }
 
     @Override
     protected void done() {
         dialog.dispose();
-        if(this.jtableRes.getModel().getRowCount()>0) {
-            new MenuDuplicate(this.jtableRes);
-        } else {
+        if (menu == null && !isCancelled()) {
             JOptionPane.showMessageDialog(null, "No duplication found!", "Duplication", JOptionPane.INFORMATION_MESSAGE);
         }
     }
@@ -65,12 +65,8 @@ public class Utils {
                     try (BufferedReader reader = new BufferedReader(inputStreamReader)) {
                     String ligne;
                     while ((ligne = reader.readLine()) != null) {
-                        StringBuilder sb = new StringBuilder();
-                        for (int i = 0; i < ligne.length(); i++) {
-                            sb.append(ligne.charAt(i));
-                        }
-                        if (!sb.toString().isEmpty()) {
-                            tmp.add(sb.toString());
+                        if (!ligne.isEmpty()) {
+                            tmp.add(ligne);
                         }
                     }
                 } catch (IOException ex) {
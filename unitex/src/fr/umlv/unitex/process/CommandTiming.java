@@ -0,0 +1,108 @@
+/*
+ * Unitex
+ *
+ * Copyright (C) 2001-2021 Université Paris-Est Marne-la-Vallée <unitex@univ-mlv.fr>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA.
+ *
+ */
+package fr.umlv.unitex.process;
+
+/**
+ * This class records how long a single command of an
+ * <code>ExecParameters</code> took: the time needed to create the process, the
+ * time until the process exited, and the time spent afterwards waiting for
+ * its stdout and stderr to be drained.
+ */
+public class CommandTiming {
+	private final String command;
+	private final long start;
+	private long launched;
+	private long processEnded;
+	private long streamsDrained;
+
+	CommandTiming(String command) {
+		this.command = command;
+		this.start = System.nanoTime();
+	}
+
+	/**
+	 * To be called once the process has been created.
+	 */
+	public void markLaunched() {
+		launched = System.nanoTime();
+	}
+
+	/**
+	 * To be called once the process has exited.
+	 */
+	public void markProcessEnded() {
+		processEnded = System.nanoTime();
+	}
+
+	/**
+	 * To be called once the output streams have been consumed. For commands
+	 * that do not run an external process, all marks are set to this time.
+	 */
+	void markStreamsDrained() {
+		streamsDrained = System.nanoTime();
+		if (launched == 0) {
+			launched = start;
+		}
+		if (processEnded == 0) {
+			processEnded = streamsDrained;
+		}
+	}
+
+	public String getCommand() {
+		return command;
+	}
+
+	/**
+	 * @return the time in milliseconds spent creating the process
+	 */
+	public long getExecTime() {
+		return (launched - start) / 1000000;
+	}
+
+	/**
+	 * @return the time in milliseconds between the command start and the end
+	 *         of its process
+	 */
+	public long getProcessTime() {
+		return (processEnded - start) / 1000000;
+	}
+
+	/**
+	 * @return the time in milliseconds spent waiting for the output streams
+	 *         once the process had exited
+	 */
+	public long getDrainTime() {
+		return (streamsDrained - processEnded) / 1000000;
+	}
+
+	/**
+	 * @return the total time in milliseconds taken by the command
+	 */
+	public long getWallTime() {
+		return (streamsDrained - start) / 1000000;
+	}
+
+	@Override
+	public String toString() {
+		return command + " [exec=" + getExecTime() + "ms, wall="
+				+ getWallTime() + "ms, drain=" + getDrainTime() + "ms]";
+	}
+}
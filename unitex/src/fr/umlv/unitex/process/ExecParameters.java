@@ -21,6 +21,9 @@
 package fr.umlv.unitex.process;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 import fr.umlv.unitex.process.commands.CommandBuilder;
 import fr.umlv.unitex.process.commands.MultiCommands;
@@ -106,6 +109,39 @@ public class ExecParameters {
 
 	private final File workingDirectory;
 
+	/**
+	 * One timing record per command started so far, in execution order
+	 */
+	private final List<CommandTiming> timings;
+	private CommandTiming currentTiming;
+
+	/**
+	 * Creates the timing record of a command that is about to be executed,
+	 * and makes it the current one.
+	 */
+	CommandTiming startTiming(String command) {
+		currentTiming = new CommandTiming(command);
+		timings.add(currentTiming);
+		return currentTiming;
+	}
+
+	/**
+	 * Returns the timing record of the command being executed, or null if no
+	 * command was started through an <code>Executor</code>.
+	 */
+	public CommandTiming getCurrentTiming() {
+		return currentTiming;
+	}
+
+	/**
+	 * Returns the timing records of the commands executed so far.
+	 */
+	public List<CommandTiming> getTimings() {
+		synchronized (timings) {
+			return new ArrayList<CommandTiming>(timings);
+		}
+	}
+
 	public ExecParameters(boolean stopOnProblem, MultiCommands commands,
 			ProcessOutputList stdout, ProcessOutputList stderr, ToDo DO,
 			boolean traceIntoConsole, File workingDirectory) {
@@ -117,6 +153,32 @@ public class ExecParameters {
 		this.DO = DO;
 		this.traceIntoConsole = traceIntoConsole;
 		this.workingDirectory = workingDirectory;
+		this.timings = Collections
+				.synchronizedList(new ArrayList<CommandTiming>());
+	}
+
+	/**
+	 * Creates the parameters used to run the given command concurrently with
+	 * other commands of the parent parameters. The command gets its own
+	 * process field and writes into the given outputs, so that its lines are
+	 * not mixed with the ones of the other commands. It shares the timing
+	 * records of the parent.
+	 */
+	private ExecParameters(ExecParameters parent, CommandBuilder c,
+			ProcessOutputList stdout, ProcessOutputList stderr) {
+		this.stopOnProblem = parent.stopOnProblem;
+		this.commands = new MultiCommands(c);
+		this.stdout = stdout;
+		this.stderr = stderr;
+		this.DO = null;
+		this.traceIntoConsole = parent.traceIntoConsole;
+		this.workingDirectory = parent.workingDirectory;
+		this.timings = parent.timings;
+	}
+
+	ExecParameters fork(CommandBuilder c, ProcessOutputList out,
+			ProcessOutputList err) {
+		return new ExecParameters(this, c, out, err);
 	}
 
 	public ExecParameters(boolean stopOnProblem, CommandBuilder c,
@@ -22,10 +22,12 @@ package fr.umlv.unitex.process;
 
 import java.awt.EventQueue;
 import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
 
 import fr.umlv.unitex.console.ConsoleEntry;
 import fr.umlv.unitex.exceptions.UnitexUncaughtExceptionHandler;
 import fr.umlv.unitex.process.commands.CommandBuilder;
+import fr.umlv.unitex.process.commands.Grf2Fst2Command;
 import fr.umlv.unitex.process.commands.MultiCommands;
 
 /**
@@ -40,6 +42,7 @@ public class Executor extends Thread {
 	private boolean success = true;
 	private boolean finished = false;
 	ConsoleEntry entry = null;
+	private volatile Grf2Fst2Scheduler scheduler = null;
 
 	public Executor(ExecParameters parameters) {
 		this.parameters = parameters;
@@ -56,6 +59,25 @@ public class Executor extends Thread {
 		final MultiCommands commands = parameters.getCommands();
 		CommandBuilder command;
 		for (int i = 0; success && i < commands.numberOfCommands(); i++) {
+			if (isSchedulable(commands.getCommand(i))) {
+				/*
+				 * Adjacent graph compilations are given to the scheduler, that
+				 * skips the up to date ones and runs the others concurrently
+				 */
+				final ArrayList<Grf2Fst2Command> batch = new ArrayList<Grf2Fst2Command>();
+				while (i < commands.numberOfCommands()
+						&& isSchedulable(commands.getCommand(i))) {
+					batch.add((Grf2Fst2Command) commands.getCommand(i));
+					i++;
+				}
+				i--;
+				scheduler = new Grf2Fst2Scheduler(parameters);
+				if (!scheduler.run(batch)) {
+					success = false;
+				}
+				scheduler = null;
+				continue;
+			}
 			if ((command = commands.getCommand(i)) != null) {
 				entry = null;
 				if (parameters.isTraceIntoConsole()) {
@@ -66,6 +88,8 @@ public class Executor extends Thread {
 				if (toDoBefore != null)
 					toDoBefore.toDo(entry);
 
+				final CommandTiming timing = parameters.startTiming(command
+						.getCommandLine());
 				final boolean commandSuccessful = command.executeCommand(
 						parameters, entry);
 				if (!commandSuccessful) {
@@ -73,16 +97,18 @@ public class Executor extends Thread {
 				}
 				if (entry != null
 						&& command.getType() == CommandBuilder.PROGRAM) {
-					while (!entry.isNormalStreamEnded()
-							|| !entry.isErrorStreamEnded()) {
-						/*
-						 * We wait for the end of the stdout and stderr reading
-						 * threads
-						 */
-						// System.err.println("stdout ended: "+entry.isNormalStreamEnded());
-						// System.err.println("stderr ended: "+entry.isErrorStreamEnded());
+					/*
+					 * We wait for the end of the stdout and stderr reading
+					 * threads
+					 */
+					try {
+						entry.awaitStreamsEnded();
+					} catch (final InterruptedException e) {
+						/* The executor has been canceled */
+						success = false;
 					}
 				}
+				timing.markStreamsDrained();
 				final ToDoAfterSingleCommand toDoAfter = command
 						.getWhatToDoOnceCompleted();
 				if (toDoAfter != null)
@@ -97,12 +123,21 @@ public class Executor extends Thread {
 		finished = true;
 	}
 
+	private static boolean isSchedulable(CommandBuilder command) {
+		return (command instanceof Grf2Fst2Command)
+				&& ((Grf2Fst2Command) command).isSkipIfUpToDate();
+	}
+
 	public boolean getSuccess() {
 		return success;
 	}
 
 	@Override
 	public void interrupt() {
+		final Grf2Fst2Scheduler s = scheduler;
+		if (s != null) {
+			s.interrupt();
+		}
 		final Process p = parameters.getProcess();
 		if (p != null) {
 			p.destroy();
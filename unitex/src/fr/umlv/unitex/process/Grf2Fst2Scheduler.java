@@ -0,0 +1,471 @@
+/*
+ * Unitex
+ *
+ * Copyright (C) 2001-2021 Université Paris-Est Marne-la-Vallée <unitex@univ-mlv.fr>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA.
+ *
+ */
+package fr.umlv.unitex.process;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.swing.SwingUtilities;
+
+import fr.umlv.unitex.config.Config;
+import fr.umlv.unitex.console.Console;
+import fr.umlv.unitex.console.ConsoleEntry;
+import fr.umlv.unitex.console.Couple;
+import fr.umlv.unitex.graphtools.GraphDependencyIndex;
+import fr.umlv.unitex.process.commands.CommandBuilder;
+import fr.umlv.unitex.process.commands.Grf2Fst2Command;
+import fr.umlv.unitex.process.list.ProcessOutputList;
+import fr.umlv.unitex.process.list.ProcessOutputListModel;
+
+/**
+ * This class runs a sequence of <code>Grf2Fst2Command</code> for an
+ * <code>Executor</code>. A command is skipped if its .fst2 was built by the
+ * same command line and is more recent than the graph, all the graphs it
+ * calls and the alphabet. The other commands are run concurrently on a small
+ * pool of threads, since they do not depend on each other.
+ *
+ * The command line, the date and the size of each .fst2 built this way are
+ * saved in a file of the user directory, so that an .fst2 produced by another
+ * command or modified by hand is never considered as up to date.
+ */
+class Grf2Fst2Scheduler {
+	private static final String MANIFEST_FILE_NAME = "grf2fst2_builds.idx";
+	private static final int MANIFEST_VERSION = 1;
+	private static final int MAX_WORKERS = 4;
+	/* The number of lines kept for the output of a single command */
+	private static final int BUFFER_CAPACITY = 10000;
+
+	/* The builds we know about, keyed by absolute .fst2 file */
+	private static final HashMap<File, Build> builds = new HashMap<File, Build>();
+	private static boolean manifestLoaded = false;
+	private static boolean manifestChanged = false;
+
+	private static class Build {
+		final String commandLine;
+		final long lastModified;
+		final long length;
+
+		Build(String commandLine, long lastModified, long length) {
+			this.commandLine = commandLine;
+			this.lastModified = lastModified;
+			this.length = length;
+		}
+	}
+
+	private final ExecParameters parameters;
+	/* The parameters of the commands being run, used to cancel them */
+	private final ArrayList<ExecParameters> running = new ArrayList<ExecParameters>();
+	private volatile boolean canceled = false;
+
+	Grf2Fst2Scheduler(ExecParameters parameters) {
+		this.parameters = parameters;
+	}
+
+	/**
+	 * Runs the given commands, and returns false if one of them failed.
+	 */
+	boolean run(List<Grf2Fst2Command> commands) {
+		final long start = System.nanoTime();
+		final int n = commands.size();
+		final ConsoleEntry[] entries = new ConsoleEntry[n];
+		final CommandTiming[] timings = new CommandTiming[n];
+		/*
+		 * Each command writes into its own lists, copied to the shared ones
+		 * when it is over, so that the lines of concurrent commands are not
+		 * mixed
+		 */
+		final ProcessOutputList[] outs = new ProcessOutputList[n];
+		final ProcessOutputList[] errs = new ProcessOutputList[n];
+		final ArrayList<Future<Boolean>> futures = new ArrayList<Future<Boolean>>();
+		final AtomicBoolean failed = new AtomicBoolean(false);
+		final ExecutorService pool = Executors.newFixedThreadPool(Math.max(1,
+				Math.min(MAX_WORKERS, Runtime.getRuntime()
+						.availableProcessors())));
+		int skipped = 0;
+		try {
+			for (int i = 0; i < n; i++) {
+				final Grf2Fst2Command command = commands.get(i);
+				if (isUpToDate(command)) {
+					skipped++;
+					if (parameters.isTraceIntoConsole()) {
+						Console.addCommand(getName(command)
+								+ ": skipped (up to date)", true, null);
+					}
+					futures.add(null);
+					continue;
+				}
+				if (parameters.isTraceIntoConsole()) {
+					entries[i] = command.logIntoConsole();
+				}
+				final ToDoBeforeSingleCommand toDoBefore = command
+						.getWhatToDoBefore();
+				if (toDoBefore != null)
+					toDoBefore.toDo(entries[i]);
+				final ConsoleEntry entry = entries[i];
+				final int index = i;
+				futures.add(pool.submit(new Callable<Boolean>() {
+					@SuppressWarnings("synthetic-access")
+					@Override
+					public Boolean call() throws Exception {
+						if (failed.get() || canceled) {
+							return false;
+						}
+						outs[index] = createBuffer(parameters.getStdout());
+						errs[index] = createBuffer(parameters.getStderr());
+						final ExecParameters p = parameters.fork(command,
+								outs[index], errs[index]);
+						synchronized (running) {
+							running.add(p);
+						}
+						timings[index] = p.startTiming(command
+								.getCommandLine());
+						try {
+							final boolean ok = execute(command, p, entry);
+							timings[index].markStreamsDrained();
+							if (!ok) {
+								failed.set(true);
+							} else {
+								recordBuild(command);
+							}
+							return ok;
+						} finally {
+							synchronized (running) {
+								running.remove(p);
+							}
+						}
+					}
+				}));
+			}
+			boolean success = true;
+			for (int i = 0; i < n; i++) {
+				final Future<Boolean> future = futures.get(i);
+				if (future == null) {
+					continue;
+				}
+				boolean ok;
+				try {
+					ok = future.get();
+				} catch (final InterruptedException e) {
+					/* The executor has been canceled */
+					interrupt();
+					ok = false;
+				} catch (final ExecutionException e) {
+					e.printStackTrace();
+					ok = false;
+				} catch (final CancellationException e) {
+					ok = false;
+				}
+				success = success && ok;
+				copyBuffer(outs[i], parameters.getStdout());
+				copyBuffer(errs[i], parameters.getStderr());
+				outs[i] = null;
+				errs[i] = null;
+				final Grf2Fst2Command command = commands.get(i);
+				final ToDoAfterSingleCommand toDoAfter = command
+						.getWhatToDoOnceCompleted();
+				if (toDoAfter != null)
+					toDoAfter.toDo(ok, entries[i]);
+				if (parameters.isTraceIntoConsole() && timings[i] != null) {
+					Console.addCommand(getName(command) + ": "
+							+ (ok ? "compiled" : "failed") + " in "
+							+ timings[i].getWallTime() + " ms", true, null);
+				}
+			}
+			if (parameters.isTraceIntoConsole() && n > 1) {
+				Console.addCommand("Grf2Fst2: " + (n - skipped)
+						+ " graph(s) compiled, " + skipped
+						+ " up to date, in "
+						+ (System.nanoTime() - start) / 1000000 + " ms", true,
+						null);
+			}
+			return success && !canceled;
+		} finally {
+			pool.shutdownNow();
+			saveManifest();
+		}
+	}
+
+	private static String getName(Grf2Fst2Command command) {
+		return "Grf2Fst2 " + command.getGrf().getName();
+	}
+
+	private static boolean execute(CommandBuilder command, ExecParameters p,
+			ConsoleEntry consoleEntry) {
+		/*
+		 * The buffers are copied once the command is over, so we must always
+		 * be able to wait for the reading threads, even if the command is not
+		 * shown in the console
+		 */
+		final ConsoleEntry entry = consoleEntry != null ? consoleEntry
+				: new ConsoleEntry(command.getCommandLine(), true, false, null);
+		final boolean ok = command.executeCommand(p, entry);
+		if (command.getType() == CommandBuilder.PROGRAM) {
+			/* We wait for the end of the stdout and stderr reading threads */
+			try {
+				entry.awaitStreamsEnded();
+			} catch (final InterruptedException e) {
+				return false;
+			}
+		}
+		return ok;
+	}
+
+	/**
+	 * Creates an empty list to collect the lines that a command would write
+	 * into the given one, or returns null if the given list is null.
+	 */
+	private static ProcessOutputList createBuffer(final ProcessOutputList list) {
+		if (list == null) {
+			return null;
+		}
+		final ProcessOutputList[] buffer = new ProcessOutputList[1];
+		try {
+			SwingUtilities.invokeAndWait(new Runnable() {
+				@Override
+				public void run() {
+					buffer[0] = new ProcessOutputList(
+							new ProcessOutputListModel(BUFFER_CAPACITY), false);
+				}
+			});
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (final InvocationTargetException e) {
+			e.printStackTrace();
+		}
+		/* If the list could not be created, the lines go to the shared list */
+		return buffer[0] != null ? buffer[0] : list;
+	}
+
+	/**
+	 * Appends all the lines of the given buffer to the given list as a single
+	 * block. The lines are added from the Swing thread, in the order of the
+	 * calls.
+	 */
+	private static void copyBuffer(final ProcessOutputList buffer,
+			final ProcessOutputList list) {
+		if (buffer == null || buffer == list) {
+			return;
+		}
+		SwingUtilities.invokeLater(new Runnable() {
+			@Override
+			public void run() {
+				final ProcessOutputListModel model = buffer.getModel();
+				final ArrayList<Couple> lines = new ArrayList<Couple>(model
+						.size());
+				for (int i = 0; i < model.size(); i++) {
+					lines.add(model.get(i));
+				}
+				if (!lines.isEmpty()) {
+					/*
+					 * A progress line of the command must not be replaced by
+					 * the first line of the next one
+					 */
+					list.addLines(lines, new BitSet());
+				}
+			}
+		});
+	}
+
+	/**
+	 * Kills the processes that are running, and prevents the others from
+	 * being started.
+	 */
+	void interrupt() {
+		canceled = true;
+		synchronized (running) {
+			for (final ExecParameters p : running) {
+				final Process process = p.getProcess();
+				if (process != null) {
+					process.destroy();
+				}
+			}
+		}
+	}
+
+	static boolean isUpToDate(Grf2Fst2Command command) {
+		final File grf = command.getGrf();
+		final File fst2 = command.getFst2();
+		if (grf == null || fst2 == null || !fst2.exists()) {
+			return false;
+		}
+		final Build build;
+		synchronized (builds) {
+			loadManifest();
+			build = builds.get(fst2.getAbsoluteFile());
+		}
+		if (build == null || !build.commandLine.equals(command.getCommandLine())
+				|| build.lastModified != fst2.lastModified()
+				|| build.length != fst2.length()) {
+			return false;
+		}
+		final ArrayList<File> closure = GraphDependencyIndex
+				.getSubgraphClosure(grf);
+		if (closure == null) {
+			return false;
+		}
+		final File alphabet = command.getAlphabet();
+		if (alphabet != null) {
+			closure.add(alphabet);
+		}
+		for (final File f : closure) {
+			/*
+			 * A file modified in the same second as the .fst2 may be more
+			 * recent than it on file systems with a coarse precision
+			 */
+			if (!f.exists() || f.lastModified() >= build.lastModified) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static void recordBuild(Grf2Fst2Command command) {
+		final File fst2 = command.getFst2().getAbsoluteFile();
+		if (!fst2.exists()) {
+			return;
+		}
+		synchronized (builds) {
+			builds.put(fst2, new Build(command.getCommandLine(), fst2
+					.lastModified(), fst2.length()));
+			manifestChanged = true;
+		}
+	}
+
+	private static File getManifestFile() {
+		final File dir = Config.getUserDir();
+		return (dir == null) ? null : new File(dir, MANIFEST_FILE_NAME);
+	}
+
+	/**
+	 * Reads the saved builds the first time it is called. Must be called with
+	 * the lock on <code>builds</code>.
+	 */
+	private static void loadManifest() {
+		if (manifestLoaded) {
+			return;
+		}
+		manifestLoaded = true;
+		final File file = getManifestFile();
+		if (file == null || !file.exists()) {
+			return;
+		}
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new BufferedInputStream(
+					new FileInputStream(file)));
+			if (in.readInt() != MANIFEST_VERSION) {
+				return;
+			}
+			final int n = in.readInt();
+			for (int i = 0; i < n; i++) {
+				final File fst2 = new File(in.readUTF());
+				final String commandLine = in.readUTF();
+				final long lastModified = in.readLong();
+				final long length = in.readLong();
+				builds.put(fst2, new Build(commandLine, lastModified, length));
+			}
+		} catch (final IOException e) {
+			/* A corrupted manifest is just ignored, graphs will be rebuilt */
+		} finally {
+			if (in != null) {
+				try {
+					in.close();
+				} catch (final IOException e) {
+					/* */
+				}
+			}
+		}
+	}
+
+	private static void saveManifest() {
+		final File file = getManifestFile();
+		if (file == null) {
+			return;
+		}
+		final File tmp = new File(file.getPath() + ".tmp");
+		DataOutputStream out = null;
+		synchronized (builds) {
+			if (!manifestChanged) {
+				return;
+			}
+			loadManifest();
+			/* We forget the .fst2 that do not exist anymore */
+			final Iterator<File> it = builds.keySet().iterator();
+			while (it.hasNext()) {
+				if (!it.next().exists()) {
+					it.remove();
+				}
+			}
+			manifestChanged = false;
+			try {
+				out = new DataOutputStream(new BufferedOutputStream(
+						new FileOutputStream(tmp)));
+				out.writeInt(MANIFEST_VERSION);
+				out.writeInt(builds.size());
+				for (final Map.Entry<File, Build> e : builds.entrySet()) {
+					out.writeUTF(e.getKey().getPath());
+					out.writeUTF(e.getValue().commandLine);
+					out.writeLong(e.getValue().lastModified);
+					out.writeLong(e.getValue().length);
+				}
+				out.close();
+				out = null;
+				if (file.exists() && !file.delete()) {
+					tmp.delete();
+					return;
+				}
+				tmp.renameTo(file);
+			} catch (final IOException e) {
+				/* The manifest is only a cache, we can live without it */
+				tmp.delete();
+			} finally {
+				if (out != null) {
+					try {
+						out.close();
+					} catch (final IOException e) {
+						/* */
+					}
+					tmp.delete();
+				}
+			}
+		}
+	}
+}
@@ -20,14 +20,19 @@
  */
 package fr.umlv.unitex.process;
 
-import java.io.BufferedReader;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.Reader;
 import java.io.UnsupportedEncodingException;
 import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.BitSet;
 
 import javax.swing.SwingUtilities;
+import javax.swing.Timer;
 
 import fr.umlv.unitex.console.ConsoleEntry;
 import fr.umlv.unitex.console.Couple;
@@ -37,14 +42,45 @@ import fr.umlv.unitex.process.list.ProcessOutputList;
  * This class is used to monitor stdout and stderr messages of external
  * processes.
  * 
+ * Lines are decoded from a char buffer and stored in a bounded queue that is
+ * flushed to the list in batches, at most once per display tick, so that a
+ * program printing many lines is not slowed down by the Swing thread. A line
+ * ended by a single \r replaces the previous one, so consecutive progress
+ * lines are coalesced in the queue and only the latest one reaches the list.
+ * 
  * @author Sébastien Paumier
  */
 public class ProcessInfoThread extends Thread {
+	/**
+	 * Delay in milliseconds between two flushes of the pending lines
+	 */
+	private static final int FLUSH_DELAY = 40;
+	/**
+	 * Maximum number of pending lines; when it is reached, the reading thread
+	 * waits for the queue to be flushed
+	 */
+	private static final int MAX_PENDING_LINES = 4096;
+
 	final ProcessOutputList list;
-	private BufferedReader stream;
+	private Reader stream;
 	final ConsoleEntry entry;
 	boolean readingErrorStream;
 
+	private final char[] buffer = new char[8192];
+	private int bufferPos = 0;
+	private int bufferLength = 0;
+	private final StringBuilder line = new StringBuilder();
+	/* Tells whether the last line read was ended by \n or \r\n */
+	private boolean fullReturn;
+	/* Tells whether the last line was ended by a \r that may precede a \n */
+	private boolean afterReturn;
+
+	/* Lines waiting to be flushed, protected by 'this' */
+	private ArrayList<Couple> pending = new ArrayList<Couple>();
+	private BitSet pendingReplacable = new BitSet();
+	private ArrayList<String> pendingErrors = new ArrayList<String>();
+	private final Timer flushTimer;
+
 	/**
 	 * Creates a new <code>ProcessInfoThread</code>
 	 * 
@@ -59,55 +95,79 @@ public class ProcessInfoThread extends Thread {
 		this.entry = entry;
 		this.readingErrorStream = errorStream;
 		try {
-			stream = new BufferedReader(new InputStreamReader(s, "UTF8"));
+			stream = new InputStreamReader(s, "UTF8");
 		} catch (final UnsupportedEncodingException e) {
 			e.printStackTrace();
 		}
+		flushTimer = new Timer(FLUSH_DELAY, new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				flush();
+			}
+		});
+		flushTimer.setRepeats(false);
 	}
 
-	private char nextChar = '\0';
+	private boolean fillBuffer() throws IOException {
+		if (bufferPos < bufferLength) {
+			return true;
+		}
+		final int n = stream.read(buffer);
+		bufferPos = 0;
+		bufferLength = (n < 0) ? 0 : n;
+		return n > 0;
+	}
 
-	String myReadLine(BufferedReader reader) {
-		int c;
-		String result = "";
-		if (nextChar != '\0') {
-			result = "" + nextChar;
-			nextChar = '\0';
+	/**
+	 * Reads a line ended by \n, \r\n or a single \r. The line terminator
+	 * is not put in the result, but 'fullReturn' is set to false if it was a
+	 * single \r. Returns null at the end of the stream.
+	 * 
+	 * We do not wait for the char after a \r, so that a progress line is
+	 * shown as soon as it is printed. If it turns out to be a \n, it is
+	 * returned as an empty line ended by \n, that the model uses to stop the
+	 * replacement of the line ended by \r.
+	 */
+	String readLine() throws IOException {
+		line.setLength(0);
+		if (afterReturn) {
+			afterReturn = false;
+			if (fillBuffer() && buffer[bufferPos] == '\n') {
+				bufferPos++;
+				fullReturn = true;
+				return "";
+			}
 		}
-		try {
-			while ((c = reader.read()) != -1) {
-				char ch = (char) c;
-				if (ch == '\r') {
-					result = result + ch;
-					if ((c = reader.read()) != -1) {
-						ch = (char) c;
-						if (ch == '\n') {
-							/* If we have a \r\n sequence, we return it */
-							result = result + ch;
-							return result;
-						}
-						/* Otherwise, we stock the character */
-						nextChar = ch;
+		while (fillBuffer()) {
+			final int start = bufferPos;
+			int i = start;
+			while (i < bufferLength && buffer[i] != '\n' && buffer[i] != '\r') {
+				i++;
+			}
+			line.append(buffer, start, i - start);
+			if (i == bufferLength) {
+				bufferPos = i;
+				continue;
+			}
+			bufferPos = i + 1;
+			if (buffer[i] == '\n') {
+				fullReturn = true;
+			} else {
+				/* A \r may be followed by a \n, possibly in the next buffer */
+				if (bufferPos < bufferLength || stream.ready()) {
+					fullReturn = fillBuffer() && buffer[bufferPos] == '\n';
+					if (fullReturn) {
+						bufferPos++;
 					}
-					return result;
-				} else if (ch == '\n') {
-					/* If we have a single \n, we return it */
-					result = result + ch;
-					nextChar = '\0';
-					return result;
 				} else {
-					nextChar = '\0';
-					result = result + ch;
+					fullReturn = false;
+					afterReturn = true;
 				}
 			}
-		} catch (final IOException e) {
-			e.printStackTrace();
-			return null;
-		}
-		if ("".equals(result)) {
-			return null;
+			return line.toString();
 		}
-		return result;
+		fullReturn = true;
+		return line.length() == 0 ? null : line.toString();
 	}
 
 	/**
@@ -115,51 +175,117 @@ public class ProcessInfoThread extends Thread {
 	 */
 	@Override
 	public void run() {
-		String s;
-		boolean fullReturn;
-		while ((s = myReadLine(stream)) != null) {
-			if (!s.equals("")) {
-				if (s.endsWith("\r\n")) {
-					s = s.substring(0, s.length() - 2);
-					fullReturn = true;
-				} else if (s.endsWith("\r")) {
-					fullReturn = false;
-					s = s.substring(0, s.length() - 1);
-				} else if (s.endsWith("\n")) {
-					fullReturn = true;
-					s = s.substring(0, s.length() - 1);
+		try {
+			readStream();
+		} catch (final IOException e) {
+			e.printStackTrace();
+		} finally {
+			flushAndWait();
+			/*
+			 * Whatever happens, we must tell that the stream has ended, since
+			 * the executor waits for it
+			 */
+			if (entry != null) {
+				if (readingErrorStream) {
+					entry.setErrorStreamEnded(true);
 				} else {
-					fullReturn = true;
-				}
-				final String s2 = s;
-				final boolean ret = fullReturn;
-				try {
-					SwingUtilities.invokeAndWait(new Runnable() {
-						@Override
-						public void run() {
-							if (ret) {
-								list.addLine(new Couple(s2, false));
-							} else {
-								list.addReplacableLine(new Couple(s2, false));
-							}
-							if (entry != null && readingErrorStream) {
-								entry.addErrorMessage(s2);
-							}
-						}
-					});
-				} catch (final InterruptedException e) {
-					/* */
-				} catch (final InvocationTargetException e) {
-					/* */
+					entry.setNormalStreamEnded(true);
 				}
 			}
 		}
-		if (entry != null) {
-			if (readingErrorStream) {
-				entry.setErrorStreamEnded(true);
-			} else {
-				entry.setNormalStreamEnded(true);
+	}
+
+	private void readStream() throws IOException {
+		String s;
+		while ((s = readLine()) != null) {
+			/*
+			 * Empty lines are kept, since the model uses them to end the
+			 * replacement of a progress line
+			 */
+			enqueue(new Couple(s, false), !fullReturn);
+		}
+	}
+
+	private synchronized void enqueue(Couple c, boolean replacable) {
+		while (pending.size() >= MAX_PENDING_LINES) {
+			try {
+				wait();
+			} catch (final InterruptedException e) {
+				/* We go on, the queue will just be a bit longer */
+				break;
 			}
 		}
+		if (entry != null && readingErrorStream) {
+			pendingErrors.add(c.getString());
+		}
+		final int last = pending.size() - 1;
+		/*
+		 * An empty line ended by \n after a replacable line only stops the
+		 * replacement, so it is kept for the model to drop it
+		 */
+		if (last >= 0 && pendingReplacable.get(last)
+				&& (replacable || !c.getString().equals(""))) {
+			/*
+			 * The new line would replace the last pending one, so there is no
+			 * need to keep the latter
+			 */
+			pending.set(last, c);
+			pendingReplacable.set(last, replacable);
+		} else {
+			pending.add(c);
+			pendingReplacable.set(last + 1, replacable);
+		}
+		if (!flushTimer.isRunning()) {
+			flushTimer.start();
+		}
+	}
+
+	/**
+	 * Moves the pending lines to the list. Must be called from the Swing
+	 * thread.
+	 */
+	void flush() {
+		final ArrayList<Couple> lines;
+		final BitSet replacable;
+		final ArrayList<String> errors;
+		synchronized (this) {
+			lines = pending;
+			replacable = pendingReplacable;
+			errors = pendingErrors;
+			pending = new ArrayList<Couple>();
+			pendingReplacable = new BitSet();
+			pendingErrors = new ArrayList<String>();
+			notifyAll();
+		}
+		if (!lines.isEmpty()) {
+			list.addLines(lines, replacable);
+		}
+		for (final String s : errors) {
+			entry.addErrorMessage(s);
+		}
+	}
+
+	/**
+	 * Flushes the remaining lines and waits until they are in the list, so
+	 * that the list is complete once the stream is marked as ended.
+	 */
+	private void flushAndWait() {
+		flushTimer.stop();
+		if (SwingUtilities.isEventDispatchThread()) {
+			flush();
+			return;
+		}
+		try {
+			SwingUtilities.invokeAndWait(new Runnable() {
+				@Override
+				public void run() {
+					flush();
+				}
+			});
+		} catch (final InterruptedException e) {
+			/* */
+		} catch (final InvocationTargetException e) {
+			/* */
+		}
 	}
 }
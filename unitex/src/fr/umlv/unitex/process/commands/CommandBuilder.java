@@ -30,6 +30,7 @@ import fr.umlv.unitex.config.ConfigManager;
 import fr.umlv.unitex.console.Console;
 import fr.umlv.unitex.console.ConsoleEntry;
 import fr.umlv.unitex.console.Couple;
+import fr.umlv.unitex.process.CommandTiming;
 import fr.umlv.unitex.process.EatStreamThread;
 import fr.umlv.unitex.process.ExecParameters;
 import fr.umlv.unitex.process.Log;
@@ -221,10 +222,16 @@ public abstract class CommandBuilder implements AbstractCommand {
 			parameters.setProcess(Runtime.getRuntime().exec(comm, null,
 					parameters.getWorkingDirectory()));
 			p = parameters.getProcess();
+			final CommandTiming timing = parameters.getCurrentTiming();
+			if (timing != null) {
+				timing.markLaunched();
+			}
 			if (parameters.getStdout() == null) {
 				/* If needed, we just consume the output stream */
 				new EatStreamThread(p.getInputStream()).start();
-				entry.setNormalStreamEnded(true);
+				if (entry != null) {
+					entry.setNormalStreamEnded(true);
+				}
 			} else {
 				new ProcessInfoThread(parameters.getStdout(),
 						p.getInputStream(), entry, false).start();
@@ -232,7 +239,9 @@ public abstract class CommandBuilder implements AbstractCommand {
 			if (parameters.getStderr() == null) {
 				/* If needed, we just consume the error stream */
 				new EatStreamThread(p.getErrorStream()).start();
-				entry.setErrorStreamEnded(true);
+				if (entry != null) {
+					entry.setErrorStreamEnded(true);
+				}
 			} else {
 				new ProcessInfoThread(parameters.getStderr(),
 						p.getErrorStream(), entry, true).start();
@@ -240,6 +249,9 @@ public abstract class CommandBuilder implements AbstractCommand {
 			/* Now, we just wait for the end of the process */
 			try {
 				p.waitFor();
+				if (timing != null) {
+					timing.markProcessEnded();
+				}
 				if (parameters.isStopOnProblem()) {
 					/* iff we need to report a problem */
 					if (!currentCommand.isCommandSuccessful(p.exitValue())) {
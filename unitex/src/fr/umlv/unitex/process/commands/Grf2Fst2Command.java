@@ -30,11 +30,17 @@ import fr.umlv.unitex.config.NamedRepository;
  * @author Sébastien Paumier
  */
 public class Grf2Fst2Command extends CommandBuilder {
+	private File grf;
+	private File fst2;
+	private File alphabet;
+	private boolean skipIfUpToDate;
+
 	public Grf2Fst2Command() {
 		super("Grf2Fst2");
 	}
 
 	public Grf2Fst2Command grf(File s) {
+		grf = s;
 		protectElement(s.getAbsolutePath());
 		ultraSimplifiedList.add(s.getName());
 		return this;
@@ -53,6 +59,7 @@ public class Grf2Fst2Command extends CommandBuilder {
 	public Grf2Fst2Command alphabetTokenization(File f) {
 		if (f == null)
 			return this;
+		alphabet = f;
 		protectElement("--alphabet=" + f.getAbsolutePath());
 		return this;
 	}
@@ -122,6 +129,7 @@ public class Grf2Fst2Command extends CommandBuilder {
 	}
 
 	public Grf2Fst2Command output(File fst2) {
+		this.fst2 = fst2;
 		element("-o");
 		protectElement(fst2.getAbsolutePath());
 		return this;
@@ -148,4 +156,37 @@ public class Grf2Fst2Command extends CommandBuilder {
         return this;
     }
 
+	/**
+	 * Asks the <code>Executor</code> not to run this command if the .fst2 is
+	 * up to date, and allows it to run this command concurrently with the
+	 * adjacent ones that have the same flag.
+	 */
+	public Grf2Fst2Command skipIfUpToDate() {
+		skipIfUpToDate = true;
+		return this;
+	}
+
+	public boolean isSkipIfUpToDate() {
+		return skipIfUpToDate;
+	}
+
+	public File getGrf() {
+		return grf;
+	}
+
+	/**
+	 * Returns the .fst2 file this command will produce.
+	 */
+	public File getFst2() {
+		if (fst2 != null || grf == null) {
+			return fst2;
+		}
+		final String name = grf.getPath();
+		final int n = name.lastIndexOf('.');
+		return new File((n == -1 ? name : name.substring(0, n)) + ".fst2");
+	}
+
+	public File getAlphabet() {
+		return alphabet;
+	}
 }
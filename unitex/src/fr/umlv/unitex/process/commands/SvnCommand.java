@@ -21,6 +21,7 @@
 package fr.umlv.unitex.process.commands;
 
 import java.io.File;
+import java.util.List;
 
 import fr.umlv.unitex.config.ConfigManager;
 
@@ -123,6 +124,34 @@ public class SvnCommand extends CommandBuilder {
 		return info(f, recursive, false);
 	}
 
+	/**
+	 * Asks for the infos about the given files, that are given to svn
+	 * relatively to <code>baseDir</code>, which must be the working directory
+	 * of the process, so that the output paths are relative to it, as they
+	 * are for the whole project.
+	 */
+	public SvnCommand info(File baseDir, List<File> files, boolean recursive) {
+		element("info");
+		if (recursive)
+			element("-R");
+		for (final File f : files) {
+			protectElement(getRelativePath(baseDir, f));
+		}
+		return this;
+	}
+
+	private static String getRelativePath(File baseDir, File f) {
+		final String base = baseDir.getAbsolutePath();
+		final String path = f.getAbsolutePath();
+		if (path.equals(base)) {
+			return ".";
+		}
+		if (path.startsWith(base + File.separator)) {
+			return path.substring(base.length() + 1);
+		}
+		return path;
+	}
+
 	public SvnCommand add(File targetList) {
 		element("add");
 		element("--force");
@@ -179,6 +208,18 @@ public class SvnCommand extends CommandBuilder {
 		return this;
 	}
 
+	/**
+	 * Like <code>info(File,List,boolean)</code>, the files are given to svn
+	 * relatively to <code>baseDir</code>.
+	 */
+	public SvnCommand status(File baseDir, List<File> files) {
+		status();
+		for (final File f : files) {
+			protectElement(getRelativePath(baseDir, f));
+		}
+		return this;
+	}
+
 	public SvnCommand commit(File targetList, String message) {
 		element("commit");
 		element("-m");
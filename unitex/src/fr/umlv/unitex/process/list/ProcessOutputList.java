@@ -20,9 +20,9 @@
  */
 package fr.umlv.unitex.process.list;
 
-import java.awt.Component;
+import java.util.BitSet;
+import java.util.List;
 
-import javax.swing.DefaultListCellRenderer;
 import javax.swing.JList;
 import javax.swing.ListModel;
 
@@ -46,16 +46,6 @@ public class ProcessOutputList extends JList {
 	public ProcessOutputList(ProcessOutputListModel model, boolean autoscroll) {
 		super(model);
 		this.autoscroll = autoscroll;
-		setCellRenderer(new DefaultListCellRenderer() {
-			@Override
-			public Component getListCellRendererComponent(JList list,
-					Object value, int index, boolean isSelected,
-					boolean cellHasFocus) {
-				final Couple c = (Couple) value;
-				return super.getListCellRendererComponent(list, c.getString(),
-						index, isSelected, cellHasFocus);
-			}
-		});
 	}
 
 	public ProcessOutputList(ProcessOutputListModel model) {
@@ -89,6 +79,18 @@ public class ProcessOutputList extends JList {
 		}
 	}
 
+	/**
+	 * Adds a batch of lines, as <code>ProcessOutputListModel.addLines</code>
+	 * does, scrolling only once to the last line.
+	 */
+	public void addLines(List<Couple> lines, BitSet replacable) {
+		final ProcessOutputListModel model = getModel();
+		model.addLines(lines, replacable);
+		if (autoscroll) {
+			ensureIndexIsVisible(model.getSize() - 1);
+		}
+	}
+
 	public void empty() {
 		getModel().removeAllElements();
 	}
@@ -20,7 +20,10 @@
  */
 package fr.umlv.unitex.process.list;
 
-import javax.swing.DefaultListModel;
+import java.util.BitSet;
+import java.util.List;
+
+import javax.swing.AbstractListModel;
 
 import fr.umlv.unitex.console.Couple;
 
@@ -29,28 +32,154 @@ import fr.umlv.unitex.console.Couple;
  * It is used for console message: when a message is just ended by \r, we
  * interprete it as a line that must erase the previous one.
  * 
+ * Lines are stored in a ring buffer of fixed capacity: once it is full, the
+ * oldest lines are dropped, so that huge program outputs cannot make the
+ * heap grow without limit.
+ * 
  * @author Sébastien Paumier
  */
-public class ProcessOutputListModel extends DefaultListModel {
+public class ProcessOutputListModel extends AbstractListModel<String> {
+
+	/**
+	 * Default maximum number of lines kept by a model
+	 */
+	public static final int DEFAULT_CAPACITY = 100000;
+
+	private final Couple[] lines;
+	/* Index in 'lines' of the oldest line */
+	private int first = 0;
+	private int size = 0;
+	/* Number of lines dropped by the current batch */
+	private int evicted;
 
 	boolean lastLineReplacable = false;
 
-	void addReplacableLine(Couple c) {
-		if (lastLineReplacable) {
-			replaceLastLine(c);
-		} else {
-			super.addElement(c);
+	public ProcessOutputListModel() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	public ProcessOutputListModel(int capacity) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("Invalid capacity: " + capacity);
 		}
-		lastLineReplacable = true;
+		lines = new Couple[capacity];
+	}
+
+	@Override
+	public synchronized int getSize() {
+		return size;
+	}
+
+	public synchronized int size() {
+		return size;
 	}
 
 	@Override
-	public void addElement(Object obj) {
-		throw new UnsupportedOperationException(
-				"You should not invoke this method. Please use addLine and replaceLastLine from ProcessOutputList");
+	public synchronized String getElementAt(int index) {
+		return get(index).getString();
+	}
+
+	public synchronized Couple get(int index) {
+		if (index < 0 || index >= size) {
+			throw new ArrayIndexOutOfBoundsException(index);
+		}
+		return lines[(first + index) % lines.length];
+	}
+
+	public void removeAllElements() {
+		final int oldSize;
+		synchronized (this) {
+			oldSize = size;
+			for (int i = 0; i < lines.length; i++) {
+				lines[i] = null;
+			}
+			first = 0;
+			size = 0;
+			lastLineReplacable = false;
+		}
+		if (oldSize > 0) {
+			fireIntervalRemoved(this, 0, oldSize - 1);
+		}
+	}
+
+	void addReplacableLine(Couple c) {
+		final int oldSize = beginBatch();
+		final boolean replaced = applyReplacableLine(c);
+		endBatch(oldSize, replaced);
 	}
 
 	void addLine(Couple c) {
+		final int oldSize = beginBatch();
+		final boolean replaced = applyLine(c);
+		endBatch(oldSize, replaced);
+	}
+
+	/**
+	 * Adds several lines at once, firing only one set of list events. The
+	 * result is the same as calling <code>addLine</code> or
+	 * <code>addReplacableLine</code> for each line, according to the bit of
+	 * <code>replacable</code> with the same index.
+	 */
+	void addLines(List<Couple> l, BitSet replacable) {
+		final int oldSize = beginBatch();
+		boolean replaced = false;
+		for (int i = 0; i < l.size(); i++) {
+			final boolean r;
+			if (replacable.get(i)) {
+				r = applyReplacableLine(l.get(i));
+			} else {
+				r = applyLine(l.get(i));
+			}
+			/* Only the first line can replace a line that existed before */
+			if (i == 0) {
+				replaced = r;
+			}
+		}
+		endBatch(oldSize, replaced);
+	}
+
+	private synchronized int beginBatch() {
+		evicted = 0;
+		return size;
+	}
+
+	private void endBatch(int oldSize, boolean replacedLastLine) {
+		final int newSize, dropped;
+		synchronized (this) {
+			newSize = size;
+			dropped = evicted;
+		}
+		if (newSize > oldSize) {
+			fireIntervalAdded(this, oldSize, newSize - 1);
+		}
+		if (dropped > 0) {
+			/* All the previous lines have moved */
+			if (oldSize > 0) {
+				fireContentsChanged(this, 0, oldSize - 1);
+			}
+		} else if (replacedLastLine && oldSize > 0) {
+			fireContentsChanged(this, oldSize - 1, oldSize - 1);
+		}
+	}
+
+	/**
+	 * @return true if the line has replaced the last one
+	 */
+	private synchronized boolean applyReplacableLine(Couple c) {
+		final boolean replaced = lastLineReplacable && size > 0;
+		if (replaced) {
+			replaceLastLine(c);
+		} else {
+			append(c);
+		}
+		lastLineReplacable = true;
+		return replaced;
+	}
+
+	/**
+	 * @return true if the line has replaced the last one
+	 */
+	private synchronized boolean applyLine(Couple c) {
 		if (c.getString().equals("")) {
 			/*
 			 * There is a special case for empty lines: an empty line printed
@@ -61,25 +190,33 @@ public class ProcessOutputListModel extends DefaultListModel {
 			if (lastLineReplacable) {
 				lastLineReplacable = false;
 			} else {
-				super.addElement(c);
+				append(c);
 			}
-			return;
+			return false;
 		}
-		if (lastLineReplacable) {
+		final boolean replaced = lastLineReplacable && size > 0;
+		if (replaced) {
 			replaceLastLine(c);
 		} else {
-			super.addElement(c);
+			append(c);
 		}
 		lastLineReplacable = false;
+		return replaced;
 	}
 
-	private void replaceLastLine(Couple c) {
-		final int size = size();
-		if (size == 0) {
-			super.addElement(c);
+	private void append(Couple c) {
+		if (size == lines.length) {
+			/* The buffer is full, we drop the oldest line */
+			lines[first] = c;
+			first = (first + 1) % lines.length;
+			evicted++;
 		} else {
-			set(size - 1, c);
-			fireContentsChanged(this, size - 1, size - 1);
+			lines[(first + size) % lines.length] = c;
+			size++;
 		}
 	}
+
+	private void replaceLastLine(Couple c) {
+		lines[(first + size - 1) % lines.length] = c;
+	}
 }
@@ -0,0 +1,454 @@
+/*
+ * Unitex
+ *
+ * Copyright (C) 2001-2021 Université Paris-Est Marne-la-Vallée <unitex@univ-mlv.fr>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA.
+ *
+ */
+package fr.umlv.unitex.stats;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.text.CollationKey;
+import java.text.Collator;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+import javax.swing.SwingWorker;
+import javax.swing.table.AbstractTableModel;
+
+import fr.umlv.unitex.io.Encoding;
+import fr.umlv.unitex.io.MappedFile;
+
+/**
+ * This is the base class of the models of the statistics tables. The file
+ * produced by Stats is mapped and only the positions of its lines are
+ * indexed, the first ones in the constructor and the others by a background
+ * worker, so that the table can be shown before the end of the scan. A row is
+ * only parsed when it is displayed, and the last parsed rows are cached.
+ *
+ * Sorting is done by a background worker that computes a permutation of the
+ * rows, so that the model gives its rows in the sorted order.
+ */
+public abstract class StatisticsTableModel extends AbstractTableModel {
+	private static final long serialVersionUID = 1L;
+	/* Number of lines indexed before the constructor returns */
+	private static final int FIRST_LINES = 1024;
+	/* Number of lines indexed by the worker between two publications */
+	private static final int BATCH_SIZE = 65536;
+	private static final int CACHE_SIZE = 512;
+
+	private FileInputStream stream;
+	private FileChannel channel;
+	private MappedFile mapped;
+	private Charset charset;
+	/* 1 for UTF8, 2 for UTF16 */
+	private int unitSize = 1;
+	private boolean bigEndian;
+	private long dataStart;
+	private long length;
+
+	/*
+	 * The positions of the starts of the lines that have been indexed, with a
+	 * lock on this model, since the worker adds lines while the EDT reads them
+	 */
+	private long[] starts = new long[0];
+	private int indexed = 0;
+	/* The number of rows known by the view, only used in the EDT */
+	private int rowCount = 0;
+	private SwingWorker<Void, Integer> scanner;
+
+	private SwingWorker<int[], Void> sorter;
+	private int[] permutation;
+	private int sortColumn = -1;
+	private boolean ascending = true;
+
+	private final Object[][] cachedValues = new Object[CACHE_SIZE][];
+	private final int[] cachedRows = new int[CACHE_SIZE];
+
+	StatisticsTableModel(File file) {
+		Arrays.fill(cachedRows, -1);
+		final Encoding encoding = Encoding.getEncoding(file);
+		if (encoding == null) {
+			return;
+		}
+		charset = Charset.forName(encoding.getCharset());
+		if (encoding == Encoding.UTF16LE || encoding == Encoding.UTF16BE) {
+			unitSize = 2;
+			bigEndian = (encoding == Encoding.UTF16BE);
+			/* We skip the BOM */
+			dataStart = 2;
+		}
+		try {
+			stream = new FileInputStream(file);
+			channel = stream.getChannel();
+			mapped = new MappedFile(channel);
+		} catch (final IOException e) {
+			e.printStackTrace();
+			close();
+			return;
+		}
+		/* For UTF16, we ignore a last incomplete char */
+		length = dataStart + ((mapped.length() - dataStart) / unitSize)
+				* unitSize;
+		final LineScan scan = new LineScan(dataStart, FIRST_LINES);
+		scan.next(mapped);
+		addLines(scan);
+		rowCount = indexed;
+		if (scan.pos == length) {
+			return;
+		}
+		final MappedFile m = mapped;
+		scanner = new SwingWorker<Void, Integer>() {
+			@SuppressWarnings("synthetic-access")
+			@Override
+			protected Void doInBackground() throws Exception {
+				final LineScan s = new LineScan(scan.pos, BATCH_SIZE);
+				while (s.pos < length && !isCancelled()) {
+					s.next(m);
+					publish(addLines(s));
+				}
+				return null;
+			}
+
+			@SuppressWarnings("synthetic-access")
+			@Override
+			protected void process(List<Integer> chunks) {
+				if (scanner != this) {
+					/* The model has been closed */
+					return;
+				}
+				final int oldSize = rowCount;
+				final int newSize = chunks.get(chunks.size() - 1);
+				if (newSize > oldSize) {
+					rowCount = newSize;
+					fireTableRowsInserted(oldSize, newSize - 1);
+				}
+			}
+
+			@SuppressWarnings("synthetic-access")
+			@Override
+			protected void done() {
+				if (scanner != this || isCancelled()) {
+					return;
+				}
+				scanner = null;
+				if (sortColumn != -1) {
+					/* The rows indexed since the last sort must be sorted too */
+					startSorting();
+				}
+			}
+		};
+		scanner.execute();
+	}
+
+	/**
+	 * This class finds the starts of the non empty lines, by batches.
+	 */
+	private class LineScan {
+		long pos;
+		final long[] found;
+		int n;
+
+		LineScan(long pos, int max) {
+			this.pos = pos;
+			this.found = new long[max];
+		}
+
+		@SuppressWarnings("synthetic-access")
+		void next(MappedFile m) {
+			n = 0;
+			while (pos < length && n < found.length) {
+				final long lineStart = pos;
+				boolean empty = true;
+				while (pos < length) {
+					final int c = getUnit(m, pos);
+					pos += unitSize;
+					if (c == '\n') {
+						break;
+					}
+					if (c != '\r') {
+						empty = false;
+					}
+				}
+				if (!empty) {
+					found[n++] = lineStart;
+				}
+			}
+		}
+	}
+
+	private int getUnit(MappedFile m, long pos) {
+		if (unitSize == 1) {
+			return m.get(pos);
+		}
+		final int a = 0xFF & m.get(pos);
+		final int b = 0xFF & m.get(pos + 1);
+		return bigEndian ? (a << 8 | b) : (b << 8 | a);
+	}
+
+	private synchronized int addLines(LineScan scan) {
+		if (indexed + scan.n > starts.length) {
+			starts = Arrays.copyOf(starts, Math.max(indexed + scan.n,
+					2 * starts.length));
+		}
+		System.arraycopy(scan.found, 0, starts, indexed, scan.n);
+		indexed += scan.n;
+		return indexed;
+	}
+
+	private synchronized long getStart(int line) {
+		return starts[line];
+	}
+
+	/**
+	 * Returns the line #i of the file, without its end of line. This method
+	 * can be called from any thread.
+	 */
+	private String readLine(MappedFile m, int i) {
+		final long start = getStart(i);
+		long end = start;
+		while (end < length && getUnit(m, end) != '\n') {
+			end += unitSize;
+		}
+		if (end > start && getUnit(m, end - unitSize) == '\r') {
+			end -= unitSize;
+		}
+		final byte[] bytes = new byte[(int) (end - start)];
+		m.get(start, bytes);
+		return new String(bytes, charset);
+	}
+
+	/**
+	 * Returns the values of the columns for the given line of the statistics
+	 * file, or <code>null</code> if the line is not valid.
+	 */
+	abstract Object[] parseLine(String line);
+
+	private Object[] parseRow(MappedFile m, int i) {
+		final String line = readLine(m, i);
+		Object[] values = parseLine(line);
+		if (values == null) {
+			/* We show invalid lines as they are */
+			values = new Object[getColumnCount()];
+			values[0] = line;
+		}
+		return values;
+	}
+
+	@Override
+	public int getRowCount() {
+		return rowCount;
+	}
+
+	@Override
+	public Object getValueAt(int rowIndex, int columnIndex) {
+		if (columnIndex < 0 || columnIndex >= getColumnCount()) {
+			throw new IllegalArgumentException("Invalid columnIndex: "
+					+ columnIndex);
+		}
+		if (mapped == null) {
+			/* The model has been closed */
+			return null;
+		}
+		final int row = (permutation != null && rowIndex < permutation.length) ? permutation[rowIndex]
+				: rowIndex;
+		final int slot = row % CACHE_SIZE;
+		if (cachedRows[slot] != row) {
+			cachedValues[slot] = parseRow(mapped, row);
+			cachedRows[slot] = row;
+		}
+		return cachedValues[slot][columnIndex];
+	}
+
+	public int getSortColumn() {
+		return sortColumn;
+	}
+
+	public boolean isSortAscending() {
+		return ascending;
+	}
+
+	/**
+	 * Sorts the rows on the given column, in ascending order, or in the
+	 * opposite order if the rows were already sorted on this column. The rows
+	 * keep their current order until the sort is done.
+	 */
+	public void sort(int column) {
+		if (mapped == null) {
+			return;
+		}
+		ascending = (column == sortColumn) ? !ascending : true;
+		sortColumn = column;
+		startSorting();
+	}
+
+	private void startSorting() {
+		if (sorter != null) {
+			sorter.cancel(true);
+		}
+		final int n = rowCount;
+		final int column = sortColumn;
+		final boolean asc = ascending;
+		final Class<?> type = getColumnClass(column);
+		final MappedFile m = mapped;
+		sorter = new SwingWorker<int[], Void>() {
+			@SuppressWarnings("synthetic-access")
+			@Override
+			protected int[] doInBackground() throws Exception {
+				if (type == String.class) {
+					/*
+					 * Collation keys are much faster to compare than strings
+					 * with a collator
+					 */
+					final Collator collator = Collator.getInstance();
+					final CollationKey[] keys = new CollationKey[n];
+					for (int i = 0; i < n && !isCancelled(); i++) {
+						final Object o = parseRow(m, i)[column];
+						keys[i] = collator.getCollationKey((o == null) ? ""
+								: (String) o);
+					}
+					return sortByString(keys, asc);
+				}
+				final long[] keys = new long[n];
+				for (int i = 0; i < n && !isCancelled(); i++) {
+					int key = 0;
+					final Object o = parseRow(m, i)[column];
+					if (o instanceof Integer) {
+						key = (Integer) o;
+					} else if (o instanceof Float) {
+						/* We turn the float into an int with the same order */
+						final int bits = Float.floatToIntBits((Float) o);
+						key = bits ^ ((bits >> 31) & 0x7FFFFFFF);
+					}
+					if (!asc) {
+						key = ~key;
+					}
+					/*
+					 * The row number in the low bits keeps the file order
+					 * between equal keys
+					 */
+					keys[i] = ((long) key << 32) | i;
+				}
+				Arrays.sort(keys);
+				final int[] result = new int[n];
+				for (int i = 0; i < n; i++) {
+					result[i] = (int) keys[i];
+				}
+				return result;
+			}
+
+			@SuppressWarnings("synthetic-access")
+			@Override
+			protected void done() {
+				if (sorter != this || isCancelled()) {
+					return;
+				}
+				sorter = null;
+				try {
+					permutation = get();
+				} catch (final InterruptedException e) {
+					return;
+				} catch (final ExecutionException e) {
+					e.printStackTrace();
+					return;
+				}
+				fireTableDataChanged();
+			}
+		};
+		sorter.execute();
+	}
+
+	/**
+	 * Returns the permutation that sorts the given keys, with a merge sort, so
+	 * that equal keys keep the file order.
+	 */
+	static int[] sortByString(final CollationKey[] keys, boolean asc) {
+		final int n = keys.length;
+		int[] a = new int[n];
+		int[] b = new int[n];
+		for (int i = 0; i < n; i++) {
+			a[i] = i;
+		}
+		final int sign = asc ? 1 : -1;
+		for (int width = 1; width < n; width *= 2) {
+			for (int lo = 0; lo < n; lo += 2 * width) {
+				final int mid = Math.min(n, lo + width);
+				final int hi = Math.min(n, lo + 2 * width);
+				int i = lo;
+				int j = mid;
+				int k = lo;
+				while (i < mid && j < hi) {
+					if (sign * keys[a[j]].compareTo(keys[a[i]]) < 0) {
+						b[k++] = a[j++];
+					} else {
+						b[k++] = a[i++];
+					}
+				}
+				while (i < mid) {
+					b[k++] = a[i++];
+				}
+				while (j < hi) {
+					b[k++] = a[j++];
+				}
+			}
+			final int[] tmp = a;
+			a = b;
+			b = tmp;
+		}
+		return a;
+	}
+
+	/**
+	 * Stops the workers and releases the mapped file, so that Stats can write
+	 * it again.
+	 */
+	public void close() {
+		if (scanner != null) {
+			scanner.cancel(true);
+			scanner = null;
+		}
+		if (sorter != null) {
+			sorter.cancel(true);
+			sorter = null;
+		}
+		if (mapped != null) {
+			mapped.release();
+			mapped = null;
+		}
+		if (channel != null) {
+			try {
+				channel.close();
+			} catch (final IOException e) {
+				e.printStackTrace();
+			}
+			channel = null;
+		}
+		if (stream != null) {
+			try {
+				stream.close();
+			} catch (final IOException e) {
+				e.printStackTrace();
+			}
+			stream = null;
+		}
+		System.gc();
+	}
+}
@@ -21,70 +21,50 @@
 package fr.umlv.unitex.stats;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.IOException;
-import java.util.ArrayList;
-import java.util.Scanner;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
-import javax.swing.table.AbstractTableModel;
-
 import fr.umlv.unitex.config.ConfigManager;
-import fr.umlv.unitex.io.Encoding;
 
-public class StatisticsTableModelMode0 extends AbstractTableModel {
+public class StatisticsTableModelMode0 extends StatisticsTableModel {
+	private static final Pattern pattern = Pattern
+			.compile("(.*)\t(.+)\t(.*)\t([0-9]+)");
 	private final String[] columnNames;
-
-	class Mode0Data {
-		String left;
-		String match;
-		String right;
-		int n;
-	}
-
-	private final ArrayList<Mode0Data> data = new ArrayList<Mode0Data>();
+	private final boolean rightToLeft;
 
 	public StatisticsTableModelMode0(File file) {
-		if (ConfigManager.getManager().isRightToLeftForText(null)) {
+		super(file);
+		rightToLeft = ConfigManager.getManager().isRightToLeftForText(null);
+		if (rightToLeft) {
 			columnNames = new String[] { "Right context", "Match",
 					"Left context", "Occurrences" };
 		} else {
 			columnNames = new String[] { "Left context", "Match",
 					"Right context", "Occurrences" };
 		}
+	}
+
+	@Override
+	Object[] parseLine(String line) {
+		final Matcher matcher = pattern.matcher(line);
+		if (!matcher.matches()) {
+			return null;
+		}
+		final Object[] values = new Object[4];
+		if (rightToLeft) {
+			values[0] = matcher.group(3);
+			values[2] = matcher.group(1);
+		} else {
+			values[0] = matcher.group(1);
+			values[2] = matcher.group(3);
+		}
+		values[1] = matcher.group(2);
 		try {
-			final FileInputStream stream = new FileInputStream(file);
-			final Scanner scanner = Encoding.getScanner(file);
-			final Pattern pattern = Pattern
-					.compile("(.*)\t(.+)\t(.*)\t([0-9]+)");
-			while (scanner.hasNextLine()) {
-				final String line = scanner.nextLine();
-				final Matcher matcher = pattern.matcher(line);
-				if (!matcher.matches()) {
-					throw new IOException("Invalid line in statistics file:\n"
-							+ line + "\n");
-				}
-				final Mode0Data d = new Mode0Data();
-				data.add(d);
-				if (ConfigManager.getManager().isRightToLeftForText(null)) {
-					d.left = matcher.group(3);
-					d.right = matcher.group(1);
-				} else {
-					d.left = matcher.group(1);
-					d.right = matcher.group(3);
-				}
-				d.match = matcher.group(2);
-				d.n = Integer.parseInt(matcher.group(4));
-			}
-			scanner.close();
-			stream.close();
-		} catch (final FileNotFoundException e) {
-			e.printStackTrace();
-		} catch (final IOException e) {
-			e.printStackTrace();
+			values[3] = Integer.parseInt(matcher.group(4));
+		} catch (final NumberFormatException e) {
+			return null;
 		}
+		return values;
 	}
 
 	@Override
@@ -92,29 +72,6 @@ public class StatisticsTableModelMode0 extends AbstractTableModel {
 		return columnNames.length;
 	}
 
-	@Override
-	public int getRowCount() {
-		return data.size();
-	}
-
-	@Override
-	public Object getValueAt(int rowIndex, int columnIndex) {
-		final Mode0Data d = data.get(rowIndex);
-		switch (columnIndex) {
-		case 0:
-			return d.left;
-		case 1:
-			return d.match;
-		case 2:
-			return d.right;
-		case 3:
-			return d.n;
-		default:
-			throw new IllegalArgumentException("Invalid columnIndex: "
-					+ columnIndex);
-		}
-	}
-
 	@Override
 	public String getColumnName(int column) {
 		return columnNames[column];
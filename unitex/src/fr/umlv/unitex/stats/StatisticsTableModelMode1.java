@@ -21,47 +21,26 @@
 package fr.umlv.unitex.stats;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.IOException;
-import java.util.ArrayList;
-import java.util.Scanner;
 
-import javax.swing.table.AbstractTableModel;
-
-import fr.umlv.unitex.io.Encoding;
-
-public class StatisticsTableModelMode1 extends AbstractTableModel {
+public class StatisticsTableModelMode1 extends StatisticsTableModel {
 	private final String[] columnNames = new String[] { "Collocate",
 			"Occurrences" };
 
-	class Mode1Data {
-		String match;
-		int n;
+	public StatisticsTableModelMode1(File file) {
+		super(file);
 	}
 
-	private final ArrayList<Mode1Data> data = new ArrayList<Mode1Data>();
-
-	public StatisticsTableModelMode1(File file) {
+	@Override
+	Object[] parseLine(String line) {
+		final int tab = line.lastIndexOf('\t');
+		if (tab == -1) {
+			return null;
+		}
 		try {
-			final FileInputStream stream = new FileInputStream(file);
-			final Scanner scanner = Encoding.getScanner(file);
-			scanner.useDelimiter("\r\n|\t");
-			while (scanner.hasNext()) {
-				final Mode1Data d = new Mode1Data();
-				d.match = scanner.next();
-				if (!scanner.hasNextInt()) {
-					throw new IOException();
-				}
-				d.n = scanner.nextInt();
-				data.add(d);
-			}
-			scanner.close();
-			stream.close();
-		} catch (final FileNotFoundException e) {
-			e.printStackTrace();
-		} catch (final IOException e) {
-			e.printStackTrace();
+			return new Object[] { line.substring(0, tab),
+					Integer.parseInt(line.substring(tab + 1)) };
+		} catch (final NumberFormatException e) {
+			return null;
 		}
 	}
 
@@ -70,25 +49,6 @@ public class StatisticsTableModelMode1 extends AbstractTableModel {
 		return columnNames.length;
 	}
 
-	@Override
-	public int getRowCount() {
-		return data.size();
-	}
-
-	@Override
-	public Object getValueAt(int rowIndex, int columnIndex) {
-		final Mode1Data d = data.get(rowIndex);
-		switch (columnIndex) {
-		case 0:
-			return d.match;
-		case 1:
-			return d.n;
-		default:
-			throw new IllegalArgumentException("Invalid columnIndex: "
-					+ columnIndex);
-		}
-	}
-
 	@Override
 	public String getColumnName(int column) {
 		return columnNames[column];
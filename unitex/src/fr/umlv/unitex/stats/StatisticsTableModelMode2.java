@@ -21,57 +21,30 @@
 package fr.umlv.unitex.stats;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.IOException;
-import java.util.ArrayList;
-import java.util.Scanner;
 
-import javax.swing.table.AbstractTableModel;
-
-import fr.umlv.unitex.io.Encoding;
-
-public class StatisticsTableModelMode2 extends AbstractTableModel {
+public class StatisticsTableModelMode2 extends StatisticsTableModel {
 	private final String[] columnNames = new String[] { "Collocate",
 			"Occurrences in corpus", "Occurrence in match context", "z-score" };
 
-	class Mode2Data {
-		String match;
-		int n;
-		int n2;
-		float z;
+	public StatisticsTableModelMode2(File file) {
+		super(file);
 	}
 
-	private final ArrayList<Mode2Data> data = new ArrayList<Mode2Data>();
-
-	public StatisticsTableModelMode2(File file) {
+	@Override
+	Object[] parseLine(String line) {
+		final int tab3 = line.lastIndexOf('\t');
+		final int tab2 = (tab3 <= 0) ? -1 : line.lastIndexOf('\t', tab3 - 1);
+		final int tab1 = (tab2 <= 0) ? -1 : line.lastIndexOf('\t', tab2 - 1);
+		if (tab1 == -1) {
+			return null;
+		}
 		try {
-			final FileInputStream stream = new FileInputStream(file);
-			final Scanner scanner = Encoding.getScanner(file);
-			scanner.useDelimiter("\r\n|\t");
-			while (scanner.hasNext()) {
-				final Mode2Data d = new Mode2Data();
-				d.match = scanner.next();
-				if (!scanner.hasNextInt()) {
-					throw new IOException();
-				}
-				d.n = scanner.nextInt();
-				if (!scanner.hasNextInt()) {
-					throw new IOException();
-				}
-				d.n2 = scanner.nextInt();
-				if (!scanner.hasNextFloat()) {
-					throw new IOException();
-				}
-				d.z = scanner.nextFloat();
-				data.add(d);
-			}
-			scanner.close();
-			stream.close();
-		} catch (final FileNotFoundException e) {
-			e.printStackTrace();
-		} catch (final IOException e) {
-			e.printStackTrace();
+			return new Object[] { line.substring(0, tab1),
+					Integer.parseInt(line.substring(tab1 + 1, tab2)),
+					Integer.parseInt(line.substring(tab2 + 1, tab3)),
+					Float.parseFloat(line.substring(tab3 + 1)) };
+		} catch (final NumberFormatException e) {
+			return null;
 		}
 	}
 
@@ -80,29 +53,6 @@ public class StatisticsTableModelMode2 extends AbstractTableModel {
 		return columnNames.length;
 	}
 
-	@Override
-	public int getRowCount() {
-		return data.size();
-	}
-
-	@Override
-	public Object getValueAt(int rowIndex, int columnIndex) {
-		final Mode2Data d = data.get(rowIndex);
-		switch (columnIndex) {
-		case 0:
-			return d.match;
-		case 1:
-			return d.n;
-		case 2:
-			return d.n2;
-		case 3:
-			return d.z;
-		default:
-			throw new IllegalArgumentException("Invalid columnIndex: "
-					+ columnIndex);
-		}
-	}
-
 	@Override
 	public String getColumnName(int column) {
 		return columnNames[column];
@@ -20,13 +20,33 @@
  */
 package fr.umlv.unitex.svn;
 
+import java.awt.EventQueue;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.io.File;
-import java.io.FilenameFilter;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.regex.Pattern;
 
 import javax.swing.DefaultListModel;
 import javax.swing.ListModel;
+import javax.swing.SwingWorker;
 import javax.swing.Timer;
 
 import fr.umlv.unitex.common.project.manager.GlobalProjectManager;
@@ -34,7 +54,19 @@ import fr.umlv.unitex.config.Config;
 import fr.umlv.unitex.config.ConfigManager;
 import fr.umlv.unitex.frames.InternalFrameManager;
 
+/**
+ * This class looks for svn conflicts on graphs, that is to say .grf files
+ * with two .rNNNN files next to them.
+ * 
+ * Once started, the monitor scans the monitored directories once in
+ * background, and then it watches them, so that a directory is only checked
+ * again when a .grf, .rNNNN or .mine file is created or deleted in it. The
+ * list of conflicts is updated incrementally in the EDT.
+ */
 public class SvnMonitor {
+	/* Time given to svn to create all the files of a conflict */
+	private static final long EVENT_DELAY = 200;
+	private static final Pattern REVISION = Pattern.compile("\\.grf\\.r[0-9]+$");
 
 	private final File rootDir;
 	private final boolean unitexMode;
@@ -50,19 +82,231 @@ public class SvnMonitor {
 		this.unitexMode = unitexMode;
 	}
 
-	final DefaultListModel svnConflictModel = new DefaultListModel();
+	final DefaultListModel<File> svnConflictModel = new DefaultListModel<File>();
+	/* The current watcher, only used in the EDT */
+	private Watcher watcher;
+	/*
+	 * This timer does not look for conflicts. It just checks that the watched
+	 * directories are still the ones to monitor, since they depend on the
+	 * configuration
+	 */
 	private final Timer timer = new Timer(5000, new ActionListener() {
+		@SuppressWarnings("synthetic-access")
 		@Override
 		public void actionPerformed(ActionEvent e) {
-			if (ConfigManager.getManager().svnMonitoring(null)) {
-				monitor(true);
+			if (!ConfigManager.getManager().svnMonitoring(null)) {
+				stopWatching();
+				return;
+			}
+			final ArrayList<File> roots = getRoots();
+			if (watcher == null || !watcher.roots.equals(roots)) {
+				stopWatching();
+				try {
+					watcher = new Watcher(roots);
+				} catch (final IOException e1) {
+					e1.printStackTrace();
+					return;
+				}
+				watcher.start();
 			}
 		}
 	});
 
-	public void monitor(boolean autoMonitoring) {
+	ArrayList<File> getRoots() {
+		final ArrayList<File> roots = new ArrayList<File>();
+		if (unitexMode) {
+			addRoot(roots, Config.getCurrentGraphDir());
+			addRoot(roots, ConfigManager.getManager().getGraphRepositoryPath(
+					null, null));
+		} else {
+			addRoot(roots, rootDir);
+		}
+		return roots;
+	}
+
+	private static void addRoot(ArrayList<File> roots, File dir) {
+		if (dir != null && dir.isDirectory() && !roots.contains(dir)) {
+			roots.add(dir);
+		}
+	}
+
+	/**
+	 * Looks for conflicts in all the monitored directories in background,
+	 * and then shows the conflict frame if <code>autoMonitoring</code> is
+	 * false or if there are conflicts.
+	 */
+	public void monitor(final boolean autoMonitoring) {
+		final ArrayList<File> roots = getRoots();
+		new SwingWorker<List<File>, Void>() {
+			@SuppressWarnings("synthetic-access")
+			@Override
+			protected List<File> doInBackground() throws Exception {
+				return scan(roots, null);
+			}
+
+			@SuppressWarnings("synthetic-access")
+			@Override
+			protected void done() {
+				List<File> conflicts;
+				try {
+					conflicts = get();
+				} catch (final Exception e) {
+					e.printStackTrace();
+					return;
+				}
+				setConflicts(conflicts);
+				if (!autoMonitoring || svnConflictModel.size() > 0) {
+					showConflicts();
+				}
+			}
+		}.execute();
+	}
+
+	/**
+	 * Scans the given directories in parallel, and returns the graphs in
+	 * conflict. If <code>registry</code> is not null, the scanned directories
+	 * are registered to it.
+	 */
+	List<File> scan(List<File> roots, WatcherRegistry registry) {
+		final ConcurrentLinkedQueue<File> conflicts = new ConcurrentLinkedQueue<File>();
+		final ArrayList<ScanTask> tasks = new ArrayList<ScanTask>();
+		for (final File root : roots) {
+			tasks.add(new ScanTask(root, conflicts, registry));
+		}
+		ForkJoinPool.commonPool().invoke(new RecursiveAction() {
+			@Override
+			protected void compute() {
+				invokeAll(tasks);
+			}
+		});
+		final ArrayList<File> result = new ArrayList<File>(conflicts);
+		for (final File f : result) {
+			/* This restores the graph from the .mine file if needed */
+			getConflict(f);
+		}
+		return result;
+	}
+
+	private static SvnConflict getConflict(File f) {
+		try {
+			return SvnConflict.getConflict(f);
+		} catch (final IllegalStateException e) {
+			/* svn may not have created all the files yet */
+			return null;
+		}
+	}
+
+	/**
+	 * The interface used by the scan to register the directories to watch.
+	 */
+	interface WatcherRegistry {
+		void register(File dir);
+	}
+
+	private class ScanTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final File dir;
+		private final ConcurrentLinkedQueue<File> conflicts;
+		private final WatcherRegistry registry;
+
+		ScanTask(File dir, ConcurrentLinkedQueue<File> conflicts,
+				WatcherRegistry registry) {
+			this.dir = dir;
+			this.conflicts = conflicts;
+			this.registry = registry;
+		}
+
+		@SuppressWarnings("synthetic-access")
+		@Override
+		protected void compute() {
+			if (unitexMode && !new File(dir, ".svn").exists()) {
+				/*
+				 * If the directory is not versioned with svn, there is nothing
+				 * to do. Note that we don't apply this criterion in Gramlab,
+				 * since we know for sure that we are in a versioned directory.
+				 */
+				return;
+			}
+			if (registry != null) {
+				registry.register(dir);
+			}
+			final String[] names = dir.list();
+			if (names == null) {
+				return;
+			}
+			conflicts.addAll(getConflicts(dir, names, null));
+			final ArrayList<ScanTask> subTasks = new ArrayList<ScanTask>();
+			for (final String name : names) {
+				if (name.equals(".svn") || isConflictFile(name)) {
+					continue;
+				}
+				final File f = new File(dir, name);
+				if (f.isDirectory()) {
+					subTasks.add(new ScanTask(f, conflicts, registry));
+				}
+			}
+			invokeAll(subTasks);
+		}
+	}
+
+	/**
+	 * Returns the name of the graph concerned by the given file name, or
+	 * <code>null</code> if it is not a .grf, .rNNNN or .mine file.
+	 */
+	static String getGraphName(String name) {
+		if (name.endsWith(".grf")) {
+			return name;
+		}
+		if (name.endsWith(".grf.mine")) {
+			return name.substring(0, name.length() - 5);
+		}
+		if (REVISION.matcher(name).find()) {
+			return name.substring(0, name.lastIndexOf('.'));
+		}
+		return null;
+	}
+
+	private static boolean isConflictFile(String name) {
+		return getGraphName(name) != null;
+	}
+
+	/**
+	 * Returns the graphs of the given directory that are in conflict, among
+	 * the given graph names or among all graphs if <code>graphs</code> is
+	 * null. <code>names</code> is the content of the directory.
+	 */
+	static List<File> getConflicts(File dir, String[] names,
+			Set<String> graphs) {
+		final HashMap<String, Integer> revisions = new HashMap<String, Integer>();
+		final HashSet<String> existing = new HashSet<String>();
+		for (final String name : names) {
+			if (name.endsWith(".grf")) {
+				existing.add(name);
+			} else if (REVISION.matcher(name).find()) {
+				final String grf = name.substring(0, name.lastIndexOf('.'));
+				final Integer n = revisions.get(grf);
+				revisions.put(grf, (n == null) ? 1 : n + 1);
+			}
+		}
+		final ArrayList<File> result = new ArrayList<File>();
+		for (final Map.Entry<String, Integer> e : revisions.entrySet()) {
+			final String grf = e.getKey();
+			if (e.getValue() == 2 && existing.contains(grf)
+					&& (graphs == null || graphs.contains(grf))) {
+				result.add(new File(dir, grf));
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Replaces the content of the conflict list, only adding and removing
+	 * the graphs that changed.
+	 */
+	void setConflicts(List<File> conflicts) {
+		final HashSet<File> set = new HashSet<File>(conflicts);
 		for (int i = svnConflictModel.size() - 1; i >= 0; i--) {
-			if (SvnConflict.getConflict((File) svnConflictModel.get(i)) == null) {
+			if (!set.contains(svnConflictModel.get(i))) {
 				/*
 				 * If a previously reported conflict has been resolved, we
 				 * remove it from our list
@@ -70,72 +314,237 @@ public class SvnMonitor {
 				svnConflictModel.remove(i);
 			}
 		}
-		if (unitexMode) {
-			monitor(Config.getCurrentGraphDir());
-			monitor(ConfigManager.getManager().getGraphRepositoryPath(null,
-					null));
-			if (!autoMonitoring || svnConflictModel.size() > 0) {
-				GlobalProjectManager.search(null)
-						.getFrameManagerAs(InternalFrameManager.class)
-						.showSvnConflictsFrame(this);
-			}
-		} else {
-			monitor(rootDir);
-			if (!autoMonitoring || svnConflictModel.size() > 0) {
-				GlobalProjectManager.search(null)
-						.getFrameManagerAs(InternalFrameManager.class)
-						.showSvnConflictsFrame(this);
+		for (final File f : conflicts) {
+			if (!svnConflictModel.contains(f)) {
+				svnConflictModel.addElement(f);
 			}
 		}
 	}
 
+	void showConflicts() {
+		GlobalProjectManager.search(null)
+				.getFrameManagerAs(InternalFrameManager.class)
+				.showSvnConflictsFrame(this);
+	}
+
 	/**
-	 * Looks recursively for conflicting grfs in the given directory and reports
-	 * them in the given list. We use a list in order to avoid duplicate
-	 * reports.
+	 * This class watches the monitored directories with a
+	 * <code>WatchService</code> in its own thread.
 	 */
-	protected void monitor(File dir) {
-		if (dir == null || !dir.exists())
-			return;
-		if (!dir.isDirectory()) {
-			throw new IllegalArgumentException("monitor() expects a directory");
-		}
-		final File svn = new File(dir, ".svn");
-		if (unitexMode && !svn.exists()) {
-			/*
-			 * If the directory is not versioned with svn, there is nothing to
-			 * do. Note that we don't apply this criterion in Gramlab, since we
-			 * know for sure that we are in a versioned directory.
-			 */
-			return;
-		}
-		/* We look for conflicts */
-		final File[] files = dir.listFiles(new FilenameFilter() {
-			@Override
-			public boolean accept(@SuppressWarnings("hiding") File dir, String s) {
-				return s.endsWith(".grf");
+	private class Watcher implements Runnable, WatcherRegistry {
+		final ArrayList<File> roots;
+		private final WatchService service;
+		private final ConcurrentHashMap<WatchKey, File> dirs = new ConcurrentHashMap<WatchKey, File>();
+		private volatile boolean closed = false;
+
+		Watcher(ArrayList<File> roots) throws IOException {
+			this.roots = roots;
+			this.service = FileSystems.getDefault().newWatchService();
+		}
+
+		void start() {
+			final Thread thread = new Thread(this, "SVN monitor");
+			thread.setDaemon(true);
+			thread.start();
+		}
+
+		void close() {
+			closed = true;
+			try {
+				service.close();
+			} catch (final IOException e) {
+				e.printStackTrace();
 			}
-		});
-		for (final File candidate : files) {
-			if (SvnConflict.getConflict(candidate) != null
-					&& !svnConflictModel.contains(candidate)) {
-				svnConflictModel.addElement(candidate);
+		}
+
+		@Override
+		public void register(File dir) {
+			try {
+				final WatchKey key = dir.toPath().register(service,
+						StandardWatchEventKinds.ENTRY_CREATE,
+						StandardWatchEventKinds.ENTRY_DELETE);
+				dirs.put(key, dir);
+			} catch (final IOException e) {
+				/* The directory may have been deleted meanwhile */
+			} catch (final ClosedWatchServiceException e) {
+				/* The watcher has been stopped */
 			}
 		}
-		/* And we explore recursively directories */
-		final File[] dirs = dir.listFiles(new FilenameFilter() {
-			@Override
-			public boolean accept(File d, String s) {
-				final File f = new File(d, s);
-				return f.isDirectory();
+
+		@SuppressWarnings("synthetic-access")
+		@Override
+		public void run() {
+			fullScan(true);
+			try {
+				while (!closed) {
+					final HashMap<File, HashSet<String>> changes = new HashMap<File, HashSet<String>>();
+					final ArrayList<File> newDirs = new ArrayList<File>();
+					final ArrayList<File> removed = new ArrayList<File>();
+					boolean overflow = processKey(service.take(), changes,
+							newDirs, removed);
+					/* We wait a bit, so that all files of a conflict are there */
+					Thread.sleep(EVENT_DELAY);
+					WatchKey key;
+					while ((key = service.poll()) != null) {
+						overflow = processKey(key, changes, newDirs, removed)
+								|| overflow;
+					}
+					if (closed) {
+						return;
+					}
+					if (overflow) {
+						fullScan(false);
+						continue;
+					}
+					update(changes, newDirs, removed);
+				}
+			} catch (final ClosedWatchServiceException e) {
+				/* The watcher has been stopped */
+			} catch (final InterruptedException e) {
+				/* */
 			}
-		});
-		for (final File d : dirs) {
-			monitor(d);
+		}
+
+		/**
+		 * Collects the events of the given key, and returns true if some
+		 * events have been lost.
+		 */
+		private boolean processKey(WatchKey key,
+				HashMap<File, HashSet<String>> changes, ArrayList<File> newDirs,
+				ArrayList<File> removed) {
+			final File dir = dirs.get(key);
+			boolean overflow = false;
+			for (final WatchEvent<?> event : key.pollEvents()) {
+				if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+					overflow = true;
+					continue;
+				}
+				if (dir == null) {
+					continue;
+				}
+				final String name = ((Path) event.context()).toString();
+				final String grf = getGraphName(name);
+				if (grf != null) {
+					HashSet<String> graphs = changes.get(dir);
+					if (graphs == null) {
+						graphs = new HashSet<String>();
+						changes.put(dir, graphs);
+					}
+					graphs.add(grf);
+				} else if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE) {
+					final File f = new File(dir, name);
+					if (!name.equals(".svn") && f.isDirectory()) {
+						newDirs.add(f);
+					}
+				} else {
+					removed.add(new File(dir, name));
+				}
+			}
+			if (!key.reset()) {
+				/* The directory does not exist anymore */
+				dirs.remove(key);
+			}
+			return overflow;
+		}
+
+		@SuppressWarnings("synthetic-access")
+		private void fullScan(final boolean initial) {
+			final List<File> conflicts = scan(roots, this);
+			if (closed) {
+				return;
+			}
+			EventQueue.invokeLater(new Runnable() {
+				@Override
+				public void run() {
+					if (watcher != Watcher.this) {
+						return;
+					}
+					final int before = svnConflictModel.size();
+					setConflicts(conflicts);
+					if (svnConflictModel.size() > 0
+							&& (initial || svnConflictModel.size() > before)) {
+						showConflicts();
+					}
+				}
+			});
+		}
+
+		/**
+		 * Checks again the graphs concerned by the events, and scans the new
+		 * directories.
+		 */
+		@SuppressWarnings("synthetic-access")
+		private void update(HashMap<File, HashSet<String>> changes,
+				ArrayList<File> newDirs, final ArrayList<File> removed) {
+			final ArrayList<File> checked = new ArrayList<File>();
+			final ArrayList<File> conflicts = new ArrayList<File>();
+			for (final Map.Entry<File, HashSet<String>> e : changes.entrySet()) {
+				final File dir = e.getKey();
+				final String[] names = dir.list();
+				for (final String grf : e.getValue()) {
+					checked.add(new File(dir, grf));
+				}
+				if (names != null) {
+					conflicts.addAll(getConflicts(dir, names, e.getValue()));
+				}
+			}
+			if (!newDirs.isEmpty()) {
+				conflicts.addAll(scan(newDirs, this));
+			}
+			for (final File f : conflicts) {
+				getConflict(f);
+			}
+			if (closed) {
+				return;
+			}
+			EventQueue.invokeLater(new Runnable() {
+				@Override
+				public void run() {
+					if (watcher != Watcher.this) {
+						return;
+					}
+					boolean added = false;
+					for (final File f : checked) {
+						if (!conflicts.contains(f)) {
+							svnConflictModel.removeElement(f);
+						}
+					}
+					for (final File d : removed) {
+						/* We forget the conflicts of a deleted directory */
+						final String prefix = d.getPath() + File.separator;
+						for (int i = svnConflictModel.size() - 1; i >= 0; i--) {
+							if (svnConflictModel.get(i).getPath()
+									.startsWith(prefix)) {
+								svnConflictModel.remove(i);
+							}
+						}
+					}
+					for (final File f : conflicts) {
+						if (!svnConflictModel.contains(f)) {
+							svnConflictModel.addElement(f);
+							added = true;
+						}
+					}
+					if (added) {
+						showConflicts();
+					}
+				}
+			});
+		}
+	}
+
+	void stopWatching() {
+		if (watcher != null) {
+			watcher.close();
+			watcher = null;
 		}
 	}
 
+	/**
+	 * Starts watching the monitored directories.
+	 */
 	public void start() {
+		timer.setInitialDelay(0);
 		timer.start();
 	}
 
@@ -143,7 +552,7 @@ public class SvnMonitor {
 		svnConflictModel.removeElement(grf);
 	}
 
-	public ListModel getSvnConflictModel() {
+	public ListModel<File> getSvnConflictModel() {
 		return svnConflictModel;
 	}
 }
@@ -175,14 +175,14 @@ public class BigTextArea extends JPanel {
 				area.setText("");
 			return;
 		}
-		final int start = x.getStartInChars();
+		final long start = x.getStartInChars();
 		for (int i = value; i <= limit; i++) {
 			builder.append(model.getElementAt(i));
 			builder.append('\r');
 			builder.append('\n');
 		}
 		final String content = builder.toString();
-		final int end = model.getInterval(limit).getEndInChars();
+		final long end = model.getInterval(limit).getEndInChars();
 		try {
 			final int result = compareIntervals(selection, start, end);
 			switch (result) {
@@ -193,19 +193,19 @@ public class BigTextArea extends JPanel {
 				document.insertString(0, content, highlighted);
 				break;
 			case PREFIX_SELECTED:
-				final int a = (selection.getEndInChars() - start + 1);
+				final int a = (int) (selection.getEndInChars() - start + 1);
 				document.insertString(0, content.substring(0, a), highlighted);
 				document.insertString(a, content.substring(a), normal);
 				break;
 			case INFIX_SELECTED:
-				final int b = (selection.getStartInChars() - start);
-				final int c = (selection.getEndInChars() - start + 1);
+				final int b = (int) (selection.getStartInChars() - start);
+				final int c = (int) (selection.getEndInChars() - start + 1);
 				document.insertString(0, content.substring(0, b), normal);
 				document.insertString(b, content.substring(b, c), highlighted);
 				document.insertString(c, content.substring(c), normal);
 				break;
 			case SUFFIX_SELECTED:
-				final int d = (selection.getStartInChars() - start);
+				final int d = (int) (selection.getStartInChars() - start);
 				document.insertString(0, content.substring(0, d), normal);
 				document.insertString(d, content.substring(d), highlighted);
 				break;
@@ -216,11 +216,11 @@ public class BigTextArea extends JPanel {
 		}
 	}
 
-	private int compareIntervals(Interval selection, int start, int end) {
+	private int compareIntervals(Interval selection, long start, long end) {
 		if (selection == null)
 			return NOTHING_SELECTED;
-		final int selectionStart = selection.getStartInChars();
-		final int selectionEnd = selection.getEndInChars();
+		final long selectionStart = selection.getStartInChars();
+		final long selectionEnd = selection.getEndInChars();
 		if (selectionStart > end || selectionEnd < start)
 			return NOTHING_SELECTED;
 		if (selectionStart <= start && selectionEnd >= end)
@@ -20,32 +20,36 @@
  */
 package fr.umlv.unitex.text;
 
+/**
+ * This class represents a part of a text file, both in bytes and in chars.
+ * Offsets are long so that files larger than 2 GB can be described.
+ */
 public class Interval {
-	private final int startInBytes;
-	private final int endInBytes;
-	private final int startInChars;
-	private final int endInChars;
+	private final long startInBytes;
+	private final long endInBytes;
+	private final long startInChars;
+	private final long endInChars;
 
-	public Interval(int s, int e, int s2, int e2) {
+	public Interval(long s, long e, long s2, long e2) {
 		startInBytes = s;
 		endInBytes = e;
 		startInChars = s2;
 		endInChars = e2;
 	}
 
-	public int getStartInBytes() {
+	public long getStartInBytes() {
 		return startInBytes;
 	}
 
-	public int getEndInBytes() {
+	public long getEndInBytes() {
 		return endInBytes;
 	}
 
-	public int getStartInChars() {
+	public long getStartInChars() {
 		return startInChars;
 	}
 
-	public int getEndInChars() {
+	public long getEndInChars() {
 		return endInChars;
 	}
 }
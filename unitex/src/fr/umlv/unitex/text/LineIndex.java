@@ -0,0 +1,193 @@
+/*
+ * Unitex
+ *
+ * Copyright (C) 2001-2021 Université Paris-Est Marne-la-Vallée <unitex@univ-mlv.fr>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA.
+ *
+ */
+package fr.umlv.unitex.text;
+
+import java.util.Arrays;
+
+/**
+ * This class stores the positions of the lines of a text file, in bytes and in
+ * chars, without one object per line. For each line, we keep a single long
+ * packing its length in bytes (high 32 bits) and in chars (low 32 bits). The
+ * length of a line includes its new line, if any.
+ *
+ * When lines are contiguous, the absolute positions are only stored for one
+ * line every <code>SAMPLE</code> lines, and the others are obtained by adding
+ * lengths. When lines are not contiguous, like when only the lines matching a
+ * filter are kept, the absolute positions of all lines are stored.
+ *
+ * All methods are synchronized, since the index is filled by a background
+ * thread while the event dispatch thread reads it.
+ */
+class LineIndex {
+	private static final int SAMPLE_SHIFT = 6;
+	private static final int SAMPLE = 1 << SAMPLE_SHIFT;
+
+	private final boolean contiguous;
+	private int size;
+	private long[] lengths = new long[1024];
+	/* Positions of the lines 0, SAMPLE, 2*SAMPLE, ... or of all lines */
+	private long[] startsInBytes = new long[16];
+	private long[] startsInChars = new long[16];
+	/* Where the next line starts, if lines are contiguous */
+	private long nextStartInBytes;
+	private long nextStartInChars;
+
+	/**
+	 * Creates an index for contiguous lines, the first one starting at the
+	 * given positions, or for arbitrary lines if <code>contiguous</code> is
+	 * false.
+	 */
+	LineIndex(boolean contiguous, long startInBytes, long startInChars) {
+		this.contiguous = contiguous;
+		nextStartInBytes = startInBytes;
+		nextStartInChars = startInChars;
+	}
+
+	static long pack(long lengthInBytes, long lengthInChars) {
+		if (lengthInBytes > 0xFFFFFFFFL) {
+			throw new IllegalArgumentException(
+					"Lines larger than 4 GB are not supported");
+		}
+		return (lengthInBytes << 32) | lengthInChars;
+	}
+
+	static long bytes(long packed) {
+		return packed >>> 32;
+	}
+
+	static long chars(long packed) {
+		return packed & 0xFFFFFFFFL;
+	}
+
+	/**
+	 * Adds the given lines, described by their packed lengths, after the last
+	 * line of this contiguous index.
+	 */
+	synchronized void addAll(long[] packed, int n) {
+		for (int i = 0; i < n; i++) {
+			add(nextStartInBytes, nextStartInChars, packed[i]);
+		}
+	}
+
+	/**
+	 * Adds a line. For a contiguous index, the line must start where the
+	 * previous one ended.
+	 */
+	synchronized void add(long startInBytes, long startInChars, long packed) {
+		if (size == lengths.length) {
+			lengths = Arrays.copyOf(lengths, 2 * size);
+		}
+		if (!contiguous || (size & (SAMPLE - 1)) == 0) {
+			final int n = contiguous ? (size >> SAMPLE_SHIFT) : size;
+			if (n == startsInBytes.length) {
+				startsInBytes = Arrays.copyOf(startsInBytes, 2 * n);
+				startsInChars = Arrays.copyOf(startsInChars, 2 * n);
+			}
+			startsInBytes[n] = startInBytes;
+			startsInChars[n] = startInChars;
+		}
+		lengths[size++] = packed;
+		nextStartInBytes = startInBytes + bytes(packed);
+		nextStartInChars = startInChars + chars(packed);
+	}
+
+	synchronized int size() {
+		return size;
+	}
+
+	synchronized long getLength(int i) {
+		return lengths[i];
+	}
+
+	synchronized long getStartInBytes(int i) {
+		if (!contiguous) {
+			return startsInBytes[i];
+		}
+		long res = startsInBytes[i >> SAMPLE_SHIFT];
+		for (int j = i & ~(SAMPLE - 1); j < i; j++) {
+			res += bytes(lengths[j]);
+		}
+		return res;
+	}
+
+	synchronized long getStartInChars(int i) {
+		if (!contiguous) {
+			return startsInChars[i];
+		}
+		long res = startsInChars[i >> SAMPLE_SHIFT];
+		for (int j = i & ~(SAMPLE - 1); j < i; j++) {
+			res += chars(lengths[j]);
+		}
+		return res;
+	}
+
+	/**
+	 * Returns the number of the line that contains the given char position,
+	 * or -1 if there is none.
+	 */
+	synchronized int getLineContainingPositionInChars(long position) {
+		if (size == 0 || position < 0) {
+			return -1;
+		}
+		/* We look for the last line that starts before the position */
+		int min = 0;
+		int max = size - 1;
+		if (contiguous) {
+			/* We first look for the right sample */
+			int a = 0;
+			int b = (size - 1) >> SAMPLE_SHIFT;
+			while (a < b) {
+				final int middle = (a + b + 1) >>> 1;
+				if (startsInChars[middle] <= position) {
+					a = middle;
+				} else {
+					b = middle - 1;
+				}
+			}
+			if (startsInChars[a] > position) {
+				return -1;
+			}
+			long start = startsInChars[a];
+			final int last = Math.min(size - 1, ((a + 1) << SAMPLE_SHIFT) - 1);
+			for (int i = a << SAMPLE_SHIFT; i <= last; i++) {
+				final long end = start + chars(lengths[i]);
+				if (position < end) {
+					return i;
+				}
+				start = end;
+			}
+			return -1;
+		}
+		while (min < max) {
+			final int middle = (min + max + 1) >>> 1;
+			if (startsInChars[middle] <= position) {
+				min = middle;
+			} else {
+				max = middle - 1;
+			}
+		}
+		if (position >= startsInChars[min]
+				&& position < startsInChars[min] + chars(lengths[min])) {
+			return min;
+		}
+		return -1;
+	}
+}
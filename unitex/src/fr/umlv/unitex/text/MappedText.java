@@ -0,0 +1,103 @@
+/*
+ * Unitex
+ *
+ * Copyright (C) 2001-2021 Université Paris-Est Marne-la-Vallée <unitex@univ-mlv.fr>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA.
+ *
+ */
+package fr.umlv.unitex.text;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import fr.umlv.unitex.io.Encoding;
+import fr.umlv.unitex.io.MappedFile;
+
+/**
+ * This class maps a text file of any size as a <code>MappedFile</code>.
+ * Positions are given in bytes from the start of the text, that is to say
+ * after the BOM for UTF16 encodings.
+ *
+ * Each segment overlaps the next one by a few bytes, so that a char that
+ * starts in a segment can always be read from it.
+ */
+class MappedText {
+	/* Large enough for the longest UTF8 sequence */
+	private static final int OVERLAP = 8;
+
+	private final Encoding encoding;
+	private final MappedFile file;
+
+	MappedText(FileChannel channel, Encoding encoding) throws IOException {
+		this.encoding = encoding;
+		/* We skip the BOM for UTF16 encodings */
+		final long dataStart = (encoding == Encoding.UTF16LE || encoding == Encoding.UTF16BE) ? 2
+				: 0;
+		file = new MappedFile(channel, dataStart, OVERLAP);
+	}
+
+	Encoding getEncoding() {
+		return encoding;
+	}
+
+	/**
+	 * Returns the length of the text in bytes.
+	 */
+	long length() {
+		return file.length();
+	}
+
+	/**
+	 * Returns the segment #i. The caller must use absolute reads or a
+	 * duplicate, since the buffer is shared between threads.
+	 */
+	ByteBuffer getSegment(int i) {
+		return file.getSegment(i);
+	}
+
+	/**
+	 * Decodes <code>n</code> chars from the given byte position and appends
+	 * them to the builder, except new lines and carriage returns.
+	 */
+	void readLine(long startInBytes, long n, StringBuilder builder) {
+		int i = (int) (startInBytes >> MappedFile.SEGMENT_SHIFT);
+		ByteBuffer buffer = file.getSegment(i).duplicate();
+		buffer.position((int) (startInBytes - i * MappedFile.SEGMENT_SIZE));
+		for (long pos = 0; pos < n; pos++) {
+			if (buffer.position() >= MappedFile.SEGMENT_SIZE
+					&& i + 1 < file.getSegmentCount()) {
+				/* We go on in the next segment */
+				final int offset = (int) (buffer.position() - MappedFile.SEGMENT_SIZE);
+				i++;
+				buffer = file.getSegment(i).duplicate();
+				buffer.position(offset);
+			}
+			final char c = encoding.readChar(buffer);
+			if (c != '\r' && c != '\n') {
+				builder.append(c);
+			}
+		}
+	}
+
+	/**
+	 * Drops the references to the mapped segments, so that the mappings can
+	 * be released by the garbage collector.
+	 */
+	void release() {
+		file.release();
+	}
+}
@@ -12,7 +12,7 @@
  * but WITHOUT ANY WARRANTY; without even the implied warranty of
  * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
  * Lesser General Public License for more details.
- * 
+ *
  * You should have received a copy of the GNU Lesser General Public
  * License along with this library; if not, write to the Free Software
  * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA.
@@ -27,9 +27,13 @@ import java.io.IOException;
 import java.lang.ref.PhantomReference;
 import java.lang.ref.ReferenceQueue;
 import java.nio.ByteBuffer;
-import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -37,26 +41,39 @@ import javax.swing.AbstractListModel;
 import javax.swing.SwingWorker;
 
 import fr.umlv.unitex.io.Encoding;
+import fr.umlv.unitex.io.MappedFile;
 
 /**
  * This is a model for representing a text file as the list of its paragraphs.
  * Paragraphs are delimited by new lines. It uses a mapped file to avoid to
  * store large data in memory.
- * 
+ *
+ * The file is mapped as several segments, so that texts larger than 2 GB can be
+ * displayed. New lines are looked for in parallel on chunks of the file, and
+ * the positions of the paragraphs are stored in a compact {@link LineIndex}
+ * instead of one {@link Interval} per paragraph. If a filter is given, it is
+ * then evaluated in parallel on ranges of paragraphs.
+ *
  * @author Sébastien Paumier
  */
 public class TextAsListModelImpl extends AbstractListModel {
-	private MappedByteBuffer mappedBuffer;
-	private SwingWorker<Void, Interval> worker;
+	private static final int CHUNK_SIZE = 1 << 24;
+	private static final int FILTER_RANGE = 1 << 13;
+
+	private MappedText text;
+	private SwingWorker<Void, Integer> worker;
 	private Interval selection;
 	private String content = null;
 	private FileChannel channel;
 	private FileInputStream stream;
 	private File file;
 	private boolean dataFromFile;
-	ByteBuffer parseBuffer;
 	Encoding encoding;
-	private final ArrayList<Interval> lines = new ArrayList<Interval>();
+	private LineIndex lines;
+	/* Number of paragraphs the view knows about */
+	private int size;
+	/* Start of the last paragraph if it has no new line, -1 otherwise */
+	private volatile long unterminatedStartInBytes;
 
 	public void load(File f) {
 		load(f, null);
@@ -66,7 +83,6 @@ public class TextAsListModelImpl extends AbstractListModel {
 		content = null;
 		dataFromFile = true;
 		this.file = f;
-		final long fileLength = file.length();
 		this.encoding = Encoding.getEncoding(f);
 		try {
 			stream = new FileInputStream(file);
@@ -76,81 +92,244 @@ public class TextAsListModelImpl extends AbstractListModel {
 		}
 		channel = stream.getChannel();
 		try {
-			/* We skip the BOM for UTF16 encodings */
-			if (encoding == Encoding.UTF16LE || encoding == Encoding.UTF16BE) {
-				mappedBuffer = channel.map(FileChannel.MapMode.READ_ONLY, 2,
-						fileLength - 2);
-			} else {
-				mappedBuffer = channel.map(FileChannel.MapMode.READ_ONLY, 0,
-						fileLength);
-			}
+			text = new MappedText(channel, encoding);
 		} catch (final IOException e) {
 			e.printStackTrace();
 			return;
 		}
-		/*
-		 * parseBuffer must NOT be a final variable, because it would keep a
-		 * reference on the buffer that would never be null, so that the buffer
-		 * can never be garbage collected. As a consequence, the underlying file
-		 * mapping would never be released.
-		 */
-		parseBuffer = mappedBuffer.duplicate();
-		worker = new SwingWorker<Void, Interval>() {
+		unterminatedStartInBytes = -1;
+		final LineIndex allLines = new LineIndex(true, 0, 0);
+		final LineIndex visibleLines = (filter == null) ? allLines
+				: new LineIndex(false, 0, 0);
+		lines = visibleLines;
+		size = 0;
+		worker = new SwingWorker<Void, Integer>() {
+			@SuppressWarnings("synthetic-access")
 			@Override
 			protected Void doInBackground() throws Exception {
-				int lastStartInChars = 0;
-				int lastStartInBytes = 0;
-				final StringBuilder builder1 = new StringBuilder();
-				int pos;
-				for (pos = 0; parseBuffer.position() < parseBuffer.capacity(); pos = pos + 1) {
-					final int posInBuffer = parseBuffer.position();
-					final int c = encoding.readChar(parseBuffer);
-					if (c == '\n') {
-						// if we have an end-of-line
-						boolean publish = false;
-						if (filter == null) {
-							publish = true;
-						} else {
-							final Matcher m = filter.matcher(builder1
-									.toString());
-							if (m.matches())
-								publish = true;
-						}
-						builder1.setLength(0);
-						setProgress((int) ((long) parseBuffer.position() * 100 / parseBuffer
-								.capacity()));
-						if (publish) {
-							publish(new Interval(lastStartInBytes, posInBuffer,
-									lastStartInChars, pos));
+				scan(allLines, filter == null ? 100 : 50);
+				if (filter != null) {
+					filter(allLines, visibleLines, filter);
+				}
+				setProgress(100);
+				return null;
+			}
+
+			@SuppressWarnings("synthetic-access")
+			private void scan(LineIndex index, int maxProgress) throws Exception {
+				final MappedText mapped = text;
+				final long length = mapped.length();
+				final int nChunks = (int) ((length + CHUNK_SIZE - 1) / CHUNK_SIZE);
+				final int batchSize = 4 * Runtime.getRuntime()
+						.availableProcessors();
+				long pendingBytes = 0;
+				long pendingChars = 0;
+				for (int first = 0; first < nChunks && !isCancelled(); first += batchSize) {
+					final ArrayList<Callable<ChunkScan>> tasks = new ArrayList<Callable<ChunkScan>>();
+					for (int k = first; k < Math.min(nChunks, first + batchSize); k++) {
+						final long from = (long) k * CHUNK_SIZE;
+						final long to = Math.min(length, from + CHUNK_SIZE);
+						tasks.add(new Callable<ChunkScan>() {
+							@Override
+							public ChunkScan call() {
+								return ChunkScan.scan(mapped, from, to);
+							}
+						});
+					}
+					for (final Future<ChunkScan> future : ForkJoinPool
+							.commonPool().invokeAll(tasks)) {
+						final ChunkScan chunk = future.get();
+						if (!chunk.hasNewLine) {
+							pendingBytes += chunk.headBytes;
+							pendingChars += chunk.headChars;
+							continue;
 						}
-						lastStartInChars = pos + 1;
-						lastStartInBytes = parseBuffer.position();
-					} else {
-						if (filter != null && c != '\r')
-							builder1.append(c);
+						final long[] head = { LineIndex.pack(pendingBytes
+								+ chunk.headBytes, pendingChars
+								+ chunk.headChars) };
+						index.addAll(head, 1);
+						index.addAll(chunk.lines, chunk.nLines);
+						pendingBytes = chunk.tailBytes;
+						pendingChars = chunk.tailChars;
+					}
+					if (index == lines) {
+						publish(index.size());
 					}
+					setProgress((int) (Math.min(nChunks, first + batchSize)
+							* (long) maxProgress / nChunks));
 				}
-				if (lastStartInBytes < parseBuffer.capacity()) {
-					publish(new Interval(lastStartInBytes,
-							parseBuffer.position(), lastStartInChars, pos - 1));
-					setProgress(100);
+				if (pendingBytes > 0 && !isCancelled()) {
+					unterminatedStartInBytes = length - pendingBytes;
+					final long[] last = { LineIndex.pack(pendingBytes,
+							pendingChars) };
+					index.addAll(last, 1);
+					if (index == lines) {
+						publish(index.size());
+					}
+				}
+			}
+
+			@SuppressWarnings("synthetic-access")
+			private void filter(final LineIndex all, LineIndex visible,
+					final Pattern p) throws Exception {
+				final MappedText mapped = text;
+				final int n = all.size();
+				final int batchSize = 4 * Runtime.getRuntime()
+						.availableProcessors();
+				final int nRanges = (n + FILTER_RANGE - 1) / FILTER_RANGE;
+				for (int first = 0; first < nRanges && !isCancelled(); first += batchSize) {
+					final ArrayList<Callable<int[]>> tasks = new ArrayList<Callable<int[]>>();
+					for (int k = first; k < Math.min(nRanges, first + batchSize); k++) {
+						final int from = k * FILTER_RANGE;
+						final int to = Math.min(n, from + FILTER_RANGE);
+						tasks.add(new Callable<int[]>() {
+							@Override
+							public int[] call() {
+								return match(mapped, all, from, to, p);
+							}
+						});
+					}
+					for (final Future<int[]> future : ForkJoinPool
+							.commonPool().invokeAll(tasks)) {
+						for (final int i : future.get()) {
+							visible.add(all.getStartInBytes(i),
+									all.getStartInChars(i), all.getLength(i));
+						}
+					}
+					publish(visible.size());
+					setProgress(50 + (int) (Math.min(nRanges, first + batchSize)
+							* 50L / nRanges));
 				}
-				return null;
 			}
 
 			@SuppressWarnings("synthetic-access")
 			@Override
-			protected void process(java.util.List<Interval> chunks) {
-				final int oldSize = lines.size();
-				for (final Interval i : chunks) {
-					lines.add(i);
+			protected void process(List<Integer> chunks) {
+				if (worker != this || chunks.isEmpty()) {
+					/* This worker has been replaced by another one */
+					return;
+				}
+				final int newSize = chunks.get(chunks.size() - 1);
+				if (newSize > size) {
+					final int oldSize = size;
+					size = newSize;
+					fireIntervalAdded(TextAsListModelImpl.this, oldSize,
+							newSize - 1);
 				}
-				fireIntervalAdded(this, oldSize, lines.size());
 			}
 		};
 		worker.execute();
 	}
 
+	/**
+	 * Returns the numbers of the paragraphs in [from;to[ that are matched by
+	 * the given pattern.
+	 */
+	static int[] match(MappedText mapped, LineIndex index, int from, int to,
+			Pattern p) {
+		final StringBuilder b = new StringBuilder();
+		int[] res = new int[16];
+		int n = 0;
+		long start = index.getStartInBytes(from);
+		for (int i = from; i < to; i++) {
+			final long length = index.getLength(i);
+			b.setLength(0);
+			mapped.readLine(start, LineIndex.chars(length), b);
+			if (p.matcher(b).matches()) {
+				if (n == res.length) {
+					res = Arrays.copyOf(res, 2 * n);
+				}
+				res[n++] = i;
+			}
+			start += LineIndex.bytes(length);
+		}
+		return Arrays.copyOf(res, n);
+	}
+
+	/**
+	 * The new lines found in a chunk of the text. The head is what comes
+	 * before the first new line, the tail is what comes after the last one,
+	 * and the lines between are stored as packed lengths. If there is no new
+	 * line, the whole chunk is the head.
+	 */
+	static class ChunkScan {
+		boolean hasNewLine;
+		long headBytes;
+		long headChars;
+		long[] lines = new long[64];
+		int nLines;
+		long tailBytes;
+		long tailChars;
+
+		private void add(long bytes, long chars) {
+			if (!hasNewLine) {
+				hasNewLine = true;
+				headBytes = bytes;
+				headChars = chars;
+				return;
+			}
+			if (nLines == lines.length) {
+				lines = Arrays.copyOf(lines, 2 * nLines);
+			}
+			lines[nLines++] = LineIndex.pack(bytes, chars);
+		}
+
+		private void end(long bytes, long chars) {
+			if (!hasNewLine) {
+				headBytes = bytes;
+				headChars = chars;
+			} else {
+				tailBytes = bytes;
+				tailChars = chars;
+			}
+		}
+
+		/**
+		 * Scans the bytes in [from;to[. The chunk must not cross the end of a
+		 * segment, and must start at an even position for UTF16 encodings.
+		 */
+		static ChunkScan scan(MappedText mapped, long from, long to) {
+			final ChunkScan res = new ChunkScan();
+			final int n = (int) (from >> MappedFile.SEGMENT_SHIFT);
+			final ByteBuffer buffer = mapped.getSegment(n);
+			final int start = (int) (from - n * MappedFile.SEGMENT_SIZE);
+			final int end = (int) (to - n * MappedFile.SEGMENT_SIZE);
+			int lineStart = start;
+			final Encoding encoding = mapped.getEncoding();
+			if (encoding == Encoding.UTF16LE || encoding == Encoding.UTF16BE) {
+				final byte high = (encoding == Encoding.UTF16LE) ? (byte) 0
+						: (byte) '\n';
+				final byte low = (encoding == Encoding.UTF16LE) ? (byte) '\n'
+						: (byte) 0;
+				for (int i = start; i + 1 < end; i += 2) {
+					if (buffer.get(i) == low && buffer.get(i + 1) == high) {
+						final int bytes = i + 2 - lineStart;
+						res.add(bytes, bytes / 2);
+						lineStart = i + 2;
+					}
+				}
+				final int bytes = end - lineStart;
+				res.end(bytes, bytes / 2);
+				return res;
+			}
+			/* In UTF8, we count the bytes that start a char */
+			long chars = 0;
+			for (int i = start; i < end; i++) {
+				final byte b = buffer.get(i);
+				if ((b & 0xC0) != 0x80) {
+					chars++;
+				}
+				if (b == '\n') {
+					res.add(i + 1 - lineStart, chars);
+					lineStart = i + 1;
+					chars = 0;
+				}
+			}
+			res.end(end - lineStart, chars);
+			return res;
+		}
+	}
+
 	public TextAsListModelImpl() {
 		super();
 		dataFromFile = false;
@@ -159,9 +338,10 @@ public class TextAsListModelImpl extends AbstractListModel {
 
 	public void setText(String string) {
 		dataFromFile = false;
-		final int size = lines.size();
-		lines.clear();
-		fireIntervalRemoved(this, 0, size);
+		final int oldSize = size;
+		size = 0;
+		lines = null;
+		fireIntervalRemoved(this, 0, oldSize);
 		content = string;
 		fireIntervalAdded(this, 0, 0);
 	}
@@ -170,7 +350,7 @@ public class TextAsListModelImpl extends AbstractListModel {
 	public int getSize() {
 		if (content != null)
 			return 1;
-		return lines.size();
+		return size;
 	}
 
 	private final StringBuilder builder = new StringBuilder(40 * 100);
@@ -184,25 +364,27 @@ public class TextAsListModelImpl extends AbstractListModel {
 			return content;
 		final Interval interval = getInterval(i);
 		builder.setLength(0);
-		final int start = interval.getStartInChars();
-		final int end = interval.getEndInChars();
-		
-		mappedBuffer.position(interval.getStartInBytes());
-		
-		for (int pos = start; pos <= end; pos++) {
-			final int c = encoding.readChar(mappedBuffer);
-			if (c != '\r' && c != '\n') {
-				builder.append((char) c);
-			}
-		}
+		final long start = interval.getStartInChars();
+		final long end = interval.getEndInChars();
+		text.readLine(interval.getStartInBytes(), end - start + 1, builder);
 		return builder.toString();
 	}
 
 	Interval getInterval(int i) {
-		if (!dataFromFile || i >= lines.size()) {
+		if (!dataFromFile || i >= size) {
 			return null;
 		}
-		return lines.get(i);
+		final long startInBytes = lines.getStartInBytes(i);
+		final long startInChars = lines.getStartInChars(i);
+		final long length = lines.getLength(i);
+		long endInBytes = startInBytes + LineIndex.bytes(length);
+		if (startInBytes != unterminatedStartInBytes) {
+			/* The end is the position of the new line */
+			endInBytes = endInBytes
+					- ((encoding == Encoding.UTF8) ? 1 : 2);
+		}
+		return new Interval(startInBytes, endInBytes, startInChars,
+				startInChars + LineIndex.chars(length) - 1);
 	}
 
 	public Interval getSelection() {
@@ -226,27 +408,17 @@ public class TextAsListModelImpl extends AbstractListModel {
 	/**
 	 * We want to get the number of the interval that contains the given
 	 * position in chars.
-	 * 
+	 *
 	 * @param position
 	 * @return the number of the interval, or -1 if the position is not
 	 *         contained in an interval of the model
 	 */
-	public int getElementContainingPositionInChars(int position) {
-		if (!dataFromFile)
-			return -1;
-		if (position < 0)
+	public int getElementContainingPositionInChars(long position) {
+		if (!dataFromFile || lines == null)
 			return -1;
-		/*
-		 * We cache the size and length in case there is a publish operation
-		 * that updates the array
-		 */
-		for (int i = 0; i < lines.size(); i++) {
-			final Interval tmp = lines.get(i);
-			if (position >= tmp.getStartInChars()
-					&& position <= tmp.getEndInChars())
-				return i;
-		}
-		return -1;
+		final int i = lines.getLineContainingPositionInChars(position);
+		/* The view may not know this paragraph yet */
+		return (i < size) ? i : -1;
 	}
 
 	public String getContent() {
@@ -258,10 +430,11 @@ public class TextAsListModelImpl extends AbstractListModel {
 			worker.cancel(true);
 			worker = null;
 		}
-		if (mappedBuffer != null) {
-			ReferenceQueue<MappedByteBuffer> queue=new ReferenceQueue<MappedByteBuffer>();
-			new PhantomReference<MappedByteBuffer>(mappedBuffer,queue);
-			mappedBuffer = null;
+		if (text != null) {
+			ReferenceQueue<MappedText> queue=new ReferenceQueue<MappedText>();
+			new PhantomReference<MappedText>(text,queue);
+			text.release();
+			text = null;
 			System.gc();
 			while (queue.poll()!=null) {
 				System.gc();
@@ -273,8 +446,6 @@ public class TextAsListModelImpl extends AbstractListModel {
 				Thread.yield();
 			}
 		}
-		if (parseBuffer != null)
-			parseBuffer = null;
 		System.gc();
 		if (channel != null) {
 			try {
@@ -293,9 +464,6 @@ public class TextAsListModelImpl extends AbstractListModel {
 			stream = null;
 		}
 		setText("");
-		final int size = lines.size();
-		lines.clear();
-		fireIntervalRemoved(this, 0, size);
 	}
 
 	public int getNextMatchedElement(int currentPosition, Pattern p) {
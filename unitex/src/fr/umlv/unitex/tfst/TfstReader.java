@@ -0,0 +1,361 @@
+/*
+ * Unitex
+ *
+ * Copyright (C) 2001-2021 Université Paris-Est Marne-la-Vallée <unitex@univ-mlv.fr>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA.
+ *
+ */
+package fr.umlv.unitex.tfst;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import fr.umlv.unitex.io.Encoding;
+
+/**
+ * This class provides random access to the sentences of a .tfst file without
+ * running Tfst2Grf. The sentence offsets are indexed on demand in a single pass
+ * over the file, decoded sentences are kept in a bounded LRU cache, and the
+ * neighbours of the last requested sentence are decoded in the background so
+ * that browsing sentences one by one does not have to wait for the disk.
+ *
+ * A reader is bound to the state of the file when it was opened, so callers
+ * should check {@link #isStale()} and open a new reader when the .tfst has been
+ * rewritten, for instance by Elag or RebuildTfst.
+ */
+public class TfstReader {
+	private static final int BUFFER_SIZE = 65536;
+	private static final int CACHE_SIZE = 64;
+	private static final int PREFETCH_DISTANCE = 3;
+
+	private static final ExecutorService prefetcher = Executors
+			.newSingleThreadExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					final Thread t = new Thread(r, "Tfst prefetcher");
+					t.setDaemon(true);
+					return t;
+				}
+			});
+
+	private final File file;
+	private final long length;
+	private final long lastModified;
+	private final RandomAccessFile raf;
+	private final FileChannel channel;
+	private final Charset charset;
+	/* Size in bytes of a code unit: 1 for UTF8, 2 for UTF16 */
+	private final int unitSize;
+	private final boolean bigEndian;
+	private final int sentenceCount;
+	/*
+	 * offsets[i] is the byte offset of the $i+1 line; offsets[sentenceCount] is
+	 * the end of the last sentence. Only the first 'indexed' values are valid.
+	 */
+	private final long[] offsets;
+	private int indexed;
+	/* Scanning state, kept so that the index can be extended lazily */
+	private long scanPos;
+	private final LinkedHashMap<Integer, TfstSentence> cache = new LinkedHashMap<Integer, TfstSentence>(
+			16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(
+				Map.Entry<Integer, TfstSentence> eldest) {
+			return size() > CACHE_SIZE;
+		}
+	};
+
+	public TfstReader(File file) throws IOException {
+		this.file = file;
+		this.length = file.length();
+		this.lastModified = file.lastModified();
+		final Encoding e = Encoding.getEncoding(file);
+		if (e == null) {
+			throw new IOException(file + " is not a Unicode file");
+		}
+		charset = Charset.forName(e.getCharset());
+		unitSize = (e == Encoding.UTF8) ? 1 : 2;
+		bigEndian = (e == Encoding.UTF16BE);
+		raf = new RandomAccessFile(file, "r");
+		channel = raf.getChannel();
+		try {
+			scanPos = skipBom();
+			final String header = readLineAt(scanPos);
+			if (header == null) {
+				throw new IOException("Empty file " + file);
+			}
+			scanPos = nextLine(scanPos);
+			sentenceCount = Integer.parseInt(header.trim());
+		} catch (final NumberFormatException ex) {
+			close();
+			throw new IOException("Invalid sentence count in " + file);
+		} catch (final IOException ex) {
+			close();
+			throw ex;
+		}
+		offsets = new long[sentenceCount + 1];
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	public int getSentenceCount() {
+		return sentenceCount;
+	}
+
+	/**
+	 * Returns <code>true</code> if the file has been modified since this
+	 * reader was opened.
+	 */
+	public boolean isStale() {
+		return !file.exists() || file.length() != length
+				|| file.lastModified() != lastModified;
+	}
+
+	public void close() {
+		synchronized (cache) {
+			cache.clear();
+		}
+		try {
+			raf.close();
+		} catch (final IOException e) {
+			/* Nothing to do */
+		}
+	}
+
+	/**
+	 * Returns the decoded sentence #n, n being in [1;sentence count], and
+	 * schedules the decoding of the surrounding sentences.
+	 */
+	public TfstSentence getSentence(int n) throws IOException {
+		final TfstSentence s = decode(n);
+		prefetch(n);
+		return s;
+	}
+
+	private TfstSentence decode(int n) throws IOException {
+		if (n < 1 || n > sentenceCount) {
+			throw new IllegalArgumentException("Invalid sentence number " + n);
+		}
+		synchronized (cache) {
+			final TfstSentence s = cache.get(n);
+			if (s != null) {
+				return s;
+			}
+		}
+		final long start, end;
+		synchronized (this) {
+			ensureIndexed(n);
+			start = offsets[n - 1];
+			end = offsets[n];
+		}
+		final TfstSentence s = TfstSentence.parse(n, readLines(start, end));
+		synchronized (cache) {
+			cache.put(n, s);
+		}
+		return s;
+	}
+
+	private void prefetch(final int n) {
+		prefetcher.execute(new Runnable() {
+			@Override
+			public void run() {
+				for (int i = 1; i <= PREFETCH_DISTANCE; i++) {
+					if (!prefetchOne(n + i) || !prefetchOne(n - i)) {
+						return;
+					}
+				}
+			}
+		});
+	}
+
+	private boolean prefetchOne(int n) {
+		if (n < 1 || n > sentenceCount) {
+			return true;
+		}
+		if (!channel.isOpen()) {
+			return false;
+		}
+		synchronized (cache) {
+			if (cache.containsKey(n)) {
+				return true;
+			}
+		}
+		try {
+			decode(n);
+		} catch (final IOException e) {
+			/* Errors will be reported if the sentence is actually requested */
+		}
+		return true;
+	}
+
+	/**
+	 * Extends the sentence offset index until the end of the sentence #n is
+	 * known.
+	 */
+	private void ensureIndexed(int n) throws IOException {
+		while (indexed <= n) {
+			final long pos = scanPos;
+			if (indexed == sentenceCount || pos >= length) {
+				/* The last sentence ends at the end of the file */
+				Arrays.fill(offsets, indexed, sentenceCount + 1, length);
+				indexed = sentenceCount + 1;
+				return;
+			}
+			if (readUnit(pos) != '$') {
+				throw new IOException("Sentence #" + (indexed + 1)
+						+ " expected in " + file);
+			}
+			offsets[indexed++] = pos;
+			scanPos = skipSentence(pos);
+		}
+	}
+
+	/**
+	 * Skips the sentence that starts at the given position and returns the
+	 * position of the next one.
+	 */
+	private long skipSentence(long pos) throws IOException {
+		/* The $n line, the text, the tokens and the offsets */
+		for (int i = 0; i < 4 && pos < length; i++) {
+			pos = nextLine(pos);
+		}
+		/* The states */
+		int c;
+		while (pos < length && ((c = readUnit(pos)) == ':' || c == 't')) {
+			pos = nextLine(pos);
+		}
+		if (pos < length && readUnit(pos) == 'f') {
+			pos = nextLine(pos);
+		}
+		/* The tags */
+		while (pos < length && ((c = readUnit(pos)) == '@' || c == '.')) {
+			pos = nextLine(pos);
+		}
+		if (pos < length && readUnit(pos) == 'f') {
+			pos = nextLine(pos);
+		}
+		return pos;
+	}
+
+	private long skipBom() throws IOException {
+		if (unitSize == 2) {
+			return 2;
+		}
+		final ByteBuffer b = ByteBuffer.allocate(3);
+		channel.read(b, 0);
+		if (b.position() == 3 && (b.get(0) & 0xFF) == 0xEF
+				&& (b.get(1) & 0xFF) == 0xBB && (b.get(2) & 0xFF) == 0xBF) {
+			return 3;
+		}
+		return 0;
+	}
+
+	/*
+	 * A small window over the file, used to scan lines without decoding them.
+	 * Only one thread scans at a time since ensureIndexed is synchronized.
+	 */
+	private final ByteBuffer window = ByteBuffer.allocate(BUFFER_SIZE);
+	private long windowStart = -1;
+	private int windowLength;
+
+	private int byteAt(long pos) throws IOException {
+		if (windowStart == -1 || pos < windowStart
+				|| pos >= windowStart + windowLength) {
+			window.clear();
+			int n;
+			int total = 0;
+			while (total < BUFFER_SIZE
+					&& (n = channel.read(window, pos + total)) > 0) {
+				total += n;
+			}
+			windowStart = pos;
+			windowLength = total;
+			if (total == 0) {
+				return -1;
+			}
+		}
+		return window.get((int) (pos - windowStart)) & 0xFF;
+	}
+
+	private int readUnit(long pos) throws IOException {
+		if (unitSize == 1) {
+			return byteAt(pos);
+		}
+		final int a = byteAt(pos);
+		final int b = byteAt(pos + 1);
+		if (a == -1 || b == -1) {
+			return -1;
+		}
+		return bigEndian ? (a << 8 | b) : (b << 8 | a);
+	}
+
+	/**
+	 * Returns the position of the line that follows the one starting at pos.
+	 */
+	private long nextLine(long pos) throws IOException {
+		int c;
+		while ((c = readUnit(pos)) != -1) {
+			pos += unitSize;
+			if (c == '\n') {
+				return pos;
+			}
+		}
+		return length;
+	}
+
+	private String readLineAt(long pos) throws IOException {
+		final long end = nextLine(pos);
+		if (end <= pos) {
+			return null;
+		}
+		final String[] lines = readLines(pos, end);
+		return lines.length == 0 ? "" : lines[0];
+	}
+
+	/**
+	 * Decodes the bytes in [start;end[ and splits them into lines.
+	 */
+	private String[] readLines(long start, long end) throws IOException {
+		final ByteBuffer b = ByteBuffer.allocate((int) (end - start));
+		while (b.hasRemaining()) {
+			if (channel.read(b, start + b.position()) == -1) {
+				break;
+			}
+		}
+		final String s = new String(b.array(), 0, b.position(), charset);
+		final String[] lines = s.split("\n");
+		for (int i = 0; i < lines.length; i++) {
+			if (lines[i].endsWith("\r")) {
+				lines[i] = lines[i].substring(0, lines[i].length() - 1);
+			}
+		}
+		return lines;
+	}
+}
@@ -0,0 +1,287 @@
+/*
+ * Unitex
+ *
+ * Copyright (C) 2001-2021 Université Paris-Est Marne-la-Vallée <unitex@univ-mlv.fr>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA.
+ *
+ */
+package fr.umlv.unitex.tfst;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+
+/**
+ * This class describes a sentence automaton decoded from a .tfst file. The
+ * automaton is stored as it would appear in the sentence graph produced by
+ * Tfst2Grf: box 0 is the initial box, box 1 is the final one, and there is one
+ * box per non epsilon transition of the automaton. Box contents are of the form
+ * <code>{form,lemma.codes}/a b c d e f</code> as expected by
+ * <code>TfstGraphBox.setContentWithBounds</code>.
+ *
+ * Instances are immutable, so that they can be cached and shared between
+ * threads.
+ */
+public class TfstSentence {
+	private final int number;
+	private final String text;
+	/* Pairs (token number, token length in chars) */
+	private final int[] tokens;
+	private final String[] boxContents;
+	private final int[][] boxTransitions;
+
+	private TfstSentence(int number, String text, int[] tokens,
+			String[] boxContents, int[][] boxTransitions) {
+		this.number = number;
+		this.text = text;
+		this.tokens = tokens;
+		this.boxContents = boxContents;
+		this.boxTransitions = boxTransitions;
+	}
+
+	public int getNumber() {
+		return number;
+	}
+
+	public String getText() {
+		return text;
+	}
+
+	/**
+	 * Returns the token information of the sentence as (token number, token
+	 * length) pairs, as expected by <code>TokensInfo.setTokensInfo</code>.
+	 */
+	public int[] getTokens() {
+		return tokens;
+	}
+
+	public int getBoxCount() {
+		return boxContents.length;
+	}
+
+	public String getBoxContent(int box) {
+		return boxContents[box];
+	}
+
+	public int[] getBoxTransitions(int box) {
+		return boxTransitions[box];
+	}
+
+	/**
+	 * Decodes a sentence from the lines of its .tfst block, starting with the
+	 * <code>$n</code> line.
+	 */
+	static TfstSentence parse(int number, String[] lines) throws IOException {
+		if (lines.length < 4 || !lines[0].startsWith("$")) {
+			throw new IOException("Invalid sentence header for sentence #"
+					+ number);
+		}
+		final String text = lines[1];
+		final int[] tokens = parseTokens(lines[2], number);
+		/* Line 3 contains the offsets of the sentence, we don't need them */
+		int i = 4;
+		final ArrayList<int[]> states = new ArrayList<int[]>();
+		final ArrayList<Boolean> finals = new ArrayList<Boolean>();
+		while (i < lines.length
+				&& (lines[i].startsWith(":") || lines[i].startsWith("t"))) {
+			finals.add(lines[i].charAt(0) == 't');
+			states.add(parseState(lines[i], number));
+			i++;
+		}
+		if (i < lines.length && lines[i].startsWith("f")) {
+			i++;
+		}
+		final ArrayList<String> tags = new ArrayList<String>();
+		final ArrayList<String> tagBounds = new ArrayList<String>();
+		while (i < lines.length && lines[i].startsWith("@")) {
+			final String kind = lines[i].substring(1);
+			i++;
+			String content = kind;
+			String bounds = null;
+			if (i < lines.length && lines[i].startsWith("@")) {
+				content = lines[i].substring(1);
+				i++;
+				if (i < lines.length && lines[i].startsWith("@")) {
+					bounds = parseBounds(lines[i].substring(1), number);
+					i++;
+				}
+			}
+			/* Skipping any other tag line until the . that ends the tag */
+			while (i < lines.length && !lines[i].equals(".")) {
+				i++;
+			}
+			i++;
+			tags.add(content);
+			tagBounds.add(bounds);
+		}
+		return buildBoxes(number, text, tokens, states, finals, tags,
+				tagBounds);
+	}
+
+	private static int[] parseTokens(String line, int number)
+			throws IOException {
+		final String s = line.trim();
+		if (s.equals("")) {
+			return new int[0];
+		}
+		final String[] items = s.split(" ");
+		final int[] res = new int[2 * items.length];
+		try {
+			for (int i = 0; i < items.length; i++) {
+				final int pos = items[i].indexOf('/');
+				res[2 * i] = Integer.parseInt(items[i].substring(0, pos));
+				res[2 * i + 1] = Integer.parseInt(items[i].substring(pos + 1));
+			}
+		} catch (final RuntimeException e) {
+			throw new IOException("Invalid token line for sentence #" + number);
+		}
+		return res;
+	}
+
+	/**
+	 * A state line looks like <code>: tag dest tag dest ...</code>, with a
+	 * <code>t</code> instead of the <code>:</code> for final states.
+	 */
+	private static int[] parseState(String line, int number)
+			throws IOException {
+		final String s = line.substring(1).trim();
+		if (s.equals("")) {
+			return new int[0];
+		}
+		final String[] items = s.split(" +");
+		if (items.length % 2 != 0) {
+			throw new IOException("Invalid state line for sentence #" + number
+					+ ": " + line);
+		}
+		final int[] res = new int[items.length];
+		try {
+			for (int i = 0; i < items.length; i++) {
+				res[i] = Integer.parseInt(items[i]);
+			}
+		} catch (final NumberFormatException e) {
+			throw new IOException("Invalid state line for sentence #" + number
+					+ ": " + line);
+		}
+		return res;
+	}
+
+	/**
+	 * Turns bounds of the form <code>a.b.c-d.e.f</code> into the
+	 * <code>a b c d e f</code> form used in sentence graphs.
+	 */
+	private static String parseBounds(String s, int number) throws IOException {
+		final String res = s.replace('.', ' ').replace('-', ' ');
+		if (res.split(" ").length != 6) {
+			throw new IOException("Invalid tag bounds for sentence #" + number
+					+ ": " + s);
+		}
+		return res;
+	}
+
+	private static TfstSentence buildBoxes(int number, String text,
+			int[] tokens, ArrayList<int[]> states, ArrayList<Boolean> finals,
+			ArrayList<String> tags, ArrayList<String> tagBounds)
+			throws IOException {
+		final int nStates = states.size();
+		/* boxIndex[s][k] is the box of the k-th transition of the state s */
+		final int[][] boxIndex = new int[nStates][];
+		final ArrayList<String> contents = new ArrayList<String>();
+		final ArrayList<Integer> boxDest = new ArrayList<Integer>();
+		contents.add("<E>");
+		boxDest.add(0);
+		contents.add("<E>");
+		boxDest.add(-1);
+		for (int s = 0; s < nStates; s++) {
+			final int[] t = states.get(s);
+			boxIndex[s] = new int[t.length / 2];
+			for (int k = 0; k < t.length / 2; k++) {
+				final int tag = t[2 * k];
+				final int dest = t[2 * k + 1];
+				if (tag < 0 || tag >= tags.size() || dest < 0
+						|| dest >= nStates) {
+					throw new IOException("Invalid transition in sentence #"
+							+ number);
+				}
+				if (isEpsilon(tags.get(tag))) {
+					boxIndex[s][k] = -1;
+					continue;
+				}
+				final String bounds = tagBounds.get(tag);
+				boxIndex[s][k] = contents.size();
+				contents.add(tags.get(tag) + "/"
+						+ (bounds == null ? "-1" : bounds));
+				boxDest.add(dest);
+			}
+		}
+		final int nBoxes = contents.size();
+		final int[][] transitions = new int[nBoxes][];
+		final int[][] stateSuccessors = new int[nStates][];
+		transitions[1] = new int[0];
+		for (int b = 0; b < nBoxes; b++) {
+			if (b == 1) {
+				continue;
+			}
+			final int dest = boxDest.get(b);
+			if (nStates == 0) {
+				transitions[b] = new int[0];
+				continue;
+			}
+			if (stateSuccessors[dest] == null) {
+				final LinkedHashSet<Integer> set = new LinkedHashSet<Integer>();
+				collectSuccessors(dest, states, finals, boxIndex, set,
+						new boolean[nStates]);
+				final int[] tmp = new int[set.size()];
+				int i = 0;
+				for (final Integer n : set) {
+					tmp[i++] = n;
+				}
+				stateSuccessors[dest] = tmp;
+			}
+			transitions[b] = stateSuccessors[dest];
+		}
+		return new TfstSentence(number, text, tokens,
+				contents.toArray(new String[nBoxes]), transitions);
+	}
+
+	/**
+	 * Collects the boxes that can follow the given state, going through epsilon
+	 * transitions if any.
+	 */
+	private static void collectSuccessors(int state, ArrayList<int[]> states,
+			ArrayList<Boolean> finals, int[][] boxIndex,
+			LinkedHashSet<Integer> res, boolean[] visited) {
+		if (visited[state]) {
+			return;
+		}
+		visited[state] = true;
+		if (finals.get(state)) {
+			res.add(1);
+		}
+		final int[] t = states.get(state);
+		for (int k = 0; k < boxIndex[state].length; k++) {
+			if (boxIndex[state][k] == -1) {
+				collectSuccessors(t[2 * k + 1], states, finals, boxIndex, res,
+						visited);
+			} else {
+				res.add(boxIndex[state][k]);
+			}
+		}
+	}
+
+	private static boolean isEpsilon(String tag) {
+		return tag.equals("<E>");
+	}
+}
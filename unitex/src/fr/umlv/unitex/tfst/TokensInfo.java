@@ -80,6 +80,32 @@ public class TokensInfo {
 		}
 	}
 
+	/**
+	 * Same as <code>loadTokensInfo</code>, but with token information that has
+	 * already been decoded as (token number, token length) pairs.
+	 */
+	public static void setTokensInfo(int[] tokenInfo, String sentence) {
+		tokens.clear();
+		int currentPos = 0;
+		for (int i = 0; i < tokenInfo.length; i += 2) {
+			if (tokenInfo[i] < 0) {
+				throw new AssertionError("Negative token number: "
+						+ tokenInfo[i]);
+			}
+			final int n = tokenInfo[i + 1];
+			if (n < -1) {
+				throw new AssertionError("Invalid token bound: " + n
+						+ " ; should be >=-1");
+			}
+			tokens.add(sentence.substring(currentPos, currentPos + n));
+			currentPos = currentPos + n;
+		}
+		info = tokenInfo.clone();
+		if (currentPos != sentence.length()) {
+			throw new IllegalStateException("Inconsistency in sentence tokens");
+		}
+	}
+
 	public static String getTokenSequence(int start, int end) {
 		final StringBuilder b = new StringBuilder();
 		for (int i = start; i <= end; i++) {
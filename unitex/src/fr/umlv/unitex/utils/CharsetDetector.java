@@ -26,27 +26,40 @@ import java.io.IOException;
 
 import org.mozilla.universalchardet.UniversalDetector;
 
+import fr.umlv.unitex.io.FileCache;
+
 public class CharsetDetector {
+	private static final FileCache<String> cache = new FileCache<String>(256);
 
 	public static String detect(File file) throws IOException {
+		final long length = file.length();
+		final long lastModified = file.lastModified();
+		String encoding = cache.get(file, length, lastModified);
+		if (encoding != null) {
+			return encoding;
+		}
 		FileInputStream fileInputStream = new FileInputStream(file);
 		UniversalDetector detector = new UniversalDetector(null);
 
 		byte[] buffer = new byte[4096];
 		int bytesRead;
 
-		while ((bytesRead = fileInputStream.read(buffer)) > 0 && !detector.isDone()) {
-			detector.handleData(buffer, 0, bytesRead);
+		try {
+			while ((bytesRead = fileInputStream.read(buffer)) > 0 && !detector.isDone()) {
+				detector.handleData(buffer, 0, bytesRead);
+			}
+		} finally {
+			fileInputStream.close();
 		}
 
 		detector.dataEnd();
-		fileInputStream.close();
 
-		String encoding = detector.getDetectedCharset();
+		encoding = detector.getDetectedCharset();
 		if (encoding == null) {
 			// default to UTF8
 			encoding = "UTF8";
 		}
+		cache.put(file, length, lastModified, encoding);
 
 		return encoding;
 	}
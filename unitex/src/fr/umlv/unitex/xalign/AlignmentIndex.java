@@ -0,0 +1,277 @@
+/*
+ * Unitex
+ *
+ * Copyright (C) 2001-2021 Université Paris-Est Marne-la-Vallée <unitex@univ-mlv.fr>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA.
+ *
+ */
+package fr.umlv.unitex.xalign;
+
+import java.util.Arrays;
+
+/**
+ * This class stores the alignments between source and destination sentences
+ * so that the sentences aligned with a given one can be found in a time
+ * proportional to their number, in both directions.
+ */
+class AlignmentIndex {
+	private final Adjacency srcToDest = new Adjacency();
+	private final Adjacency destToSrc = new Adjacency();
+
+	/**
+	 * Adds the given alignment. Returns false if it was already there.
+	 */
+	boolean add(int src, int dest) {
+		if (srcToDest.contains(src, dest)) {
+			return false;
+		}
+		srcToDest.add(src, dest);
+		destToSrc.add(dest, src);
+		return true;
+	}
+
+	/**
+	 * Removes the given alignment. Returns false if it was not there.
+	 */
+	boolean remove(int src, int dest) {
+		if (!srcToDest.remove(src, dest)) {
+			return false;
+		}
+		destToSrc.remove(dest, src);
+		return true;
+	}
+
+	boolean contains(int src, int dest) {
+		return srcToDest.contains(src, dest);
+	}
+
+	/**
+	 * Returns the destination sentences aligned with the given source
+	 * sentence, in the order in which the alignments were added.
+	 */
+	int[] getDests(int src) {
+		return srcToDest.get(src);
+	}
+
+	/**
+	 * Returns the source sentences aligned with the given destination
+	 * sentence, in the order in which the alignments were added.
+	 */
+	int[] getSrcs(int dest) {
+		return destToSrc.get(dest);
+	}
+
+	void clear() {
+		srcToDest.clear();
+		destToSrc.clear();
+	}
+
+	/**
+	 * The targets of each node are stored in compressed rows: the ones of the
+	 * node #i are <code>targets[start[i]]</code> to
+	 * <code>targets[start[i+1]-1]</code>. Targets added since the last
+	 * compaction are in an append buffer, where each node has a list of
+	 * them. Removed targets are replaced by -1. When the buffer and the
+	 * removed targets get as large as the rows, all is compacted again.
+	 */
+	private static class Adjacency {
+		private static final int MIN_BUFFER_SIZE = 1024;
+
+		private int[] start;
+		private int[] targets;
+		private int removed;
+		/* For each node, its first and last entries in the buffer, or -1 */
+		private int[] first;
+		private int[] last;
+		private int[] value;
+		private int[] next;
+		private int used;
+
+		Adjacency() {
+			clear();
+		}
+
+		void clear() {
+			start = new int[1];
+			targets = new int[0];
+			removed = 0;
+			first = new int[0];
+			last = new int[0];
+			value = new int[MIN_BUFFER_SIZE];
+			next = new int[MIN_BUFFER_SIZE];
+			used = 0;
+		}
+
+		private int getNodeCount() {
+			return first.length;
+		}
+
+		private void ensureNode(int node) {
+			if (node < first.length) {
+				return;
+			}
+			final int n = Math.max(node + 1, 2 * first.length);
+			final int old = first.length;
+			first = Arrays.copyOf(first, n);
+			last = Arrays.copyOf(last, n);
+			Arrays.fill(first, old, n, -1);
+			Arrays.fill(last, old, n, -1);
+		}
+
+		void add(int node, int target) {
+			ensureNode(node);
+			if (used == value.length) {
+				value = Arrays.copyOf(value, 2 * used);
+				next = Arrays.copyOf(next, 2 * used);
+			}
+			value[used] = target;
+			next[used] = -1;
+			if (first[node] == -1) {
+				first[node] = used;
+			} else {
+				next[last[node]] = used;
+			}
+			last[node] = used;
+			used++;
+			compactIfNeeded();
+		}
+
+		boolean remove(int node, int target) {
+			if (node >= getNodeCount()) {
+				return false;
+			}
+			if (node + 1 < start.length) {
+				for (int i = start[node]; i < start[node + 1]; i++) {
+					if (targets[i] == target) {
+						targets[i] = -1;
+						removed++;
+						compactIfNeeded();
+						return true;
+					}
+				}
+			}
+			for (int e = first[node]; e != -1; e = next[e]) {
+				if (value[e] == target) {
+					value[e] = -1;
+					removed++;
+					compactIfNeeded();
+					return true;
+				}
+			}
+			return false;
+		}
+
+		boolean contains(int node, int target) {
+			if (node >= getNodeCount()) {
+				return false;
+			}
+			if (node + 1 < start.length) {
+				for (int i = start[node]; i < start[node + 1]; i++) {
+					if (targets[i] == target) {
+						return true;
+					}
+				}
+			}
+			for (int e = first[node]; e != -1; e = next[e]) {
+				if (value[e] == target) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		int[] get(int node) {
+			if (node < 0 || node >= getNodeCount()) {
+				return new int[0];
+			}
+			int n = 0;
+			final int from = (node + 1 < start.length) ? start[node] : 0;
+			final int to = (node + 1 < start.length) ? start[node + 1] : 0;
+			for (int i = from; i < to; i++) {
+				if (targets[i] != -1) {
+					n++;
+				}
+			}
+			for (int e = first[node]; e != -1; e = next[e]) {
+				if (value[e] != -1) {
+					n++;
+				}
+			}
+			final int[] result = new int[n];
+			n = 0;
+			for (int i = from; i < to; i++) {
+				if (targets[i] != -1) {
+					result[n++] = targets[i];
+				}
+			}
+			for (int e = first[node]; e != -1; e = next[e]) {
+				if (value[e] != -1) {
+					result[n++] = value[e];
+				}
+			}
+			return result;
+		}
+
+		private void compactIfNeeded() {
+			if (used + removed > Math.max(MIN_BUFFER_SIZE, targets.length)) {
+				compact();
+			}
+		}
+
+		private void compact() {
+			final int nodes = getNodeCount();
+			final int[] newStart = new int[nodes + 1];
+			for (int node = 0; node < nodes; node++) {
+				int n = 0;
+				if (node + 1 < start.length) {
+					for (int i = start[node]; i < start[node + 1]; i++) {
+						if (targets[i] != -1) {
+							n++;
+						}
+					}
+				}
+				for (int e = first[node]; e != -1; e = next[e]) {
+					if (value[e] != -1) {
+						n++;
+					}
+				}
+				newStart[node + 1] = newStart[node] + n;
+			}
+			final int[] newTargets = new int[newStart[nodes]];
+			for (int node = 0; node < nodes; node++) {
+				int n = newStart[node];
+				if (node + 1 < start.length) {
+					for (int i = start[node]; i < start[node + 1]; i++) {
+						if (targets[i] != -1) {
+							newTargets[n++] = targets[i];
+						}
+					}
+				}
+				for (int e = first[node]; e != -1; e = next[e]) {
+					if (value[e] != -1) {
+						newTargets[n++] = value[e];
+					}
+				}
+			}
+			start = newStart;
+			targets = newTargets;
+			removed = 0;
+			Arrays.fill(first, -1);
+			Arrays.fill(last, -1);
+			used = 0;
+		}
+	}
+}
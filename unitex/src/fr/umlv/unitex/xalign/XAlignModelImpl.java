@@ -21,305 +21,176 @@
 package fr.umlv.unitex.xalign;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
 import java.io.RandomAccessFile;
-import java.nio.MappedByteBuffer;
-import java.nio.channels.FileChannel;
-import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.Iterator;
-import java.util.concurrent.ExecutionException;
+import java.util.HashSet;
 
 import javax.swing.SwingWorker;
 
+import fr.umlv.unitex.io.MappedFile;
 import fr.umlv.unitex.listeners.AlignmentListener;
 
 public class XAlignModelImpl implements XAlignModel {
 
 	final XMLTextModel src;
 	final XMLTextModel dest;
-	final ArrayList<Couple> alignments;
-	HashMap<String, ArrayList<String>> group;
+	final AlignmentIndex alignments;
 	String sourceFile;
 	String destFile;
 	int startPosition = -1;
 	boolean modified = false;
 
-	class Couple {
-		final int srcSentence;
-		final int destSentence;
-
-		Couple(int src, int dest) {
-			this.srcSentence = src;
-			this.destSentence = dest;
-		}
-
-		@Override
-		public boolean equals(Object obj) {
-			if (obj == null)
-				return false;
-			if (obj instanceof Couple) {
-				final Couple c = (Couple) obj;
-				return c.srcSentence == srcSentence
-						&& c.destSentence == destSentence;
-			}
-			return false;
-		}
-
-		@Override
-		public int hashCode() {
-			return srcSentence << 16 + destSentence;
-		}
-	}
-
-	class PublishInfo {
-		final String s1;
-		final String s2;
-		final ArrayList<String> list;
-
-		PublishInfo(String s1, String s2, ArrayList<String> list) {
-			this.s1 = s1;
-			this.s2 = s2;
-			this.list = list;
-		}
-	}
-
 	public XAlignModelImpl(XMLTextModel src, XMLTextModel dest) {
 		this.src = src;
 		this.dest = dest;
-		alignments = new ArrayList<Couple>();
+		alignments = new AlignmentIndex();
 	}
 
-	private MappedByteBuffer buffer;
-	private int dataLength = 0;
-	private SwingWorker<Void, PublishInfo> worker;
-	private FileChannel channel;
-	private FileInputStream stream;
+	private SwingWorker<Void, int[]> worker;
 	private File file;
-	Charset utf8 = Charset.forName("UTF-8");
 
+	/**
+	 * Starts reading the alignments of the given file and returns at once.
+	 * The reading waits for the sentences of both texts, since alignments
+	 * refer to them by their ids, and alignments are added to the model on
+	 * the event dispatch thread.
+	 */
 	@Override
 	public void load(File f) throws IOException {
+		if (worker != null) {
+			worker.cancel(true);
+		}
 		this.file = f;
 		if (f == null) {
 			return;
 		}
-		setDataLength((int) file.length());
-		group = new HashMap<String, ArrayList<String>>();
-		stream = new FileInputStream(file);
-		channel = stream.getChannel();
-		setBuffer(channel
-				.map(FileChannel.MapMode.READ_ONLY, 0, getDataLength()));
-		worker = new SwingWorker<Void, PublishInfo>() {
+		final MappedFile mappedFile = XMLTextLoader.map(f);
+		worker = new SwingWorker<Void, int[]>() {
 			@Override
 			protected Void doInBackground() throws Exception {
-				int pos;
+				src.waitUntilLoaded();
+				dest.waitUntilLoaded();
+				final XMLScanner scanner = new XMLScanner(mappedFile);
+				final long dataLength = scanner.length();
+				String target = null;
 				/*
-				 * First, we look for the description of the source and targets
-				 * files
+				 * First, we look for the description of the source and
+				 * targets files
 				 */
-				for (pos = 0; pos < getDataLength(); pos = pos + 1) {
-					if (getBuffer().get(pos) == '<'
-							&& getBuffer().get(pos + 1) == 'p'
-							&& getBuffer().get(pos + 2) == 't'
-							&& getBuffer().get(pos + 3) == 'r'
-							&& (getBuffer().get(pos + 4) == ' '
-									|| getBuffer().get(pos + 4) == '\n'
-									|| getBuffer().get(pos + 4) == '\r' || getBuffer()
-									.get(pos + 4) == '\t')) {
-						/* If we have a ptr tag, we read its target */
-						do {
-							pos++;
-						} while (!(getBuffer().get(pos) == '"'
-								&& getBuffer().get(pos - 1) == '='
-								&& getBuffer().get(pos - 2) == 't'
-								&& getBuffer().get(pos - 3) == 'e'
-								&& getBuffer().get(pos - 4) == 'g'
-								&& getBuffer().get(pos - 5) == 'r'
-								&& getBuffer().get(pos - 6) == 'a' && getBuffer()
-								.get(pos - 7) == 't'));
-						String target = "";
-						pos++;
-						do {
-							target = target + (char) getBuffer().get(pos);
-							pos++;
-						} while (getBuffer().get(pos) != '"');
-						/*
-						 * Then we check if it was the source or destination
-						 * file
-						 */
-						do {
-							pos++;
-						} while (!((getBuffer().get(pos) == 'e'
-								&& getBuffer().get(pos - 1) == 'c'
-								&& getBuffer().get(pos - 2) == 'r'
-								&& getBuffer().get(pos - 3) == 'u'
-								&& getBuffer().get(pos - 4) == 'o' && getBuffer()
-								.get(pos - 5) == 's') || (getBuffer().get(pos) == 'n'
-								&& getBuffer().get(pos - 1) == 'o'
-								&& getBuffer().get(pos - 2) == 'i'
-								&& getBuffer().get(pos - 3) == 't'
-								&& getBuffer().get(pos - 4) == 'a'
-								&& getBuffer().get(pos - 5) == 'l'
-								&& getBuffer().get(pos - 6) == 's'
-								&& getBuffer().get(pos - 7) == 'n'
-								&& getBuffer().get(pos - 8) == 'a'
-								&& getBuffer().get(pos - 9) == 'r' && getBuffer()
-								.get(pos - 10) == 't')));
-						if (getBuffer().get(pos) == 'e') {
+				while (scanner.nextStartTag()) {
+					if (scanner.isTag("ptr")) {
+						target = scanner.getAttribute("target");
+					} else if (scanner.isTag("note") && target != null) {
+						/* We check if it was the source or destination file */
+						final String status = scanner.getText().trim();
+						if (status.equals("source")) {
 							sourceFile = target;
-						} else {
+						} else if (status.equals("translation")) {
 							destFile = target;
 						}
-					} else if (getBuffer().get(pos) == '"'
-							&& getBuffer().get(pos + 1) == 'r'
-							&& getBuffer().get(pos + 2) == 'e'
-							&& getBuffer().get(pos + 3) == 's'
-							&& getBuffer().get(pos + 4) == 'u'
-							&& getBuffer().get(pos + 5) == 'l'
-							&& getBuffer().get(pos + 6) == 't'
-							&& getBuffer().get(pos + 7) == 'X'
-							&& getBuffer().get(pos + 8) == 'A'
-							&& getBuffer().get(pos + 9) == 'l'
-							&& getBuffer().get(pos + 10) == 'i'
-							&& getBuffer().get(pos + 11) == 'g'
-							&& getBuffer().get(pos + 12) == 'n'
-							&& getBuffer().get(pos + 13) == '"') {
+						target = null;
+					} else if (scanner.isTag("div")
+							&& "resultXAlign".equals(scanner
+									.getAttribute("type"))) {
 						/*
 						 * If we are at the beginning of the aligment
-						 * declarations, we note the current position and we
-						 * exit the loop
+						 * declarations, we note the position after the
+						 * line of the tag
 						 */
-						startPosition = pos + 16;
-						pos = pos + 16;
+						long end = scanner.getTagEnd();
+						if (end < dataLength && mappedFile.get(end) == '\r') {
+							end++;
+						}
+						if (end < dataLength && mappedFile.get(end) == '\n') {
+							end++;
+						}
+						startPosition = (int) end;
 						break;
 					}
 				}
-				for (; pos < getDataLength(); pos = pos + 1) {
-					if (getBuffer().get(pos) == '<'
-							&& getBuffer().get(pos + 1) == '!'
-							&& getBuffer().get(pos + 2) == '-'
-							&& getBuffer().get(pos + 3) == '-') {
-						/* If we have a XML comment, we skip it */
-						pos = pos + 4;
-						do {
-							pos++;
-						} while (!(getBuffer().get(pos) == '>'
-								&& getBuffer().get(pos - 1) == '-' && getBuffer()
-								.get(pos - 2) == '-'));
+				final HashMap<String, ArrayList<String>> groups = new HashMap<String, ArrayList<String>>();
+				while (scanner.nextStartTag()) {
+					if (!scanner.isTag("link")) {
 						continue;
 					}
-					if (getBuffer().get(pos) == '<'
-							&& getBuffer().get(pos + 1) == 'l'
-							&& getBuffer().get(pos + 2) == 'i'
-							&& getBuffer().get(pos + 3) == 'n'
-							&& getBuffer().get(pos + 4) == 'k'
-							&& (getBuffer().get(pos + 5) == ' '
-									|| getBuffer().get(pos + 5) == '\n'
-									|| getBuffer().get(pos + 5) == '\r' || getBuffer()
-									.get(pos + 5) == '\t')) {
-						/* If we have a link tag, we read its targets */
-						do {
-							pos++;
-						} while (!(getBuffer().get(pos) == '"'
-								&& getBuffer().get(pos - 1) == '='
-								&& getBuffer().get(pos - 2) == 's'
-								&& getBuffer().get(pos - 3) == 't'
-								&& getBuffer().get(pos - 4) == 'e'
-								&& getBuffer().get(pos - 5) == 'g'
-								&& getBuffer().get(pos - 6) == 'r'
-								&& getBuffer().get(pos - 7) == 'a' && getBuffer()
-								.get(pos - 8) == 't'));
-						String targets = "";
-						pos++;
-						do {
-							targets = targets + (char) getBuffer().get(pos);
-							pos++;
-						} while (getBuffer().get(pos) != '"');
-						/* Then we read the link type */
-						do {
-							pos++;
-						} while (!(getBuffer().get(pos) == '"'
-								&& getBuffer().get(pos - 1) == '='
-								&& getBuffer().get(pos - 2) == 'e'
-								&& getBuffer().get(pos - 3) == 'p'
-								&& getBuffer().get(pos - 4) == 'y' && getBuffer()
-								.get(pos - 5) == 't'));
-						String type = "";
-						pos++;
-						do {
-							type = type + (char) getBuffer().get(pos);
-							pos++;
-						} while (getBuffer().get(pos) != '"');
-						final ArrayList<String> l = split(targets);
-						if (type.equals("alignment")) {
-							/* If we have an alignement */
-							if (l.size() != 2) {
-								System.err
-										.println("An alignment must involve two elements");
-							} else {
-								publish(new PublishInfo(l.get(0), l.get(1),
-										null));
-							}
-						} else if (type.equals("linking")) {
-							/*
-							 * If we have a linking, we must read its id and
-							 * explicit it
-							 */
-							do {
-								pos++;
-							} while (!(getBuffer().get(pos) == '"'
-									&& getBuffer().get(pos - 1) == '='
-									&& getBuffer().get(pos - 2) == 'd'
-									&& getBuffer().get(pos - 3) == 'i'
-									&& getBuffer().get(pos - 4) == ':'
-									&& getBuffer().get(pos - 5) == 'l'
-									&& getBuffer().get(pos - 6) == 'm' && getBuffer()
-									.get(pos - 7) == 'x'));
-							String id = "";
-							pos++;
-							do {
-								id = id + (char) getBuffer().get(pos);
-								pos++;
-							} while (getBuffer().get(pos) != '"');
-							publish(new PublishInfo(id, null, l));
+					final ArrayList<String> l = split(scanner
+							.getAttribute("targets"));
+					final String type = scanner.getAttribute("type");
+					if ("alignment".equals(type)) {
+						/* If we have an alignement */
+						if (l.size() != 2) {
+							System.err
+									.println("An alignment must involve two elements");
+						} else {
+							align(groups, l.get(0), l.get(1));
 						}
-						/* Then we look for the end of the tag */
-						while (getBuffer().get(pos - 1) != '>') {
-							pos++;
+					} else if ("linking".equals(type)) {
+						/* If we have a linking, we note its group */
+						final String id = scanner.getAttribute("xml:id");
+						if (id != null) {
+							groups.put(id, l);
 						}
-						setProgress((int) (100. * pos / getDataLength()));
 					}
+					setProgress((int) (100. * scanner.getTagEnd() / dataLength));
 				}
 				setProgress(100);
-				setBuffer(null);
-				System.gc();
 				return null;
 			}
 
-			@Override
-			protected void process(java.util.List<PublishInfo> chunks) {
-				for (final PublishInfo c : chunks) {
-					if (c.list == null) {
-						align(c.s1, c.s2);
-					} else {
-						group.put(c.s1, c.list);
+			/**
+			 * This method aligns the sentences represented by the two given
+			 * strings. A string can represent either a single sentence like
+			 * "d4p5s2" or a sentence group like "l12".
+			 */
+			private void align(HashMap<String, ArrayList<String>> groups,
+					String s1, String s2) {
+				ArrayList<String> l1 = groups.get(s1);
+				if (l1 == null) {
+					l1 = new ArrayList<String>();
+					l1.add(s1);
+				}
+				ArrayList<String> l2 = groups.get(s2);
+				if (l2 == null) {
+					l2 = new ArrayList<String>();
+					l2.add(s2);
+				}
+				for (final String x1 : l1) {
+					final int i1 = src.getIndex(x1);
+					for (final String x2 : l2) {
+						final int i2 = dest.getIndex(x2);
+						if (i1 != -1 && i2 != -1) {
+							publish(new int[] { i1, i2 });
+						}
 					}
 				}
 			}
+
+			@Override
+			protected void process(java.util.List<int[]> chunks) {
+				for (final int[] c : chunks) {
+					XAlignModelImpl.this.align(c[0], c[1],
+							AlignmentEvent.LOADING);
+				}
+			}
+
+			@Override
+			protected void done() {
+				if (isCancelled()) {
+					return;
+				}
+				try {
+					get();
+				} catch (final Exception e) {
+					e.printStackTrace();
+				}
+			}
 		};
 		worker.execute();
-		try {
-			worker.get();
-		} catch (final InterruptedException e) {
-			e.printStackTrace();
-		} catch (final ExecutionException e) {
-			e.printStackTrace();
-		}
 	}
 
 	private final ArrayList<AlignmentListener> listeners = new ArrayList<AlignmentListener>();
@@ -344,30 +215,6 @@ public class XAlignModelImpl implements XAlignModel {
 		listeners.remove(l);
 	}
 
-	/**
-	 * This method aligns the sentences represented by the two given strings. A
-	 * string can represent either a single sentence like "d4p5s2" or a sentence
-	 * group like "l12".
-	 */
-	void align(String s1, String s2) {
-		ArrayList<String> l1 = group.get(s1);
-		if (l1 == null) {
-			l1 = new ArrayList<String>();
-			l1.add(s1);
-		}
-		ArrayList<String> l2 = group.get(s2);
-		if (l2 == null) {
-			l2 = new ArrayList<String>();
-			l2.add(s2);
-		}
-		for (final String x1 : l1) {
-			for (final String x2 : l2) {
-				align(src.getIndex(x1), dest.getIndex(x2),
-						AlignmentEvent.LOADING);
-			}
-		}
-	}
-
 	/**
 	 * Splits a line of the form "xxxx#yyy xxxxx#zzz xxxx#wwww" and returns the
 	 * list made of "yyy" "zzz" and "wwww".
@@ -394,56 +241,46 @@ public class XAlignModelImpl implements XAlignModel {
 		return l;
 	}
 
-	@Override
-	public ArrayList<Integer> getAlignedSrcSequences(int sentence) {
-		final ArrayList<Integer> result = new ArrayList<Integer>();
-		if (alignments == null)
-			return result;
-		for (final Couple c : alignments) {
-			if (c.srcSentence == sentence)
-				result.add(c.destSentence);
+	private static ArrayList<Integer> toList(int[] sentences) {
+		final ArrayList<Integer> result = new ArrayList<Integer>(
+				sentences.length);
+		for (final int i : sentences) {
+			result.add(i);
 		}
 		return result;
 	}
 
+	@Override
+	public ArrayList<Integer> getAlignedSrcSequences(int sentence) {
+		return toList(alignments.getDests(sentence));
+	}
+
 	@Override
 	public ArrayList<Integer> getAlignedDestSequences(int sentence) {
-		final ArrayList<Integer> result = new ArrayList<Integer>();
-		for (final Couple c : alignments) {
-			if (c.destSentence == sentence)
-				result.add(c.srcSentence);
-		}
-		return result;
+		return toList(alignments.getSrcs(sentence));
 	}
 
 	@Override
 	public void align(int sentenceSrc, int sentenceDest, AlignmentEvent e) {
-		final Couple c = new Couple(sentenceSrc, sentenceDest);
-		if (alignments.contains(c))
+		if (!alignments.add(sentenceSrc, sentenceDest))
 			return;
-		alignments.add(c);
 		fireAlignmentChanged(e);
 	}
 
 	@Override
 	public void unAlign(int sentenceSrc, int sentenceDest) {
-		final Couple c = new Couple(sentenceSrc, sentenceDest);
-		alignments.remove(c);
+		alignments.remove(sentenceSrc, sentenceDest);
 		fireAlignmentChanged(AlignmentEvent.MANUAL_EDIT);
 	}
 
 	@Override
 	public void changeAlignment(int sentenceSrc, int sentenceDest) {
-		final Couple c = new Couple(sentenceSrc, sentenceDest);
-		if (alignments.contains(c))
-			alignments.remove(c);
-		else
-			alignments.add(c);
+		if (!alignments.remove(sentenceSrc, sentenceDest))
+			alignments.add(sentenceSrc, sentenceDest);
 		fireAlignmentChanged(AlignmentEvent.MANUAL_EDIT);
 	}
 
 	@Override
-	@SuppressWarnings("unchecked")
 	public void dumpAlignments(File f) throws IOException {
 		if (f == null) {
 			throw new NullPointerException();
@@ -493,93 +330,24 @@ public class XAlignModelImpl implements XAlignModel {
 			writer = new OutputStreamWriter(output, "UTF8");
 			writeHeader(writer);
 		}
-		int i;
-		final Object[] left = new Object[src.getSize()];
-		final Object[] right = new Object[dest.getSize()];
-		for (i = 0; i < left.length; i++) {
-			left[i] = new ArrayList<Integer>();
-		}
-		for (i = 0; i < right.length; i++) {
-			right[i] = new ArrayList<Integer>();
-		}
-		for (final Couple c : alignments) {
-			((ArrayList<Integer>) left[c.srcSentence]).add(c.destSentence);
-			((ArrayList<Integer>) right[c.destSentence]).add(c.srcSentence);
-		}
-		final ArrayList<String> results = new ArrayList<String>();
-		ArrayList<String> destGroups = new ArrayList<String>();
-		final HashMap<String, String> groups = new HashMap<String, String>();
-		int groupID = 1;
+		/*
+		 * Sections are written one after the other, each one going through
+		 * the sentences again, so that nothing has to be kept in memory
+		 */
 		writer.write("            <linkGrp type=\"segmentGroup\">\n");
-		for (i = 0; i < left.length; i++) {
-			final Iterator<Integer> it = ((ArrayList<Integer>) left[i])
-					.iterator();
-			if (!it.hasNext())
-				continue;
-			ArrayList<Integer> ancestors = (ArrayList<Integer>) right[it.next()];
-			final ArrayList<Integer> res = new ArrayList<Integer>();
-			for (final Integer j : ancestors) {
-				res.add(j);
-			}
-			while (it.hasNext()) {
-				ancestors = (ArrayList<Integer>) right[it.next()];
-				for (int k = res.size() - 1; k >= 0; k--) {
-					if (!ancestors.contains(res.get(k))) {
-						res.remove(k);
-					}
-				}
-			}
-			String a, b, tmp;
-			if (res.size() > 1) {
-				tmp = res + " left";
-				if (!groups.containsKey(tmp)) {
-					a = "#l" + groupID;
-					groups.put(tmp, a);
-					writer.write(createLink("l" + groupID, res, true) + "\n");
-					groupID++;
-				} else {
-					a = null;
-				}
-			} else {
-				a = sourceFile + "#" + src.getID(res.get(0));
-			}
-			if (((ArrayList<Integer>) left[i]).size() > 1) {
-				tmp = left[i] + " right";
-				if (!groups.containsKey(tmp)) {
-					b = "#l" + groupID;
-					groups.put(tmp, b);
-					destGroups.add(createLink("l" + groupID,
-							(ArrayList<Integer>) left[i], false));
-					groupID++;
-				} else {
-					b = null;
-				}
-			} else {
-				b = destFile + "#"
-						+ dest.getID(((ArrayList<Integer>) left[i]).get(0));
-			}
-			if (a != null && b != null) {
-				results.add(a + " " + b);
-			}
-		}
-		for (final String s : destGroups) {
-			writer.write(s + "\n");
-		}
-		destGroups.clear();
-		destGroups = null;
+		dumpLinks(writer, SOURCE_GROUPS);
+		dumpLinks(writer, DESTINATION_GROUPS);
 		writer.write("            </linkGrp>\n");
 		/* We dump the sentences that have no targets */
 		writer.write("            <linkGrp type=\"noCorresp\">\n");
-		for (int k = 0; k < left.length; k++) {
-			final ArrayList<Integer> l = (ArrayList<Integer>) left[k];
-			if (l.isEmpty()) {
+		for (int k = 0; k < src.getSize(); k++) {
+			if (alignments.getDests(k).length == 0) {
 				writer.write("               <link targets=\"" + sourceFile
 						+ "#" + src.getID(k) + "\" type=\"noCorresp\">\n");
 			}
 		}
-		for (int k = 0; k < right.length; k++) {
-			final ArrayList<Integer> l = (ArrayList<Integer>) right[k];
-			if (l.isEmpty()) {
+		for (int k = 0; k < dest.getSize(); k++) {
+			if (alignments.getSrcs(k).length == 0) {
 				writer.write("               <link targets=\"" + destFile + "#"
 						+ dest.getID(k) + "\" type=\"noCorresp\">\n");
 			}
@@ -587,11 +355,7 @@ public class XAlignModelImpl implements XAlignModel {
 		writer.write("            </linkGrp>\n");
 		/* Finally, we dump the alignments */
 		writer.write("            <linkGrp type=\"alignment\">\n");
-		for (final String s : results) {
-			writer.write("               <link\n"
-					+ "                  targets=\"" + s
-					+ "\" type=\"alignment\"/>\n");
-		}
+		dumpLinks(writer, ALIGNMENTS);
 		writer.write("            </linkGrp>\n");
 		writer.write("         </div>\n");
 		writer.write("      </body>\n");
@@ -603,6 +367,97 @@ public class XAlignModelImpl implements XAlignModel {
 		fireAlignmentChanged(AlignmentEvent.SAVING);
 	}
 
+	private static final int SOURCE_GROUPS = 0;
+	private static final int DESTINATION_GROUPS = 1;
+	private static final int ALIGNMENTS = 2;
+
+	/**
+	 * A list of sentences, used to know if a group has already been declared
+	 */
+	private static class Group {
+		private final int[] sentences;
+
+		Group(int[] sentences) {
+			this.sentences = sentences;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof Group
+					&& Arrays.equals(sentences, ((Group) obj).sentences);
+		}
+
+		@Override
+		public int hashCode() {
+			return Arrays.hashCode(sentences);
+		}
+	}
+
+	/**
+	 * Goes through the source sentences that have alignments. A source
+	 * sentence is aligned with its destination sentences, that form a group
+	 * if there are several of them, and with the source sentences aligned
+	 * with all of them, that also form a group if there are several of them.
+	 * Groups are numbered in the order in which they are met, and an
+	 * alignment involving an already declared group is not written again.
+	 * Only the part given by <code>section</code> is written, but groups are
+	 * numbered the same way for all parts.
+	 */
+	private void dumpLinks(OutputStreamWriter writer, int section)
+			throws IOException {
+		final HashSet<Group> srcGroups = new HashSet<Group>();
+		final HashSet<Group> destGroups = new HashSet<Group>();
+		int groupID = 1;
+		for (int i = 0; i < src.getSize(); i++) {
+			final int[] targets = alignments.getDests(i);
+			if (targets.length == 0)
+				continue;
+			int[] res = alignments.getSrcs(targets[0]);
+			for (int j = 1; j < targets.length; j++) {
+				int n = 0;
+				for (final int k : res) {
+					if (alignments.contains(k, targets[j])) {
+						res[n++] = k;
+					}
+				}
+				res = Arrays.copyOf(res, n);
+			}
+			String a, b;
+			if (res.length > 1) {
+				if (srcGroups.add(new Group(res))) {
+					a = "#l" + groupID;
+					if (section == SOURCE_GROUPS) {
+						writer.write(createLink("l" + groupID, res, true) + "\n");
+					}
+					groupID++;
+				} else {
+					a = null;
+				}
+			} else {
+				a = sourceFile + "#" + src.getID(res[0]);
+			}
+			if (targets.length > 1) {
+				if (destGroups.add(new Group(targets))) {
+					b = "#l" + groupID;
+					if (section == DESTINATION_GROUPS) {
+						writer.write(createLink("l" + groupID, targets, false)
+								+ "\n");
+					}
+					groupID++;
+				} else {
+					b = null;
+				}
+			} else {
+				b = destFile + "#" + dest.getID(targets[0]);
+			}
+			if (section == ALIGNMENTS && a != null && b != null) {
+				writer.write("               <link\n"
+						+ "                  targets=\"" + a + " " + b
+						+ "\" type=\"alignment\"/>\n");
+			}
+		}
+	}
+
 	private void writeHeader(OutputStreamWriter writer) throws IOException {
 		writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" + "<TEI>\n"
 				+ "   <teiHeader>\n" + "      <fileDesc>\n"
@@ -642,12 +497,11 @@ public class XAlignModelImpl implements XAlignModel {
 
 	private final StringBuilder builder = new StringBuilder();
 
-	private String createLink(String groupID, ArrayList<Integer> sentences,
-			boolean source) {
+	private String createLink(String groupID, int[] sentences, boolean source) {
 		builder.setLength(0);
 		builder.append("               <link\n");
 		builder.append("                  targets=\"");
-		for (final Integer i : sentences) {
+		for (final int i : sentences) {
 			builder.append(source ? sourceFile : destFile).append("#");
 			builder.append(source ? src.getID(i) : dest.getID(i)).append(" ");
 		}
@@ -671,9 +525,9 @@ public class XAlignModelImpl implements XAlignModel {
 
 	@Override
 	public void reset() {
-		if (getBuffer() != null)
-			setBuffer(null);
-		System.gc();
+		if (worker != null) {
+			worker.cancel(true);
+		}
 	}
 
 	@Override
@@ -681,20 +535,4 @@ public class XAlignModelImpl implements XAlignModel {
 		alignments.clear();
 		fireAlignmentChanged(AlignmentEvent.CLEAR);
 	}
-
-	public void setDataLength(int dataLength) {
-		this.dataLength = dataLength;
-	}
-
-	public int getDataLength() {
-		return dataLength;
-	}
-
-	public void setBuffer(MappedByteBuffer buffer) {
-		this.buffer = buffer;
-	}
-
-	public MappedByteBuffer getBuffer() {
-		return buffer;
-	}
 }
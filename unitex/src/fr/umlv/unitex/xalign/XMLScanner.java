@@ -0,0 +1,373 @@
+/*
+ * Unitex
+ *
+ * Copyright (C) 2001-2021 Université Paris-Est Marne-la-Vallée <unitex@univ-mlv.fr>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA.
+ *
+ */
+package fr.umlv.unitex.xalign;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.Charset;
+
+import fr.umlv.unitex.io.MappedFile;
+
+/**
+ * This is a streaming scanner for the UTF-8 XML files manipulated by XAlign.
+ * It goes from start tag to start tag, skipping comments, processing
+ * instructions, CDATA sections, declarations and end tags, and gives the
+ * byte offsets of the tags, so that texts can be decoded later from the
+ * mapped file.
+ *
+ * Attribute values are only decoded when asked for, as UTF-8 with their
+ * entities resolved.
+ */
+class XMLScanner {
+	private static final int WINDOW_SIZE = 65536;
+	private static final int MAX_ATTRIBUTES = 16;
+	static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private final MappedFile file;
+	private final long length;
+	private final byte[] window = new byte[WINDOW_SIZE];
+	private long windowStart;
+	private int windowLength;
+	private long pos;
+
+	private long tagStart;
+	private long tagEnd;
+	private long nameStart;
+	private long nameEnd;
+	private int attributeCount;
+	/* For each attribute, the bounds of its name and of its value */
+	private final long[] attributes = new long[4 * MAX_ATTRIBUTES];
+
+	XMLScanner(MappedFile file) {
+		this.file = file;
+		this.length = file.length();
+	}
+
+	long length() {
+		return length;
+	}
+
+	/**
+	 * Returns the byte at the given position, or -1 at the end of the file.
+	 */
+	private int read(long p) {
+		if (p >= length) {
+			return -1;
+		}
+		if (p < windowStart || p >= windowStart + windowLength) {
+			windowStart = p;
+			windowLength = (int) Math.min(WINDOW_SIZE, length - p);
+			if (windowLength == WINDOW_SIZE) {
+				file.get(p, window);
+			} else {
+				final byte[] tmp = new byte[windowLength];
+				file.get(p, tmp);
+				System.arraycopy(tmp, 0, window, 0, windowLength);
+			}
+		}
+		return window[(int) (p - windowStart)] & 0xFF;
+	}
+
+	private static boolean isSpace(int c) {
+		return c == ' ' || c == '\n' || c == '\r' || c == '\t';
+	}
+
+	private boolean startsWith(long p, String s) {
+		for (int i = 0; i < s.length(); i++) {
+			if (read(p + i) != s.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the position after the first occurrence of <code>s</code> at
+	 * or after <code>p</code>, or the file length.
+	 */
+	private long skipAfter(long p, String s) {
+		final int first = s.charAt(0);
+		for (int c; (c = read(p)) != -1; p++) {
+			if (c == first && startsWith(p, s)) {
+				return p + s.length();
+			}
+		}
+		return length;
+	}
+
+	/**
+	 * Returns the position of the next '<' at or after <code>p</code>, or the
+	 * file length.
+	 */
+	long findTag(long p) {
+		for (int c; (c = read(p)) != -1; p++) {
+			if (c == '<') {
+				return p;
+			}
+		}
+		return length;
+	}
+
+	/**
+	 * Moves to the next start tag. Returns false at the end of the file or if
+	 * the last tag is truncated.
+	 */
+	boolean nextStartTag() {
+		while (true) {
+			final long p = findTag(pos);
+			if (p == length) {
+				pos = length;
+				return false;
+			}
+			final int c = read(p + 1);
+			if (c == '!') {
+				if (startsWith(p, "<!--")) {
+					pos = skipAfter(p + 4, "-->");
+				} else if (startsWith(p, "<![CDATA[")) {
+					pos = skipAfter(p + 9, "]]>");
+				} else {
+					pos = skipDeclaration(p + 2);
+				}
+			} else if (c == '?') {
+				pos = skipAfter(p + 2, "?>");
+			} else if (c == '/') {
+				pos = skipAfter(p + 2, ">");
+			} else if (c == -1) {
+				pos = length;
+				return false;
+			} else if (readStartTag(p)) {
+				return true;
+			} else {
+				return false;
+			}
+		}
+	}
+
+	/**
+	 * Skips a declaration like a DOCTYPE, that may contain an internal subset
+	 * between brackets.
+	 */
+	private long skipDeclaration(long p) {
+		int depth = 0;
+		for (int c; (c = read(p)) != -1; p++) {
+			if (c == '[') {
+				depth++;
+			} else if (c == ']') {
+				depth--;
+			} else if (c == '>' && depth <= 0) {
+				return p + 1;
+			}
+		}
+		return length;
+	}
+
+	private boolean readStartTag(long p) {
+		tagStart = p;
+		attributeCount = 0;
+		p++;
+		nameStart = p;
+		int c;
+		while ((c = read(p)) != -1 && !isSpace(c) && c != '/' && c != '>') {
+			p++;
+		}
+		nameEnd = p;
+		while (true) {
+			while (isSpace(c = read(p))) {
+				p++;
+			}
+			if (c == -1) {
+				pos = length;
+				return false;
+			}
+			if (c == '>' || (c == '/' && read(p + 1) == '>')) {
+				tagEnd = p + ((c == '>') ? 1 : 2);
+				pos = tagEnd;
+				return true;
+			}
+			final long attributeStart = p;
+			while ((c = read(p)) != -1 && c != '=' && !isSpace(c) && c != '>') {
+				p++;
+			}
+			final long attributeEnd = p;
+			while (isSpace(c = read(p))) {
+				p++;
+			}
+			if (c != '=') {
+				/* An attribute without value, that is not valid XML */
+				if (attributeEnd == attributeStart) {
+					p++;
+				}
+				continue;
+			}
+			p++;
+			while (isSpace(c = read(p))) {
+				p++;
+			}
+			if (c != '"' && c != '\'') {
+				continue;
+			}
+			final int quote = c;
+			final long valueStart = ++p;
+			while ((c = read(p)) != -1 && c != quote) {
+				p++;
+			}
+			if (c == -1) {
+				pos = length;
+				return false;
+			}
+			if (attributeCount < MAX_ATTRIBUTES) {
+				final int i = 4 * attributeCount++;
+				attributes[i] = attributeStart;
+				attributes[i + 1] = attributeEnd;
+				attributes[i + 2] = valueStart;
+				attributes[i + 3] = p;
+			}
+			p++;
+		}
+	}
+
+	/**
+	 * Returns the offset of the '<' of the current tag.
+	 */
+	long getTagStart() {
+		return tagStart;
+	}
+
+	/**
+	 * Returns the offset that follows the '>' of the current tag.
+	 */
+	long getTagEnd() {
+		return tagEnd;
+	}
+
+	/**
+	 * Tests if the current tag is a start tag of an element with the given
+	 * ASCII name.
+	 */
+	boolean isTag(String name) {
+		return nameEnd - nameStart == name.length() && startsWith(nameStart, name);
+	}
+
+	/**
+	 * Returns the decoded value of the given attribute of the current tag, or
+	 * <code>null</code> if there is no such attribute.
+	 */
+	String getAttribute(String name) {
+		for (int i = 0; i < 4 * attributeCount; i += 4) {
+			if (attributes[i + 1] - attributes[i] == name.length()
+					&& startsWith(attributes[i], name)) {
+				return decode(attributes[i + 2], attributes[i + 3]);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the decoded text that follows the current tag, up to the next
+	 * tag.
+	 */
+	String getText() {
+		return decode(tagEnd, findTag(tagEnd));
+	}
+
+	private String decode(long start, long end) {
+		final byte[] bytes = new byte[(int) (end - start)];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = (byte) read(start + i);
+		}
+		return unescape(bytes, bytes.length);
+	}
+
+	/**
+	 * Decodes the given UTF-8 bytes, resolving the predefined entities and
+	 * the character references. Other entities are left as they are.
+	 */
+	static String unescape(byte[] bytes, int n) {
+		int i = 0;
+		while (i < n && bytes[i] != '&') {
+			i++;
+		}
+		if (i == n) {
+			return new String(bytes, 0, n, UTF8);
+		}
+		final ByteArrayOutputStream out = new ByteArrayOutputStream(n);
+		out.write(bytes, 0, i);
+		while (i < n) {
+			final byte b = bytes[i];
+			int semicolon = -1;
+			if (b == '&') {
+				for (int j = i + 1; j < n && j < i + 12; j++) {
+					if (bytes[j] == ';') {
+						semicolon = j;
+						break;
+					}
+				}
+			}
+			if (semicolon == -1) {
+				out.write(b);
+				i++;
+				continue;
+			}
+			final String entity = new String(bytes, i + 1, semicolon - i - 1,
+					UTF8);
+			final int c = resolve(entity);
+			if (c == -1) {
+				out.write(bytes, i, semicolon + 1 - i);
+			} else {
+				final byte[] utf8 = new String(Character.toChars(c))
+						.getBytes(UTF8);
+				out.write(utf8, 0, utf8.length);
+			}
+			i = semicolon + 1;
+		}
+		return new String(out.toByteArray(), UTF8);
+	}
+
+	private static int resolve(String entity) {
+		if (entity.equals("amp")) {
+			return '&';
+		}
+		if (entity.equals("lt")) {
+			return '<';
+		}
+		if (entity.equals("gt")) {
+			return '>';
+		}
+		if (entity.equals("quot")) {
+			return '"';
+		}
+		if (entity.equals("apos")) {
+			return '\'';
+		}
+		if (entity.length() > 1 && entity.charAt(0) == '#') {
+			try {
+				final int c = (entity.charAt(1) == 'x') ? Integer.parseInt(
+						entity.substring(2), 16) : Integer.parseInt(entity
+						.substring(1));
+				if (Character.isValidCodePoint(c)) {
+					return c;
+				}
+			} catch (final NumberFormatException e) {
+				/* Not a character reference */
+			}
+		}
+		return -1;
+	}
+}
@@ -23,12 +23,12 @@ package fr.umlv.unitex.xalign;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
-import java.nio.MappedByteBuffer;
-import java.nio.channels.FileChannel;
-import java.util.concurrent.ExecutionException;
+import java.util.List;
 
 import javax.swing.SwingWorker;
 
+import fr.umlv.unitex.io.MappedFile;
+
 /**
  * This is a loader for XML text files manipulated by XAlign.
  * 
@@ -36,86 +36,77 @@ import javax.swing.SwingWorker;
  */
 public class XMLTextLoader {
 
-	final XMLTextModel model;
-	final MappedByteBuffer buffer;
+	final XMLTextModelImpl model;
+	final MappedFile file;
 
-	public XMLTextLoader(XMLTextModel model, MappedByteBuffer buffer) {
+	public XMLTextLoader(XMLTextModelImpl model, MappedFile file) {
 		this.model = model;
-		this.buffer = buffer;
+		this.file = file;
 	}
 
+	/**
+	 * Starts reading the sentences and returns at once. Sentences are added
+	 * to the model on the event dispatch thread as they are found.
+	 */
 	public void load() {
 		final SwingWorker<Void, Sentence> worker = new SwingWorker<Void, Sentence>() {
 			@Override
 			protected Void doInBackground() throws Exception {
-				final int dataLength = buffer.capacity();
-				final StringBuilder ID = new StringBuilder();
-				int start, end;
-				for (int pos = 0; pos < dataLength; pos = pos + 1) {
-					if (buffer.get(pos) == '<' && buffer.get(pos + 1) == 's'
-							&& buffer.get(pos + 2) == ' ') {
-						/* If we have a sentence tag, we read its id */
-						do {
-							pos++;
-						} while (!(buffer.get(pos) == '"'
-								&& buffer.get(pos - 1) == '='
-								&& buffer.get(pos - 2) == 'd'
-								&& buffer.get(pos - 3) == 'i'
-								&& buffer.get(pos - 4) == ':'
-								&& buffer.get(pos - 5) == 'l'
-								&& buffer.get(pos - 6) == 'm' && buffer
-								.get(pos - 7) == 'x'));
-						ID.setLength(0);
-						pos++;
-						do {
-							ID.append((char) buffer.get(pos));
-							pos++;
-						} while (buffer.get(pos) != '"');
-						/*
-						 * Then we look for the beginning of the sentence, i.e.
-						 * after the '>' char
-						 */
-						while (buffer.get(pos - 1) != '>') {
-							pos++;
-						}
-						start = pos;
-						do {
-							pos++;
-						} while (buffer.get(pos - 1) != '<');
-						end = pos - 2;
-						publish(new Sentence(ID.toString(), start, end));
-						setProgress((int) (100. * pos / dataLength));
+				final XMLScanner scanner = new XMLScanner(file);
+				final long dataLength = scanner.length();
+				while (scanner.nextStartTag()) {
+					if (!scanner.isTag("s")) {
+						continue;
 					}
+					final String ID = scanner.getAttribute("xml:id");
+					if (ID == null) {
+						continue;
+					}
+					/*
+					 * The sentence goes from the end of the tag to the next
+					 * tag
+					 */
+					final long start = scanner.getTagEnd();
+					final long end = scanner.findTag(start) - 1;
+					publish(new Sentence(ID, start, end));
+					setProgress((int) (100. * start / dataLength));
 				}
 				setProgress(100);
 				return null;
 			}
 
 			@Override
-			protected void process(java.util.List<Sentence> chunks) {
+			protected void process(List<Sentence> chunks) {
 				model.addSentences(chunks);
 			}
+
+			/**
+			 * Called after the last <code>process</code>, even if the
+			 * loading failed.
+			 */
+			@Override
+			protected void done() {
+				try {
+					get();
+				} catch (final Exception e) {
+					e.printStackTrace();
+				}
+				model.setLoaded();
+			}
 		};
 		worker.execute();
-		try {
-			worker.get();
-		} catch (final InterruptedException e) {
-			e.printStackTrace();
-		} catch (final ExecutionException e) {
-			e.printStackTrace();
-		}
 	}
 
 	/**
-	 * Builds and returns a read-only mapped byte buffer for the given file.
+	 * Maps the given file, whatever its size.
 	 */
-	public static MappedByteBuffer buildMappedByteBuffer(File file)
-			throws IOException {
+	public static MappedFile map(File file) throws IOException {
 		final FileInputStream fileInputStream = new FileInputStream(file);
-		final FileChannel channel = fileInputStream.getChannel();
-		final MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY,
-				0, file.length());
-		fileInputStream.close();
-		return map;
+		try {
+			/* The mapping remains valid once the channel is closed */
+			return new MappedFile(fileInputStream.getChannel());
+		} finally {
+			fileInputStream.close();
+		}
 	}
 }
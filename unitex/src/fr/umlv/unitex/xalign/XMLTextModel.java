@@ -58,5 +58,12 @@ public interface XMLTextModel extends ListModel {
 	 */
 	public void addSentences(List<Sentence> sentence);
 
+	/**
+	 * Waits until all the sentences have been added to the model. This must
+	 * not be called from the event dispatch thread, where sentences are
+	 * added.
+	 */
+	public void waitUntilLoaded() throws InterruptedException;
+
 	public void reset();
 }
@@ -20,15 +20,16 @@
  */
 package fr.umlv.unitex.xalign;
 
-import java.nio.MappedByteBuffer;
-import java.nio.charset.Charset;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
 
 import javax.swing.event.ListDataEvent;
 import javax.swing.event.ListDataListener;
 
+import fr.umlv.unitex.io.MappedFile;
+
 /**
  * This is a model for representing a XML text file as the list of its
  * sentences. It is used for alignements.
@@ -36,20 +37,28 @@ import javax.swing.event.ListDataListener;
  * @author Sébastien Paumier
  */
 public class XMLTextModelImpl implements XMLTextModel {
-	private MappedByteBuffer buffer;
-	private static final Charset utf8 = Charset.forName("UTF-8");
-	private final ArrayList<Sentence> sentences;
-	private final HashMap<String, Integer> id;
+	private MappedFile file;
+	private int size;
+	/* Bounds of the sentences, as inclusive offsets in the XML file */
+	private long[] starts = new long[1024];
+	private long[] ends = new long[1024];
+	/* The ids are stored one after the other, the id #i starting at idStarts[i] */
+	private char[] idChars = new char[16384];
+	private int[] idStarts = new int[1025];
+	/*
+	 * Open addressing table that gives the index of a sentence from its id.
+	 * Slots contain index+1, 0 meaning empty.
+	 */
+	private int[] table = new int[2048];
+	private final CountDownLatch loaded = new CountDownLatch(1);
 
-	public XMLTextModelImpl(MappedByteBuffer buffer) {
-		this.buffer = buffer;
-		sentences = new ArrayList<Sentence>();
-		id = new HashMap<String, Integer>();
+	public XMLTextModelImpl(MappedFile file) {
+		this.file = file;
 	}
 
 	@Override
 	public int getSize() {
-		return sentences.size();
+		return size;
 	}
 
 	@Override
@@ -57,53 +66,68 @@ public class XMLTextModelImpl implements XMLTextModel {
 		if (i < 0 || i >= getSize()) {
 			throw new IndexOutOfBoundsException();
 		}
-		final Sentence s = sentences.get(i);
-		final long start = s.start;
-		final long end = s.end;
-		final byte[] tmp = new byte[(int) (end - start + 1)];
-		int z = 0;
-		for (long pos = start; pos <= end; pos++) {
-			if (buffer.get((int) pos) == '&') {
-				if (buffer.get((int) pos + 1) == 'a'
-						&& buffer.get((int) pos + 2) == 'm'
-						&& buffer.get((int) pos + 3) == 'p'
-						&& buffer.get((int) pos + 4) == ';') {
-					tmp[z++] = '&';
-					pos = pos + 4;
-				} else if (buffer.get((int) pos + 1) == 'l'
-						&& buffer.get((int) pos + 2) == 't'
-						&& buffer.get((int) pos + 3) == ';') {
-					tmp[z++] = '<';
-					pos = pos + 3;
-				} else if (buffer.get((int) pos + 1) == 'g'
-						&& buffer.get((int) pos + 2) == 't'
-						&& buffer.get((int) pos + 3) == ';') {
-					tmp[z++] = '>';
-					pos = pos + 3;
-				} else {
-					tmp[z++] = buffer.get((int) pos);
-				}
-			} else {
-				tmp[z++] = buffer.get((int) pos);
+		final byte[] tmp = new byte[(int) (ends[i] - starts[i] + 1)];
+		file.get(starts[i], tmp);
+		return XMLScanner.unescape(tmp, tmp.length);
+	}
+
+	private static int hash(int h) {
+		h ^= h >>> 16;
+		return h * 0x9E3779B9;
+	}
+
+	private int idHashCode(int index) {
+		int h = 0;
+		for (int i = idStarts[index]; i < idStarts[index + 1]; i++) {
+			h = 31 * h + idChars[i];
+		}
+		return h;
+	}
+
+	private boolean idEquals(int index, String s) {
+		final int start = idStarts[index];
+		if (idStarts[index + 1] - start != s.length()) {
+			return false;
+		}
+		for (int i = 0; i < s.length(); i++) {
+			if (idChars[start + i] != s.charAt(i)) {
+				return false;
 			}
 		}
-		return new String(tmp, 0, z, utf8);
+		return true;
+	}
+
+	/**
+	 * Returns the slot of the table that contains the given id, or the empty
+	 * slot where it should be.
+	 */
+	private int findSlot(String s, int h) {
+		final int mask = table.length - 1;
+		int slot = hash(h) & mask;
+		while (table[slot] != 0 && !idEquals(table[slot] - 1, s)) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
 	}
 
 	@Override
 	public int getIndex(String s) {
-		final Integer i = id.get(s);
-		if (i == null) {
+		final int n = table[findSlot(s, s.hashCode())];
+		if (n == 0) {
 			System.err.println("Error: sentence id #" + s
 					+ " not found in XML text!!!");
 			return -1;
 		}
-		return i;
+		return n - 1;
 	}
 
 	@Override
 	public String getID(int index) {
-		return sentences.get(index).ID;
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException();
+		}
+		return new String(idChars, idStarts[index], idStarts[index + 1]
+				- idStarts[index]);
 	}
 
 	private final ArrayList<ListDataListener> listeners = new ArrayList<ListDataListener>();
@@ -118,10 +142,45 @@ public class XMLTextModelImpl implements XMLTextModel {
 		listeners.remove(l);
 	}
 
+	private void rehash() {
+		final int[] old = table;
+		table = new int[2 * old.length];
+		final int mask = table.length - 1;
+		for (final int n : old) {
+			if (n == 0) {
+				continue;
+			}
+			int slot = hash(idHashCode(n - 1)) & mask;
+			while (table[slot] != 0) {
+				slot = (slot + 1) & mask;
+			}
+			table[slot] = n;
+		}
+	}
+
 	private void add(Sentence s) {
-		final int n = getSize();
-		sentences.add(s);
-		id.put(s.ID, n);
+		if (size == starts.length) {
+			starts = Arrays.copyOf(starts, 2 * size);
+			ends = Arrays.copyOf(ends, 2 * size);
+			idStarts = Arrays.copyOf(idStarts, 2 * size + 1);
+		}
+		final int start = idStarts[size];
+		final int length = s.ID.length();
+		if (start + length > idChars.length) {
+			idChars = Arrays.copyOf(idChars,
+					Math.max(2 * idChars.length, start + length));
+		}
+		s.ID.getChars(0, length, idChars, start);
+		starts[size] = s.start;
+		ends[size] = s.end;
+		idStarts[size + 1] = start + length;
+		final int n = size;
+		size++;
+		if (2 * size > table.length) {
+			rehash();
+		}
+		/* As with a map, the last sentence with a given id wins */
+		table[findSlot(s.ID, s.ID.hashCode())] = n + 1;
 	}
 
 	@Override
@@ -134,6 +193,19 @@ public class XMLTextModelImpl implements XMLTextModel {
 		fireIntervalAdded(this, start, end);
 	}
 
+	/**
+	 * Called on the event dispatch thread once the last sentences have been
+	 * added.
+	 */
+	void setLoaded() {
+		loaded.countDown();
+	}
+
+	@Override
+	public void waitUntilLoaded() throws InterruptedException {
+		loaded.await();
+	}
+
 	void fireIntervalAdded(Object source, int start, int end) {
 		final ListDataEvent event = new ListDataEvent(source,
 				ListDataEvent.INTERVAL_ADDED, start, end);
@@ -144,8 +216,8 @@ public class XMLTextModelImpl implements XMLTextModel {
 
 	@Override
 	public void reset() {
-		if (buffer != null)
-			buffer = null;
+		if (file != null)
+			file = null;
 		System.gc();
 	}
 }